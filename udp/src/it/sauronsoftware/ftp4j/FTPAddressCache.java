@@ -0,0 +1,195 @@
+/*
+ * ftp4j - A pure Java FTP client library
+ * 
+ * Copyright (C) 2008-2010 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version
+ * 2.1, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License 2.1 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License version 2.1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.sauronsoftware.ftp4j;
+
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+
+/**
+ * A process-wide cache of the addresses of the host names, used by the
+ * connectors. The addresses are kept for the time given by the
+ * {@link FTPKeys#DNS_CACHE_TTL} system property, and they are returned in the
+ * order in which they should be tried: the address which won the last
+ * connection to the host comes first, then the IPv6 and IPv4 addresses
+ * alternate, starting from the family of the first address returned by the
+ * resolver (RFC 8305).
+ * 
+ * @author Carlo Pelliccia
+ * @since 1.8
+ */
+class FTPAddressCache {
+
+	/**
+	 * The default time (ms) to live of an entry.
+	 */
+	private static final long DEFAULT_TTL = 60000;
+
+	/**
+	 * The entries, by host name.
+	 */
+	private static final FTPHostMap entries = new FTPHostMap();
+
+	/**
+	 * Returns the addresses of a host, in the order in which they should be
+	 * tried.
+	 * 
+	 * @param host
+	 *            The host name or address.
+	 * @return The addresses.
+	 * @throws UnknownHostException
+	 *             If the host cannot be resolved.
+	 */
+	public static InetAddress[] resolve(String host) throws UnknownHostException {
+		Entry entry;
+		synchronized (entries) {
+			entry = (Entry) entries.get(host, -1);
+			if (entry != null && entry.expiry <= System.currentTimeMillis()) {
+				entries.remove(host, -1);
+				entry = null;
+			}
+		}
+		if (entry == null) {
+			InetAddress[] addresses = interleave(InetAddress.getAllByName(host));
+			long ttl = getTTL();
+			if (ttl <= 0) {
+				return addresses;
+			}
+			entry = new Entry(addresses, System.currentTimeMillis() + ttl);
+			synchronized (entries) {
+				entries.put(host, -1, entry);
+			}
+		}
+		synchronized (entries) {
+			InetAddress[] addresses = entry.addresses.clone();
+			// The preferred address comes first.
+			if (entry.preferred != null) {
+				for (int i = 1; i < addresses.length; i++) {
+					if (addresses[i].equals(entry.preferred)) {
+						System.arraycopy(addresses, 0, addresses, 1, i);
+						addresses[0] = entry.preferred;
+						break;
+					}
+				}
+			}
+			return addresses;
+		}
+	}
+
+	/**
+	 * Records the address which won a connection to a host.
+	 * 
+	 * @param host
+	 *            The host name.
+	 * @param address
+	 *            The address.
+	 */
+	public static void setPreferred(String host, InetAddress address) {
+		synchronized (entries) {
+			Entry entry = (Entry) entries.get(host, -1);
+			if (entry != null) {
+				entry.preferred = address;
+			}
+		}
+	}
+
+	/**
+	 * Records an address which failed a connection to a host. If it was the
+	 * preferred one, it isn't preferred anymore.
+	 * 
+	 * @param host
+	 *            The host name.
+	 * @param address
+	 *            The address.
+	 */
+	public static void setFailed(String host, InetAddress address) {
+		synchronized (entries) {
+			Entry entry = (Entry) entries.get(host, -1);
+			if (entry != null && address.equals(entry.preferred)) {
+				entry.preferred = null;
+			}
+		}
+	}
+
+	/**
+	 * Alternates the address families.
+	 */
+	private static InetAddress[] interleave(InetAddress[] addresses) {
+		if (addresses.length < 2) {
+			return addresses;
+		}
+		boolean firstIsV6 = addresses[0] instanceof Inet6Address;
+		ArrayList first = new ArrayList();
+		ArrayList second = new ArrayList();
+		for (int i = 0; i < addresses.length; i++) {
+			boolean v6 = addresses[i] instanceof Inet6Address;
+			if (v6 == firstIsV6) {
+				first.add(addresses[i]);
+			} else {
+				second.add(addresses[i]);
+			}
+		}
+		InetAddress[] ret = new InetAddress[addresses.length];
+		int k = 0;
+		for (int i = 0; k < ret.length; i++) {
+			if (i < first.size()) {
+				ret[k++] = (InetAddress) first.get(i);
+			}
+			if (i < second.size()) {
+				ret[k++] = (InetAddress) second.get(i);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Reads the time to live of the entries from the system property.
+	 */
+	private static long getTTL() {
+		String prop = System.getProperty(FTPKeys.DNS_CACHE_TTL);
+		if (prop != null) {
+			try {
+				return Long.parseLong(prop);
+			} catch (NumberFormatException e) {
+				;
+			}
+		}
+		return DEFAULT_TTL;
+	}
+
+	/**
+	 * The addresses of a host.
+	 */
+	private static class Entry {
+
+		private InetAddress[] addresses;
+
+		private InetAddress preferred = null;
+
+		private long expiry;
+
+		private Entry(InetAddress[] addresses, long expiry) {
+			this.addresses = addresses;
+			this.expiry = expiry;
+		}
+
+	}
+
+}
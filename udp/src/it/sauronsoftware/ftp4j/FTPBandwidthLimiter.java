@@ -0,0 +1,228 @@
+/*
+ * ftp4j - A pure Java FTP client library
+ * 
+ * Copyright (C) 2008-2010 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version
+ * 2.1, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License 2.1 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License version 2.1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.sauronsoftware.ftp4j;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket limiting the bandwidth of data transfers. A limiter can be
+ * attached to a single client, with
+ * {@link FTPClient#setUploadBandwidthLimiter(FTPBandwidthLimiter)} and
+ * {@link FTPClient#setDownloadBandwidthLimiter(FTPBandwidthLimiter)}, or it can
+ * be shared by many clients as a global budget. A limiter can also have a
+ * parent limiter, which is charged for every byte passing through its child:
+ * in example, every client can have its own limiter, all of them having the
+ * same global limiter as parent.
+ * 
+ * The bucket fills at the given rate, up to the burst size, and every
+ * transferred byte takes a token. The state of the bucket is a single atomic
+ * value, updated without locks, so a limiter shared by many threads doesn't
+ * serialize them. The rate and the burst size can be changed at any time,
+ * also while a transfer is running.
+ * 
+ * @author Carlo Pelliccia
+ * @since 1.8
+ */
+public class FTPBandwidthLimiter {
+
+	/**
+	 * Nanoseconds in a second.
+	 */
+	private static final double NANOS_PER_SECOND = 1000000000d;
+
+	/**
+	 * The rate, in bytes per second. A value less or equal to 0 means no
+	 * limit.
+	 */
+	private volatile long rate;
+
+	/**
+	 * The burst size, in bytes.
+	 */
+	private volatile long burst;
+
+	/**
+	 * The parent limiter (could be null).
+	 */
+	private FTPBandwidthLimiter parent;
+
+	/**
+	 * The time (System.nanoTime()) when the bucket will be full again. Every
+	 * acquisition pushes it forward by the time needed to earn the taken
+	 * tokens.
+	 */
+	private AtomicLong fullTime = new AtomicLong(System.nanoTime());
+
+	/**
+	 * Builds a limiter with a burst size of one second of transfer.
+	 * 
+	 * @param rate
+	 *            The rate, in bytes per second. A value less or equal to 0
+	 *            means no limit.
+	 */
+	public FTPBandwidthLimiter(long rate) {
+		this(rate, rate, null);
+	}
+
+	/**
+	 * Builds a limiter.
+	 * 
+	 * @param rate
+	 *            The rate, in bytes per second. A value less or equal to 0
+	 *            means no limit.
+	 * @param burst
+	 *            The burst size, in bytes: the amount of data which can be
+	 *            transferred at full speed after an idle period.
+	 */
+	public FTPBandwidthLimiter(long rate, long burst) {
+		this(rate, burst, null);
+	}
+
+	/**
+	 * Builds a limiter with a parent.
+	 * 
+	 * @param rate
+	 *            The rate, in bytes per second. A value less or equal to 0
+	 *            means no limit.
+	 * @param burst
+	 *            The burst size, in bytes: the amount of data which can be
+	 *            transferred at full speed after an idle period.
+	 * @param parent
+	 *            The parent limiter, charged for every byte passing through
+	 *            this one (could be null).
+	 */
+	public FTPBandwidthLimiter(long rate, long burst, FTPBandwidthLimiter parent) {
+		this.rate = rate;
+		this.burst = burst;
+		this.parent = parent;
+	}
+
+	/**
+	 * Changes the rate.
+	 * 
+	 * @param rate
+	 *            The rate, in bytes per second. A value less or equal to 0
+	 *            means no limit.
+	 */
+	public void setRate(long rate) {
+		this.rate = rate;
+	}
+
+	/**
+	 * Returns the rate.
+	 * 
+	 * @return The rate, in bytes per second. A value less or equal to 0 means
+	 *         no limit.
+	 */
+	public long getRate() {
+		return rate;
+	}
+
+	/**
+	 * Changes the burst size.
+	 * 
+	 * @param burst
+	 *            The burst size, in bytes.
+	 */
+	public void setBurst(long burst) {
+		this.burst = burst;
+	}
+
+	/**
+	 * Returns the burst size.
+	 * 
+	 * @return The burst size, in bytes.
+	 */
+	public long getBurst() {
+		return burst;
+	}
+
+	/**
+	 * Returns the parent limiter.
+	 * 
+	 * @return The parent limiter, or null if there's no parent.
+	 */
+	public FTPBandwidthLimiter getParent() {
+		return parent;
+	}
+
+	/**
+	 * Takes the tokens for the given amount of data, from this limiter and
+	 * from its parents, waiting until they are available. Transfer loops call
+	 * this method once per chunk, before or after moving the chunk.
+	 * 
+	 * @param bytes
+	 *            The amount of data.
+	 * @throws InterruptedIOException
+	 *             If the thread is interrupted while waiting.
+	 */
+	public void acquire(int bytes) throws InterruptedIOException {
+		for (FTPBandwidthLimiter aux = this; aux != null; aux = aux.parent) {
+			aux.take(bytes);
+		}
+	}
+
+	/**
+	 * Takes the tokens from this limiter only.
+	 */
+	private void take(int bytes) throws InterruptedIOException {
+		long rate = this.rate;
+		if (rate <= 0 || bytes <= 0) {
+			return;
+		}
+		long cost = (long) (bytes * NANOS_PER_SECOND / rate);
+		long tolerance = (long) (burst * NANOS_PER_SECOND / rate);
+		long now;
+		long next;
+		while (true) {
+			now = System.nanoTime();
+			long current = fullTime.get();
+			// An idle bucket is full, not more than full.
+			next = (current - now < 0 ? now : current) + cost;
+			if (fullTime.compareAndSet(current, next)) {
+				break;
+			}
+		}
+		// The tokens not available yet are earned by waiting.
+		long delay = next - now - tolerance;
+		if (delay > 0) {
+			try {
+				Thread.sleep(delay / 1000000, (int) (delay % 1000000));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while throttling");
+			}
+		}
+	}
+
+	public String toString() {
+		StringBuffer buffer = new StringBuffer();
+		buffer.append(getClass().getName());
+		buffer.append(" [rate=");
+		buffer.append(rate);
+		buffer.append(", burst=");
+		buffer.append(burst);
+		buffer.append(", parent=");
+		buffer.append(parent);
+		buffer.append("]");
+		return buffer.toString();
+	}
+
+}
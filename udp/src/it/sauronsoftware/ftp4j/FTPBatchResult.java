@@ -0,0 +1,160 @@
+/*
+ * ftp4j - A pure Java FTP client library
+ * 
+ * Copyright (C) 2008-2010 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version
+ * 2.1, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License 2.1 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License version 2.1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.sauronsoftware.ftp4j;
+
+/**
+ * The results of a batch of operations on many remote paths, in the order of
+ * the paths. Every path has its own outcome: a value or the exception which
+ * made the operation fail for that path, so a failure doesn't stop the batch.
+ * 
+ * @author Carlo Pelliccia
+ * @since 1.8
+ * @see FTPClient#fileSizes(java.util.List)
+ * @see FTPClient#modifiedDates(java.util.List)
+ * @see FTPClient#stat(java.util.List)
+ */
+public class FTPBatchResult {
+
+	/**
+	 * The paths.
+	 */
+	private String[] paths;
+
+	/**
+	 * The values, by path.
+	 */
+	private Object[] values;
+
+	/**
+	 * The exceptions, by path.
+	 */
+	private Exception[] exceptions;
+
+	/**
+	 * Builds the results of a batch, still without outcomes.
+	 * 
+	 * @param paths
+	 *            The paths.
+	 */
+	FTPBatchResult(String[] paths) {
+		this.paths = paths;
+		this.values = new Object[paths.length];
+		this.exceptions = new Exception[paths.length];
+	}
+
+	/**
+	 * Returns the number of paths in the batch.
+	 * 
+	 * @return The number of paths.
+	 */
+	public int size() {
+		return paths.length;
+	}
+
+	/**
+	 * Returns a path of the batch.
+	 * 
+	 * @param index
+	 *            The index of the path.
+	 * @return The path.
+	 */
+	public String getPath(int index) {
+		return paths[index];
+	}
+
+	/**
+	 * Checks whether the operation succeeded for a path.
+	 * 
+	 * @param index
+	 *            The index of the path.
+	 * @return true if the operation succeeded.
+	 */
+	public boolean isSuccessful(int index) {
+		return exceptions[index] == null;
+	}
+
+	/**
+	 * Returns the value obtained for a path: a Long for
+	 * {@link FTPClient#fileSizes(java.util.List)}, a java.util.Date for
+	 * {@link FTPClient#modifiedDates(java.util.List)}, a {@link FTPFile}
+	 * for {@link FTPClient#stat(java.util.List)} and Boolean.TRUE for the
+	 * operations changing the remote tree, such as
+	 * {@link FTPClient#deleteFiles(java.util.List)}.
+	 * 
+	 * @param index
+	 *            The index of the path.
+	 * @return The value, or null if the operation failed.
+	 */
+	public Object getValue(int index) {
+		return values[index];
+	}
+
+	/**
+	 * Returns the exception which made the operation fail for a path.
+	 * Usually it is a {@link FTPException}, carrying the error reply of the
+	 * server.
+	 * 
+	 * @param index
+	 *            The index of the path.
+	 * @return The exception, or null if the operation succeeded.
+	 */
+	public Exception getException(int index) {
+		return exceptions[index];
+	}
+
+	/**
+	 * Sets the value obtained for a path.
+	 */
+	void setValue(int index, Object value) {
+		values[index] = value;
+		exceptions[index] = null;
+	}
+
+	/**
+	 * Sets the exception which made the operation fail for a path.
+	 */
+	void setException(int index, Exception exception) {
+		values[index] = null;
+		exceptions[index] = exception;
+	}
+
+	/**
+	 * Checks whether the outcome for a path is known.
+	 */
+	boolean isResolved(int index) {
+		return values[index] != null || exceptions[index] != null;
+	}
+
+	public String toString() {
+		StringBuffer buffer = new StringBuffer();
+		buffer.append(getClass().getName());
+		buffer.append(" [");
+		for (int i = 0; i < paths.length; i++) {
+			if (i > 0) {
+				buffer.append(", ");
+			}
+			buffer.append(paths[i]);
+			buffer.append("=");
+			buffer.append(exceptions[i] != null ? exceptions[i] : values[i]);
+		}
+		buffer.append("]");
+		return buffer.toString();
+	}
+
+}
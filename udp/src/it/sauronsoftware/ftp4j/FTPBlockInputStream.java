@@ -0,0 +1,176 @@
+/*
+ * ftp4j - A pure Java FTP client library
+ * 
+ * Copyright (C) 2008-2010 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version
+ * 2.1, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License 2.1 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License version 2.1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.sauronsoftware.ftp4j;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the contents of a file received in block mode (MODE B, RFC 959). The
+ * block headers are removed, and the end of the file is reported when the
+ * block with the EOF flag has been read, without closing the underlying
+ * stream, so the data connection can carry the next file. Restart markers
+ * sent by the server are skipped, remembering the last one.
+ * 
+ * Closing the stream before the end of the file closes the underlying stream
+ * too, since the connection can't be reused anymore.
+ * 
+ * @author Carlo Pelliccia
+ * @since 1.8
+ */
+class FTPBlockInputStream extends InputStream {
+
+	/**
+	 * The descriptor flag marking the last block of a file.
+	 */
+	private static final int EOF = 64;
+
+	/**
+	 * The descriptor flag marking a restart marker block.
+	 */
+	private static final int RESTART_MARKER = 16;
+
+	/**
+	 * The underlying stream.
+	 */
+	private InputStream in;
+
+	/**
+	 * The data bytes still to be read in the current block.
+	 */
+	private int remaining = 0;
+
+	/**
+	 * Whether the block with the EOF flag has been reached.
+	 */
+	private boolean eof = false;
+
+	/**
+	 * Whether the underlying stream has been closed.
+	 */
+	private boolean broken = false;
+
+	/**
+	 * The last restart marker received (could be null).
+	 */
+	private String restartMarker = null;
+
+	/**
+	 * Builds the stream.
+	 * 
+	 * @param in
+	 *            The input stream of the data connection.
+	 */
+	public FTPBlockInputStream(InputStream in) {
+		this.in = in;
+	}
+
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		int l;
+		while ((l = read(b, 0, 1)) == 0) {
+			;
+		}
+		return l < 0 ? -1 : b[0] & 0xff;
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		while (remaining == 0) {
+			if (eof) {
+				return -1;
+			}
+			nextBlock();
+		}
+		int l = in.read(b, off, Math.min(len, remaining));
+		if (l < 0) {
+			throw new EOFException("Data connection closed inside a block");
+		}
+		remaining -= l;
+		return l;
+	}
+
+	public int available() throws IOException {
+		return Math.min(remaining, in.available());
+	}
+
+	/**
+	 * Reads the header of the next block. A restart marker block is consumed
+	 * entirely.
+	 */
+	private void nextBlock() throws IOException {
+		byte[] header = readFully(3);
+		int descriptor = header[0] & 0xff;
+		int count = ((header[1] & 0xff) << 8) | (header[2] & 0xff);
+		if ((descriptor & RESTART_MARKER) != 0) {
+			restartMarker = new String(readFully(count), "US-ASCII");
+		} else {
+			remaining = count;
+		}
+		if ((descriptor & EOF) != 0) {
+			eof = true;
+		}
+	}
+
+	/**
+	 * Reads exactly the given amount of bytes.
+	 */
+	private byte[] readFully(int length) throws IOException {
+		byte[] buffer = new byte[length];
+		int off = 0;
+		while (off < length) {
+			int l = in.read(buffer, off, length - off);
+			if (l < 0) {
+				throw new EOFException("Data connection closed inside a block");
+			}
+			off += l;
+		}
+		return buffer;
+	}
+
+	/**
+	 * Checks whether the whole file has been read, so the data connection can
+	 * be used again.
+	 * 
+	 * @return true if the end of the file has been reached.
+	 */
+	public boolean isEndOfFile() {
+		return eof && remaining == 0 && !broken;
+	}
+
+	/**
+	 * Returns the last restart marker sent by the server.
+	 * 
+	 * @return The marker, or null if no marker has been received.
+	 */
+	public String getRestartMarker() {
+		return restartMarker;
+	}
+
+	public void close() throws IOException {
+		if (!isEndOfFile()) {
+			broken = true;
+			in.close();
+		}
+	}
+
+}
@@ -0,0 +1,150 @@
+/*
+ * ftp4j - A pure Java FTP client library
+ * 
+ * Copyright (C) 2008-2010 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version
+ * 2.1, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License 2.1 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License version 2.1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.sauronsoftware.ftp4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Sends the contents of a file in block mode (MODE B, RFC 959). Every write
+ * is buffered in a block, sent with its header when full or when the stream
+ * is flushed. The finish() method sends the block with the EOF flag, leaving
+ * the underlying stream open, so the data connection can carry the next
+ * file.
+ * 
+ * Closing the stream before finish() closes the underlying stream too, which
+ * tells the server that the transfer is broken.
+ * 
+ * @author Carlo Pelliccia
+ * @since 1.8
+ */
+class FTPBlockOutputStream extends OutputStream {
+
+	/**
+	 * The descriptor flag marking the last block of a file.
+	 */
+	private static final int EOF = 64;
+
+	/**
+	 * The largest amount of data carried by a block.
+	 */
+	private static final int MAX_BLOCK_SIZE = 65535;
+
+	/**
+	 * The underlying stream.
+	 */
+	private OutputStream out;
+
+	/**
+	 * The block being filled, header included.
+	 */
+	private byte[] block = new byte[MAX_BLOCK_SIZE + 3];
+
+	/**
+	 * The data bytes in the block.
+	 */
+	private int count = 0;
+
+	/**
+	 * Whether the block with the EOF flag has been sent.
+	 */
+	private boolean finished = false;
+
+	/**
+	 * Builds the stream.
+	 * 
+	 * @param out
+	 *            The output stream of the data connection.
+	 */
+	public FTPBlockOutputStream(OutputStream out) {
+		this.out = out;
+	}
+
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (finished) {
+			throw new IOException("Stream finished");
+		}
+		while (len > 0) {
+			int l = Math.min(len, MAX_BLOCK_SIZE - count);
+			System.arraycopy(b, off, block, count + 3, l);
+			count += l;
+			off += l;
+			len -= l;
+			if (count == MAX_BLOCK_SIZE) {
+				sendBlock(0);
+			}
+		}
+	}
+
+	/**
+	 * Sends the buffered data in a block.
+	 */
+	public void flush() throws IOException {
+		if (count > 0) {
+			sendBlock(0);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Sends the buffered data in the block marking the end of the file.
+	 * 
+	 * @throws IOException
+	 *             If an I/O error occurs.
+	 */
+	public void finish() throws IOException {
+		if (!finished) {
+			sendBlock(EOF);
+			out.flush();
+			finished = true;
+		}
+	}
+
+	/**
+	 * Checks whether the end of the file has been sent, so the data
+	 * connection can be used again.
+	 * 
+	 * @return true if finish() has been called.
+	 */
+	public boolean isFinished() {
+		return finished;
+	}
+
+	public void close() throws IOException {
+		if (!finished) {
+			out.close();
+		}
+	}
+
+	/**
+	 * Sends the block, with the given descriptor.
+	 */
+	private void sendBlock(int descriptor) throws IOException {
+		block[0] = (byte) descriptor;
+		block[1] = (byte) (count >> 8);
+		block[2] = (byte) count;
+		out.write(block, 0, count + 3);
+		count = 0;
+	}
+
+}
@@ -0,0 +1,236 @@
+/*
+ * ftp4j - A pure Java FTP client library
+ * 
+ * Copyright (C) 2008-2010 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version
+ * 2.1, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License 2.1 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License version 2.1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.sauronsoftware.ftp4j;
+
+/**
+ * A subscription producing its items with blocking reads, on the thread
+ * asking for them. The thread calling request() delivers the items until the
+ * demand is satisfied; the calls made meanwhile, also by the subscriber
+ * itself, only add to the demand. So the items are read only as requested,
+ * and no thread or buffer is needed between the data transfer and the
+ * subscriber.
+ * 
+ * @author Carlo Pelliccia
+ * @since 1.8
+ */
+abstract class FTPBlockingSubscription implements FTPSubscription {
+
+	/**
+	 * The subscriber.
+	 */
+	private FTPSubscriber subscriber;
+
+	/**
+	 * The items requested and not delivered yet.
+	 */
+	private long demand = 0;
+
+	/**
+	 * A failure waiting to be signaled.
+	 */
+	private Throwable failure = null;
+
+	/**
+	 * Whether a thread is delivering the items.
+	 */
+	private boolean draining = false;
+
+	/**
+	 * Whether the subscription has been cancelled.
+	 */
+	private boolean cancelled = false;
+
+	/**
+	 * Whether the subscription has been terminated.
+	 */
+	private boolean terminated = false;
+
+	/**
+	 * Whether the transfer has been started.
+	 */
+	private boolean started = false;
+
+	/**
+	 * Builds the subscription.
+	 * 
+	 * @param subscriber
+	 *            The subscriber.
+	 */
+	public FTPBlockingSubscription(FTPSubscriber subscriber) {
+		if (subscriber == null) {
+			throw new NullPointerException("Null subscriber");
+		}
+		this.subscriber = subscriber;
+	}
+
+	/**
+	 * Hands the subscription to the subscriber.
+	 */
+	public void start() {
+		subscriber.onSubscribe(this);
+	}
+
+	public void request(long n) {
+		synchronized (this) {
+			if (cancelled || terminated) {
+				return;
+			}
+			if (n <= 0) {
+				if (failure == null) {
+					failure = new IllegalArgumentException("Non-positive request: " + n);
+				}
+			} else {
+				demand += n;
+				if (demand < 0) {
+					// Unbounded.
+					demand = Long.MAX_VALUE;
+				}
+			}
+			if (draining) {
+				return;
+			}
+			draining = true;
+		}
+		drain();
+	}
+
+	public void cancel() {
+		boolean idle;
+		synchronized (this) {
+			if (cancelled || terminated) {
+				return;
+			}
+			cancelled = true;
+			idle = !draining;
+			if (idle) {
+				draining = true;
+			}
+		}
+		if (idle) {
+			// No one is reading: the transfer can be released here.
+			terminate();
+		} else {
+			// Wakes up the reading thread, which releases the transfer.
+			abort();
+		}
+	}
+
+	/**
+	 * Delivers the items while there's demand.
+	 */
+	private void drain() {
+		while (true) {
+			Throwable error;
+			synchronized (this) {
+				if (cancelled) {
+					break;
+				}
+				error = failure;
+				if (error == null && demand == 0) {
+					draining = false;
+					return;
+				}
+			}
+			Object item = null;
+			if (error == null) {
+				try {
+					if (!started) {
+						started = true;
+						open();
+					}
+					item = next();
+				} catch (Throwable t) {
+					error = t;
+				}
+			}
+			synchronized (this) {
+				if (cancelled) {
+					break;
+				}
+			}
+			if (error == null && item == null) {
+				// The transfer is over.
+				try {
+					close();
+				} catch (Throwable t) {
+					error = t;
+				}
+				synchronized (this) {
+					terminated = true;
+				}
+				if (error == null) {
+					subscriber.onComplete();
+				} else {
+					subscriber.onError(error);
+				}
+				return;
+			}
+			if (error != null) {
+				terminate();
+				subscriber.onError(error);
+				return;
+			}
+			synchronized (this) {
+				demand--;
+			}
+			subscriber.onNext(item);
+		}
+		// Cancelled.
+		terminate();
+	}
+
+	/**
+	 * Releases the transfer, ignoring the failures.
+	 */
+	private void terminate() {
+		synchronized (this) {
+			terminated = true;
+		}
+		try {
+			close();
+		} catch (Throwable t) {
+			;
+		}
+	}
+
+	/**
+	 * Starts the transfer. Called once, by the thread delivering the first
+	 * item.
+	 */
+	protected abstract void open() throws Exception;
+
+	/**
+	 * Reads the next item, blocking if needed.
+	 * 
+	 * @return The item, or null if the transfer is over.
+	 */
+	protected abstract Object next() throws Exception;
+
+	/**
+	 * Completes or releases the transfer, if it has been started. Called once.
+	 */
+	protected abstract void close() throws Exception;
+
+	/**
+	 * Aborts the running transfer. Called by a thread cancelling the
+	 * subscription while another one is reading.
+	 */
+	protected abstract void abort();
+
+}
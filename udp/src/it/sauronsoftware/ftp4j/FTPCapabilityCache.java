@@ -0,0 +1,186 @@
+/*
+ * ftp4j - A pure Java FTP client library
+ * 
+ * Copyright (C) 2008-2010 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version
+ * 2.1, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License 2.1 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License version 2.1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.sauronsoftware.ftp4j;
+
+/**
+ * A process-wide cache of the features declared by the servers, by host and
+ * port. A client logging in a server whose features are cached skips the
+ * FEAT command. The cache also remembers whether the login commands can be
+ * pipelined, and whether the server can list directories with STAT. Entries
+ * expire after the time given by the {@link FTPKeys#CAPABILITY_CACHE_TTL}
+ * system property.
+ * 
+ * @author Carlo Pelliccia
+ * @since 1.8
+ */
+class FTPCapabilityCache {
+
+	/**
+	 * The default time (ms) to live of an entry.
+	 */
+	private static final long DEFAULT_TTL = 600000;
+
+	/**
+	 * The entries, by host and port.
+	 */
+	private static final FTPHostMap entries = new FTPHostMap();
+
+	/**
+	 * Returns the cached features of a server.
+	 * 
+	 * @param host
+	 *            The host.
+	 * @param port
+	 *            The port.
+	 * @return The entry, or null if it isn't cached or it has expired.
+	 */
+	public static Entry get(String host, int port) {
+		synchronized (entries) {
+			Entry entry = (Entry) entries.get(host, port);
+			if (entry != null && entry.expiry <= System.currentTimeMillis()) {
+				entries.remove(host, port);
+				entry = null;
+			}
+			return entry;
+		}
+	}
+
+	/**
+	 * Caches the features of a server.
+	 * 
+	 * @param host
+	 *            The host.
+	 * @param port
+	 *            The port.
+	 * @param features
+	 *            The lines of the FEAT reply.
+	 * @param pipelining
+	 *            Whether the login commands can be pipelined.
+	 */
+	public static void put(String host, int port, String[] features,
+			boolean pipelining) {
+		long ttl = getTTL();
+		if (ttl <= 0) {
+			return;
+		}
+		Entry entry = new Entry(features, pipelining,
+				System.currentTimeMillis() + ttl);
+		synchronized (entries) {
+			entries.put(host, port, entry);
+		}
+	}
+
+	/**
+	 * Marks a server as not supporting the pipelining of the login commands.
+	 * 
+	 * @param host
+	 *            The host.
+	 * @param port
+	 *            The port.
+	 */
+	public static void disablePipelining(String host, int port) {
+		synchronized (entries) {
+			Entry entry = (Entry) entries.get(host, port);
+			if (entry != null) {
+				entry.pipelining = false;
+			}
+		}
+	}
+
+	/**
+	 * Remembers whether a server can list directories with the STAT command.
+	 * 
+	 * @param host
+	 *            The host.
+	 * @param port
+	 *            The port.
+	 * @param statListing
+	 *            1 if the STAT listings work, -1 if they don't.
+	 */
+	public static void setStatListing(String host, int port, int statListing) {
+		synchronized (entries) {
+			Entry entry = (Entry) entries.get(host, port);
+			if (entry != null) {
+				entry.statListing = statListing;
+			}
+		}
+	}
+
+	/**
+	 * Reads the time to live of the entries from the system property.
+	 */
+	private static long getTTL() {
+		String prop = System.getProperty(FTPKeys.CAPABILITY_CACHE_TTL);
+		if (prop != null) {
+			try {
+				return Long.parseLong(prop);
+			} catch (NumberFormatException e) {
+				;
+			}
+		}
+		return DEFAULT_TTL;
+	}
+
+	/**
+	 * The features of a server.
+	 */
+	static class Entry {
+
+		/**
+		 * The lines of the FEAT reply.
+		 */
+		private String[] features;
+
+		/**
+		 * Whether the login commands can be pipelined.
+		 */
+		private volatile boolean pipelining;
+
+		/**
+		 * Whether the server can list with STAT: 1 if it can, -1 if it
+		 * can't, 0 if it is unknown.
+		 */
+		private volatile int statListing = 0;
+
+		/**
+		 * The expiration time.
+		 */
+		private long expiry;
+
+		private Entry(String[] features, boolean pipelining, long expiry) {
+			this.features = features;
+			this.pipelining = pipelining;
+			this.expiry = expiry;
+		}
+
+		public String[] getFeatures() {
+			return features;
+		}
+
+		public boolean isPipeliningAllowed() {
+			return pipelining;
+		}
+
+		public int getStatListing() {
+			return statListing;
+		}
+
+	}
+
+}
@@ -0,0 +1,150 @@
+/*
+ * ftp4j - A pure Java FTP client library
+ * 
+ * Copyright (C) 2008-2010 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version
+ * 2.1, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License 2.1 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License version 2.1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.sauronsoftware.ftp4j;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+
+/**
+ * Computes a checksum of the data passing through a transfer, with one of the
+ * algorithms which can also be asked to the server (see
+ * {@link FTPClient#remoteHash(String, String, long, long)}).
+ * 
+ * @author Carlo Pelliccia
+ * @since 1.8
+ */
+class FTPChecksum {
+
+	/**
+	 * The algorithm name, in the form used by the HASH command.
+	 */
+	private String algorithm;
+
+	/**
+	 * The CRC object, for the CRC32 algorithm.
+	 */
+	private CRC32 crc = null;
+
+	/**
+	 * The digest object, for the other algorithms.
+	 */
+	private MessageDigest digest = null;
+
+	/**
+	 * The number of bytes processed.
+	 */
+	private long count = 0;
+
+	/**
+	 * Builds the object.
+	 * 
+	 * @param algorithm
+	 *            One of the FTPClient.HASH_* constants.
+	 * @throws IllegalArgumentException
+	 *             If the algorithm is not supported.
+	 */
+	public FTPChecksum(String algorithm) throws IllegalArgumentException {
+		this.algorithm = algorithm;
+		if (FTPClient.HASH_CRC32.equals(algorithm)) {
+			crc = new CRC32();
+		} else if (FTPClient.HASH_MD5.equals(algorithm)
+				|| FTPClient.HASH_SHA1.equals(algorithm)
+				|| FTPClient.HASH_SHA256.equals(algorithm)
+				|| FTPClient.HASH_SHA512.equals(algorithm)) {
+			try {
+				digest = MessageDigest.getInstance(algorithm);
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalArgumentException("Unsupported algorithm: "
+						+ algorithm);
+			}
+		} else {
+			throw new IllegalArgumentException("Unsupported algorithm: "
+					+ algorithm);
+		}
+	}
+
+	/**
+	 * Returns the algorithm name.
+	 * 
+	 * @return The algorithm name.
+	 */
+	public String getAlgorithm() {
+		return algorithm;
+	}
+
+	/**
+	 * Processes a chunk of data.
+	 * 
+	 * @param buffer
+	 *            The buffer.
+	 * @param offset
+	 *            The offset of the chunk.
+	 * @param length
+	 *            The length of the chunk.
+	 */
+	public void update(byte[] buffer, int offset, int length) {
+		if (crc != null) {
+			crc.update(buffer, offset, length);
+		} else {
+			digest.update(buffer, offset, length);
+		}
+		count += length;
+	}
+
+	/**
+	 * Returns the number of bytes processed.
+	 * 
+	 * @return The number of bytes.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the checksum of the processed data, as a lowercase hex string.
+	 * 
+	 * @return The checksum.
+	 */
+	public String getValue() {
+		byte[] bytes;
+		if (crc != null) {
+			long value = crc.getValue();
+			bytes = new byte[] { (byte) (value >>> 24), (byte) (value >>> 16),
+					(byte) (value >>> 8), (byte) value };
+		} else {
+			bytes = digest.digest();
+		}
+		return toHex(bytes);
+	}
+
+	/**
+	 * Encodes some bytes as a lowercase hex string.
+	 */
+	private static String toHex(byte[] bytes) {
+		char[] digits = "0123456789abcdef".toCharArray();
+		char[] ret = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			ret[i * 2] = digits[(bytes[i] >>> 4) & 0x0f];
+			ret[i * 2 + 1] = digits[bytes[i] & 0x0f];
+		}
+		return new String(ret);
+	}
+
+}
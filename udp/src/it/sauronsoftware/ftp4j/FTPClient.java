@@ -27,6 +27,7 @@ import it.sauronsoftware.ftp4j.listparsers.MLSDListParser;
 import it.sauronsoftware.ftp4j.listparsers.NetWareListParser;
 import it.sauronsoftware.ftp4j.listparsers.UnixListParser;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -34,22 +35,35 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.Charset;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.ForkJoinPool;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
 import java.util.zip.InflaterInputStream;
 
 import javax.net.ssl.SSLSocketFactory;
@@ -143,6 +157,67 @@ public class FTPClient {
 	 */
 	public static final int MLSD_NEVER = 2;
 
+	/**
+	 * The constant for the STAT listing policy that causes the client to list
+	 * the directories always through a data transfer connection.
+	 * 
+	 * @since 1.8
+	 */
+	public static final int STAT_LIST_NEVER = 0;
+
+	/**
+	 * The constant for the STAT listing policy that causes the client to list
+	 * the directories always through the control connection, with the STAT
+	 * command.
+	 * 
+	 * @since 1.8
+	 */
+	public static final int STAT_LIST_ALWAYS = 1;
+
+	/**
+	 * The constant for the STAT listing policy that causes the client to list
+	 * the directories with the STAT command when the expected size of the
+	 * listing is small, and the server has not been found unable to handle it.
+	 * 
+	 * @since 1.8
+	 */
+	public static final int STAT_LIST_AUTO = 2;
+
+	/**
+	 * The constant for the CRC-32 checksum algorithm (XCRC command).
+	 * 
+	 * @since 1.8
+	 */
+	public static final String HASH_CRC32 = "CRC32";
+
+	/**
+	 * The constant for the MD5 checksum algorithm (XMD5 command).
+	 * 
+	 * @since 1.8
+	 */
+	public static final String HASH_MD5 = "MD5";
+
+	/**
+	 * The constant for the SHA-1 checksum algorithm (XSHA1 command).
+	 * 
+	 * @since 1.8
+	 */
+	public static final String HASH_SHA1 = "SHA-1";
+
+	/**
+	 * The constant for the SHA-256 checksum algorithm (XSHA256 command).
+	 * 
+	 * @since 1.8
+	 */
+	public static final String HASH_SHA256 = "SHA-256";
+
+	/**
+	 * The constant for the SHA-512 checksum algorithm (XSHA512 command).
+	 * 
+	 * @since 1.8
+	 */
+	public static final String HASH_SHA512 = "SHA-512";
+
 	/**
 	 * The size of the buffer used when sending or receiving data.
 	 * 
@@ -150,11 +225,73 @@ public class FTPClient {
 	 */
 	private static final int SEND_AND_RECEIVE_BUFFER_SIZE = 64 * 1024;
 
+	/**
+	 * The number of lines of a LIST response used to probe the list parsers
+	 * before applying them to the whole response.
+	 * 
+	 * @since 1.8
+	 */
+	private static final int LIST_PARSER_SAMPLE_SIZE = 8;
+
+	/**
+	 * The default value for the parallel list parsing threshold.
+	 * 
+	 * @see FTPClient#setParallelListParsingThreshold(int)
+	 * @since 1.8
+	 */
+	private static final int DEFAULT_PARALLEL_LIST_PARSING_THRESHOLD = 20000;
+
+	/**
+	 * The default largest expected number of entries for a STAT listing.
+	 */
+	private static final int DEFAULT_STAT_LIST_THRESHOLD = 200;
+
+	/**
+	 * The default number of commands a batch keeps in flight.
+	 */
+	private static final int DEFAULT_PIPELINE_WINDOW = 32;
+
+	/**
+	 * The default size of the blocks read by a remote file channel.
+	 */
+	private static final int DEFAULT_FILE_CHANNEL_BLOCK_SIZE = 65536;
+
+	/**
+	 * The default number of blocks cached by a remote file channel.
+	 */
+	private static final int DEFAULT_FILE_CHANNEL_CACHE_SIZE = 32;
+
+	/**
+	 * The default number of paths in the same directory starting from which a
+	 * batch lists the directory.
+	 */
+	private static final int DEFAULT_BATCH_LIST_THRESHOLD = 64;
+
+	/**
+	 * The batch operation asking the sizes of the files.
+	 */
+	private static final int BATCH_SIZE = 0;
+
+	/**
+	 * The batch operation asking the modification dates of the files.
+	 */
+	private static final int BATCH_MODIFIED_DATE = 1;
+
+	/**
+	 * The batch operation asking the details of the files.
+	 */
+	private static final int BATCH_STAT = 2;
+
 	/**
 	 * The DateFormat object used to parse the reply to a MDTM command.
+	 * Instances are kept per thread, since DateFormat objects are not
+	 * thread-safe.
 	 */
-	private static final DateFormat MDTM_DATE_FORMAT = new SimpleDateFormat(
-			"yyyyMMddHHmmss");
+	private static final ThreadLocal MDTM_DATE_FORMAT = new ThreadLocal() {
+		protected Object initialValue() {
+			return new SimpleDateFormat("yyyyMMddHHmmss");
+		}
+	};
 
 	/**
 	 * The RegExp Pattern object used to parse the reply to a PASV command.
@@ -167,6 +304,20 @@ public class FTPClient {
 	 */
 	private static final Pattern PWD_PATTERN = Pattern.compile("\"/.*\"");
 
+	/**
+	 * The RegExp Pattern object used to find the size of the file in the
+	 * reply starting a download, as in "150 Opening BINARY mode data
+	 * connection for file.txt (1024 bytes)".
+	 */
+	private static final Pattern TRANSFER_SIZE_PATTERN = Pattern.compile(
+			"\\((\\d+) bytes\\)", Pattern.CASE_INSENSITIVE);
+
+	/**
+	 * How long (ms) a secondary channel can stay idle before being checked
+	 * with a NOOP command.
+	 */
+	private static final long CHANNEL_VALIDATION_IDLE_TIME = 30000;
+
 	/**
 	 * The connector used to connect the remote host.
 	 */
@@ -226,11 +377,23 @@ public class FTPClient {
 	 */
 	private String password;
 
+	/**
+	 * If the client is authenticated, it reports the account given at login
+	 * time (could be null).
+	 */
+	private String account;
+
 	/**
 	 * The flag reporting the connection status.
 	 */
 	private boolean connected = false;
 
+	/**
+	 * The thread running connect(), if any. The connector can be shared with
+	 * other clients, so an abort must pick this client's attempt.
+	 */
+	private volatile Thread connectingThread = null;
+
 	/**
 	 * The flag reporting the authentication status.
 	 */
@@ -258,6 +421,60 @@ public class FTPClient {
 	 */
 	private int mlsdPolicy = MLSD_IF_SUPPORTED;
 
+	/**
+	 * The number of lines starting from which a LIST response is parsed in
+	 * parallel. If 0 or less, responses are always parsed by the calling
+	 * thread.
+	 */
+	private int parallelListParsingThreshold = DEFAULT_PARALLEL_LIST_PARSING_THRESHOLD;
+
+	/**
+	 * How the client chooses between a data transfer connection and the STAT
+	 * command to list a directory.
+	 */
+	private int statListPolicy = STAT_LIST_NEVER;
+
+	/**
+	 * The largest expected number of entries for which a STAT_LIST_AUTO
+	 * policy lists through the control connection.
+	 */
+	private int statListThreshold = DEFAULT_STAT_LIST_THRESHOLD;
+
+	/**
+	 * What has been learned about the STAT listings of the server: 1 if they
+	 * work, -1 if they don't, 0 if it is unknown.
+	 */
+	private int statListing = 0;
+
+	/**
+	 * The number of commands a batch operation keeps in flight.
+	 */
+	private int pipelineWindow = DEFAULT_PIPELINE_WINDOW;
+
+	/**
+	 * The number of paths in the same directory starting from which a batch
+	 * operation lists the directory (0 to disable).
+	 */
+	private int batchListThreshold = DEFAULT_BATCH_LIST_THRESHOLD;
+
+	/**
+	 * The absolute paths of the remote directories known to exist, used by
+	 * mkdirs().
+	 */
+	private HashSet knownDirectories = new HashSet();
+
+	/**
+	 * The limiter applied to the uploads (could be null). The field is read
+	 * at every chunk, so it can be changed also during a transfer.
+	 */
+	private volatile FTPBandwidthLimiter uploadBandwidthLimiter = null;
+
+	/**
+	 * The limiter applied to the downloads (could be null). The field is read
+	 * at every chunk, so it can be changed also during a transfer.
+	 */
+	private volatile FTPBandwidthLimiter downloadBandwidthLimiter = null;
+
 	/**
 	 * If this value is greater than 0, the auto-noop feature is enabled. If
 	 * positive, the field is used as a timeout value (expressed in
@@ -299,6 +516,35 @@ public class FTPClient {
 	 */
 	private boolean compressionEnabled = false;
 
+	/**
+	 * The compression level used in MODE Z transfers, from 0 to 9, or
+	 * Deflater.DEFAULT_COMPRESSION.
+	 */
+	private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+	/**
+	 * The compression strategy used in MODE Z uploads.
+	 */
+	private int compressionStrategy = Deflater.DEFAULT_STRATEGY;
+
+	/**
+	 * This flag enables and disables the compressibility probe, which switches
+	 * back to MODE S for contents which are already compressed.
+	 */
+	private boolean compressionProbeEnabled = true;
+
+	/**
+	 * This flag enables and disables the compression of the uploads on a
+	 * pipeline of threads.
+	 */
+	private boolean pipelinedCompressionEnabled = false;
+
+	/**
+	 * This flag enables and disables the pipelining of the login commands
+	 * with the servers known to support it.
+	 */
+	private boolean pipelinedLoginEnabled = true;
+
 	/**
 	 * A flag used to mark whether the connected server supports UTF-8 pathnames
 	 * encoding.
@@ -311,17 +557,125 @@ public class FTPClient {
 	 */
 	private boolean mlsdSupported = false;
 
+	/**
+	 * A flag used to mark whether the connected server supports the MLST
+	 * command (RFC 3659).
+	 */
+	private boolean mlstSupported = false;
+
 	/**
 	 * A flag used to mark whether the connected server supports the MODE Z
 	 * command.
 	 */
 	private boolean modezSupported = false;
 
+	/**
+	 * The algorithms supported by the HASH command of the connected server, as
+	 * declared in the FEAT reply. Empty if the HASH command is not supported.
+	 */
+	private ArrayList hashAlgorithms = new ArrayList();
+
+	/**
+	 * The checksum algorithm applied to the transfers, or null.
+	 */
+	private String transferChecksum = null;
+
+	/**
+	 * The report of the last verified transfer.
+	 */
+	private volatile FTPTransferReport lastTransferReport = null;
+
+	/**
+	 * The policy followed to retry the broken file transfers (could be null).
+	 */
+	private FTPRetryPolicy transferRetryPolicy = null;
+
+	/**
+	 * The maximum number of control connections used by the client, counting
+	 * the main one.
+	 */
+	private int maxChannels = 1;
+
+	/**
+	 * The lock guarding the secondary channels.
+	 */
+	private Object channelsLock = new Object();
+
+	/**
+	 * The main channel, as seen by the multi-channel dispatcher.
+	 */
+	private Channel mainChannel = new Channel(this);
+
+	/**
+	 * The thread running an operation on the main channel through the
+	 * multi-channel dispatcher (could be null).
+	 */
+	private Thread mainChannelOwner = null;
+
+	/**
+	 * The idle secondary channels.
+	 */
+	private ArrayList idleChannels = new ArrayList();
+
+	/**
+	 * The busy secondary channels.
+	 */
+	private ArrayList busyChannels = new ArrayList();
+
+	/**
+	 * The number of secondary channels, idle, busy or being opened.
+	 */
+	private int secondaryChannels = 0;
+
+	/**
+	 * The working directory, tracked in multi-channel mode to align the
+	 * secondary channels (null if unknown).
+	 */
+	private volatile String workingDirectory = null;
+
 	/**
 	 * A flag used to mark whether MODE Z is enabled.
 	 */
 	private boolean modezEnabled = false;
 
+	/**
+	 * The compression level last sent to the server with the OPTS MODE Z
+	 * LEVEL command, or Deflater.DEFAULT_COMPRESSION if none.
+	 */
+	private int modezLevel = Deflater.DEFAULT_COMPRESSION;
+
+	/**
+	 * Whether the file transfers should use the block mode (MODE B).
+	 */
+	private boolean blockModeEnabled = false;
+
+	/**
+	 * A flag used to mark whether MODE B is enabled.
+	 */
+	private boolean modebEnabled = false;
+
+	/**
+	 * A flag used to mark whether the server has refused the MODE B command.
+	 */
+	private boolean modebRefused = false;
+
+	/**
+	 * The data connection kept open between two MODE B transfers (could be
+	 * null).
+	 */
+	private Socket blockModeConnection = null;
+
+	/**
+	 * The last restart marker received in a MODE B download (could be null).
+	 */
+	private String lastRestartMarker = null;
+
+	/**
+	 * Whether the server has stated the size of a file in the reply starting
+	 * a download, so the SIZE command isn't needed.
+	 */
+	private boolean transferSizeStated = false;
+
 	/**
 	 * This flag indicates whether the data channel is encrypted.
 	 */
@@ -355,6 +709,12 @@ public class FTPClient {
 	 */
 	private boolean consumeAborCommandReply = false;
 
+	/**
+	 * This flag tells if a stream opened with openInputStream() or
+	 * openOutputStream() is using the connection.
+	 */
+	private boolean dataStreamOpen = false;
+
 	/**
 	 * Lock object used for synchronization.
 	 */
@@ -618,773 +978,2205 @@ public class FTPClient {
 	}
 
 	/**
-	 * Returns the name of the charset used to establish textual communications.
-	 * If not null the client will use always the given charset. If null the
-	 * client tries to auto-detect the server charset. If this attempt fails the
-	 * client will use the machine current charset.
+	 * This method lets the user control how the client chooses between a data
+	 * transfer connection and the control connection to list a directory.
 	 * 
-	 * @return The name of the charset used to establish textual communications.
-	 * @since 1.1
-	 */
-	public String getCharset() {
+	 * The policy supplied should be one of STAT_LIST_NEVER, STAT_LIST_ALWAYS
+	 * or STAT_LIST_AUTO constants. Default value is STAT_LIST_NEVER.
+	 * 
+	 * A listing through the control connection is obtained with the STAT
+	 * command, whose multi-line reply carries the same lines of a LIST reply.
+	 * It saves the PASV/PORT exchange, the data connection and its
+	 * handshake, which dominate the time spent listing a small directory.
+	 * Since a STAT listing can't be aborted and holds the control connection,
+	 * it is not suited for large directories.
+	 * 
+	 * {@link FTPClient#STAT_LIST_NEVER} means that the client lists always
+	 * through a data transfer connection.
+	 * 
+	 * {@link FTPClient#STAT_LIST_ALWAYS} means that the client lists always
+	 * with the STAT command.
+	 * 
+	 * {@link FTPClient#STAT_LIST_AUTO} means that the client uses the STAT
+	 * command unless the size hint given to
+	 * {@link FTPClient#list(String, FTPFileFilter, int)} exceeds the STAT
+	 * listing threshold, or the server has been found unable to list with
+	 * STAT. This is learned at the first STAT listing and remembered for the
+	 * host, also by the following connections: a listing with no size hint
+	 * probes STAT once for the host, then follows what has been learned. STAT
+	 * is never used when the listing would be obtained with MLSD, so the
+	 * entries have the same details regardless of the hint.
+	 * 
+	 * @param statListPolicy
+	 *            The STAT listing policy.
+	 * @throws IllegalArgumentException
+	 *             If the supplied policy value is not valid.
+	 * @since 1.8
+	 */
+	public void setStatListPolicy(int statListPolicy)
+			throws IllegalArgumentException {
+		if (statListPolicy != STAT_LIST_NEVER
+				&& statListPolicy != STAT_LIST_ALWAYS
+				&& statListPolicy != STAT_LIST_AUTO) {
+			throw new IllegalArgumentException("Invalid STAT listing policy");
+		}
 		synchronized (lock) {
-			return charset;
+			this.statListPolicy = statListPolicy;
 		}
 	}
 
 	/**
-	 * Sets the name of the charset used to establish textual communications. If
-	 * not null the client will use always the given charset. If null the client
-	 * tries to auto-detect the server charset. If this attempt fails the client
-	 * will use the machine current charset.
+	 * Returns the value suggesting how the client chooses between a data
+	 * transfer connection and the control connection to list a directory.
 	 * 
-	 * @param charset
-	 *            The name of the charset used to establish textual
-	 *            communications.
-	 * @since 1.1
+	 * @return The STAT listing policy, which could be compared to the
+	 *         constants {@link FTPClient#STAT_LIST_NEVER},
+	 *         {@link FTPClient#STAT_LIST_ALWAYS} and
+	 *         {@link FTPClient#STAT_LIST_AUTO}.
+	 * @since 1.8
 	 */
-	public void setCharset(String charset) {
+	public int getStatListPolicy() {
 		synchronized (lock) {
-			this.charset = charset;
-			if (connected) {
-				try {
-					communication.changeCharset(pickCharset());
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
-			}
+			return statListPolicy;
 		}
 	}
 
 	/**
-	 * Checks whether the connected server explicitly supports resuming of
-	 * broken data transfers.
+	 * Sets the largest expected number of entries for which the
+	 * STAT_LIST_AUTO policy lists a directory through the control connection.
+	 * The default value is 200.
 	 * 
-	 * @return true if the server supports resuming, false otherwise.
-	 * @since 1.5.1
+	 * @param statListThreshold
+	 *            The threshold.
+	 * @since 1.8
 	 */
-	public boolean isResumeSupported() {
+	public void setStatListThreshold(int statListThreshold) {
 		synchronized (lock) {
-			return restSupported;
+			this.statListThreshold = statListThreshold;
 		}
 	}
 
 	/**
-	 * Checks whether the connected remote FTP server supports compressed data
-	 * transfers (uploads, downloads, list operations etc.). If so, the
-	 * compression of any subsequent data transfer (upload, download, list etc.)
-	 * can be compressed, saving bandwidth. To enable compression call
-	 * {@link FTPClient#setCompressionEnabled(boolean)} .
+	 * Returns the largest expected number of entries for which the
+	 * STAT_LIST_AUTO policy lists a directory through the control connection.
 	 * 
-	 * The returned value is not significant if the client is not connected and
-	 * authenticated.
-	 * 
-	 * @return <em>true</em> if compression of data transfers is supported on
-	 *         the server-side, <em>false</em> otherwise.
-	 * @see FTPClient#isCompressionEnabled()
-	 * @since 1.5
+	 * @return The threshold.
+	 * @since 1.8
 	 */
-	public boolean isCompressionSupported() {
-		return modezSupported;
+	public int getStatListThreshold() {
+		synchronized (lock) {
+			return statListThreshold;
+		}
 	}
 
 	/**
-	 * Enables or disables the use of compression during any subsequent data
-	 * transfer. Compression is enabled when both the supplied value and the
-	 * {@link FTPClient#isCompressionSupported()}) returned value are
-	 * <em>true</em>.
-	 * 
-	 * The default value is <em>false</em>.
+	 * Sets the number of commands the batch operations, such as
+	 * {@link FTPClient#fileSizes(List)}, send without waiting for their
+	 * replies. The default value is 32. A value of 1 disables the pipelining.
+	 * The pipelining is disabled anyway with the servers which broke the
+	 * pipelined login.
 	 * 
-	 * @param compressionEnabled
-	 *            <em>true</em> to enable the use of compression during any
-	 *            subsequent file transfer, <em>false</em> to disable the
-	 *            feature.
-	 * @see FTPClient#isCompressionSupported()
-	 * @since 1.5
+	 * @param pipelineWindow
+	 *            The number of commands in flight.
+	 * @since 1.8
 	 */
-	public void setCompressionEnabled(boolean compressionEnabled) {
-		this.compressionEnabled = compressionEnabled;
+	public void setPipelineWindow(int pipelineWindow) {
+		if (pipelineWindow < 1) {
+			throw new IllegalArgumentException("Invalid pipeline window: "
+					+ pipelineWindow);
+		}
+		synchronized (lock) {
+			this.pipelineWindow = pipelineWindow;
+		}
 	}
 
 	/**
-	 * Checks whether the use of compression is enabled on the client-side.
-	 * 
-	 * Please note that compressed transfers are actually enabled only if both
-	 * this method and {@link FTPClient#isCompressionSupported()} return
-	 * <em>true</em>.
+	 * Returns the number of commands the batch operations send without
+	 * waiting for their replies.
 	 * 
-	 * @return <em>true</em> if compression is enabled, <em>false</em>
-	 *         otherwise.
-	 * @see FTPClient#isCompressionSupported()
-	 * @since 1.5
+	 * @return The number of commands in flight.
+	 * @since 1.8
 	 */
-	public boolean isCompressionEnabled() {
-		return compressionEnabled;
+	public int getPipelineWindow() {
+		synchronized (lock) {
+			return pipelineWindow;
+		}
 	}
 
 	/**
-	 * This method returns the textual extension recognizer used by the client.
+	 * Sets the number of paths in the same directory starting from which a
+	 * batch operation, such as {@link FTPClient#fileSizes(List)}, lists the
+	 * directory once instead of asking about every path. The default value is
+	 * 64. A value of 0 disables the feature.
 	 * 
-	 * Default one is {@link DefaultTextualExtensionRecognizer}.
+	 * @param batchListThreshold
+	 *            The threshold.
+	 * @since 1.8
+	 */
+	public void setBatchListThreshold(int batchListThreshold) {
+		synchronized (lock) {
+			this.batchListThreshold = batchListThreshold;
+		}
+	}
+
+	/**
+	 * Returns the number of paths in the same directory starting from which a
+	 * batch operation lists the directory.
 	 * 
-	 * @return The textual extension recognizer used by the client.
-	 * @see DefaultTextualExtensionRecognizer
+	 * @return The threshold.
+	 * @since 1.8
 	 */
-	public FTPTextualExtensionRecognizer getTextualExtensionRecognizer() {
+	public int getBatchListThreshold() {
 		synchronized (lock) {
-			return textualExtensionRecognizer;
+			return batchListThreshold;
 		}
 	}
 
 	/**
-	 * This method sets the textual extension recognizer used by the client.
+	 * Sets the number of lines starting from which the response to a LIST or
+	 * MLSD command is parsed in parallel, splitting it in chunks which are
+	 * handled by the threads of the common {@link ForkJoinPool}. The order of
+	 * the entries is preserved.
 	 * 
-	 * The default one is {@link DefaultTextualExtensionRecognizer}.
+	 * Parallel parsing is applied only with the built-in list parsers, which
+	 * handle every line independently from the others. Responses parsed by
+	 * custom parsers are always parsed by the calling thread.
 	 * 
-	 * You can plug your own by implementing the
-	 * {@link FTPTextualExtensionRecognizer} interface. For your convenience the
-	 * ftp4j gives you another FTPTextualExtensionRecognizer implementation,
-	 * which is {@link ParametricTextualExtensionRecognizer}.
+	 * The default value is 20000.
 	 * 
-	 * @param textualExtensionRecognizer
-	 *            The textual extension recognizer used by the client.
-	 * @see DefaultTextualExtensionRecognizer
-	 * @see ParametricTextualExtensionRecognizer
+	 * @param parallelListParsingThreshold
+	 *            The threshold, in lines. If 0 or less, parallel parsing is
+	 *            disabled.
+	 * @since 1.8
 	 */
-	public void setTextualExtensionRecognizer(FTPTextualExtensionRecognizer textualExtensionRecognizer) {
+	public void setParallelListParsingThreshold(int parallelListParsingThreshold) {
 		synchronized (lock) {
-			this.textualExtensionRecognizer = textualExtensionRecognizer;
+			this.parallelListParsingThreshold = parallelListParsingThreshold;
 		}
 	}
 
 	/**
-	 * This method tests if this client is authenticated.
+	 * Returns the number of lines starting from which the response to a LIST
+	 * or MLSD command is parsed in parallel.
 	 * 
-	 * @return true if this client is authenticated, false otherwise.
+	 * @return The threshold, in lines. If 0 or less, parallel parsing is
+	 *         disabled.
+	 * @see FTPClient#setParallelListParsingThreshold(int)
+	 * @since 1.8
 	 */
-	public boolean isAuthenticated() {
+	public int getParallelListParsingThreshold() {
 		synchronized (lock) {
-			return authenticated;
+			return parallelListParsingThreshold;
 		}
 	}
 
 	/**
-	 * This method tests if this client is connected to a remote FTP server.
+	 * Sets the limiter applied to the bandwidth of the uploads. The same
+	 * limiter can be shared by many clients, as a global budget. The limiter
+	 * can be changed, or removed, also while an upload is running.
 	 * 
-	 * @return true if this client is connected to a remote FTP server, false
-	 *         otherwise.
+	 * @param uploadBandwidthLimiter
+	 *            The limiter, or null for no limit.
+	 * @since 1.8
 	 */
-	public boolean isConnected() {
-		synchronized (lock) {
-			return connected;
-		}
+	public void setUploadBandwidthLimiter(FTPBandwidthLimiter uploadBandwidthLimiter) {
+		this.uploadBandwidthLimiter = uploadBandwidthLimiter;
 	}
 
 	/**
-	 * This method tests if this client works in passive FTP mode.
+	 * Returns the limiter applied to the bandwidth of the uploads.
 	 * 
-	 * @return true if this client is configured to work in passive FTP mode.
+	 * @return The limiter, or null if there's no limit.
+	 * @since 1.8
 	 */
-	public boolean isPassive() {
-		synchronized (lock) {
-			return passive;
-		}
+	public FTPBandwidthLimiter getUploadBandwidthLimiter() {
+		return uploadBandwidthLimiter;
 	}
 
 	/**
-	 * If the client is connected, it reports the remote host name or address.
+	 * Sets the limiter applied to the bandwidth of the downloads. The same
+	 * limiter can be shared by many clients, as a global budget. The limiter
+	 * can be changed, or removed, also while a download is running.
 	 * 
-	 * @return The remote host name or address.
+	 * @param downloadBandwidthLimiter
+	 *            The limiter, or null for no limit.
+	 * @since 1.8
 	 */
-	public String getHost() {
-		synchronized (lock) {
-			return host;
-		}
+	public void setDownloadBandwidthLimiter(FTPBandwidthLimiter downloadBandwidthLimiter) {
+		this.downloadBandwidthLimiter = downloadBandwidthLimiter;
 	}
 
 	/**
-	 * If the client is connected, it reports the remote port number.
+	 * Returns the limiter applied to the bandwidth of the downloads.
 	 * 
-	 * @return The remote port number.
+	 * @return The limiter, or null if there's no limit.
+	 * @since 1.8
 	 */
-	public int getPort() {
+	public FTPBandwidthLimiter getDownloadBandwidthLimiter() {
+		return downloadBandwidthLimiter;
+	}
+
+	/**
+	 * Returns the name of the charset used to establish textual communications.
+	 * If not null the client will use always the given charset. If null the
+	 * client tries to auto-detect the server charset. If this attempt fails the
+	 * client will use the machine current charset.
+	 * 
+	 * @return The name of the charset used to establish textual communications.
+	 * @since 1.1
+	 */
+	public String getCharset() {
 		synchronized (lock) {
-			return port;
+			return charset;
 		}
 	}
 
 	/**
-	 * If the client is authenticated, it reports the authentication password.
+	 * Sets the name of the charset used to establish textual communications. If
+	 * not null the client will use always the given charset. If null the client
+	 * tries to auto-detect the server charset. If this attempt fails the client
+	 * will use the machine current charset.
 	 * 
-	 * @return The authentication password.
+	 * @param charset
+	 *            The name of the charset used to establish textual
+	 *            communications.
+	 * @since 1.1
 	 */
-	public String getPassword() {
+	public void setCharset(String charset) {
 		synchronized (lock) {
-			return password;
+			this.charset = charset;
+			if (connected) {
+				try {
+					communication.changeCharset(pickCharset());
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
 		}
 	}
 
 	/**
-	 * If the client is authenticated, it reports the authentication username.
+	 * Checks whether the connected server explicitly supports resuming of
+	 * broken data transfers.
 	 * 
-	 * @return The authentication username.
+	 * @return true if the server supports resuming, false otherwise.
+	 * @since 1.5.1
 	 */
-	public String getUsername() {
+	public boolean isResumeSupported() {
 		synchronized (lock) {
-			return username;
+			return restSupported;
 		}
 	}
 
 	/**
-	 * Enable and disable the auto-noop feature.
+	 * Checks whether the connected remote FTP server supports compressed data
+	 * transfers (uploads, downloads, list operations etc.). If so, the
+	 * compression of any subsequent data transfer (upload, download, list etc.)
+	 * can be compressed, saving bandwidth. To enable compression call
+	 * {@link FTPClient#setCompressionEnabled(boolean)} .
 	 * 
-	 * If the supplied value is greater than 0, the auto-noop feature is
-	 * enabled, otherwise it is disabled. If positive, the field is used as a
-	 * timeout value (expressed in milliseconds). If autoNoopDelay milliseconds
-	 * has passed without any communication between the client and the server, a
-	 * NOOP command is automaticaly sent to the server by the client.
+	 * The returned value is not significant if the client is not connected and
+	 * authenticated.
 	 * 
-	 * The default value for the auto noop delay is 0 (disabled).
+	 * @return <em>true</em> if compression of data transfers is supported on
+	 *         the server-side, <em>false</em> otherwise.
+	 * @see FTPClient#isCompressionEnabled()
+	 * @since 1.5
+	 */
+	public boolean isCompressionSupported() {
+		return modezSupported;
+	}
+
+	/**
+	 * Enables or disables the use of compression during any subsequent data
+	 * transfer. Compression is enabled when both the supplied value and the
+	 * {@link FTPClient#isCompressionSupported()}) returned value are
+	 * <em>true</em>.
 	 * 
-	 * @param autoNoopTimeout
-	 *            The duration of the auto-noop timeout, in milliseconds. If 0
-	 *            or less, the auto-noop feature is disabled.
+	 * The default value is <em>false</em>.
 	 * 
+	 * @param compressionEnabled
+	 *            <em>true</em> to enable the use of compression during any
+	 *            subsequent file transfer, <em>false</em> to disable the
+	 *            feature.
+	 * @see FTPClient#isCompressionSupported()
 	 * @since 1.5
 	 */
-	public void setAutoNoopTimeout(long autoNoopTimeout) {
-		synchronized (lock) {
-			if (connected && authenticated) {
-				stopAutoNoopTimer();
-			}
-			long oldValue = this.autoNoopTimeout;
-			long newValue = autoNoopTimeout;
-			this.autoNoopTimeout = autoNoopTimeout;
-			if (oldValue != 0 && newValue != 0 && nextAutoNoopTime > 0) {
-				nextAutoNoopTime = nextAutoNoopTime - (oldValue - newValue);
-			}
-			if (connected && authenticated) {
-				startAutoNoopTimer();
-			}
-		}
+	public void setCompressionEnabled(boolean compressionEnabled) {
+		this.compressionEnabled = compressionEnabled;
 	}
 
 	/**
-	 * Returns the duration of the auto-noop timeout, in milliseconds. If 0 or
-	 * less, the auto-noop feature is disabled.
+	 * Checks whether the use of compression is enabled on the client-side.
 	 * 
-	 * @return The duration of the auto-noop timeout, in milliseconds. If 0 or
-	 *         less, the auto-noop feature is disabled.
+	 * Please note that compressed transfers are actually enabled only if both
+	 * this method and {@link FTPClient#isCompressionSupported()} return
+	 * <em>true</em>.
 	 * 
+	 * @return <em>true</em> if compression is enabled, <em>false</em>
+	 *         otherwise.
+	 * @see FTPClient#isCompressionSupported()
 	 * @since 1.5
 	 */
-	public long getAutoNoopTimeout() {
-		synchronized (lock) {
-			return autoNoopTimeout;
+	public boolean isCompressionEnabled() {
+		return compressionEnabled;
+	}
+
+	/**
+	 * Sets the compression level used in compressed transfers. The level is
+	 * applied to the uploads by the client, and it is suggested to the server
+	 * for the downloads with the OPTS MODE Z LEVEL command. Servers not
+	 * supporting the command use their own level.
+	 * 
+	 * The default value is {@link Deflater#DEFAULT_COMPRESSION}.
+	 * 
+	 * @param compressionLevel
+	 *            The level, from 0 (no compression) to 9 (best compression),
+	 *            or {@link Deflater#DEFAULT_COMPRESSION}.
+	 * @throws IllegalArgumentException
+	 *             If the level is not valid.
+	 * @see FTPClient#setCompressionEnabled(boolean)
+	 * @since 1.8
+	 */
+	public void setCompressionLevel(int compressionLevel)
+			throws IllegalArgumentException {
+		if ((compressionLevel < 0 || compressionLevel > 9)
+				&& compressionLevel != Deflater.DEFAULT_COMPRESSION) {
+			throw new IllegalArgumentException("Invalid compression level: "
+					+ compressionLevel);
 		}
+		this.compressionLevel = compressionLevel;
 	}
 
 	/**
-	 * This method adds a FTPCommunicationListener to the object.
+	 * Returns the compression level used in compressed transfers.
 	 * 
-	 * @param listener
-	 *            The listener.
+	 * @return The level, from 0 to 9, or {@link Deflater#DEFAULT_COMPRESSION}.
+	 * @since 1.8
 	 */
-	public void addCommunicationListener(FTPCommunicationListener listener) {
-		synchronized (lock) {
-			communicationListeners.add(listener);
-			if (communication != null) {
-				communication.addCommunicationListener(listener);
-			}
+	public int getCompressionLevel() {
+		return compressionLevel;
+	}
+
+	/**
+	 * Sets the compression strategy used in compressed uploads.
+	 * 
+	 * The default value is {@link Deflater#DEFAULT_STRATEGY}.
+	 * 
+	 * @param compressionStrategy
+	 *            One of {@link Deflater#DEFAULT_STRATEGY},
+	 *            {@link Deflater#FILTERED} and {@link Deflater#HUFFMAN_ONLY}.
+	 * @throws IllegalArgumentException
+	 *             If the strategy is not valid.
+	 * @since 1.8
+	 */
+	public void setCompressionStrategy(int compressionStrategy)
+			throws IllegalArgumentException {
+		if (compressionStrategy != Deflater.DEFAULT_STRATEGY
+				&& compressionStrategy != Deflater.FILTERED
+				&& compressionStrategy != Deflater.HUFFMAN_ONLY) {
+			throw new IllegalArgumentException(
+					"Invalid compression strategy: " + compressionStrategy);
 		}
+		this.compressionStrategy = compressionStrategy;
 	}
 
 	/**
-	 * This method removes a FTPCommunicationListener previously added to the
-	 * object.
+	 * Returns the compression strategy used in compressed uploads.
 	 * 
-	 * @param listener
-	 *            The listener to be removed.
+	 * @return The strategy.
+	 * @since 1.8
 	 */
-	public void removeCommunicationListener(FTPCommunicationListener listener) {
-		synchronized (lock) {
-			communicationListeners.remove(listener);
-			if (communication != null) {
-				communication.removeCommunicationListener(listener);
-			}
-		}
+	public int getCompressionStrategy() {
+		return compressionStrategy;
 	}
 
 	/**
-	 * This method returns a list with all the {@link FTPCommunicationListener}
-	 * used by the client.
+	 * Enables or disables the compressibility probe. When the probe is
+	 * enabled, compressed transfers fall back to MODE S for contents which are
+	 * already compressed, such as archives, images and videos. Files are
+	 * judged by their extension and, for the uploads, by the entropy of their
+	 * first bytes.
 	 * 
-	 * @return A list with all the FTPCommunicationListener used by the client.
+	 * The default value is <em>true</em>.
+	 * 
+	 * @param compressionProbeEnabled
+	 *            <em>true</em> to enable the probe.
+	 * @see FTPClient#setCompressionEnabled(boolean)
+	 * @since 1.8
 	 */
-	public FTPCommunicationListener[] getCommunicationListeners() {
-		synchronized (lock) {
-			int size = communicationListeners.size();
-			FTPCommunicationListener[] ret = new FTPCommunicationListener[size];
-			for (int i = 0; i < size; i++) {
-				ret[i] = (FTPCommunicationListener) communicationListeners.get(i);
-			}
-			return ret;
-		}
+	public void setCompressionProbeEnabled(boolean compressionProbeEnabled) {
+		this.compressionProbeEnabled = compressionProbeEnabled;
 	}
 
 	/**
-	 * This method adds a {@link FTPListParser} to the object.
+	 * Checks whether the compressibility probe is enabled.
 	 * 
-	 * @param listParser
-	 *            The list parser.
+	 * @return <em>true</em> if the probe is enabled.
+	 * @since 1.8
 	 */
-	public void addListParser(FTPListParser listParser) {
-		synchronized (lock) {
-			listParsers.add(listParser);
-		}
+	public boolean isCompressionProbeEnabled() {
+		return compressionProbeEnabled;
 	}
 
 	/**
-	 * This method removes a {@link FTPListParser} previously added to the
-	 * object.
+	 * Enables or disables the pipelined compression of the uploads. When
+	 * enabled, the source of a compressed upload is read by the calling
+	 * thread, while the compression and the network writes are performed by
+	 * two other threads, so CPU time and network time overlap. Useful on fast
+	 * links, where the compression is slower than the network.
 	 * 
-	 * @param listParser
-	 *            The list parser to be removed.
+	 * The default value is <em>false</em>.
+	 * 
+	 * @param pipelinedCompressionEnabled
+	 *            <em>true</em> to enable the pipelined compression.
+	 * @see FTPClient#setCompressionEnabled(boolean)
+	 * @since 1.8
 	 */
-	public void removeListParser(FTPListParser listParser) {
-		synchronized (lock) {
-			listParsers.remove(listParser);
-		}
+	public void setPipelinedCompressionEnabled(boolean pipelinedCompressionEnabled) {
+		this.pipelinedCompressionEnabled = pipelinedCompressionEnabled;
 	}
 
 	/**
-	 * This method returns a list with all the {@link FTPListParser} used by the
-	 * client.
+	 * Checks whether the pipelined compression of the uploads is enabled.
 	 * 
-	 * @return A list with all the FTPListParsers used by the client.
+	 * @return <em>true</em> if the pipelined compression is enabled.
+	 * @since 1.8
 	 */
-	public FTPListParser[] getListParsers() {
-		synchronized (lock) {
-			int size = listParsers.size();
-			FTPListParser[] ret = new FTPListParser[size];
-			for (int i = 0; i < size; i++) {
-				ret[i] = (FTPListParser) listParsers.get(i);
-			}
-			return ret;
-		}
+	public boolean isPipelinedCompressionEnabled() {
+		return pipelinedCompressionEnabled;
 	}
 
 	/**
-	 * This method connects the client to the remote FTP host, using the default
-	 * port value 21 (990 if security level is set to FTPS, see
-	 * {@link FTPClient#setSecurity(int)}).
+	 * Enables or disables the pipelining of the login commands. The features
+	 * declared by a server are cached for some time (see the
+	 * ftp4j.capabilityCache.ttl system property), and a new session with the
+	 * same server skips the FEAT command. If the server has already accepted
+	 * a regular login, the session setup commands (OPTS UTF8, PBSZ, PROT) are
+	 * sent all together after USER and PASS, which are still sent one at a
+	 * time. A server failing the pipelined commands is not asked again until
+	 * its cache entry expires.
 	 * 
-	 * @param host
+	 * The default value is <em>true</em>.
+	 * 
+	 * @param pipelinedLoginEnabled
+	 *            <em>true</em> to enable the pipelined login.
+	 * @since 1.8
+	 */
+	public void setPipelinedLoginEnabled(boolean pipelinedLoginEnabled) {
+		this.pipelinedLoginEnabled = pipelinedLoginEnabled;
+	}
+
+	/**
+	 * Checks whether the pipelining of the login commands is enabled.
+	 * 
+	 * @return <em>true</em> if the pipelined login is enabled.
+	 * @since 1.8
+	 */
+	public boolean isPipelinedLoginEnabled() {
+		return pipelinedLoginEnabled;
+	}
+
+	/**
+	 * Sets the checksum algorithm applied to the binary transfers. The
+	 * checksum is computed while the data streams through the client, and
+	 * then compared with the one computed by the server on the same range of
+	 * the remote file, with the HASH command or with the XCRC, XMD5, XSHA1,
+	 * XSHA256 and XSHA512 extensions. The result is available calling
+	 * {@link FTPClient#getLastTransferReport()}.
+	 * 
+	 * The default value is null.
+	 * 
+	 * @param transferChecksum
+	 *            One of {@link FTPClient#HASH_CRC32},
+	 *            {@link FTPClient#HASH_MD5}, {@link FTPClient#HASH_SHA1},
+	 *            {@link FTPClient#HASH_SHA256} and
+	 *            {@link FTPClient#HASH_SHA512}, or null to disable the
+	 *            feature.
+	 * @throws IllegalArgumentException
+	 *             If the algorithm is not supported.
+	 * @since 1.8
+	 */
+	public void setTransferChecksum(String transferChecksum)
+			throws IllegalArgumentException {
+		if (transferChecksum != null) {
+			// Checks the algorithm.
+			new FTPChecksum(transferChecksum);
+		}
+		this.transferChecksum = transferChecksum;
+	}
+
+	/**
+	 * Returns the checksum algorithm applied to the binary transfers.
+	 * 
+	 * @return The algorithm, or null if the feature is disabled.
+	 * @since 1.8
+	 */
+	public String getTransferChecksum() {
+		return transferChecksum;
+	}
+
+	/**
+	 * Returns the report of the last binary transfer completed with a
+	 * checksum algorithm set.
+	 * 
+	 * @return The report, or null if the last transfer has not been
+	 *         checksummed.
+	 * @see FTPClient#setTransferChecksum(String)
+	 * @since 1.8
+	 */
+	public FTPTransferReport getLastTransferReport() {
+		return lastTransferReport;
+	}
+
+	/**
+	 * Sets the policy followed to retry the broken file transfers. When a
+	 * policy is set, the methods uploading a local file and downloading in a
+	 * local file don't give up at the first failure: they wait, reconnect and
+	 * log in again if the control connection has been lost, and resume the
+	 * transfer from the point reached, which is the length of the local file
+	 * for a download and the size of the remote file, as reported by the
+	 * server, for an upload. The working directory is restored after a
+	 * reconnection; if it isn't known (it is asked to the server after the
+	 * first failure, unless the multi-channel mode already tracks it) and the
+	 * connection has been lost, the transfer is not retried. Aborted transfers
+	 * are never retried.
+	 * 
+	 * The default value is null, which means that broken transfers are not
+	 * retried.
+	 * 
+	 * @param transferRetryPolicy
+	 *            The policy, or null to disable the feature.
+	 * @see FTPClient#isResumeSupported()
+	 * @since 1.8
+	 */
+	public void setTransferRetryPolicy(FTPRetryPolicy transferRetryPolicy) {
+		this.transferRetryPolicy = transferRetryPolicy;
+	}
+
+	/**
+	 * Returns the policy followed to retry the broken file transfers.
+	 * 
+	 * @return The policy, or null if the feature is disabled.
+	 * @since 1.8
+	 */
+	public FTPRetryPolicy getTransferRetryPolicy() {
+		return transferRetryPolicy;
+	}
+
+	/**
+	 * Enables or disables the block transmission mode (MODE B) for the file
+	 * transfers. In block mode the data connection is not closed at the end of
+	 * a file, whose end is marked in the data stream, so the next transfer
+	 * reuses it, saving the PASV/PORT exchange, the connection setup and the
+	 * TLS handshake. This pays off when many small files are transferred.
+	 * 
+	 * The MODE B command is sent at the first transfer. If the server refuses
+	 * it, the client goes on in stream mode until the next connection.
+	 * Listings and compressed transfers (MODE Z) always use their own mode,
+	 * and switching to them closes the kept connection.
+	 * 
+	 * The default value is false.
+	 * 
+	 * @param blockModeEnabled
+	 *            true to enable the block mode.
+	 * @since 1.8
+	 */
+	public void setBlockModeEnabled(boolean blockModeEnabled) {
+		synchronized (lock) {
+			this.blockModeEnabled = blockModeEnabled;
+		}
+	}
+
+	/**
+	 * Checks whether the block transmission mode (MODE B) is enabled.
+	 * 
+	 * @return true if the block mode is enabled.
+	 * @since 1.8
+	 */
+	public boolean isBlockModeEnabled() {
+		return blockModeEnabled;
+	}
+
+	/**
+	 * Returns the last restart marker sent by the server in a MODE B
+	 * download. A broken download can be resumed from the marker, which most
+	 * servers express as the number of bytes sent.
+	 * 
+	 * @return The marker, or null if no marker has been received.
+	 * @since 1.8
+	 */
+	public String getLastRestartMarker() {
+		return lastRestartMarker;
+	}
+
+	/**
+	 * Sets the maximum number of control connections used by the client,
+	 * counting the main one. When it is greater than 1, the client works in
+	 * multi-channel mode: if an operation is called while another thread is
+	 * using the main connection, the operation runs on a secondary connection,
+	 * opened on demand with the same host, connector, security level and
+	 * credentials, instead of waiting. When all the connections are busy, the
+	 * operation waits for the first one becoming free. Secondary connections
+	 * are kept open until the client is disconnected, and an
+	 * abortCurrentDataTransfer() call aborts the transfers running on them
+	 * too.
+	 * 
+	 * The operations dispatched in this way are the transfers (upload, append
+	 * and download), the listings (list and listNames), fileSize(),
+	 * modifiedDate() and remoteHash(). Every other operation runs on the main
+	 * connection. Before running an operation, a secondary connection takes
+	 * the settings of the client (type, passive mode, compression, checksums,
+	 * bandwidth limiters and so on) and its working directory, which the
+	 * client tracks with a PWD command after every directory change. A
+	 * directory changed with a custom command is not tracked.
+	 * 
+	 * The default value is 1, which disables the feature.
+	 * 
+	 * @param maxChannels
+	 *            The maximum number of control connections.
+	 * @since 1.8
+	 */
+	public void setMaxChannels(int maxChannels) {
+		if (maxChannels < 1) {
+			throw new IllegalArgumentException("Invalid max channels: "
+					+ maxChannels);
+		}
+		this.maxChannels = maxChannels;
+	}
+
+	/**
+	 * Returns the maximum number of control connections used by the client.
+	 * 
+	 * @return The maximum number of control connections, counting the main
+	 *         one.
+	 * @since 1.8
+	 */
+	public int getMaxChannels() {
+		return maxChannels;
+	}
+
+	/**
+	 * This method returns the textual extension recognizer used by the client.
+	 * 
+	 * Default one is {@link DefaultTextualExtensionRecognizer}.
+	 * 
+	 * @return The textual extension recognizer used by the client.
+	 * @see DefaultTextualExtensionRecognizer
+	 */
+	public FTPTextualExtensionRecognizer getTextualExtensionRecognizer() {
+		synchronized (lock) {
+			return textualExtensionRecognizer;
+		}
+	}
+
+	/**
+	 * This method sets the textual extension recognizer used by the client.
+	 * 
+	 * The default one is {@link DefaultTextualExtensionRecognizer}.
+	 * 
+	 * You can plug your own by implementing the
+	 * {@link FTPTextualExtensionRecognizer} interface. For your convenience the
+	 * ftp4j gives you another FTPTextualExtensionRecognizer implementation,
+	 * which is {@link ParametricTextualExtensionRecognizer}.
+	 * 
+	 * @param textualExtensionRecognizer
+	 *            The textual extension recognizer used by the client.
+	 * @see DefaultTextualExtensionRecognizer
+	 * @see ParametricTextualExtensionRecognizer
+	 */
+	public void setTextualExtensionRecognizer(FTPTextualExtensionRecognizer textualExtensionRecognizer) {
+		synchronized (lock) {
+			this.textualExtensionRecognizer = textualExtensionRecognizer;
+		}
+	}
+
+	/**
+	 * This method tests if this client is authenticated.
+	 * 
+	 * @return true if this client is authenticated, false otherwise.
+	 */
+	public boolean isAuthenticated() {
+		synchronized (lock) {
+			return authenticated;
+		}
+	}
+
+	/**
+	 * This method tests if this client is connected to a remote FTP server.
+	 * 
+	 * @return true if this client is connected to a remote FTP server, false
+	 *         otherwise.
+	 */
+	public boolean isConnected() {
+		synchronized (lock) {
+			return connected;
+		}
+	}
+
+	/**
+	 * This method tests if this client works in passive FTP mode.
+	 * 
+	 * @return true if this client is configured to work in passive FTP mode.
+	 */
+	public boolean isPassive() {
+		synchronized (lock) {
+			return passive;
+		}
+	}
+
+	/**
+	 * If the client is connected, it reports the remote host name or address.
+	 * 
+	 * @return The remote host name or address.
+	 */
+	public String getHost() {
+		synchronized (lock) {
+			return host;
+		}
+	}
+
+	/**
+	 * If the client is connected, it reports the remote port number.
+	 * 
+	 * @return The remote port number.
+	 */
+	public int getPort() {
+		synchronized (lock) {
+			return port;
+		}
+	}
+
+	/**
+	 * If the client is authenticated, it reports the authentication password.
+	 * 
+	 * @return The authentication password.
+	 */
+	public String getPassword() {
+		synchronized (lock) {
+			return password;
+		}
+	}
+
+	/**
+	 * If the client is authenticated, it reports the authentication username.
+	 * 
+	 * @return The authentication username.
+	 */
+	public String getUsername() {
+		synchronized (lock) {
+			return username;
+		}
+	}
+
+	/**
+	 * Enable and disable the auto-noop feature.
+	 * 
+	 * If the supplied value is greater than 0, the auto-noop feature is
+	 * enabled, otherwise it is disabled. If positive, the field is used as a
+	 * timeout value (expressed in milliseconds). If autoNoopDelay milliseconds
+	 * has passed without any communication between the client and the server, a
+	 * NOOP command is automaticaly sent to the server by the client.
+	 * 
+	 * The default value for the auto noop delay is 0 (disabled).
+	 * 
+	 * @param autoNoopTimeout
+	 *            The duration of the auto-noop timeout, in milliseconds. If 0
+	 *            or less, the auto-noop feature is disabled.
+	 * 
+	 * @since 1.5
+	 */
+	public void setAutoNoopTimeout(long autoNoopTimeout) {
+		synchronized (lock) {
+			if (connected && authenticated) {
+				stopAutoNoopTimer();
+			}
+			long oldValue = this.autoNoopTimeout;
+			long newValue = autoNoopTimeout;
+			this.autoNoopTimeout = autoNoopTimeout;
+			if (oldValue != 0 && newValue != 0 && nextAutoNoopTime > 0) {
+				nextAutoNoopTime = nextAutoNoopTime - (oldValue - newValue);
+			}
+			if (connected && authenticated) {
+				startAutoNoopTimer();
+			}
+		}
+	}
+
+	/**
+	 * Returns the duration of the auto-noop timeout, in milliseconds. If 0 or
+	 * less, the auto-noop feature is disabled.
+	 * 
+	 * @return The duration of the auto-noop timeout, in milliseconds. If 0 or
+	 *         less, the auto-noop feature is disabled.
+	 * 
+	 * @since 1.5
+	 */
+	public long getAutoNoopTimeout() {
+		synchronized (lock) {
+			return autoNoopTimeout;
+		}
+	}
+
+	/**
+	 * This method adds a FTPCommunicationListener to the object.
+	 * 
+	 * @param listener
+	 *            The listener.
+	 */
+	public void addCommunicationListener(FTPCommunicationListener listener) {
+		synchronized (lock) {
+			communicationListeners.add(listener);
+			if (communication != null) {
+				communication.addCommunicationListener(listener);
+			}
+		}
+	}
+
+	/**
+	 * This method removes a FTPCommunicationListener previously added to the
+	 * object.
+	 * 
+	 * @param listener
+	 *            The listener to be removed.
+	 */
+	public void removeCommunicationListener(FTPCommunicationListener listener) {
+		synchronized (lock) {
+			communicationListeners.remove(listener);
+			if (communication != null) {
+				communication.removeCommunicationListener(listener);
+			}
+		}
+	}
+
+	/**
+	 * This method returns a list with all the {@link FTPCommunicationListener}
+	 * used by the client.
+	 * 
+	 * @return A list with all the FTPCommunicationListener used by the client.
+	 */
+	public FTPCommunicationListener[] getCommunicationListeners() {
+		synchronized (lock) {
+			int size = communicationListeners.size();
+			FTPCommunicationListener[] ret = new FTPCommunicationListener[size];
+			for (int i = 0; i < size; i++) {
+				ret[i] = (FTPCommunicationListener) communicationListeners.get(i);
+			}
+			return ret;
+		}
+	}
+
+	/**
+	 * This method adds a {@link FTPListParser} to the object.
+	 * 
+	 * @param listParser
+	 *            The list parser.
+	 */
+	public void addListParser(FTPListParser listParser) {
+		synchronized (lock) {
+			listParsers.add(listParser);
+		}
+	}
+
+	/**
+	 * This method removes a {@link FTPListParser} previously added to the
+	 * object.
+	 * 
+	 * @param listParser
+	 *            The list parser to be removed.
+	 */
+	public void removeListParser(FTPListParser listParser) {
+		synchronized (lock) {
+			listParsers.remove(listParser);
+		}
+	}
+
+	/**
+	 * This method returns a list with all the {@link FTPListParser} used by the
+	 * client.
+	 * 
+	 * @return A list with all the FTPListParsers used by the client.
+	 */
+	public FTPListParser[] getListParsers() {
+		synchronized (lock) {
+			int size = listParsers.size();
+			FTPListParser[] ret = new FTPListParser[size];
+			for (int i = 0; i < size; i++) {
+				ret[i] = (FTPListParser) listParsers.get(i);
+			}
+			return ret;
+		}
+	}
+
+	/**
+	 * This method connects the client to the remote FTP host, using the default
+	 * port value 21 (990 if security level is set to FTPS, see
+	 * {@link FTPClient#setSecurity(int)}).
+	 * 
+	 * @param host
 	 *            The hostname of the remote server.
 	 * @return The server welcome message, one line per array element.
 	 * @throws IllegalStateException
-	 *             If the client is already connected to a remote host.
+	 *             If the client is already connected to a remote host.
+	 * @throws IOException
+	 *             If an I/O occurs.
+	 * @throws FTPIllegalReplyException
+	 *             If the server replies in an illegal way.
+	 * @throws FTPException
+	 *             If the server refuses the connection.
+	 */
+	public String[] connect(String host) throws IllegalStateException,
+			IOException, FTPIllegalReplyException, FTPException {
+		int def;
+		if (security == SECURITY_FTPS) {
+			def = 990;
+		} else {
+			def = 21;
+		}
+		return connect(host, def);
+	}
+
+	/**
+	 * This method connects the client to the remote FTP host.
+	 * 
+	 * @param host
+	 *            The host name or address of the remote server.
+	 * @param port
+	 *            The port listened by the remote server.
+	 * @return The server welcome message, one line per array element.
+	 * @throws IllegalStateException
+	 *             If the client is already connected to a remote host.
+	 * @throws IOException
+	 *             If an I/O occurs.
+	 * @throws FTPIllegalReplyException
+	 *             If the server replies in an illegal way.
+	 * @throws FTPException
+	 *             If the server refuses the connection.
+	 */
+	public String[] connect(String host, int port)
+			throws IllegalStateException, IOException,
+			FTPIllegalReplyException, FTPException {
+		synchronized (lock) {
+			// Is this client already connected to any host?
+			if (connected) {
+				throw new IllegalStateException("Client already connected to "
+						+ host + " on port " + port);
+			}
+			// Ok, it's connection time. Let's try!
+			Socket connection = null;
+			connectingThread = Thread.currentThread();
+			try {
+				// Open the connection.
+				connection = connector.connectForCommunicationChannel(host, port);
+				if (security == SECURITY_FTPS) {
+					connection = ssl(connection, host, port);
+				}
+				// Open the communication channel.
+				communication = new FTPCommunicationChannel(connection, pickCharset());
+				for (Iterator i = communicationListeners.iterator(); i.hasNext();) {
+					communication.addCommunicationListener((FTPCommunicationListener) i.next());
+				}
+				// Welcome message.
+				FTPReply wm = communication.readFTPReply();
+				// Does this reply mean "ok"?
+				if (!wm.isSuccessCode()) {
+					// Mmmmm... it seems no!
+					throw new FTPException(wm);
+				}
+				// Flag this object as connected to the remote host.
+				this.connected = true;
+				this.authenticated = false;
+				this.parser = null;
+				this.host = host;
+				this.port = port;
+				this.username = null;
+				this.password = null;
+				this.account = null;
+				this.workingDirectory = null;
+				this.utf8Supported = false;
+				this.restSupported = false;
+				this.mlsdSupported = false;
+				this.mlstSupported = false;
+				this.statListing = 0;
+				this.knownDirectories.clear();
+				this.dataStreamOpen = false;
+				this.modezSupported = false;
+				this.modebEnabled = false;
+				this.modebRefused = false;
+				this.lastRestartMarker = null;
+				this.transferSizeStated = false;
+				this.hashAlgorithms.clear();
+				this.dataChannelEncrypted = false;
+				// Returns the welcome message.
+				return wm.getMessages();
+			} catch (IOException e) {
+				// D'oh!
+				throw e;
+			} finally {
+				connectingThread = null;
+				// If connection has failed...
+				if (!connected) {
+					if (connection != null) {
+						// Close the connection, 'cause it should be open.
+						try {
+							connection.close();
+						} catch (Throwable t) {
+							;
+						}
+						connector.releaseCommunicationChannel();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Aborts the current connection attempt. It can be called by a secondary
+	 * thread while the client is blocked in a <em>connect()</em> call. The
+	 * connect() method will exit with an {@link IOException}.
+	 * 
+	 * @since 1.7
+	 */
+	public void abortCurrentConnectionAttempt() {
+		Thread thread = connectingThread;
+		if (thread != null) {
+			connector.abortConnectForCommunicationChannel(thread);
+		}
+	}
+
+	/**
+	 * This method disconnects from the remote server, optionally performing the
+	 * QUIT procedure.
+	 * 
+	 * @param sendQuitCommand
+	 *            If true the QUIT procedure with the server will be performed,
+	 *            otherwise the connection is abruptly closed by the client
+	 *            without sending any advice to the server.
+	 * @throws IllegalStateException
+	 *             If the client is not connected to a remote host.
+	 * @throws IOException
+	 *             If an I/O occurs (can be thrown only if sendQuitCommand is
+	 *             true).
+	 * @throws FTPIllegalReplyException
+	 *             If the server replies in an illegal way (can be thrown only
+	 *             if sendQuitCommand is true).
+	 * @throws FTPException
+	 *             If the server refuses the QUIT command (can be thrown only if
+	 *             sendQuitCommand is true).
+	 */
+	public void disconnect(boolean sendQuitCommand)
+			throws IllegalStateException, IOException,
+			FTPIllegalReplyException, FTPException {
+		synchronized (lock) {
+			// Is this client connected?
+			if (!connected) {
+				throw new IllegalStateException("Client not connected");
+			}
+			// Stops the auto noop timer (if started).
+			if (authenticated) {
+				stopAutoNoopTimer();
+			}
+			// Send QUIT?
+			if (sendQuitCommand) {
+				// Call the QUIT command.
+				sendFTPCommand("QUIT");
+				FTPReply r = communication.readFTPReply();
+				if (!r.isSuccessCode()) {
+					throw new FTPException(r);
+				}
+			}
+			// Close the communication.
+			communication.close();
+			communication = null;
+			connector.releaseCommunicationChannel();
+			// Reset the connection flag.
+			connected = false;
+			// Close the kept data connection.
+			closeBlockModeConnection();
+			// Close the secondary channels.
+			closeChannels();
+		}
+	}
+
+	/**
+	 * This method causes the communication channel to be abruptly closed. Use
+	 * it carefully, since this one is not thread-safe. It is given as an
+	 * "emergency brake" to close the control connection when it is blocked. A
+	 * thread-safe solution for the same purpose is a call to disconnect(false).
+	 * 
+	 * @see FTPClient#disconnect(boolean)
+	 */
+	public void abruptlyCloseCommunication() {
+		// Close the communication.
+		if (communication != null) {
+			communication.close();
+			communication = null;
+			connector.releaseCommunicationChannel();
+		}
+		// Reset the connection flag.
+		connected = false;
+		// Stops the auto noop timer.
+		stopAutoNoopTimer();
+		// Close the kept data connection.
+		closeBlockModeConnection();
+		// Close the secondary channels.
+		closeChannels();
+	}
+
+	/**
+	 * This method authenticates the user against the server.
+	 * 
+	 * @param username
+	 *            The username.
+	 * @param password
+	 *            The password (if none set it to null).
+	 * @throws IllegalStateException
+	 *             If the client is not connected. Call the connect() method
+	 *             before!
+	 * @throws IOException
+	 *             If an I/O error occurs.
+	 * @throws FTPIllegalReplyException
+	 *             If the server replies in an illegal way.
+	 * @throws FTPException
+	 *             If login fails.
+	 */
+	public void login(String username, String password)
+			throws IllegalStateException, IOException,
+			FTPIllegalReplyException, FTPException {
+		login(username, password, null);
+	}
+
+	/**
+	 * This method authenticates the user against the server.
+	 * 
+	 * @param username
+	 *            The username.
+	 * @param password
+	 *            The password (if none set it to null).
+	 * @param account
+	 *            The account (if none set it to null). Be careful: some servers
+	 *            don't implement this feature.
+	 * @throws IllegalStateException
+	 *             If the client is not connected. Call the connect() method
+	 *             before!
+	 * @throws IOException
+	 *             If an I/O error occurs.
+	 * @throws FTPIllegalReplyException
+	 *             If the server replies in an illegal way.
+	 * @throws FTPException
+	 *             If login fails.
+	 */
+	public void login(String username, String password, String account)
+			throws IllegalStateException, IOException,
+			FTPIllegalReplyException, FTPException {
+		boolean pipelined = false;
+		boolean passwordRequested = false;
+		synchronized (lock) {
+			// Is this client connected?
+			if (!connected) {
+				throw new IllegalStateException("Client not connected");
+			}
+			// AUTH TLS command if security is FTPES
+			if (security == SECURITY_FTPES) {
+				sendFTPCommand("AUTH TLS");
+				FTPReply r = communication.readFTPReply();
+				if (r.isSuccessCode()) {
+					communication.ssl(sslSocketFactory);
+				} else {
+					sendFTPCommand("AUTH SSL");
+					r = communication.readFTPReply();
+					if (r.isSuccessCode()) {
+						communication.ssl(sslSocketFactory);
+					} else {
+						throw new FTPException(r.getCode(), "SECURITY_FTPES cannot be applied: " +
+								"the server refused both AUTH TLS and AUTH SSL commands");
+					}
+				}
+			}
+			// Reset the authentication flag.
+			authenticated = false;
+			// Can the login be pipelined?
+			FTPCapabilityCache.Entry cached = FTPCapabilityCache.get(host, port);
+			if (pipelinedLoginEnabled && password != null && cached != null
+					&& cached.isPipeliningAllowed()) {
+				pipelinedLogin(username, password, account, cached.getFeatures());
+				pipelined = true;
+			} else {
+				passwordRequested = sendCredentials(username, password, account);
+			}
+			// Well, if this point is reached the client could consider itself
+			// as authenticated.
+			this.authenticated = true;
+			this.username = username;
+			this.password = password;
+			this.account = account;
+		}
+		// Post-login operations.
+		if (!pipelined) {
+			postLoginOperations(passwordRequested);
+		}
+		// The working directory, for the secondary channels.
+		if (maxChannels > 1) {
+			currentDirectory();
+		}
+		// Starts the auto noop timer.
+		startAutoNoopTimer();
+	}
+
+	/**
+	 * Sends the USER, PASS and ACCT commands, one at a time.
+	 * 
+	 * @return true if the server asked the password after the username, as
+	 *         expected by a pipelined login.
+	 */
+	private boolean sendCredentials(String username, String password,
+			String account) throws IllegalStateException, IOException,
+			FTPIllegalReplyException, FTPException {
+		// Usefull flags.
+		boolean passwordRequired;
+		boolean accountRequired;
+		// Send the user and read the reply.
+		sendFTPCommand("USER " + username);
+		FTPReply r = communication.readFTPReply();
+		switch (r.getCode()) {
+		case 230:
+			// Password and account aren't required.
+			passwordRequired = false;
+			accountRequired = false;
+			break;
+		case 331:
+			// Password is required.
+			passwordRequired = true;
+			// Account... maybe! More information later...
+			accountRequired = false;
+			break;
+		case 332:
+			// Password is not required, but account is required.
+			passwordRequired = false;
+			accountRequired = true;
+		default:
+			// User validation failed.
+			throw new FTPException(r);
+		}
+		// Password.
+		if (passwordRequired) {
+			if (password == null) {
+				throw new FTPException(331);
+			}
+			// Send the password.
+			sendFTPCommand("PASS " + password);
+			r = communication.readFTPReply();
+			switch (r.getCode()) {
+			case 230:
+				// Account is not required.
+				accountRequired = false;
+				break;
+			case 332:
+				// Account is required.
+				accountRequired = true;
+				break;
+			default:
+				// Authentication failed.
+				throw new FTPException(r);
+			}
+		}
+		// Account.
+		if (accountRequired) {
+			if (account == null) {
+				throw new FTPException(332);
+			}
+			// Send the account.
+			sendFTPCommand("ACCT " + account);
+			r = communication.readFTPReply();
+			switch (r.getCode()) {
+			case 230:
+				// Well done!
+				break;
+			default:
+				// Something goes wrong.
+				throw new FTPException(r);
+			}
+		}
+		return passwordRequired;
+	}
+
+	/**
+	 * Logs in a server whose features are taken from the cache. The
+	 * credentials are sent one at a time, since a failed USER must not be
+	 * followed by the password, then the session setup commands are sent all
+	 * together.
+	 */
+	private void pipelinedLogin(String username, String password,
+			String account, String[] features) throws IllegalStateException,
+			IOException, FTPIllegalReplyException, FTPException {
+		applyFeatures(features);
+		sendCredentials(username, password, account);
+		if (utf8Supported) {
+			communication.changeCharset("UTF-8");
+		}
+		setupSession(true);
+	}
+
+	/**
+	 * Performs some post-login operations, such trying to detect server support
+	 * for utf8.
+	 * 
+	 * @param pipelining
+	 *            Whether the server is eligible for the pipelined login.
+	 * @throws IllegalStateException
+	 *             If the client is not connected. Call the connect() method
+	 *             before!
+	 * @throws IOException
+	 *             If an I/O error occurs.
+	 * @throws FTPIllegalReplyException
+	 *             If the server replies in an illegal way.
+	 * @throws FTPException
+	 *             If login fails.
+	 */
+	private void postLoginOperations(boolean pipelining)
+			throws IllegalStateException, IOException,
+			FTPIllegalReplyException, FTPException {
+		synchronized (lock) {
+			// Are the features of the server known?
+			String[] features;
+			FTPCapabilityCache.Entry cached = FTPCapabilityCache.get(host, port);
+			if (cached != null) {
+				features = cached.getFeatures();
+			} else {
+				sendFTPCommand("FEAT");
+				FTPReply r = communication.readFTPReply();
+				if (r.getCode() == 211) {
+					features = r.getMessages();
+				} else {
+					features = new String[0];
+				}
+				FTPCapabilityCache.put(host, port, features, pipelining);
+			}
+			applyFeatures(features);
+			if (utf8Supported) {
+				communication.changeCharset("UTF-8");
+			}
+			// Pipelined only with a server which has already accepted it.
+			setupSession(pipelinedLoginEnabled && cached != null
+					&& cached.isPipeliningAllowed());
+		}
+	}
+
+	/**
+	 * Sets the feature flags from the lines of a FEAT reply.
+	 * 
+	 * @param lines
+	 *            The lines of the reply.
+	 */
+	private void applyFeatures(String[] lines) {
+		utf8Supported = false;
+		restSupported = false;
+		mlsdSupported = false;
+		mlstSupported = false;
+		modezSupported = false;
+		hashAlgorithms.clear();
+		dataChannelEncrypted = false;
+		for (int i = 1; i < lines.length - 1; i++) {
+			String feat = lines[i].trim().toUpperCase();
+			// REST STREAM supported?
+			if ("REST STREAM".equalsIgnoreCase(feat)) {
+				restSupported = true;
+				continue;
+			}
+			// UTF8 supported?
+			if ("UTF8".equalsIgnoreCase(feat)) {
+				utf8Supported = true;
+				continue;
+			}
+			// MLSD supported?
+			if ("MLSD".equalsIgnoreCase(feat)) {
+				mlsdSupported = true;
+				continue;
+			}
+			// MLST supported?
+			if ("MLST".equals(feat) || feat.startsWith("MLST ")) {
+				mlstSupported = true;
+				continue;
+			}
+			// MODE Z supported?
+			if ("MODE Z".equalsIgnoreCase(feat) || feat.startsWith("MODE Z ")) {
+				modezSupported = true;
+				continue;
+			}
+			// HASH supported? The current algorithm is marked by a *.
+			if (feat.startsWith("HASH ")) {
+				StringTokenizer st = new StringTokenizer(feat.substring(5), ";");
+				while (st.hasMoreTokens()) {
+					String algorithm = st.nextToken().trim();
+					if (algorithm.endsWith("*")) {
+						algorithm = algorithm.substring(0, algorithm.length() - 1);
+					}
+					hashAlgorithms.add(algorithm);
+				}
+				continue;
+			}
+		}
+	}
+
+	/**
+	 * Returns the commands setting up a new session, according to the
+	 * features of the server.
+	 * 
+	 * @return The commands.
+	 */
+	private ArrayList getSetupCommands() {
+		ArrayList commands = new ArrayList();
+		// Turn UTF 8 on (if supported).
+		if (utf8Supported) {
+			commands.add("OPTS UTF8 ON");
+		}
+		// Data channel security.
+		if (security == SECURITY_FTPS || security == SECURITY_FTPES) {
+			commands.add("PBSZ 0");
+			commands.add("PROT P");
+		}
+		return commands;
+	}
+
+	/**
+	 * Sends the commands setting up a new session and reads the replies.
+	 * 
+	 * @param pipeline
+	 *            Whether the commands can be sent all together.
+	 */
+	private void setupSession(boolean pipeline) throws IOException,
+			FTPIllegalReplyException {
+		ArrayList commands = getSetupCommands();
+		int size = commands.size();
+		FTPReply[] replies = new FTPReply[size];
+		if (pipeline && size > 1) {
+			try {
+				sendFTPCommands((String[]) commands.toArray(new String[size]));
+				for (int i = 0; i < size; i++) {
+					replies[i] = communication.readFTPReply();
+				}
+			} catch (IOException e) {
+				FTPCapabilityCache.disablePipelining(host, port);
+				throw e;
+			} catch (FTPIllegalReplyException e) {
+				FTPCapabilityCache.disablePipelining(host, port);
+				throw e;
+			}
+		} else {
+			for (int i = 0; i < size; i++) {
+				sendFTPCommand((String) commands.get(i));
+				replies[i] = communication.readFTPReply();
+			}
+		}
+		applySetupReplies(commands, replies);
+	}
+
+	/**
+	 * Checks the replies to the session setup commands.
+	 * 
+	 * @param commands
+	 *            The setup commands.
+	 * @param replies
+	 *            The replies.
+	 */
+	private void applySetupReplies(ArrayList commands, FTPReply[] replies) {
+		for (int i = 0; i < commands.size(); i++) {
+			if ("PROT P".equals(commands.get(i))
+					&& replies[i].isSuccessCode()) {
+				dataChannelEncrypted = true;
+			}
+		}
+	}
+
+	/**
+	 * This method performs a logout operation for the current user, leaving the
+	 * connection open, thus it can be used to start a new user session. Be
+	 * careful with this: some FTP servers don't implement this feature, even
+	 * though it is a standard FTP one.
+	 * 
+	 * @throws IllegalStateException
+	 *             If the client is not connected or not authenticated.
+	 * @throws IOException
+	 *             If an I/O error occurs.
+	 * @throws FTPIllegalReplyException
+	 *             If the server replies in an illegal way.
+	 * @throws FTPException
+	 *             If the operation fails.
+	 */
+	public void logout() throws IllegalStateException, IOException,
+			FTPIllegalReplyException, FTPException {
+		synchronized (lock) {
+			// Is this client connected?
+			if (!connected) {
+				throw new IllegalStateException("Client not connected");
+			}
+			// Is this client authenticated?
+			if (!authenticated) {
+				throw new IllegalStateException("Client not authenticated");
+			}
+			// Send the REIN command.
+			sendFTPCommand("REIN");
+			FTPReply r = communication.readFTPReply();
+			if (!r.isSuccessCode()) {
+				throw new FTPException(r);
+			} else {
+				// Stops the auto noop timer.
+				stopAutoNoopTimer();
+				// Ok. Not authenticated, now.
+				authenticated = false;
+				username = null;
+				password = null;
+			}
+		}
+	}
+
+	/**
+	 * This method performs a "noop" operation with the server.
+	 * 
+	 * @throws IllegalStateException
+	 *             If the client is not connected or not authenticated.
+	 * @throws IOException
+	 *             If an I/O error occurs.
+	 * @throws FTPIllegalReplyException
+	 *             If the server replies in an illegal way.
+	 * @throws FTPException
+	 *             If login fails.
+	 */
+	public void noop() throws IllegalStateException, IOException,
+			FTPIllegalReplyException, FTPException {
+		synchronized (lock) {
+			// Is this client connected?
+			if (!connected) {
+				throw new IllegalStateException("Client not connected");
+			}
+			// Is this client authenticated?
+			if (!authenticated) {
+				throw new IllegalStateException("Client not authenticated");
+			}
+			// Safe code
+			try {
+				// Send the noop.
+				sendFTPCommand("NOOP");
+				FTPReply r = communication.readFTPReply();
+				if (!r.isSuccessCode()) {
+					throw new FTPException(r);
+				}
+			} finally {
+				// Resets auto noop timer.
+				touchAutoNoopTimer();
+			}
+		}
+	}
+
+	/**
+	 * This method sends a custom command to the server. Don't use this method
+	 * to send standard commands already supported by the client: this should
+	 * cause unexpected results.
+	 * 
+	 * @param command
+	 *            The command line.
+	 * @return The reply supplied by the server, parsed and served in an object
+	 *         way mode.
+	 * @throws IllegalStateException
+	 *             If this client is not connected.
+	 * @throws IOException
+	 *             If a I/O error occurs.
+	 * @throws FTPIllegalReplyException
+	 *             If the server replies in an illegal way.
+	 */
+	public FTPReply sendCustomCommand(String command)
+			throws IllegalStateException, IOException, FTPIllegalReplyException {
+		synchronized (lock) {
+			// Is this client connected?
+			if (!connected) {
+				throw new IllegalStateException("Client not connected");
+			}
+			// Sends the command.
+			sendFTPCommand(command);
+			// Resets auto noop timer.
+			touchAutoNoopTimer();
+			// Returns the reply.
+			return communication.readFTPReply();
+		}
+	}
+
+	/**
+	 * This method sends a SITE specific command to the server.
+	 * 
+	 * @param command
+	 *            The site command.
+	 * @return The reply supplied by the server, parsed and served in an object
+	 *         way mode.
+	 * @throws IllegalStateException
+	 *             If this client is not connected.
 	 * @throws IOException
-	 *             If an I/O occurs.
+	 *             If a I/O error occurs.
+	 * @throws FTPIllegalReplyException
+	 *             If the server replies in an illegal way.
+	 */
+	public FTPReply sendSiteCommand(String command)
+			throws IllegalStateException, IOException, FTPIllegalReplyException {
+		synchronized (lock) {
+			// Is this client connected?
+			if (!connected) {
+				throw new IllegalStateException("Client not connected");
+			}
+			// Sends the command.
+			sendFTPCommand("SITE " + command);
+			// Resets auto noop timer.
+			touchAutoNoopTimer();
+			// Returns the reply.
+			return communication.readFTPReply();
+		}
+	}
+
+	/**
+	 * Call this method to switch the user current account. Be careful with
+	 * this: some FTP servers don't implement this feature, even though it is a
+	 * standard FTP one.
+	 * 
+	 * @param account
+	 *            The account.
+	 * @throws IllegalStateException
+	 *             If the client is not connected or not authenticated.
+	 * @throws IOException
+	 *             If an I/O error occurs.
 	 * @throws FTPIllegalReplyException
 	 *             If the server replies in an illegal way.
 	 * @throws FTPException
-	 *             If the server refuses the connection.
+	 *             If login fails.
 	 */
-	public String[] connect(String host) throws IllegalStateException,
+	public void changeAccount(String account) throws IllegalStateException,
 			IOException, FTPIllegalReplyException, FTPException {
-		int def;
-		if (security == SECURITY_FTPS) {
-			def = 990;
-		} else {
-			def = 21;
+		synchronized (lock) {
+			// Is this client connected?
+			if (!connected) {
+				throw new IllegalStateException("Client not connected");
+			}
+			// Is this client authenticated?
+			if (!authenticated) {
+				throw new IllegalStateException("Client not authenticated");
+			}
+			// Send the ACCT command.
+			sendFTPCommand("ACCT " + account);
+			// Gets the reply.
+			FTPReply r = communication.readFTPReply();
+			// Resets auto noop timer.
+			touchAutoNoopTimer();
+			// Evaluates the response.
+			if (!r.isSuccessCode()) {
+				throw new FTPException(r);
+			}
 		}
-		return connect(host, def);
 	}
 
 	/**
-	 * This method connects the client to the remote FTP host.
+	 * This method asks and returns the current working directory.
 	 * 
-	 * @param host
-	 *            The host name or address of the remote server.
-	 * @param port
-	 *            The port listened by the remote server.
-	 * @return The server welcome message, one line per array element.
+	 * @return path The path to the current working directory.
 	 * @throws IllegalStateException
-	 *             If the client is already connected to a remote host.
+	 *             If the client is not connected or not authenticated.
 	 * @throws IOException
-	 *             If an I/O occurs.
+	 *             If an I/O error occurs.
 	 * @throws FTPIllegalReplyException
 	 *             If the server replies in an illegal way.
 	 * @throws FTPException
-	 *             If the server refuses the connection.
+	 *             If the operation fails.
 	 */
-	public String[] connect(String host, int port)
-			throws IllegalStateException, IOException,
+	public String currentDirectory() throws IllegalStateException, IOException,
 			FTPIllegalReplyException, FTPException {
 		synchronized (lock) {
-			// Is this client already connected to any host?
-			if (connected) {
-				throw new IllegalStateException("Client already connected to "
-						+ host + " on port " + port);
+			// Is this client connected?
+			if (!connected) {
+				throw new IllegalStateException("Client not connected");
 			}
-			// Ok, it's connection time. Let's try!
-			Socket connection = null;
+			// Is this client authenticated?
+			if (!authenticated) {
+				throw new IllegalStateException("Client not authenticated");
+			}
+			// Send the PWD command.
+			sendFTPCommand("PWD");
+			FTPReply r = communication.readFTPReply();
+			touchAutoNoopTimer();
+			if (!r.isSuccessCode()) {
+				throw new FTPException(r);
+			}
+			// Parse the response.
+			String[] messages = r.getMessages();
+			if (messages.length != 1) {
+				throw new FTPIllegalReplyException();
+			}
+			Matcher m = PWD_PATTERN.matcher(messages[0]);
+			if (m.find()) {
+				workingDirectory = messages[0].substring(m.start() + 1, m.end() - 1);
+				return workingDirectory;
+			} else {
+				throw new FTPIllegalReplyException();
+			}
+		}
+	}
+
+	/**
+	 * This method changes the current working directory.
+	 * 
+	 * @param path
+	 *            The path to the new working directory.
+	 * @throws IllegalStateException
+	 *             If the client is not connected or not authenticated.
+	 * @throws IOException
+	 *             If an I/O error occurs.
+	 * @throws FTPIllegalReplyException
+	 *             If the server replies in an illegal way.
+	 * @throws FTPException
+	 *             If the operation fails.
+	 */
+	public void changeDirectory(String path) throws IllegalStateException,
+			IOException, FTPIllegalReplyException, FTPException {
+		synchronized (lock) {
+			// Is this client connected?
+			if (!connected) {
+				throw new IllegalStateException("Client not connected");
+			}
+			// Is this client authenticated?
+			if (!authenticated) {
+				throw new IllegalStateException("Client not authenticated");
+			}
+			// Send the CWD command.
+			sendFTPCommand("CWD " + path);
+			FTPReply r = communication.readFTPReply();
+			touchAutoNoopTimer();
+			if (!r.isSuccessCode()) {
+				throw new FTPException(r);
+			}
+			// Tracks the working directory.
+			workingDirectory = null;
+			if (maxChannels > 1) {
+				currentDirectory();
+			}
+		}
+	}
+
+	/**
+	 * This method changes the current working directory to the parent one.
+	 * 
+	 * @throws IllegalStateException
+	 *             If the client is not connected or not authenticated.
+	 * @throws IOException
+	 *             If an I/O error occurs.
+	 * @throws FTPIllegalReplyException
+	 *             If the server replies in an illegal way.
+	 * @throws FTPException
+	 *             If the operation fails.
+	 */
+	public void changeDirectoryUp() throws IllegalStateException, IOException,
+			FTPIllegalReplyException, FTPException {
+		synchronized (lock) {
+			// Is this client connected?
+			if (!connected) {
+				throw new IllegalStateException("Client not connected");
+			}
+			// Is this client authenticated?
+			if (!authenticated) {
+				throw new IllegalStateException("Client not authenticated");
+			}
+			// Sends the CWD command.
+			sendFTPCommand("CDUP");
+			FTPReply r = communication.readFTPReply();
+			touchAutoNoopTimer();
+			if (!r.isSuccessCode()) {
+				throw new FTPException(r);
+			}
+			// Tracks the working directory.
+			workingDirectory = null;
+			if (maxChannels > 1) {
+				currentDirectory();
+			}
+		}
+	}
+
+	/**
+	 * This method asks and returns the last modification date of a file or
+	 * directory.
+	 * 
+	 * @param path
+	 *            The path to the file or the directory.
+	 * @return The file/directory last modification date.
+	 * @throws IllegalStateException
+	 *             If the client is not connected or not authenticated.
+	 * @throws IOException
+	 *             If an I/O error occurs.
+	 * @throws FTPIllegalReplyException
+	 *             If the server replies in an illegal way.
+	 * @throws FTPException
+	 *             If the operation fails.
+	 */
+	public Date modifiedDate(String path) throws IllegalStateException,
+			IOException, FTPIllegalReplyException, FTPException {
+		// Another channel?
+		Channel channel = acquireChannel();
+		if (channel != null) {
 			try {
-				// Open the connection.
-				connection = connector.connectForCommunicationChannel(host, port);
-				if (security == SECURITY_FTPS) {
-					connection = ssl(connection, host, port);
-				}
-				// Open the communication channel.
-				communication = new FTPCommunicationChannel(connection, pickCharset());
-				for (Iterator i = communicationListeners.iterator(); i.hasNext();) {
-					communication.addCommunicationListener((FTPCommunicationListener) i.next());
-				}
-				// Welcome message.
-				FTPReply wm = communication.readFTPReply();
-				// Does this reply mean "ok"?
-				if (!wm.isSuccessCode()) {
-					// Mmmmm... it seems no!
-					throw new FTPException(wm);
-				}
-				// Flag this object as connected to the remote host.
-				this.connected = true;
-				this.authenticated = false;
-				this.parser = null;
-				this.host = host;
-				this.port = port;
-				this.username = null;
-				this.password = null;
-				this.utf8Supported = false;
-				this.restSupported = false;
-				this.mlsdSupported = false;
-				this.modezSupported = false;
-				this.dataChannelEncrypted = false;
-				// Returns the welcome message.
-				return wm.getMessages();
-			} catch (IOException e) {
-				// D'oh!
-				throw e;
+				return channel.client.modifiedDate(path);
 			} finally {
-				// If connection has failed...
-				if (!connected) {
-					if (connection != null) {
-						// Close the connection, 'cause it should be open.
-						try {
-							connection.close();
-						} catch (Throwable t) {
-							;
-						}
-					}
+				releaseChannel(channel);
+			}
+		}
+		synchronized (lock) {
+			// Is this client connected?
+			if (!connected) {
+				throw new IllegalStateException("Client not connected");
+			}
+			// Is this client authenticated?
+			if (!authenticated) {
+				throw new IllegalStateException("Client not authenticated");
+			}
+			// Sends the MDTM command.
+			sendFTPCommand("MDTM " + path);
+			FTPReply r = communication.readFTPReply();
+			touchAutoNoopTimer();
+			if (!r.isSuccessCode()) {
+				throw new FTPException(r);
+			}
+			String[] messages = r.getMessages();
+			if (messages.length != 1) {
+				throw new FTPIllegalReplyException();
+			} else {
+				try {
+					return ((DateFormat) MDTM_DATE_FORMAT.get()).parse(messages[0]);
+				} catch (ParseException e) {
+					throw new FTPIllegalReplyException();
 				}
 			}
 		}
 	}
 
 	/**
-	 * Aborts the current connection attempt. It can be called by a secondary
-	 * thread while the client is blocked in a <em>connect()</em> call. The
-	 * connect() method will exit with an {@link IOException}.
+	 * This method asks and returns a file size in bytes.
 	 * 
-	 * @since 1.7
+	 * @param path
+	 *            The path to the file.
+	 * @return The file size in bytes.
+	 * @throws IllegalStateException
+	 *             If the client is not connected or not authenticated.
+	 * @throws IOException
+	 *             If an I/O error occurs.
+	 * @throws FTPIllegalReplyException
+	 *             If the server replies in an illegal way.
+	 * @throws FTPException
+	 *             If the operation fails.
 	 */
-	public void abortCurrentConnectionAttempt() {
-		connector.abortConnectForCommunicationChannel();
+	public long fileSize(String path) throws IllegalStateException,
+			IOException, FTPIllegalReplyException, FTPException {
+		// Another channel?
+		Channel channel = acquireChannel();
+		if (channel != null) {
+			try {
+				return channel.client.fileSize(path);
+			} finally {
+				releaseChannel(channel);
+			}
+		}
+		synchronized (lock) {
+			// Is this client connected?
+			if (!connected) {
+				throw new IllegalStateException("Client not connected");
+			}
+			// Is this client authenticated?
+			if (!authenticated) {
+				throw new IllegalStateException("Client not authenticated");
+			}
+			// Sends the TYPE I command.
+			sendFTPCommand("TYPE I");
+			FTPReply r = communication.readFTPReply();
+			touchAutoNoopTimer();
+			if (!r.isSuccessCode()) {
+				throw new FTPException(r);
+			}
+			// Sends the SIZE command.
+			sendFTPCommand("SIZE " + path);
+			r = communication.readFTPReply();
+			touchAutoNoopTimer();
+			if (!r.isSuccessCode()) {
+				throw new FTPException(r);
+			}
+			String[] messages = r.getMessages();
+			if (messages.length != 1) {
+				throw new FTPIllegalReplyException();
+			} else {
+				try {
+					return Long.parseLong(messages[0]);
+				} catch (Throwable t) {
+					throw new FTPIllegalReplyException();
+				}
+			}
+		}
 	}
 
 	/**
-	 * This method disconnects from the remote server, optionally performing the
-	 * QUIT procedure.
+	 * This method returns the details of a single remote file or directory.
 	 * 
-	 * @param sendQuitCommand
-	 *            If true the QUIT procedure with the server will be performed,
-	 *            otherwise the connection is abruptly closed by the client
-	 *            without sending any advice to the server.
+	 * If the server supports the MLST command (RFC 3659), the details are
+	 * obtained with it, through the control connection. Otherwise the entry
+	 * is picked from a listing, obtained as the list() method does (see
+	 * {@link FTPClient#setStatListPolicy(int)}).
+	 * 
+	 * @param path
+	 *            The path to the file or directory.
+	 * @return The details of the entry.
 	 * @throws IllegalStateException
-	 *             If the client is not connected to a remote host.
+	 *             If the client is not connected or not authenticated.
 	 * @throws IOException
-	 *             If an I/O occurs (can be thrown only if sendQuitCommand is
-	 *             true).
+	 *             If an I/O error occurs.
 	 * @throws FTPIllegalReplyException
-	 *             If the server replies in an illegal way (can be thrown only
-	 *             if sendQuitCommand is true).
+	 *             If the server replies in an illegal way.
 	 * @throws FTPException
-	 *             If the server refuses the QUIT command (can be thrown only if
-	 *             sendQuitCommand is true).
+	 *             If the operation fails, or the entry doesn't exist.
+	 * @throws FTPDataTransferException
+	 *             If a I/O occurs in the data transfer connection of a
+	 *             listing.
+	 * @throws FTPAbortedException
+	 *             If a listing is aborted by another thread.
+	 * @throws FTPListParseException
+	 *             If the details of the entry can't be parsed.
+	 * @since 1.8
 	 */
-	public void disconnect(boolean sendQuitCommand)
-			throws IllegalStateException, IOException,
-			FTPIllegalReplyException, FTPException {
+	public FTPFile stat(String path) throws IllegalStateException,
+			IOException, FTPIllegalReplyException, FTPException,
+			FTPDataTransferException, FTPAbortedException,
+			FTPListParseException {
+		// Another channel?
+		Channel channel = acquireChannel();
+		if (channel != null) {
+			try {
+				return channel.client.stat(path);
+			} finally {
+				releaseChannel(channel);
+			}
+		}
 		synchronized (lock) {
 			// Is this client connected?
 			if (!connected) {
 				throw new IllegalStateException("Client not connected");
 			}
-			// Stops the auto noop timer (if started).
-			if (authenticated) {
-				stopAutoNoopTimer();
+			// Is this client authenticated?
+			if (!authenticated) {
+				throw new IllegalStateException("Client not authenticated");
 			}
-			// Send QUIT?
-			if (sendQuitCommand) {
-				// Call the QUIT command.
-				communication.sendFTPCommand("QUIT");
+			// The name of the entry and its parent directory.
+			String[] split = splitPath(path);
+			String parent = split[0];
+			String name = split[1];
+			// MLST?
+			if (mlstSupported) {
+				sendFTPCommand("MLST " + path);
 				FTPReply r = communication.readFTPReply();
+				touchAutoNoopTimer();
 				if (!r.isSuccessCode()) {
 					throw new FTPException(r);
 				}
+				FTPFile file = parseMlstReply(r);
+				if (file != null) {
+					file.setName(name);
+					return file;
+				}
 			}
-			// Close the communication.
-			communication.close();
-			communication = null;
-			// Reset the connection flag.
-			connected = false;
+			// A file lists itself.
+			FTPFile[] files = list(path, null);
+			if (files.length == 1 && files[0].getType() != FTPFile.TYPE_DIRECTORY
+					&& name.equals(files[0].getName())) {
+				return files[0];
+			}
+			// Looks for the entry in its parent directory.
+			files = list(parent, null);
+			for (int i = 0; i < files.length; i++) {
+				if (name.equals(files[i].getName())) {
+					return files[i];
+				}
+			}
+			throw new FTPException(FTPCodes.FILE_NOT_FOUND, "No such file or directory: " + path);
 		}
 	}
 
 	/**
-	 * This method causes the communication channel to be abruptly closed. Use
-	 * it carefully, since this one is not thread-safe. It is given as an
-	 * "emergency brake" to close the control connection when it is blocked. A
-	 * thread-safe solution for the same purpose is a call to disconnect(false).
+	 * Parses the reply to a MLST command.
 	 * 
-	 * @see FTPClient#disconnect(boolean)
+	 * @param r
+	 *            The reply.
+	 * @return The entry, or null if it is the current or the parent
+	 *         directory, which the MLSD parser skips.
 	 */
-	public void abruptlyCloseCommunication() {
-		// Close the communication.
-		if (communication != null) {
-			communication.close();
-			communication = null;
+	private FTPFile parseMlstReply(FTPReply r) throws FTPIllegalReplyException,
+			FTPListParseException {
+		// The entry is the line between the first and the last one.
+		String[] messages = r.getMessages();
+		if (messages.length < 3) {
+			throw new FTPIllegalReplyException();
 		}
-		// Reset the connection flag.
-		connected = false;
-		// Stops the auto noop timer.
-		stopAutoNoopTimer();
+		FTPFile[] ret = new MLSDListParser().parse(new String[] { messages[1].trim() });
+		return ret.length == 1 ? ret[0] : null;
 	}
 
 	/**
-	 * This method authenticates the user against the server.
+	 * This method asks the sizes of many files, pipelining the SIZE commands
+	 * on the control connection (see {@link FTPClient#setPipelineWindow(int)}).
+	 * The paths of a directory which holds many of them are resolved with a
+	 * single listing of the directory (see
+	 * {@link FTPClient#setBatchListThreshold(int)}).
 	 * 
-	 * @param username
-	 *            The username.
-	 * @param password
-	 *            The password (if none set it to null).
-	 * @throws IllegalStateException
-	 *             If the client is not connected. Call the connect() method
-	 *             before!
-	 * @throws IOException
-	 *             If an I/O error occurs.
-	 * @throws FTPIllegalReplyException
-	 *             If the server replies in an illegal way.
-	 * @throws FTPException
-	 *             If login fails.
-	 */
-	public void login(String username, String password)
-			throws IllegalStateException, IOException,
-			FTPIllegalReplyException, FTPException {
-		login(username, password, null);
-	}
-
-	/**
-	 * This method authenticates the user against the server.
+	 * A path which can't be resolved doesn't stop the batch: its outcome is
+	 * the exception explaining the failure.
 	 * 
-	 * @param username
-	 *            The username.
-	 * @param password
-	 *            The password (if none set it to null).
-	 * @param account
-	 *            The account (if none set it to null). Be careful: some servers
-	 *            don't implement this feature.
+	 * @param paths
+	 *            The paths to the files, as strings.
+	 * @return The sizes, as Long values, in the order of the paths.
 	 * @throws IllegalStateException
-	 *             If the client is not connected. Call the connect() method
-	 *             before!
+	 *             If the client is not connected or not authenticated.
 	 * @throws IOException
 	 *             If an I/O error occurs.
 	 * @throws FTPIllegalReplyException
 	 *             If the server replies in an illegal way.
 	 * @throws FTPException
-	 *             If login fails.
+	 *             If the batch can't be started.
+	 * @since 1.8
 	 */
-	public void login(String username, String password, String account)
-			throws IllegalStateException, IOException,
-			FTPIllegalReplyException, FTPException {
+	public FTPBatchResult fileSizes(List paths) throws IllegalStateException,
+			IOException, FTPIllegalReplyException, FTPException {
+		// Another channel?
+		Channel channel = acquireChannel();
+		if (channel != null) {
+			try {
+				return channel.client.fileSizes(paths);
+			} finally {
+				releaseChannel(channel);
+			}
+		}
 		synchronized (lock) {
 			// Is this client connected?
 			if (!connected) {
 				throw new IllegalStateException("Client not connected");
 			}
-			// AUTH TLS command if security is FTPES
-			if (security == SECURITY_FTPES) {
-				communication.sendFTPCommand("AUTH TLS");
-				FTPReply r = communication.readFTPReply();
-				if (r.isSuccessCode()) {
-					communication.ssl(sslSocketFactory);
-				} else {
-					communication.sendFTPCommand("AUTH SSL");
-					r = communication.readFTPReply();
-					if (r.isSuccessCode()) {
-						communication.ssl(sslSocketFactory);
-					} else {
-						throw new FTPException(r.getCode(), "SECURITY_FTPES cannot be applied: " +
-								"the server refused both AUTH TLS and AUTH SSL commands");
-					}
-				}
+			// Is this client authenticated?
+			if (!authenticated) {
+				throw new IllegalStateException("Client not authenticated");
 			}
-			// Reset the authentication flag.
-			authenticated = false;
-			// Usefull flags.
-			boolean passwordRequired;
-			boolean accountRequired;
-			// Send the user and read the reply.
-			communication.sendFTPCommand("USER " + username);
+			FTPBatchResult result = new FTPBatchResult(toPathArray(paths));
+			// Whole directories.
+			resolveByListing(result, BATCH_SIZE, batchListThreshold);
+			// Sends the TYPE I command.
+			sendFTPCommand("TYPE I");
 			FTPReply r = communication.readFTPReply();
-			switch (r.getCode()) {
-			case 230:
-				// Password and account aren't required.
-				passwordRequired = false;
-				accountRequired = false;
-				break;
-			case 331:
-				// Password is required.
-				passwordRequired = true;
-				// Account... maybe! More information later...
-				accountRequired = false;
-				break;
-			case 332:
-				// Password is not required, but account is required.
-				passwordRequired = false;
-				accountRequired = true;
-			default:
-				// User validation failed.
+			touchAutoNoopTimer();
+			if (!r.isSuccessCode()) {
 				throw new FTPException(r);
 			}
-			// Password.
-			if (passwordRequired) {
-				if (password == null) {
-					throw new FTPException(331);
-				}
-				// Send the password.
-				communication.sendFTPCommand("PASS " + password);
-				r = communication.readFTPReply();
-				switch (r.getCode()) {
-				case 230:
-					// Account is not required.
-					accountRequired = false;
-					break;
-				case 332:
-					// Account is required.
-					accountRequired = true;
-					break;
-				default:
-					// Authentication failed.
-					throw new FTPException(r);
-				}
-			}
-			// Account.
-			if (accountRequired) {
-				if (account == null) {
-					throw new FTPException(332);
+			// Sends the SIZE commands.
+			int[] pending = getUnresolved(result);
+			FTPReply[] replies = pipelineCommands(result, pending, "SIZE ");
+			for (int i = 0; i < pending.length; i++) {
+				r = replies[i];
+				if (!r.isSuccessCode()) {
+					result.setException(pending[i], new FTPException(r));
+					continue;
 				}
-				// Send the account.
-				communication.sendFTPCommand("ACCT " + account);
-				r = communication.readFTPReply();
-				switch (r.getCode()) {
-				case 230:
-					// Well done!
-					break;
-				default:
-					// Something goes wrong.
-					throw new FTPException(r);
+				String[] messages = r.getMessages();
+				try {
+					result.setValue(pending[i], new Long(messages[0]));
+				} catch (Throwable t) {
+					result.setException(pending[i], new FTPIllegalReplyException());
 				}
 			}
-			// Well, if this point is reached the client could consider itself
-			// as authenticated.
-			this.authenticated = true;
-			this.username = username;
-			this.password = password;
+			return result;
 		}
-		// Post-login operations.
-		postLoginOperations();
-		// Starts the auto noop timer.
-		startAutoNoopTimer();
 	}
 
 	/**
-	 * Performs some post-login operations, such trying to detect server support
-	 * for utf8.
+	 * This method asks the last modification dates of many files, pipelining
+	 * the MDTM commands on the control connection (see
+	 * {@link FTPClient#setPipelineWindow(int)}). If the directories are
+	 * listed with the MLSD command, the paths of a directory which holds many
+	 * of them are resolved with a single listing of the directory (see
+	 * {@link FTPClient#setBatchListThreshold(int)}). The LIST command is not
+	 * used, since many servers give the dates in it with a poor precision.
 	 * 
+	 * A path which can't be resolved doesn't stop the batch: its outcome is
+	 * the exception explaining the failure.
+	 * 
+	 * @param paths
+	 *            The paths to the files, as strings.
+	 * @return The dates, as java.util.Date values, in the order of the paths.
 	 * @throws IllegalStateException
-	 *             If the client is not connected. Call the connect() method
-	 *             before!
+	 *             If the client is not connected or not authenticated.
 	 * @throws IOException
 	 *             If an I/O error occurs.
 	 * @throws FTPIllegalReplyException
 	 *             If the server replies in an illegal way.
 	 * @throws FTPException
-	 *             If login fails.
+	 *             If the batch can't be started.
+	 * @since 1.8
 	 */
-	private void postLoginOperations() throws IllegalStateException,
-			IOException, FTPIllegalReplyException, FTPException {
+	public FTPBatchResult modifiedDates(List paths)
+			throws IllegalStateException, IOException,
+			FTPIllegalReplyException, FTPException {
+		// Another channel?
+		Channel channel = acquireChannel();
+		if (channel != null) {
+			try {
+				return channel.client.modifiedDates(paths);
+			} finally {
+				releaseChannel(channel);
+			}
+		}
 		synchronized (lock) {
-			utf8Supported = false;
-			restSupported = false;
-			mlsdSupported = false;
-			modezSupported = false;
-			dataChannelEncrypted = false;
-			communication.sendFTPCommand("FEAT");
-			FTPReply r = communication.readFTPReply();
-			if (r.getCode() == 211) {
-				String[] lines = r.getMessages();
-				for (int i = 1; i < lines.length - 1; i++) {
-					String feat = lines[i].trim().toUpperCase();
-					// REST STREAM supported?
-					if ("REST STREAM".equalsIgnoreCase(feat)) {
-						restSupported = true;
-						continue;
-					}
-					// UTF8 supported?
-					if ("UTF8".equalsIgnoreCase(feat)) {
-						utf8Supported = true;
-						communication.changeCharset("UTF-8");
-						continue;
-					}
-					// MLSD supported?
-					if ("MLSD".equalsIgnoreCase(feat)) {
-						mlsdSupported = true;
-						continue;
-					}
-					// MODE Z supported?
-					if ("MODE Z".equalsIgnoreCase(feat) || feat.startsWith("MODE Z ")) {
-						modezSupported = true;
-						continue;
-					}
-				}
+			// Is this client connected?
+			if (!connected) {
+				throw new IllegalStateException("Client not connected");
 			}
-			// Turn UTF 8 on (if supported).
-			if (utf8Supported) {
-				communication.sendFTPCommand("OPTS UTF8 ON");
-				communication.readFTPReply();
+			// Is this client authenticated?
+			if (!authenticated) {
+				throw new IllegalStateException("Client not authenticated");
 			}
-			// Data channel security.
-			if (security == SECURITY_FTPS || security == SECURITY_FTPES) {
-				communication.sendFTPCommand("PBSZ 0");
-				communication.readFTPReply();
-				communication.sendFTPCommand("PROT P");
-				FTPReply reply = communication.readFTPReply();
-				if (reply.isSuccessCode()) {
-					dataChannelEncrypted = true;
+			FTPBatchResult result = new FTPBatchResult(toPathArray(paths));
+			// Whole directories, with precise dates.
+			if (mlsdPolicy == MLSD_ALWAYS
+					|| (mlsdPolicy == MLSD_IF_SUPPORTED && mlsdSupported)) {
+				resolveByListing(result, BATCH_MODIFIED_DATE, batchListThreshold);
+			}
+			// Sends the MDTM commands.
+			int[] pending = getUnresolved(result);
+			FTPReply[] replies = pipelineCommands(result, pending, "MDTM ");
+			for (int i = 0; i < pending.length; i++) {
+				FTPReply r = replies[i];
+				if (!r.isSuccessCode()) {
+					result.setException(pending[i], new FTPException(r));
+					continue;
+				}
+				String[] messages = r.getMessages();
+				try {
+					result.setValue(pending[i], ((DateFormat) MDTM_DATE_FORMAT.get()).parse(messages[0]));
+				} catch (Throwable t) {
+					result.setException(pending[i], new FTPIllegalReplyException());
 				}
 			}
+			return result;
 		}
 	}
 
 	/**
-	 * This method performs a logout operation for the current user, leaving the
-	 * connection open, thus it can be used to start a new user session. Be
-	 * careful with this: some FTP servers don't implement this feature, even
-	 * though it is a standard FTP one.
+	 * This method returns the details of many remote files and directories.
+	 * If the server supports the MLST command (RFC 3659), the MLST commands
+	 * are pipelined on the control connection (see
+	 * {@link FTPClient#setPipelineWindow(int)}), and the paths of a directory
+	 * which holds many of them are resolved with a single listing of the
+	 * directory (see {@link FTPClient#setBatchListThreshold(int)}). Otherwise
+	 * every involved directory is listed once.
+	 * 
+	 * A path which can't be resolved doesn't stop the batch: its outcome is
+	 * the exception explaining the failure.
 	 * 
+	 * @param paths
+	 *            The paths to the files and directories, as strings.
+	 * @return The details, as {@link FTPFile} objects, in the order of the
+	 *         paths.
 	 * @throws IllegalStateException
 	 *             If the client is not connected or not authenticated.
 	 * @throws IOException
@@ -1392,10 +3184,20 @@ public class FTPClient {
 	 * @throws FTPIllegalReplyException
 	 *             If the server replies in an illegal way.
 	 * @throws FTPException
-	 *             If the operation fails.
+	 *             If the batch can't be started.
+	 * @since 1.8
 	 */
-	public void logout() throws IllegalStateException, IOException,
-			FTPIllegalReplyException, FTPException {
+	public FTPBatchResult stat(List paths) throws IllegalStateException,
+			IOException, FTPIllegalReplyException, FTPException {
+		// Another channel?
+		Channel channel = acquireChannel();
+		if (channel != null) {
+			try {
+				return channel.client.stat(paths);
+			} finally {
+				releaseChannel(channel);
+			}
+		}
 		synchronized (lock) {
 			// Is this client connected?
 			if (!connected) {
@@ -1405,25 +3207,260 @@ public class FTPClient {
 			if (!authenticated) {
 				throw new IllegalStateException("Client not authenticated");
 			}
-			// Send the REIN command.
-			communication.sendFTPCommand("REIN");
-			FTPReply r = communication.readFTPReply();
-			if (!r.isSuccessCode()) {
-				throw new FTPException(r);
-			} else {
-				// Stops the auto noop timer.
-				stopAutoNoopTimer();
-				// Ok. Not authenticated, now.
-				authenticated = false;
-				username = null;
-				password = null;
+			FTPBatchResult result = new FTPBatchResult(toPathArray(paths));
+			// Whole directories.
+			resolveByListing(result, BATCH_STAT, mlstSupported ? batchListThreshold : 1);
+			// Sends the MLST commands.
+			if (mlstSupported) {
+				int[] pending = getUnresolved(result);
+				FTPReply[] replies = pipelineCommands(result, pending, "MLST ");
+				for (int i = 0; i < pending.length; i++) {
+					FTPReply r = replies[i];
+					if (!r.isSuccessCode()) {
+						result.setException(pending[i], new FTPException(r));
+						continue;
+					}
+					try {
+						FTPFile file = parseMlstReply(r);
+						if (file != null) {
+							file.setName(splitPath(result.getPath(pending[i]))[1]);
+							result.setValue(pending[i], file);
+						}
+					} catch (Exception e) {
+						result.setException(pending[i], e);
+					}
+				}
+			}
+			// The left ones, one by one.
+			int[] pending = getUnresolved(result);
+			for (int i = 0; i < pending.length; i++) {
+				try {
+					result.setValue(pending[i], stat(result.getPath(pending[i])));
+				} catch (FTPException e) {
+					result.setException(pending[i], e);
+				} catch (FTPIllegalReplyException e) {
+					result.setException(pending[i], e);
+				} catch (FTPDataTransferException e) {
+					result.setException(pending[i], e);
+				} catch (FTPAbortedException e) {
+					result.setException(pending[i], e);
+				} catch (FTPListParseException e) {
+					result.setException(pending[i], e);
+				}
 			}
+			return result;
 		}
 	}
 
 	/**
-	 * This method performs a "noop" operation with the server.
+	 * Resolves the paths of a batch by listing their directories, if a
+	 * directory holds enough of them. A directory which can't be listed is
+	 * ignored, and its paths are left to the commands of the batch, as the
+	 * paths missing from the listing (many servers don't list the hidden
+	 * files).
+	 * 
+	 * @param result
+	 *            The batch.
+	 * @param operation
+	 *            The operation, one of BATCH_SIZE, BATCH_MODIFIED_DATE and
+	 *            BATCH_STAT.
+	 * @param threshold
+	 *            The number of paths in a directory starting from which the
+	 *            directory is listed, or 0 to list nothing.
+	 */
+	private void resolveByListing(FTPBatchResult result, int operation,
+			int threshold) throws IOException, FTPIllegalReplyException {
+		if (threshold <= 0) {
+			return;
+		}
+		// Groups the paths by directory.
+		LinkedHashMap groups = new LinkedHashMap();
+		for (int i = 0; i < result.size(); i++) {
+			String parent = splitPath(result.getPath(i))[0];
+			String key = parent != null ? parent : "";
+			ArrayList group = (ArrayList) groups.get(key);
+			if (group == null) {
+				group = new ArrayList();
+				groups.put(key, group);
+			}
+			group.add(new Integer(i));
+		}
+		for (Iterator i = groups.entrySet().iterator(); i.hasNext();) {
+			Map.Entry entry = (Map.Entry) i.next();
+			String parent = (String) entry.getKey();
+			ArrayList group = (ArrayList) entry.getValue();
+			if (group.size() < threshold) {
+				continue;
+			}
+			FTPFile[] files;
+			try {
+				files = list(parent.length() > 0 ? parent : null, null, group.size());
+			} catch (FTPException e) {
+				continue;
+			} catch (FTPDataTransferException e) {
+				continue;
+			} catch (FTPAbortedException e) {
+				continue;
+			} catch (FTPListParseException e) {
+				continue;
+			}
+			HashMap byName = new HashMap();
+			for (int k = 0; k < files.length; k++) {
+				byName.put(files[k].getName(), files[k]);
+			}
+			for (Iterator k = group.iterator(); k.hasNext();) {
+				int index = ((Integer) k.next()).intValue();
+				String name = splitPath(result.getPath(index))[1];
+				FTPFile file = (FTPFile) byName.get(name);
+				if (file == null) {
+					// Not listed (a hidden file, or the directory itself):
+					// left to the commands of the batch.
+					continue;
+				}
+				if (operation == BATCH_SIZE) {
+					if (file.getType() == FTPFile.TYPE_FILE) {
+						result.setValue(index, new Long(file.getSize()));
+					} else if (file.getType() == FTPFile.TYPE_DIRECTORY) {
+						result.setException(index, new FTPException(
+								FTPCodes.FILE_NOT_FOUND, "Not a plain file: "
+										+ result.getPath(index)));
+					}
+					// A link is left to the SIZE command, which follows it.
+				} else if (operation == BATCH_MODIFIED_DATE) {
+					if (file.getModifiedDate() != null) {
+						result.setValue(index, file.getModifiedDate());
+					}
+				} else {
+					result.setValue(index, file);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sends a command for every given path of a batch, keeping a bounded
+	 * number of commands in flight, and returns the replies in order.
+	 * 
+	 * @param result
+	 *            The batch.
+	 * @param indexes
+	 *            The indexes of the paths.
+	 * @param prefix
+	 *            The command, followed by a space.
+	 * @return The replies.
+	 */
+	private FTPReply[] pipelineCommands(FTPBatchResult result, int[] indexes,
+			String prefix) throws IOException, FTPIllegalReplyException {
+		String[] commands = new String[indexes.length];
+		for (int i = 0; i < indexes.length; i++) {
+			commands[i] = prefix + result.getPath(indexes[i]);
+		}
+		return pipelineCommands(commands);
+	}
+
+	/**
+	 * Sends some commands, keeping a bounded number of them in flight, and
+	 * returns the replies in order.
+	 * 
+	 * @param commands
+	 *            The commands.
+	 * @return The replies.
+	 */
+	private FTPReply[] pipelineCommands(String[] commands) throws IOException,
+			FTPIllegalReplyException {
+		int window = pipelineWindow;
+		FTPCapabilityCache.Entry entry = FTPCapabilityCache.get(host, port);
+		if (entry != null && !entry.isPipeliningAllowed()) {
+			window = 1;
+		}
+		FTPReply[] replies = new FTPReply[commands.length];
+		int sent = 0;
+		int received = 0;
+		while (received < commands.length) {
+			// Refills the window when half of it has been replied.
+			int inFlight = sent - received;
+			if (sent < commands.length && inFlight <= window / 2) {
+				int n = Math.min(commands.length - sent, window - inFlight);
+				String[] aux = new String[n];
+				System.arraycopy(commands, sent, aux, 0, n);
+				sendFTPCommands(aux);
+				sent += n;
+			}
+			replies[received++] = communication.readFTPReply();
+			touchAutoNoopTimer();
+		}
+		return replies;
+	}
+
+	/**
+	 * Returns the indexes of the paths of a batch whose outcome is unknown.
+	 */
+	private int[] getUnresolved(FTPBatchResult result) {
+		int count = 0;
+		for (int i = 0; i < result.size(); i++) {
+			if (!result.isResolved(i)) {
+				count++;
+			}
+		}
+		int[] ret = new int[count];
+		count = 0;
+		for (int i = 0; i < result.size(); i++) {
+			if (!result.isResolved(i)) {
+				ret[count++] = i;
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Copies a list of paths in an array.
+	 */
+	private static String[] toPathArray(List paths) {
+		String[] ret = new String[paths.size()];
+		int i = 0;
+		for (Iterator it = paths.iterator(); it.hasNext();) {
+			ret[i++] = (String) it.next();
+		}
+		return ret;
+	}
+
+	/**
+	 * Splits a path in its parent directory and its name.
+	 * 
+	 * @param path
+	 *            The path.
+	 * @return The parent directory (null for a relative path without
+	 *         directories) and the name.
+	 */
+	private static String[] splitPath(String path) {
+		while (path.length() > 1 && path.endsWith("/")) {
+			path = path.substring(0, path.length() - 1);
+		}
+		int sep = path.lastIndexOf('/');
+		String parent = sep > 0 ? path.substring(0, sep) : (sep == 0 ? "/" : null);
+		return new String[] { parent, path.substring(sep + 1) };
+	}
+
+	/**
+	 * This method asks the server the checksum of a remote file, or of a
+	 * range of it. The HASH command is used if the server declares it,
+	 * otherwise the XCRC, XMD5, XSHA1, XSHA256 and XSHA512 extensions are
+	 * tried.
 	 * 
+	 * @param path
+	 *            The path to the file.
+	 * @param algorithm
+	 *            One of {@link FTPClient#HASH_CRC32},
+	 *            {@link FTPClient#HASH_MD5}, {@link FTPClient#HASH_SHA1},
+	 *            {@link FTPClient#HASH_SHA256} and
+	 *            {@link FTPClient#HASH_SHA512}.
+	 * @param start
+	 *            The first byte of the range.
+	 * @param end
+	 *            The end of the range (exclusive), or -1 for the end of the
+	 *            file.
+	 * @return The checksum, as a lowercase hex string, or null if the server
+	 *         cannot compute it.
 	 * @throws IllegalStateException
 	 *             If the client is not connected or not authenticated.
 	 * @throws IOException
@@ -1431,10 +3468,22 @@ public class FTPClient {
 	 * @throws FTPIllegalReplyException
 	 *             If the server replies in an illegal way.
 	 * @throws FTPException
-	 *             If login fails.
+	 *             If the operation fails (in example, if the file doesn't
+	 *             exist).
+	 * @since 1.8
 	 */
-	public void noop() throws IllegalStateException, IOException,
+	public String remoteHash(String path, String algorithm, long start,
+			long end) throws IllegalStateException, IOException,
 			FTPIllegalReplyException, FTPException {
+		// Another channel?
+		Channel channel = acquireChannel();
+		if (channel != null) {
+			try {
+				return channel.client.remoteHash(path, algorithm, start, end);
+			} finally {
+				releaseChannel(channel);
+			}
+		}
 		synchronized (lock) {
 			// Is this client connected?
 			if (!connected) {
@@ -1444,90 +3493,163 @@ public class FTPClient {
 			if (!authenticated) {
 				throw new IllegalStateException("Client not authenticated");
 			}
-			// Safe code
-			try {
-				// Send the noop.
-				communication.sendFTPCommand("NOOP");
+			int length = new FTPChecksum(algorithm).getValue().length();
+			boolean whole = start <= 0 && end < 0;
+			// HASH command.
+			if (hashAlgorithms.contains(algorithm)) {
+				sendFTPCommand("OPTS HASH " + algorithm);
 				FTPReply r = communication.readFTPReply();
-				if (!r.isSuccessCode()) {
-					throw new FTPException(r);
-				}
-			} finally {
-				// Resets auto noop timer.
 				touchAutoNoopTimer();
+				boolean ready = r.isSuccessCode();
+				if (ready && !whole) {
+					// RANG wants both ends: an open range ends with the file.
+					long last = end - 1;
+					if (end < 0) {
+						sendFTPCommand("TYPE I");
+						r = communication.readFTPReply();
+						touchAutoNoopTimer();
+						if (!r.isSuccessCode()) {
+							throw new FTPException(r);
+						}
+						sendFTPCommand("SIZE " + path);
+						r = communication.readFTPReply();
+						touchAutoNoopTimer();
+						String[] messages = r.getMessages();
+						if (r.getCode() == 213 && messages.length == 1) {
+							try {
+								last = Long.parseLong(messages[0].trim()) - 1;
+							} catch (NumberFormatException e) {
+								;
+							}
+						}
+					}
+					if (last >= start) {
+						sendFTPCommand("RANG " + start + " " + last);
+						r = communication.readFTPReply();
+						touchAutoNoopTimer();
+						ready = r.getCode() == 350;
+					} else {
+						// Unknown size: the X commands take an open range.
+						ready = false;
+					}
+				}
+				if (ready) {
+					sendFTPCommand("HASH " + path);
+					r = communication.readFTPReply();
+					touchAutoNoopTimer();
+					if (r.isSuccessCode()) {
+						return parseHash(r, length);
+					} else if (r.getCode() != 500 && r.getCode() != 502
+							&& r.getCode() != 504) {
+						throw new FTPException(r);
+					}
+				}
+			}
+			// X commands.
+			String command;
+			if (HASH_CRC32.equals(algorithm)) {
+				command = "XCRC";
+			} else if (HASH_MD5.equals(algorithm)) {
+				command = "XMD5";
+			} else if (HASH_SHA1.equals(algorithm)) {
+				command = "XSHA1";
+			} else if (HASH_SHA256.equals(algorithm)) {
+				command = "XSHA256";
+			} else {
+				command = "XSHA512";
+			}
+			command += " " + path;
+			if (!whole) {
+				command += " " + start;
+				if (end >= 0) {
+					command += " " + end;
+				}
+			}
+			sendFTPCommand(command);
+			FTPReply r = communication.readFTPReply();
+			touchAutoNoopTimer();
+			if (r.isSuccessCode()) {
+				return parseHash(r, length);
+			} else if (r.getCode() == 500 || r.getCode() == 502
+					|| r.getCode() == 504) {
+				return null;
+			} else {
+				throw new FTPException(r);
 			}
 		}
 	}
 
 	/**
-	 * This method sends a custom command to the server. Don't use this method
-	 * to send standard commands already supported by the client: this should
-	 * cause unexpected results.
-	 * 
-	 * @param command
-	 *            The command line.
-	 * @return The reply supplied by the server, parsed and served in an object
-	 *         way mode.
-	 * @throws IllegalStateException
-	 *             If this client is not connected.
-	 * @throws IOException
-	 *             If a I/O error occurs.
-	 * @throws FTPIllegalReplyException
-	 *             If the server replies in an illegal way.
+	 * Extracts the checksum from the reply to a HASH or X command, looking
+	 * for a hex token with the expected length.
 	 */
-	public FTPReply sendCustomCommand(String command)
-			throws IllegalStateException, IOException, FTPIllegalReplyException {
-		synchronized (lock) {
-			// Is this client connected?
-			if (!connected) {
-				throw new IllegalStateException("Client not connected");
+	private static String parseHash(FTPReply r, int length)
+			throws FTPIllegalReplyException {
+		String[] messages = r.getMessages();
+		for (int i = 0; i < messages.length; i++) {
+			StringTokenizer st = new StringTokenizer(messages[i], " ");
+			while (st.hasMoreTokens()) {
+				String token = st.nextToken();
+				if (token.length() == length && isHex(token)) {
+					return token.toLowerCase();
+				}
 			}
-			// Sends the command.
-			communication.sendFTPCommand(command);
-			// Resets auto noop timer.
-			touchAutoNoopTimer();
-			// Returns the reply.
-			return communication.readFTPReply();
 		}
+		throw new FTPIllegalReplyException();
 	}
 
 	/**
-	 * This method sends a SITE specific command to the server.
-	 * 
-	 * @param command
-	 *            The site command.
-	 * @return The reply supplied by the server, parsed and served in an object
-	 *         way mode.
-	 * @throws IllegalStateException
-	 *             If this client is not connected.
-	 * @throws IOException
-	 *             If a I/O error occurs.
-	 * @throws FTPIllegalReplyException
-	 *             If the server replies in an illegal way.
+	 * Checks whether a string is made of hex digits.
 	 */
-	public FTPReply sendSiteCommand(String command)
-			throws IllegalStateException, IOException, FTPIllegalReplyException {
-		synchronized (lock) {
-			// Is this client connected?
-			if (!connected) {
-				throw new IllegalStateException("Client not connected");
+	private static boolean isHex(String str) {
+		for (int i = 0; i < str.length(); i++) {
+			if (Character.digit(str.charAt(i), 16) == -1) {
+				return false;
 			}
-			// Sends the command.
-			communication.sendFTPCommand("SITE " + command);
-			// Resets auto noop timer.
-			touchAutoNoopTimer();
-			// Returns the reply.
-			return communication.readFTPReply();
 		}
+		return true;
 	}
 
 	/**
-	 * Call this method to switch the user current account. Be careful with
-	 * this: some FTP servers don't implement this feature, even though it is a
-	 * standard FTP one.
+	 * Compares the checksum of a completed transfer with the one computed by
+	 * the server.
+	 */
+	private FTPTransferReport verifyTransfer(String path,
+			FTPChecksum checksum, long offset) throws IOException,
+			FTPIllegalReplyException {
+		String remote;
+		try {
+			if (offset <= 0) {
+				remote = remoteHash(path, checksum.getAlgorithm(), 0, -1);
+			} else {
+				remote = remoteHash(path, checksum.getAlgorithm(), offset,
+						offset + checksum.getCount());
+			}
+		} catch (FTPException e) {
+			remote = null;
+		}
+		return new FTPTransferReport(path, checksum.getAlgorithm(), offset,
+				checksum.getCount(), checksum.getValue(), remote);
+	}
+
+	/**
+	 * This method renames a remote file or directory. It can also be used to
+	 * move a file or a directory.
 	 * 
-	 * @param account
-	 *            The account.
+	 * In example:
+	 * 
+	 * <pre>
+	 * client.rename(&quot;oldname&quot;, &quot;newname&quot;); // This one renames
+	 * </pre>
+	 * 
+	 * <pre>
+	 * client.rename(&quot;the/old/path/oldname&quot;, &quot;/a/new/path/newname&quot;); // This one moves
+	 * </pre>
+	 * 
+	 * @param oldPath
+	 *            The current path of the file (or directory).
+	 * @param newPath
+	 *            The new path for the file (or directory).
 	 * @throws IllegalStateException
 	 *             If the client is not connected or not authenticated.
 	 * @throws IOException
@@ -1535,10 +3657,11 @@ public class FTPClient {
 	 * @throws FTPIllegalReplyException
 	 *             If the server replies in an illegal way.
 	 * @throws FTPException
-	 *             If login fails.
+	 *             If the operation fails.
 	 */
-	public void changeAccount(String account) throws IllegalStateException,
-			IOException, FTPIllegalReplyException, FTPException {
+	public void rename(String oldPath, String newPath)
+			throws IllegalStateException, IOException,
+			FTPIllegalReplyException, FTPException {
 		synchronized (lock) {
 			// Is this client connected?
 			if (!connected) {
@@ -1548,23 +3671,29 @@ public class FTPClient {
 			if (!authenticated) {
 				throw new IllegalStateException("Client not authenticated");
 			}
-			// Send the ACCT command.
-			communication.sendFTPCommand("ACCT " + account);
-			// Gets the reply.
+			// Sends the RNFR command.
+			sendFTPCommand("RNFR " + oldPath);
 			FTPReply r = communication.readFTPReply();
-			// Resets auto noop timer.
 			touchAutoNoopTimer();
-			// Evaluates the response.
+			if (r.getCode() != 350) {
+				throw new FTPException(r);
+			}
+			// Sends the RNFR command.
+			sendFTPCommand("RNTO " + newPath);
+			r = communication.readFTPReply();
+			touchAutoNoopTimer();
 			if (!r.isSuccessCode()) {
 				throw new FTPException(r);
 			}
+			forgetDirectories(oldPath);
 		}
 	}
 
 	/**
-	 * This method asks and returns the current working directory.
+	 * This method deletes a remote file.
 	 * 
-	 * @return path The path to the current working directory.
+	 * @param path
+	 *            The path to the file.
 	 * @throws IllegalStateException
 	 *             If the client is not connected or not authenticated.
 	 * @throws IOException
@@ -1574,8 +3703,8 @@ public class FTPClient {
 	 * @throws FTPException
 	 *             If the operation fails.
 	 */
-	public String currentDirectory() throws IllegalStateException, IOException,
-			FTPIllegalReplyException, FTPException {
+	public void deleteFile(String path) throws IllegalStateException,
+			IOException, FTPIllegalReplyException, FTPException {
 		synchronized (lock) {
 			// Is this client connected?
 			if (!connected) {
@@ -1585,32 +3714,21 @@ public class FTPClient {
 			if (!authenticated) {
 				throw new IllegalStateException("Client not authenticated");
 			}
-			// Send the PWD command.
-			communication.sendFTPCommand("PWD");
+			// Sends the DELE command.
+			sendFTPCommand("DELE " + path);
 			FTPReply r = communication.readFTPReply();
 			touchAutoNoopTimer();
 			if (!r.isSuccessCode()) {
 				throw new FTPException(r);
 			}
-			// Parse the response.
-			String[] messages = r.getMessages();
-			if (messages.length != 1) {
-				throw new FTPIllegalReplyException();
-			}
-			Matcher m = PWD_PATTERN.matcher(messages[0]);
-			if (m.find()) {
-				return messages[0].substring(m.start() + 1, m.end() - 1);
-			} else {
-				throw new FTPIllegalReplyException();
-			}
 		}
 	}
 
 	/**
-	 * This method changes the current working directory.
+	 * This method deletes a remote directory.
 	 * 
 	 * @param path
-	 *            The path to the new working directory.
+	 *            The path to the directory.
 	 * @throws IllegalStateException
 	 *             If the client is not connected or not authenticated.
 	 * @throws IOException
@@ -1620,7 +3738,7 @@ public class FTPClient {
 	 * @throws FTPException
 	 *             If the operation fails.
 	 */
-	public void changeDirectory(String path) throws IllegalStateException,
+	public void deleteDirectory(String path) throws IllegalStateException,
 			IOException, FTPIllegalReplyException, FTPException {
 		synchronized (lock) {
 			// Is this client connected?
@@ -1631,19 +3749,22 @@ public class FTPClient {
 			if (!authenticated) {
 				throw new IllegalStateException("Client not authenticated");
 			}
-			// Send the CWD command.
-			communication.sendFTPCommand("CWD " + path);
+			// Sends the RMD command.
+			sendFTPCommand("RMD " + path);
 			FTPReply r = communication.readFTPReply();
 			touchAutoNoopTimer();
 			if (!r.isSuccessCode()) {
 				throw new FTPException(r);
 			}
+			forgetDirectories(path);
 		}
 	}
 
 	/**
-	 * This method changes the current working directory to the parent one.
+	 * This method creates a new remote directory in the current working one.
 	 * 
+	 * @param directoryName
+	 *            The name of the new directory.
 	 * @throws IllegalStateException
 	 *             If the client is not connected or not authenticated.
 	 * @throws IOException
@@ -1653,7 +3774,8 @@ public class FTPClient {
 	 * @throws FTPException
 	 *             If the operation fails.
 	 */
-	public void changeDirectoryUp() throws IllegalStateException, IOException,
+	public void createDirectory(String directoryName)
+			throws IllegalStateException, IOException,
 			FTPIllegalReplyException, FTPException {
 		synchronized (lock) {
 			// Is this client connected?
@@ -1664,8 +3786,8 @@ public class FTPClient {
 			if (!authenticated) {
 				throw new IllegalStateException("Client not authenticated");
 			}
-			// Sends the CWD command.
-			communication.sendFTPCommand("CDUP");
+			// Sends the MKD command.
+			sendFTPCommand("MKD " + directoryName);
 			FTPReply r = communication.readFTPReply();
 			touchAutoNoopTimer();
 			if (!r.isSuccessCode()) {
@@ -1675,12 +3797,13 @@ public class FTPClient {
 	}
 
 	/**
-	 * This method asks and returns the last modification date of a file or
-	 * directory.
+	 * This method deletes many remote files, pipelining the DELE commands on the control connection
+	 * (see {@link FTPClient#setPipelineWindow(int)}). A failure doesn't stop
+	 * the batch: its outcome is the exception explaining it.
 	 * 
-	 * @param path
-	 *            The path to the file or the directory.
-	 * @return The file/directory last modification date.
+	 * @param paths
+	 *            The paths, as strings.
+	 * @return The outcomes, in the order of the paths.
 	 * @throws IllegalStateException
 	 *             If the client is not connected or not authenticated.
 	 * @throws IOException
@@ -1688,9 +3811,10 @@ public class FTPClient {
 	 * @throws FTPIllegalReplyException
 	 *             If the server replies in an illegal way.
 	 * @throws FTPException
-	 *             If the operation fails.
+	 *             If the batch can't be started.
+	 * @since 1.8
 	 */
-	public Date modifiedDate(String path) throws IllegalStateException,
+	public FTPBatchResult deleteFiles(List paths) throws IllegalStateException,
 			IOException, FTPIllegalReplyException, FTPException {
 		synchronized (lock) {
 			// Is this client connected?
@@ -1701,32 +3825,21 @@ public class FTPClient {
 			if (!authenticated) {
 				throw new IllegalStateException("Client not authenticated");
 			}
-			// Sends the MDTM command.
-			communication.sendFTPCommand("MDTM " + path);
-			FTPReply r = communication.readFTPReply();
-			touchAutoNoopTimer();
-			if (!r.isSuccessCode()) {
-				throw new FTPException(r);
-			}
-			String[] messages = r.getMessages();
-			if (messages.length != 1) {
-				throw new FTPIllegalReplyException();
-			} else {
-				try {
-					return MDTM_DATE_FORMAT.parse(messages[0]);
-				} catch (ParseException e) {
-					throw new FTPIllegalReplyException();
-				}
-			}
+			FTPBatchResult result = new FTPBatchResult(toPathArray(paths));
+			int[] all = getUnresolved(result);
+			applyReplies(result, all, pipelineCommands(result, all, "DELE "));
+			return result;
 		}
 	}
 
 	/**
-	 * This method asks and returns a file size in bytes.
+	 * This method deletes many empty remote directories, pipelining the RMD commands on the control connection
+	 * (see {@link FTPClient#setPipelineWindow(int)}). A failure doesn't stop
+	 * the batch: its outcome is the exception explaining it.
 	 * 
-	 * @param path
-	 *            The path to the file.
-	 * @return The file size in bytes.
+	 * @param paths
+	 *            The paths, as strings.
+	 * @return The outcomes, in the order of the paths.
 	 * @throws IllegalStateException
 	 *             If the client is not connected or not authenticated.
 	 * @throws IOException
@@ -1734,10 +3847,12 @@ public class FTPClient {
 	 * @throws FTPIllegalReplyException
 	 *             If the server replies in an illegal way.
 	 * @throws FTPException
-	 *             If the operation fails.
+	 *             If the batch can't be started.
+	 * @since 1.8
 	 */
-	public long fileSize(String path) throws IllegalStateException,
-			IOException, FTPIllegalReplyException, FTPException {
+	public FTPBatchResult deleteDirectories(List paths)
+			throws IllegalStateException, IOException,
+			FTPIllegalReplyException, FTPException {
 		synchronized (lock) {
 			// Is this client connected?
 			if (!connected) {
@@ -1747,51 +3862,27 @@ public class FTPClient {
 			if (!authenticated) {
 				throw new IllegalStateException("Client not authenticated");
 			}
-			// Sends the TYPE I command.
-			communication.sendFTPCommand("TYPE I");
-			FTPReply r = communication.readFTPReply();
-			touchAutoNoopTimer();
-			if (!r.isSuccessCode()) {
-				throw new FTPException(r);
-			}
-			// Sends the SIZE command.
-			communication.sendFTPCommand("SIZE " + path);
-			r = communication.readFTPReply();
-			touchAutoNoopTimer();
-			if (!r.isSuccessCode()) {
-				throw new FTPException(r);
-			}
-			String[] messages = r.getMessages();
-			if (messages.length != 1) {
-				throw new FTPIllegalReplyException();
-			} else {
-				try {
-					return Long.parseLong(messages[0]);
-				} catch (Throwable t) {
-					throw new FTPIllegalReplyException();
+			FTPBatchResult result = new FTPBatchResult(toPathArray(paths));
+			int[] all = getUnresolved(result);
+			applyReplies(result, all, pipelineCommands(result, all, "RMD "));
+			for (int i = 0; i < result.size(); i++) {
+				if (result.isSuccessful(i)) {
+					forgetDirectories(result.getPath(i));
 				}
 			}
+			return result;
 		}
 	}
 
 	/**
-	 * This method renames a remote file or directory. It can also be used to
-	 * move a file or a directory.
-	 * 
-	 * In example:
-	 * 
-	 * <pre>
-	 * client.rename(&quot;oldname&quot;, &quot;newname&quot;); // This one renames
-	 * </pre>
-	 * 
-	 * <pre>
-	 * client.rename(&quot;the/old/path/oldname&quot;, &quot;/a/new/path/newname&quot;); // This one moves
-	 * </pre>
+	 * This method creates many remote directories, in the given order, so a
+	 * parent has to precede its children, pipelining the MKD commands on the control connection
+	 * (see {@link FTPClient#setPipelineWindow(int)}). A failure doesn't stop
+	 * the batch: its outcome is the exception explaining it.
 	 * 
-	 * @param oldPath
-	 *            The current path of the file (or directory).
-	 * @param newPath
-	 *            The new path for the file (or directory).
+	 * @param paths
+	 *            The paths, as strings.
+	 * @return The outcomes, in the order of the paths.
 	 * @throws IllegalStateException
 	 *             If the client is not connected or not authenticated.
 	 * @throws IOException
@@ -1799,9 +3890,10 @@ public class FTPClient {
 	 * @throws FTPIllegalReplyException
 	 *             If the server replies in an illegal way.
 	 * @throws FTPException
-	 *             If the operation fails.
+	 *             If the batch can't be started.
+	 * @since 1.8
 	 */
-	public void rename(String oldPath, String newPath)
+	public FTPBatchResult createDirectories(List paths)
 			throws IllegalStateException, IOException,
 			FTPIllegalReplyException, FTPException {
 		synchronized (lock) {
@@ -1813,28 +3905,26 @@ public class FTPClient {
 			if (!authenticated) {
 				throw new IllegalStateException("Client not authenticated");
 			}
-			// Sends the RNFR command.
-			communication.sendFTPCommand("RNFR " + oldPath);
-			FTPReply r = communication.readFTPReply();
-			touchAutoNoopTimer();
-			if (r.getCode() != 350) {
-				throw new FTPException(r);
-			}
-			// Sends the RNFR command.
-			communication.sendFTPCommand("RNTO " + newPath);
-			r = communication.readFTPReply();
-			touchAutoNoopTimer();
-			if (!r.isSuccessCode()) {
-				throw new FTPException(r);
-			}
+			FTPBatchResult result = new FTPBatchResult(toPathArray(paths));
+			int[] all = getUnresolved(result);
+			applyReplies(result, all, pipelineCommands(result, all, "MKD "));
+			return result;
 		}
 	}
 
 	/**
-	 * This method deletes a remote file.
+	 * This method renames or moves many remote files and directories,
+	 * pipelining the RNFR and RNTO commands on the control connection (see
+	 * {@link FTPClient#setPipelineWindow(int)}). A failure doesn't stop the
+	 * batch: its outcome is the exception explaining it.
 	 * 
-	 * @param path
-	 *            The path to the file.
+	 * @param oldPaths
+	 *            The current paths, as strings.
+	 * @param newPaths
+	 *            The new paths, as strings, in the same order.
+	 * @return The outcomes, in the order of the current paths.
+	 * @throws IllegalArgumentException
+	 *             If the two lists have different sizes.
 	 * @throws IllegalStateException
 	 *             If the client is not connected or not authenticated.
 	 * @throws IOException
@@ -1842,10 +3932,15 @@ public class FTPClient {
 	 * @throws FTPIllegalReplyException
 	 *             If the server replies in an illegal way.
 	 * @throws FTPException
-	 *             If the operation fails.
+	 *             If the batch can't be started.
+	 * @since 1.8
 	 */
-	public void deleteFile(String path) throws IllegalStateException,
+	public FTPBatchResult rename(List oldPaths, List newPaths)
+			throws IllegalArgumentException, IllegalStateException,
 			IOException, FTPIllegalReplyException, FTPException {
+		if (oldPaths.size() != newPaths.size()) {
+			throw new IllegalArgumentException("Lists of different sizes");
+		}
 		synchronized (lock) {
 			// Is this client connected?
 			if (!connected) {
@@ -1855,21 +3950,49 @@ public class FTPClient {
 			if (!authenticated) {
 				throw new IllegalStateException("Client not authenticated");
 			}
-			// Sends the DELE command.
-			communication.sendFTPCommand("DELE " + path);
-			FTPReply r = communication.readFTPReply();
-			touchAutoNoopTimer();
-			if (!r.isSuccessCode()) {
-				throw new FTPException(r);
+			FTPBatchResult result = new FTPBatchResult(toPathArray(oldPaths));
+			String[] targets = toPathArray(newPaths);
+			String[] commands = new String[targets.length * 2];
+			for (int i = 0; i < targets.length; i++) {
+				commands[i * 2] = "RNFR " + result.getPath(i);
+				commands[i * 2 + 1] = "RNTO " + targets[i];
+			}
+			// A refused RNFR makes the server refuse its RNTO too.
+			FTPReply[] replies = pipelineCommands(commands);
+			for (int i = 0; i < targets.length; i++) {
+				FTPReply r = replies[i * 2];
+				if (r.getCode() != 350) {
+					result.setException(i, new FTPException(r));
+					continue;
+				}
+				r = replies[i * 2 + 1];
+				if (!r.isSuccessCode()) {
+					result.setException(i, new FTPException(r));
+					continue;
+				}
+				result.setValue(i, Boolean.TRUE);
+				forgetDirectories(result.getPath(i));
 			}
+			return result;
 		}
 	}
 
 	/**
-	 * This method deletes a remote directory.
+	 * This method deletes a remote directory with all its contents. The tree
+	 * is listed a directory at a time, then the DELE commands for the files
+	 * and the RMD commands for the directories are pipelined on the control
+	 * connection (see {@link FTPClient#setPipelineWindow(int)}), deepest
+	 * entries first, so every directory is emptied before its own removal.
+	 * 
+	 * A failure doesn't stop the deletion: its outcome is the exception
+	 * explaining it. A directory which can't be listed is not emptied, so its
+	 * removal fails too.
 	 * 
 	 * @param path
 	 *            The path to the directory.
+	 * @return The outcomes for every removed entry: the files, then the
+	 *         directories, deepest first, the last one being the given
+	 *         directory.
 	 * @throws IllegalStateException
 	 *             If the client is not connected or not authenticated.
 	 * @throws IOException
@@ -1877,9 +4000,10 @@ public class FTPClient {
 	 * @throws FTPIllegalReplyException
 	 *             If the server replies in an illegal way.
 	 * @throws FTPException
-	 *             If the operation fails.
+	 *             If the batch can't be started.
+	 * @since 1.8
 	 */
-	public void deleteDirectory(String path) throws IllegalStateException,
+	public FTPBatchResult deleteTree(String path) throws IllegalStateException,
 			IOException, FTPIllegalReplyException, FTPException {
 		synchronized (lock) {
 			// Is this client connected?
@@ -1890,21 +4014,68 @@ public class FTPClient {
 			if (!authenticated) {
 				throw new IllegalStateException("Client not authenticated");
 			}
-			// Sends the RMD command.
-			communication.sendFTPCommand("RMD " + path);
-			FTPReply r = communication.readFTPReply();
-			touchAutoNoopTimer();
-			if (!r.isSuccessCode()) {
-				throw new FTPException(r);
+			// Walks the tree, breadth first.
+			ArrayList files = new ArrayList();
+			ArrayList directories = new ArrayList();
+			directories.add(path);
+			for (int i = 0; i < directories.size(); i++) {
+				String directory = (String) directories.get(i);
+				FTPFile[] entries;
+				try {
+					entries = list(directory, null);
+				} catch (FTPException e) {
+					continue;
+				} catch (FTPDataTransferException e) {
+					continue;
+				} catch (FTPAbortedException e) {
+					continue;
+				} catch (FTPListParseException e) {
+					continue;
+				}
+				String prefix = directory.endsWith("/") ? directory : directory + "/";
+				for (int k = 0; k < entries.length; k++) {
+					String name = entries[k].getName();
+					if (name.equals(".") || name.equals("..")) {
+						continue;
+					}
+					if (entries[k].getType() == FTPFile.TYPE_DIRECTORY) {
+						directories.add(prefix + name);
+					} else {
+						files.add(prefix + name);
+					}
+				}
 			}
+			// Files first, then the directories, deepest first.
+			int size = files.size() + directories.size();
+			String[] paths = new String[size];
+			String[] commands = new String[size];
+			for (int i = 0; i < files.size(); i++) {
+				paths[i] = (String) files.get(i);
+				commands[i] = "DELE " + paths[i];
+			}
+			for (int i = 0; i < directories.size(); i++) {
+				int k = files.size() + i;
+				paths[k] = (String) directories.get(directories.size() - 1 - i);
+				commands[k] = "RMD " + paths[k];
+			}
+			FTPBatchResult result = new FTPBatchResult(paths);
+			int[] all = getUnresolved(result);
+			applyReplies(result, all, pipelineCommands(commands));
+			forgetDirectories(path);
+			return result;
 		}
 	}
 
 	/**
-	 * This method creates a new remote directory in the current working one.
+	 * This method creates a remote directory together with its missing
+	 * parents.
 	 * 
-	 * @param directoryName
-	 *            The name of the new directory.
+	 * The client remembers the absolute paths of the directories created or
+	 * found, so the following calls skip the known ancestors. See
+	 * {@link FTPClient#mkdirs(List)}.
+	 * 
+	 * @param path
+	 *            The path to the directory.
 	 * @throws IllegalStateException
 	 *             If the client is not connected or not authenticated.
 	 * @throws IOException
@@ -1912,11 +4083,49 @@ public class FTPClient {
 	 * @throws FTPIllegalReplyException
 	 *             If the server replies in an illegal way.
 	 * @throws FTPException
-	 *             If the operation fails.
+	 *             If the directory can't be created.
+	 * @since 1.8
 	 */
-	public void createDirectory(String directoryName)
-			throws IllegalStateException, IOException,
-			FTPIllegalReplyException, FTPException {
+	public void mkdirs(String path) throws IllegalStateException,
+			IOException, FTPIllegalReplyException, FTPException {
+		ArrayList paths = new ArrayList();
+		paths.add(path);
+		FTPBatchResult result = mkdirs(paths);
+		if (!result.isSuccessful(0)) {
+			throw (FTPException) result.getException(0);
+		}
+	}
+
+	/**
+	 * This method creates many remote directories together with their
+	 * missing parents. The MKD commands for every directory and ancestor not
+	 * known to exist are pipelined on the control connection (see
+	 * {@link FTPClient#setPipelineWindow(int)}), parents first. A MKD refused
+	 * because the directory already exists is not a failure: if the server
+	 * refuses to create one of the given directories, and none of its
+	 * descendants has been created, the client checks whether it exists.
+	 * 
+	 * The client remembers the absolute paths of the directories created or
+	 * found until it disconnects, so the following calls skip the known
+	 * ancestors. The memory is updated by the deletions and the renames made
+	 * by the client; changes made by others are not detected.
+	 * 
+	 * @param paths
+	 *            The paths to the directories, as strings.
+	 * @return The outcomes, in the order of the paths. A failure is a
+	 *         {@link FTPException}.
+	 * @throws IllegalStateException
+	 *             If the client is not connected or not authenticated.
+	 * @throws IOException
+	 *             If an I/O error occurs.
+	 * @throws FTPIllegalReplyException
+	 *             If the server replies in an illegal way.
+	 * @throws FTPException
+	 *             If the batch can't be started.
+	 * @since 1.8
+	 */
+	public FTPBatchResult mkdirs(List paths) throws IllegalStateException,
+			IOException, FTPIllegalReplyException, FTPException {
 		synchronized (lock) {
 			// Is this client connected?
 			if (!connected) {
@@ -1926,12 +4135,139 @@ public class FTPClient {
 			if (!authenticated) {
 				throw new IllegalStateException("Client not authenticated");
 			}
-			// Sends the MKD command.
-			communication.sendFTPCommand("MKD " + directoryName);
-			FTPReply r = communication.readFTPReply();
-			touchAutoNoopTimer();
-			if (!r.isSuccessCode()) {
-				throw new FTPException(r);
+			FTPBatchResult result = new FTPBatchResult(toPathArray(paths));
+			// The directories to create, parents first.
+			ArrayList targets = new ArrayList();
+			HashSet existing = new HashSet();
+			for (int i = 0; i < result.size(); i++) {
+				String[] ancestors = getAncestors(result.getPath(i));
+				for (int k = 0; k < ancestors.length; k++) {
+					if (knownDirectories.contains(ancestors[k])) {
+						existing.add(ancestors[k]);
+					} else if (!targets.contains(ancestors[k])) {
+						targets.add(ancestors[k]);
+					}
+				}
+			}
+			String[] commands = new String[targets.size()];
+			for (int i = 0; i < commands.length; i++) {
+				commands[i] = "MKD " + targets.get(i);
+			}
+			FTPReply[] replies = pipelineCommands(commands);
+			HashMap failures = new HashMap();
+			for (int i = 0; i < replies.length; i++) {
+				String target = (String) targets.get(i);
+				if (replies[i].isSuccessCode()) {
+					// Its ancestors exist too.
+					String[] ancestors = getAncestors(target);
+					for (int k = 0; k < ancestors.length; k++) {
+						existing.add(ancestors[k]);
+					}
+				} else {
+					failures.put(target, new FTPException(replies[i]));
+				}
+			}
+			// Outcomes.
+			ArrayList unknown = new ArrayList();
+			ArrayList unknownIndexes = new ArrayList();
+			for (int i = 0; i < result.size(); i++) {
+				String[] ancestors = getAncestors(result.getPath(i));
+				String directory = ancestors[ancestors.length - 1];
+				if (existing.contains(directory)) {
+					result.setValue(i, Boolean.TRUE);
+				} else {
+					unknown.add(directory);
+					unknownIndexes.add(new Integer(i));
+				}
+			}
+			// Refused, maybe since they exist.
+			if (unknown.size() > 0) {
+				FTPBatchResult check = stat(unknown);
+				for (int i = 0; i < check.size(); i++) {
+					String directory = check.getPath(i);
+					int index = ((Integer) unknownIndexes.get(i)).intValue();
+					FTPFile file = (FTPFile) check.getValue(i);
+					if (file != null && file.getType() == FTPFile.TYPE_DIRECTORY) {
+						existing.add(directory);
+						result.setValue(index, Boolean.TRUE);
+					} else {
+						FTPException e = (FTPException) failures.get(directory);
+						if (e == null) {
+							e = new FTPException(FTPCodes.FILE_NOT_FOUND,
+									"Cannot create the directory: " + directory);
+						}
+						result.setException(index, e);
+					}
+				}
+			}
+			// Remembers the absolute paths.
+			for (Iterator i = existing.iterator(); i.hasNext();) {
+				String directory = (String) i.next();
+				if (directory.startsWith("/")) {
+					knownDirectories.add(directory);
+				}
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Sets the outcomes of a batch from the replies to its commands.
+	 */
+	private void applyReplies(FTPBatchResult result, int[] indexes,
+			FTPReply[] replies) {
+		for (int i = 0; i < indexes.length; i++) {
+			if (replies[i].isSuccessCode()) {
+				result.setValue(indexes[i], Boolean.TRUE);
+			} else {
+				result.setException(indexes[i], new FTPException(replies[i]));
+			}
+		}
+	}
+
+	/**
+	 * Returns the ancestors of a path, from the topmost one to the path
+	 * itself.
+	 */
+	private static String[] getAncestors(String path) {
+		while (path.length() > 1 && path.endsWith("/")) {
+			path = path.substring(0, path.length() - 1);
+		}
+		ArrayList ret = new ArrayList();
+		int sep = path.indexOf('/', 1);
+		while (sep > 0) {
+			ret.add(path.substring(0, sep));
+			sep = path.indexOf('/', sep + 1);
+		}
+		ret.add(path);
+		int size = ret.size();
+		String[] aux = new String[size];
+		for (int i = 0; i < size; i++) {
+			aux[i] = (String) ret.get(i);
+		}
+		return aux;
+	}
+
+	/**
+	 * Forgets the known directories removed or moved with the given path. If
+	 * the path is relative, every known directory is forgotten.
+	 */
+	private void forgetDirectories(String path) {
+		if (knownDirectories.isEmpty()) {
+			return;
+		}
+		if (!path.startsWith("/")) {
+			knownDirectories.clear();
+			return;
+		}
+		while (path.length() > 1 && path.endsWith("/")) {
+			path = path.substring(0, path.length() - 1);
+		}
+		String prefix = path.endsWith("/") ? path : path + "/";
+		for (Iterator i = knownDirectories.iterator(); i.hasNext();) {
+			String directory = (String) i.next();
+			if (directory.equals(path) || directory.startsWith(prefix)) {
+				i.remove();
 			}
 		}
 	}
@@ -1962,7 +4298,7 @@ public class FTPClient {
 				throw new IllegalStateException("Client not authenticated");
 			}
 			// Sends the HELP command.
-			communication.sendFTPCommand("HELP");
+			sendFTPCommand("HELP");
 			FTPReply r = communication.readFTPReply();
 			touchAutoNoopTimer();
 			if (!r.isSuccessCode()) {
@@ -1998,7 +4334,7 @@ public class FTPClient {
 				throw new IllegalStateException("Client not authenticated");
 			}
 			// Sends the STAT command.
-			communication.sendFTPCommand("STAT");
+			sendFTPCommand("STAT");
 			FTPReply r = communication.readFTPReply();
 			touchAutoNoopTimer();
 			if (!r.isSuccessCode()) {
@@ -2054,10 +4390,123 @@ public class FTPClient {
 	 * @see FTPClient#listNames()
 	 * @since 1.2
 	 */
-	public FTPFile[] list(String fileSpec) throws IllegalStateException,
-			IOException, FTPIllegalReplyException, FTPException,
-			FTPDataTransferException, FTPAbortedException,
-			FTPListParseException {
+	public FTPFile[] list(String fileSpec) throws IllegalStateException,
+			IOException, FTPIllegalReplyException, FTPException,
+			FTPDataTransferException, FTPAbortedException,
+			FTPListParseException {
+		return list(fileSpec, null);
+	}
+
+	/**
+	 * This method lists the entries of the current working directory accepted
+	 * by a filter.
+	 * 
+	 * The filter is applied by the list parsers while parsing the response,
+	 * so the rejected entries never become FTPFile objects (see
+	 * {@link FTPFilteringListParser}). If no fileSpec is given, the LIST
+	 * command is used and the filter allows it, the name pattern of the
+	 * filter is sent to the server as the LIST argument, so the server can
+	 * skip the unwanted entries (see
+	 * {@link FTPFileFilter#setServerSideEnabled(boolean)}).
+	 * 
+	 * Calling this method blocks the current thread until the operation is
+	 * completed. The operation could be interrupted by another thread calling
+	 * abortCurrentDataTransfer(). The list() method will break with a
+	 * FTPAbortedException.
+	 * 
+	 * @param fileSpec
+	 *            A file filter string. Depending on the server implementation,
+	 *            wildcard characters could be accepted. Could be null.
+	 * @param filter
+	 *            The filter selecting the entries. If null, every entry is
+	 *            returned.
+	 * @return The list of the accepted files (and directories) in the current
+	 *         working directory.
+	 * @throws IllegalStateException
+	 *             If the client is not connected or not authenticated.
+	 * @throws IOException
+	 *             If an I/O error occurs.
+	 * @throws FTPIllegalReplyException
+	 *             If the server replies in an illegal way.
+	 * @throws FTPException
+	 *             If the operation fails.
+	 * @throws FTPDataTransferException
+	 *             If a I/O occurs in the data transfer connection. If you
+	 *             receive this exception the transfer failed, but the main
+	 *             connection with the remote FTP server is in theory still
+	 *             working.
+	 * @throws FTPAbortedException
+	 *             If operation is aborted by another thread.
+	 * @throws FTPListParseException
+	 *             If none of the registered parsers can handle the response
+	 *             sent by the server.
+	 * @see FTPFileFilter
+	 * @see FTPClient#list(String)
+	 * @since 1.8
+	 */
+	public FTPFile[] list(String fileSpec, FTPFileFilter filter)
+			throws IllegalStateException, IOException,
+			FTPIllegalReplyException, FTPException, FTPDataTransferException,
+			FTPAbortedException, FTPListParseException {
+		return list(fileSpec, filter, -1);
+	}
+
+	/**
+	 * This method lists the entries of the current working directory accepted
+	 * by a filter, giving a hint about the size of the listing. With the
+	 * STAT_LIST_AUTO policy, the hint tells whether the listing is small
+	 * enough to be obtained through the control connection.
+	 * 
+	 * Calling this method blocks the current thread until the operation is
+	 * completed. The operation could be interrupted by another thread calling
+	 * abortCurrentDataTransfer(), unless it is running through the control
+	 * connection. The list() method will break with a FTPAbortedException.
+	 * 
+	 * @param fileSpec
+	 *            A file filter string. Depending on the server implementation,
+	 *            wildcard characters could be accepted. Could be null.
+	 * @param filter
+	 *            The filter selecting the entries. If null, every entry is
+	 *            returned.
+	 * @param sizeHint
+	 *            The expected number of entries, or a negative value if it is
+	 *            unknown.
+	 * @return The list of the accepted files (and directories) in the current
+	 *         working directory.
+	 * @throws IllegalStateException
+	 *             If the client is not connected or not authenticated.
+	 * @throws IOException
+	 *             If an I/O error occurs.
+	 * @throws FTPIllegalReplyException
+	 *             If the server replies in an illegal way.
+	 * @throws FTPException
+	 *             If the operation fails.
+	 * @throws FTPDataTransferException
+	 *             If a I/O occurs in the data transfer connection. If you
+	 *             receive this exception the transfer failed, but the main
+	 *             connection with the remote FTP server is in theory still
+	 *             working.
+	 * @throws FTPAbortedException
+	 *             If operation is aborted by another thread.
+	 * @throws FTPListParseException
+	 *             If none of the registered parsers can handle the response
+	 *             sent by the server.
+	 * @see FTPClient#setStatListPolicy(int)
+	 * @since 1.8
+	 */
+	public FTPFile[] list(String fileSpec, FTPFileFilter filter, int sizeHint)
+			throws IllegalStateException, IOException,
+			FTPIllegalReplyException, FTPException, FTPDataTransferException,
+			FTPAbortedException, FTPListParseException {
+		// Another channel?
+		Channel channel = acquireChannel();
+		if (channel != null) {
+			try {
+				return channel.client.list(fileSpec, filter, sizeHint);
+			} finally {
+				releaseChannel(channel);
+			}
+		}
 		synchronized (lock) {
 			// Is this client connected?
 			if (!connected) {
@@ -2067,15 +4516,22 @@ public class FTPClient {
 			if (!authenticated) {
 				throw new IllegalStateException("Client not authenticated");
 			}
+			// Through the control connection?
+			if (isStatListSuitable(sizeHint)) {
+				FTPFile[] ret = statList(fileSpec, filter);
+				if (ret != null) {
+					return ret;
+				}
+			}
 			// ASCII, please!
-			communication.sendFTPCommand("TYPE A");
+			sendFTPCommand("TYPE A");
 			FTPReply r = communication.readFTPReply();
 			touchAutoNoopTimer();
 			if (!r.isSuccessCode()) {
 				throw new FTPException(r);
 			}
 			// Prepares the connection for the data transfer.
-			FTPDataTransferConnectionProvider provider = openDataTransferChannel();
+			FTPDataTransferConnectionProvider provider = openDataTransferChannel(true, false);
 			// MLSD or LIST command?
 			boolean mlsdCommand;
 			if (mlsdPolicy == MLSD_IF_SUPPORTED) {
@@ -2086,6 +4542,11 @@ public class FTPClient {
 				mlsdCommand = false;
 			}
 			String command = mlsdCommand ? "MLSD" : "LIST";
+			// Lets the server apply the name pattern of the filter.
+			if ((fileSpec == null || fileSpec.length() == 0) && filter != null
+					&& !mlsdCommand) {
+				fileSpec = filter.getServerFileSpec();
+			}
 			// Adds the file/directory selector.
 			if (fileSpec != null && fileSpec.length() > 0) {
 				command += " " + fileSpec;
@@ -2095,7 +4556,7 @@ public class FTPClient {
 			// Local abort state.
 			boolean wasAborted = false;
 			// Sends the command.
-			communication.sendFTPCommand(command);
+			sendFTPCommand(command);
 			try {
 				Socket dtConnection;
 				try {
@@ -2109,6 +4570,7 @@ public class FTPClient {
 					aborted = false;
 					consumeAborCommandReply = false;
 				}
+				Inflater inflater = null;
 				// Fetch the list from the data transfer connection.
 				NVTASCIIReader dataReader = null;
 				try {
@@ -2116,7 +4578,8 @@ public class FTPClient {
 					dataTransferInputStream = dtConnection.getInputStream();
 					// MODE Z enabled?
 					if (modezEnabled) {
-						dataTransferInputStream = new InflaterInputStream(dataTransferInputStream);
+						inflater = FTPCompression.getInflater();
+						dataTransferInputStream = new InflaterInputStream(dataTransferInputStream, inflater, SEND_AND_RECEIVE_BUFFER_SIZE);
 					}
 					// Let's do it!
 					dataReader = new NVTASCIIReader(dataTransferInputStream, mlsdCommand ? "UTF-8" : pickCharset());
@@ -2156,6 +4619,10 @@ public class FTPClient {
 						ongoingDataTransfer = false;
 						aborted = false;
 					}
+					// Gives back the compression resources.
+					if (inflater != null) {
+						FTPCompression.release(inflater);
+					}
 				}
 			} finally {
 				r = communication.readFTPReply();
@@ -2185,36 +4652,9 @@ public class FTPClient {
 			if (mlsdCommand) {
 				// Forces the MLSDListParser.
 				MLSDListParser parser = new MLSDListParser();
-				ret = parser.parse(list);
+				ret = applyListParser(parser, list, filter);
 			} else {
-				// Is there any already successful parser?
-				if (parser != null) {
-					// Yes, let's try with it.
-					try {
-						ret = parser.parse(list);
-					} catch (FTPListParseException e) {
-						// That parser doesn't work anymore.
-						parser = null;
-					}
-				}
-				// Is there an available result?
-				if (ret == null) {
-					// Try to parse the list with every available parser.
-					for (Iterator i = listParsers.iterator(); i.hasNext();) {
-						FTPListParser aux = (FTPListParser) i.next();
-						try {
-							// Let's try!
-							ret = aux.parse(list);
-							// This parser smells good!
-							parser = aux;
-							// Leave the loop.
-							break;
-						} catch (FTPListParseException e) {
-							// Let's try the next one.
-							continue;
-						}
-					}
-				}
+				ret = parseList(list, filter);
 			}
 			if (ret == null) {
 				// None of the parsers can handle the list response.
@@ -2226,6 +4666,307 @@ public class FTPClient {
 		}
 	}
 
+	/**
+	 * Parses the lines of a LIST response with the registered parsers.
+	 * 
+	 * The parser which handled the responses of the same host in a previous
+	 * operation (also in a previous connection, or by another client) is tried
+	 * first. Otherwise, or if it doesn't work anymore, the registered parsers
+	 * are probed against the first lines of the response, in the order
+	 * suggested by the SYST reply of the server, and only a parser accepting
+	 * them is applied to the whole response. The chosen parser is remembered
+	 * in the {@link FTPListParserCache}.
+	 * 
+	 * @param list
+	 *            The LIST response, splitted by line.
+	 * @param filter
+	 *            The filter applied to the entries (could be null).
+	 * @return The parsed list, or null if none of the registered parsers can
+	 *         handle the response.
+	 * @throws IOException
+	 *             If an I/O error occurs while sending the SYST command.
+	 * @throws FTPIllegalReplyException
+	 *             If the server replies in an illegal way to the SYST command.
+	 * @since 1.8
+	 */
+	private FTPFile[] parseList(String[] list, FTPFileFilter filter)
+			throws IOException, FTPIllegalReplyException {
+		// The sample used to probe the parsers.
+		String[] sample = list;
+		if (list.length > LIST_PARSER_SAMPLE_SIZE) {
+			sample = new String[LIST_PARSER_SAMPLE_SIZE];
+			System.arraycopy(list, 0, sample, 0, LIST_PARSER_SAMPLE_SIZE);
+		}
+		// Recovers the parser which handled this host in a previous session.
+		if (parser == null) {
+			String className = FTPListParserCache.getParserClassName(host, port);
+			parser = findListParser(className);
+		}
+		// Is there any already successful parser?
+		if (parser != null) {
+			// Yes, let's try with it.
+			FTPFile[] ret = tryListParser(parser, sample, list, filter);
+			if (ret != null) {
+				return ret;
+			}
+			// That parser doesn't work anymore.
+			FTPListParserCache.removeParser(host, port);
+			FTPListParser failed = parser;
+			parser = null;
+			// Try every other available parser.
+			FTPListParser[] candidates = sortListParsers();
+			for (int i = 0; i < candidates.length; i++) {
+				if (candidates[i] != failed) {
+					ret = tryListParser(candidates[i], sample, list, filter);
+					if (ret != null) {
+						return ret;
+					}
+				}
+			}
+			return null;
+		}
+		// Try to parse the list with every available parser.
+		FTPListParser[] candidates = sortListParsers();
+		for (int i = 0; i < candidates.length; i++) {
+			FTPFile[] ret = tryListParser(candidates[i], sample, list, filter);
+			if (ret != null) {
+				return ret;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Tries a parser, first against a sample of the response and then against
+	 * the whole response. If the parser works, it becomes the one used by the
+	 * client and it is remembered in the {@link FTPListParserCache}.
+	 * 
+	 * @return The parsed list, or null if the parser can't handle the
+	 *         response.
+	 */
+	private FTPFile[] tryListParser(FTPListParser aux, String[] sample,
+			String[] list, FTPFileFilter filter) {
+		FTPFile[] ret;
+		try {
+			// Let's try with the first lines...
+			ret = applyListParser(aux, sample, filter);
+			// ... then with the whole response.
+			if (ret != null && sample != list) {
+				ret = applyListParser(aux, list, filter);
+			}
+		} catch (FTPListParseException e) {
+			ret = null;
+		}
+		if (ret != null) {
+			// This parser smells good!
+			parser = aux;
+			FTPListParserCache.setParser(host, port, aux);
+		}
+		return ret;
+	}
+
+	/**
+	 * Checks whether a listing should be obtained with the STAT command.
+	 * 
+	 * @param sizeHint
+	 *            The expected number of entries, or a negative value if it is
+	 *            unknown.
+	 */
+	private boolean isStatListSuitable(int sizeHint) {
+		if (statListPolicy == STAT_LIST_ALWAYS) {
+			return true;
+		}
+		if (statListPolicy != STAT_LIST_AUTO || sizeHint > statListThreshold) {
+			return false;
+		}
+		// STAT gives a LIST-like output: it would differ from MLSD's.
+		if (mlsdPolicy == MLSD_ALWAYS
+				|| (mlsdPolicy == MLSD_IF_SUPPORTED && mlsdSupported)) {
+			return false;
+		}
+		// What do we know about the server?
+		if (statListing == 0) {
+			FTPCapabilityCache.Entry entry = FTPCapabilityCache.get(host, port);
+			if (entry != null) {
+				statListing = entry.getStatListing();
+			}
+		}
+		// Unknown (0): the listing probes STAT, once for the host, since the
+		// outcome is learned and cached.
+		return statListing >= 0;
+	}
+
+	/**
+	 * Lists through the control connection, with the STAT command.
+	 * 
+	 * @param fileSpec
+	 *            The file filter string (could be null).
+	 * @param filter
+	 *            The filter selecting the entries (could be null).
+	 * @return The entries, or null if the server can't list with STAT and the
+	 *         policy allows a listing through a data transfer connection.
+	 */
+	private FTPFile[] statList(String fileSpec, FTPFileFilter filter)
+			throws IOException, FTPIllegalReplyException, FTPException,
+			FTPListParseException {
+		boolean strict = statListPolicy == STAT_LIST_ALWAYS;
+		// A STAT without arguments returns the status of the server.
+		String path = (fileSpec != null && fileSpec.length() > 0) ? fileSpec : ".";
+		sendFTPCommand("STAT " + path);
+		FTPReply r = communication.readFTPReply();
+		touchAutoNoopTimer();
+		int code = r.getCode();
+		if (code != 211 && code != 212 && code != 213) {
+			if (!strict && (code == 500 || code == 501 || code == 502 || code == 504)) {
+				learnStatListing(false);
+				return null;
+			}
+			throw new FTPException(r);
+		}
+		// The first and the last lines describe the reply.
+		String[] messages = r.getMessages();
+		ArrayList lines = new ArrayList();
+		for (int i = 1; i < messages.length - 1; i++) {
+			String line = messages[i];
+			int k = 0;
+			while (k < line.length() && line.charAt(k) == ' ') {
+				k++;
+			}
+			if (k < line.length()) {
+				lines.add(line.substring(k));
+			}
+		}
+		int size = lines.size();
+		if (size == 0) {
+			return new FTPFile[0];
+		}
+		String[] list = new String[size];
+		for (int i = 0; i < size; i++) {
+			list[i] = (String) lines.get(i);
+		}
+		FTPFile[] ret = parseList(list, filter);
+		if (ret == null) {
+			// Not a listing.
+			if (strict) {
+				throw new FTPListParseException();
+			}
+			learnStatListing(false);
+			return null;
+		}
+		learnStatListing(true);
+		return ret;
+	}
+
+	/**
+	 * Remembers whether the server can list with the STAT command.
+	 */
+	private void learnStatListing(boolean works) {
+		int value = works ? 1 : -1;
+		if (statListing != value) {
+			statListing = value;
+			FTPCapabilityCache.setStatListing(host, port, value);
+		}
+	}
+
+	/**
+	 * Applies a parser and a filter to a LIST response, in parallel if the
+	 * response is large enough and the parser supports it. If the parser
+	 * can't apply the filter by itself, the filter is applied to the parsed
+	 * entries.
+	 * 
+	 * @see FTPClient#setParallelListParsingThreshold(int)
+	 */
+	private FTPFile[] applyListParser(FTPListParser aux, String[] list,
+			FTPFileFilter filter) throws FTPListParseException {
+		if (parallelListParsingThreshold > 0
+				&& list.length >= parallelListParsingThreshold
+				&& FTPParallelListParser.isParallelizable(aux)) {
+			return FTPParallelListParser.parse(aux, list, filter, ForkJoinPool.commonPool());
+		} else if (filter == null) {
+			return aux.parse(list);
+		} else if (aux instanceof FTPFilteringListParser) {
+			return ((FTPFilteringListParser) aux).parse(list, filter);
+		} else {
+			FTPFile[] parsed = aux.parse(list);
+			if (parsed == null) {
+				return null;
+			}
+			ArrayList accepted = new ArrayList();
+			for (int i = 0; i < parsed.length; i++) {
+				if (filter.accept(parsed[i])) {
+					accepted.add(parsed[i]);
+				}
+			}
+			int size = accepted.size();
+			FTPFile[] ret = new FTPFile[size];
+			for (int i = 0; i < size; i++) {
+				ret[i] = (FTPFile) accepted.get(i);
+			}
+			return ret;
+		}
+	}
+
+	/**
+	 * Returns the registered parser of the given class.
+	 * 
+	 * @param className
+	 *            The parser class name (could be null).
+	 * @return The parser, or null if no parser of the given class is
+	 *         registered on the client.
+	 */
+	private FTPListParser findListParser(String className) {
+		if (className != null) {
+			for (Iterator i = listParsers.iterator(); i.hasNext();) {
+				FTPListParser aux = (FTPListParser) i.next();
+				if (aux.getClass().getName().equals(className)) {
+					return aux;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the registered parsers, moving in first position the one
+	 * suggested by the SYST reply of the server. The SYST command is sent only
+	 * once per host, since its reply is remembered in the
+	 * {@link FTPListParserCache}.
+	 * 
+	 * @return The registered parsers, sorted.
+	 * @throws IOException
+	 *             If an I/O error occurs.
+	 * @throws FTPIllegalReplyException
+	 *             If the server replies in an illegal way.
+	 */
+	private FTPListParser[] sortListParsers() throws IOException,
+			FTPIllegalReplyException {
+		if (!FTPListParserCache.isSystemTypeKnown(host, port)) {
+			sendFTPCommand("SYST");
+			FTPReply r = communication.readFTPReply();
+			touchAutoNoopTimer();
+			String systemType = null;
+			if (r.isSuccessCode() && r.getMessages().length > 0) {
+				systemType = r.getMessages()[0];
+			}
+			FTPListParserCache.setSystemType(host, port, systemType);
+		}
+		String systemType = FTPListParserCache.getSystemType(host, port);
+		FTPListParser suggested = findListParser(FTPListParserCache.suggestParserClassName(systemType));
+		int size = listParsers.size();
+		FTPListParser[] ret = new FTPListParser[size];
+		int index = 0;
+		if (suggested != null) {
+			ret[index++] = suggested;
+		}
+		for (int i = 0; i < size; i++) {
+			FTPListParser aux = (FTPListParser) listParsers.get(i);
+			if (aux != suggested) {
+				ret[index++] = aux;
+			}
+		}
+		return ret;
+	}
+
 	/**
 	 * This method lists the entries of the current working directory parsing
 	 * the reply to a FTP LIST command.
@@ -2270,7 +5011,49 @@ public class FTPClient {
 	 */
 	public FTPFile[] list() throws IllegalStateException, IOException, FTPIllegalReplyException, FTPException,
 			FTPDataTransferException, FTPAbortedException, FTPListParseException {
-		return list(null);
+		return list(null, null);
+	}
+
+	/**
+	 * This method lists the entries of the current working directory accepted
+	 * by a filter.
+	 * 
+	 * Calling this method blocks the current thread until the operation is
+	 * completed. The operation could be interrupted by another thread calling
+	 * abortCurrentDataTransfer(). The list() method will break with a
+	 * FTPAbortedException.
+	 * 
+	 * @param filter
+	 *            The filter selecting the entries. If null, every entry is
+	 *            returned.
+	 * @return The list of the accepted files (and directories) in the current
+	 *         working directory.
+	 * @throws IllegalStateException
+	 *             If the client is not connected or not authenticated.
+	 * @throws IOException
+	 *             If an I/O error occurs.
+	 * @throws FTPIllegalReplyException
+	 *             If the server replies in an illegal way.
+	 * @throws FTPException
+	 *             If the operation fails.
+	 * @throws FTPDataTransferException
+	 *             If a I/O occurs in the data transfer connection. If you
+	 *             receive this exception the transfer failed, but the main
+	 *             connection with the remote FTP server is in theory still
+	 *             working.
+	 * @throws FTPAbortedException
+	 *             If operation is aborted by another thread.
+	 * @throws FTPListParseException
+	 *             If none of the registered parsers can handle the response
+	 *             sent by the server.
+	 * @see FTPClient#list(String, FTPFileFilter)
+	 * @since 1.8
+	 */
+	public FTPFile[] list(FTPFileFilter filter) throws IllegalStateException,
+			IOException, FTPIllegalReplyException, FTPException,
+			FTPDataTransferException, FTPAbortedException,
+			FTPListParseException {
+		return list(null, filter);
 	}
 
 	/**
@@ -2311,6 +5094,15 @@ public class FTPClient {
 	 */
 	public String[] listNames() throws IllegalStateException, IOException, FTPIllegalReplyException, FTPException,
 			FTPDataTransferException, FTPAbortedException, FTPListParseException {
+		// Another channel?
+		Channel channel = acquireChannel();
+		if (channel != null) {
+			try {
+				return channel.client.listNames();
+			} finally {
+				releaseChannel(channel);
+			}
+		}
 		synchronized (lock) {
 			// Is this client connected?
 			if (!connected) {
@@ -2321,7 +5113,7 @@ public class FTPClient {
 				throw new IllegalStateException("Client not authenticated");
 			}
 			// ASCII, please!
-			communication.sendFTPCommand("TYPE A");
+			sendFTPCommand("TYPE A");
 			FTPReply r = communication.readFTPReply();
 			touchAutoNoopTimer();
 			if (!r.isSuccessCode()) {
@@ -2332,9 +5124,9 @@ public class FTPClient {
 			// Local abort state.
 			boolean wasAborted = false;
 			// Prepares the connection for the data transfer.
-			FTPDataTransferConnectionProvider provider = openDataTransferChannel();
+			FTPDataTransferConnectionProvider provider = openDataTransferChannel(true, false);
 			// Send the NLST command.
-			communication.sendFTPCommand("NLST");
+			sendFTPCommand("NLST");
 			try {
 				Socket dtConnection;
 				try {
@@ -2348,6 +5140,7 @@ public class FTPClient {
 					aborted = false;
 					consumeAborCommandReply = false;
 				}
+				Inflater inflater = null;
 				// Fetch the list from the data transfer connection.
 				NVTASCIIReader dataReader = null;
 				try {
@@ -2355,7 +5148,8 @@ public class FTPClient {
 					dataTransferInputStream = dtConnection.getInputStream();
 					// MODE Z enabled?
 					if (modezEnabled) {
-						dataTransferInputStream = new InflaterInputStream(dataTransferInputStream);
+						inflater = FTPCompression.getInflater();
+						dataTransferInputStream = new InflaterInputStream(dataTransferInputStream, inflater, SEND_AND_RECEIVE_BUFFER_SIZE);
 					}
 					// Let's do it!
 					dataReader = new NVTASCIIReader(dataTransferInputStream, pickCharset());
@@ -2395,6 +5189,10 @@ public class FTPClient {
 						ongoingDataTransfer = false;
 						aborted = false;
 					}
+					// Gives back the compression resources.
+					if (inflater != null) {
+						FTPCompression.release(inflater);
+					}
 				}
 			} finally {
 				r = communication.readFTPReply();
@@ -2542,6 +5340,9 @@ public class FTPClient {
 	 * abortCurrentDataTransfer(). The method will break with a
 	 * FTPAbortedException.
 	 * 
+	 * If a transfer retry policy is set, a broken upload is resumed from the
+	 * size reached by the remote file.
+	 * 
 	 * @param file
 	 *            The file to upload.
 	 * @param restartAt
@@ -2569,13 +5370,50 @@ public class FTPClient {
 	 *             If operation is aborted by another thread.
 	 * @see FTPClient#abortCurrentDataTransfer(boolean)
 	 */
-	public void upload(File file, long restartAt,
-			FTPDataTransferListener listener) throws IllegalStateException,
-			FileNotFoundException, IOException, FTPIllegalReplyException,
-			FTPException, FTPDataTransferException, FTPAbortedException {
+	public void upload(final File file, long restartAt,
+			final FTPDataTransferListener listener)
+			throws IllegalStateException, FileNotFoundException, IOException,
+			FTPIllegalReplyException, FTPException, FTPDataTransferException,
+			FTPAbortedException {
 		if (!file.exists()) {
 			throw new FileNotFoundException(file.getAbsolutePath());
 		}
+		FTPRetryPolicy policy = transferRetryPolicy;
+		if (policy == null) {
+			uploadFile(file, restartAt, listener);
+			return;
+		}
+		retryTransfer(policy, restartAt, new ResumableTransfer() {
+
+			public void transfer(long restartAt) throws IllegalStateException,
+					IOException, FTPIllegalReplyException, FTPException,
+					FTPDataTransferException, FTPAbortedException {
+				uploadFile(file, restartAt, listener);
+			}
+
+			public long getResumePoint() throws IllegalStateException,
+					IOException, FTPIllegalReplyException, FTPException {
+				// The data committed by the server.
+				try {
+					return fileSize(file.getName());
+				} catch (FTPException e) {
+					if (e.getCode() == FTPCodes.FILE_NOT_FOUND) {
+						return 0;
+					}
+					throw e;
+				}
+			}
+
+		});
+	}
+
+	/**
+	 * Uploads a local file, without retries.
+	 */
+	private void uploadFile(File file, long restartAt,
+			FTPDataTransferListener listener) throws IllegalStateException,
+			FileNotFoundException, IOException, FTPIllegalReplyException,
+			FTPException, FTPDataTransferException, FTPAbortedException {
 		InputStream inputStream = null;
 		try {
 			inputStream = new FileInputStream(file);
@@ -2583,7 +5421,8 @@ public class FTPClient {
 			throw new FTPDataTransferException(e);
 		}
 		try {
-			upload(file.getName(), inputStream, restartAt, restartAt, listener);
+			upload(file.getName(), inputStream, restartAt, restartAt,
+					file.length(), listener);
 		} catch (IllegalStateException e) {
 			throw e;
 		} catch (IOException e) {
@@ -2649,6 +5488,28 @@ public class FTPClient {
 			throws IllegalStateException, IOException,
 			FTPIllegalReplyException, FTPException, FTPDataTransferException,
 			FTPAbortedException {
+		upload(fileName, inputStream, restartAt, streamOffset, -1, listener);
+	}
+
+	/**
+	 * Uploads a content, whose total size is given to the listener (-1 if
+	 * unknown).
+	 */
+	private void upload(String fileName, InputStream inputStream,
+			long restartAt, long streamOffset, long totalSize,
+			FTPDataTransferListener listener) throws IllegalStateException,
+			IOException, FTPIllegalReplyException, FTPException,
+			FTPDataTransferException, FTPAbortedException {
+		// Another channel?
+		Channel channel = acquireChannel();
+		if (channel != null) {
+			try {
+				channel.client.upload(fileName, inputStream, restartAt, streamOffset, totalSize, listener);
+				return;
+			} finally {
+				releaseChannel(channel);
+			}
+		}
 		synchronized (lock) {
 			// Is this client connected?
 			if (!connected) {
@@ -2664,9 +5525,9 @@ public class FTPClient {
 				tp = detectType(fileName);
 			}
 			if (tp == TYPE_TEXTUAL) {
-				communication.sendFTPCommand("TYPE A");
+				sendFTPCommand("TYPE A");
 			} else if (tp == TYPE_BINARY) {
-				communication.sendFTPCommand("TYPE I");
+				sendFTPCommand("TYPE I");
 			}
 			FTPReply r = communication.readFTPReply();
 			touchAutoNoopTimer();
@@ -2674,12 +5535,28 @@ public class FTPClient {
 				throw new FTPException(r);
 			}
 			// Prepares the connection for the data transfer.
-			FTPDataTransferConnectionProvider provider = openDataTransferChannel();
+			// Should the contents be compressed?
+			boolean compress = true;
+			if (modezSupported && compressionEnabled && compressionProbeEnabled) {
+				// Skips first, so the probe samples the bytes to be sent.
+				if (streamOffset > 0) {
+					inputStream.skip(streamOffset);
+					streamOffset = 0;
+				}
+				if (!inputStream.markSupported()) {
+					inputStream = new BufferedInputStream(inputStream, SEND_AND_RECEIVE_BUFFER_SIZE);
+				}
+				compress = isCompressible(fileName, inputStream);
+			}
+			FTPDataTransferConnectionProvider provider = openDataTransferChannel(compress, true);
+			// Block mode? Is the data connection the kept one?
+			boolean block = modebEnabled;
+			boolean reused = provider instanceof BlockModeConnectionProvider;
 			// REST command (if supported and/or requested).
 			if (restSupported || restartAt > 0) {
 				boolean done = false;
 				try {
-					communication.sendFTPCommand("REST " + restartAt);
+					sendFTPCommand("REST " + restartAt);
 					r = communication.readFTPReply();
 					touchAutoNoopTimer();
 					if (r.getCode() != 350 && ((r.getCode() != 501 && r.getCode() != 502) || restartAt > 0)) {
@@ -2692,10 +5569,30 @@ public class FTPClient {
 					}
 				}
 			}
+			// Checksum of the transferred data.
+			FTPChecksum checksum = null;
+			lastTransferReport = null;
+			if (transferChecksum != null && tp == TYPE_BINARY) {
+				checksum = new FTPChecksum(transferChecksum);
+			}
 			// Local abort state.
 			boolean wasAborted = false;
 			// Send the STOR command.
-			communication.sendFTPCommand("STOR " + fileName);
+			sendFTPCommand("STOR " + fileName);
+			// The kept connection is used only if the server agrees.
+			if (reused) {
+				r = communication.readFTPReply();
+				touchAutoNoopTimer();
+				if (r.getCode() != 150 && r.getCode() != 125) {
+					provider.dispose();
+					if (r.getCode() == 425 || r.getCode() == 426) {
+						// Dropped by the server, a new connection is needed.
+						upload(fileName, inputStream, restartAt, streamOffset, totalSize, listener);
+						return;
+					}
+					throw new FTPException(r);
+				}
+			}
 			try {
 				Socket dtConnection;
 				try {
@@ -2709,6 +5606,8 @@ public class FTPClient {
 					aborted = false;
 					consumeAborCommandReply = false;
 				}
+				Deflater deflater = null;
+				FTPBlockOutputStream blockStream = null;
 				// Upload the stream.
 				try {
 					// Skips.
@@ -2717,37 +5616,57 @@ public class FTPClient {
 					dataTransferOutputStream = dtConnection.getOutputStream();
 					// MODE Z enabled?
 					if (modezEnabled) {
-						dataTransferOutputStream = new DeflaterOutputStream(dataTransferOutputStream);
+						deflater = FTPCompression.getDeflater(compressionLevel, compressionStrategy);
+						if (pipelinedCompressionEnabled) {
+							dataTransferOutputStream = new FTPPipelinedDeflaterOutputStream(dataTransferOutputStream, deflater, SEND_AND_RECEIVE_BUFFER_SIZE);
+						} else {
+							dataTransferOutputStream = new DeflaterOutputStream(dataTransferOutputStream, deflater, SEND_AND_RECEIVE_BUFFER_SIZE);
+						}
+					} else if (block) {
+						blockStream = new FTPBlockOutputStream(dataTransferOutputStream);
+						dataTransferOutputStream = blockStream;
 					}
 					// Listeners.
 					if (listener != null) {
+						if (listener instanceof FTPDataTransferSizeListener) {
+							((FTPDataTransferSizeListener) listener).transferSize(totalSize, restartAt);
+						}
 						listener.started();
 					}
 					// Let's do it!
-					if (tp == TYPE_TEXTUAL) {
+					if (tp == TYPE_TEXTUAL && !isTextualCopyAllowed()) {
 						Reader reader = new InputStreamReader(inputStream);
 						Writer writer = new OutputStreamWriter(
 								dataTransferOutputStream, pickCharset());
 						char[] buffer = new char[SEND_AND_RECEIVE_BUFFER_SIZE];
 						int l;
 						while ((l = reader.read(buffer)) != -1) {
+							throttle(uploadBandwidthLimiter, l);
 							writer.write(buffer, 0, l);
 							writer.flush();
 							if (listener != null) {
 								listener.transferred(l);
 							}
 						}
-					} else if (tp == TYPE_BINARY) {
+					} else {
 						byte[] buffer = new byte[SEND_AND_RECEIVE_BUFFER_SIZE];
 						int l;
 						while ((l = inputStream.read(buffer)) != -1) {
+							throttle(uploadBandwidthLimiter, l);
 							dataTransferOutputStream.write(buffer, 0, l);
+							if (checksum != null) {
+								checksum.update(buffer, 0, l);
+							}
 							dataTransferOutputStream.flush();
 							if (listener != null) {
 								listener.transferred(l);
 							}
 						}
 					}
+					// Marks the end of the file.
+					if (blockStream != null) {
+						blockStream.finish();
+					}
 				} catch (IOException e) {
 					synchronized (abortLock) {
 						if (aborted) {
@@ -2772,10 +5691,15 @@ public class FTPClient {
 							;
 						}
 					}
-					try {
-						dtConnection.close();
-					} catch (Throwable t) {
-						;
+					if (blockStream != null && blockStream.isFinished()) {
+						// Kept for the next transfer.
+						blockModeConnection = dtConnection;
+					} else {
+						try {
+							dtConnection.close();
+						} catch (Throwable t) {
+							;
+						}
 					}
 					// Set to null the instance-level input stream.
 					dataTransferOutputStream = null;
@@ -2785,17 +5709,29 @@ public class FTPClient {
 						ongoingDataTransfer = false;
 						aborted = false;
 					}
+					// Gives back the compression resources.
+					if (deflater != null) {
+						FTPCompression.release(deflater);
+					}
 				}
 			} finally {
 				// Data transfer command reply.
-				r = communication.readFTPReply();
-				touchAutoNoopTimer();
-				if (r.getCode() != 150 && r.getCode() != 125) {
-					throw new FTPException(r);
+				if (!reused) {
+					r = communication.readFTPReply();
+					touchAutoNoopTimer();
+					if (r.getCode() != 150 && r.getCode() != 125) {
+						closeBlockModeConnection();
+						throw new FTPException(r);
+					}
 				}
 				// Consumes the result reply of the transfer.
 				r = communication.readFTPReply();
-				if (!wasAborted && r.getCode() != 226) {
+				if (r.getCode() != 250) {
+					// The server has closed the data connection.
+					closeBlockModeConnection();
+				}
+				if (!wasAborted && r.getCode() != 226
+						&& (!block || r.getCode() != 250)) {
 					throw new FTPException(r);
 				}
 				// ABOR command response (if needed).
@@ -2804,6 +5740,10 @@ public class FTPClient {
 					consumeAborCommandReply = false;
 				}
 			}
+			// Verifies the checksum.
+			if (checksum != null) {
+				lastTransferReport = verifyTransfer(fileName, checksum, restartAt);
+			}
 			// Listener notification.
 			if (listener != null) {
 				listener.completed();
@@ -2896,7 +5836,7 @@ public class FTPClient {
 			throw new FTPDataTransferException(e);
 		}
 		try {
-			append(file.getName(), inputStream, 0, listener);
+			append(file.getName(), inputStream, 0, file.length(), listener);
 		} catch (IllegalStateException e) {
 			throw e;
 		} catch (IOException e) {
@@ -2959,6 +5899,28 @@ public class FTPClient {
 			throws IllegalStateException, IOException,
 			FTPIllegalReplyException, FTPException, FTPDataTransferException,
 			FTPAbortedException {
+		append(fileName, inputStream, streamOffset, -1, listener);
+	}
+
+	/**
+	 * Appends a content, whose total size is given to the listener (-1 if
+	 * unknown).
+	 */
+	private void append(String fileName, InputStream inputStream,
+			long streamOffset, long totalSize, FTPDataTransferListener listener)
+			throws IllegalStateException, IOException,
+			FTPIllegalReplyException, FTPException, FTPDataTransferException,
+			FTPAbortedException {
+		// Another channel?
+		Channel channel = acquireChannel();
+		if (channel != null) {
+			try {
+				channel.client.append(fileName, inputStream, streamOffset, totalSize, listener);
+				return;
+			} finally {
+				releaseChannel(channel);
+			}
+		}
 		synchronized (lock) {
 			// Is this client connected?
 			if (!connected) {
@@ -2974,21 +5936,40 @@ public class FTPClient {
 				tp = detectType(fileName);
 			}
 			if (tp == TYPE_TEXTUAL) {
-				communication.sendFTPCommand("TYPE A");
+				sendFTPCommand("TYPE A");
 			} else if (tp == TYPE_BINARY) {
-				communication.sendFTPCommand("TYPE I");
+				sendFTPCommand("TYPE I");
 			}
 			FTPReply r = communication.readFTPReply();
 			touchAutoNoopTimer();
 			if (!r.isSuccessCode()) {
 				throw new FTPException(r);
 			}
+			// Checksum of the transferred data.
+			FTPChecksum checksum = null;
+			lastTransferReport = null;
+			if (transferChecksum != null && tp == TYPE_BINARY) {
+				checksum = new FTPChecksum(transferChecksum);
+			}
 			// Local abort state.
 			boolean wasAborted = false;
 			// Prepares the connection for the data transfer.
-			FTPDataTransferConnectionProvider provider = openDataTransferChannel();
+			// Should the contents be compressed?
+			boolean compress = true;
+			if (modezSupported && compressionEnabled && compressionProbeEnabled) {
+				// Skips first, so the probe samples the bytes to be sent.
+				if (streamOffset > 0) {
+					inputStream.skip(streamOffset);
+					streamOffset = 0;
+				}
+				if (!inputStream.markSupported()) {
+					inputStream = new BufferedInputStream(inputStream, SEND_AND_RECEIVE_BUFFER_SIZE);
+				}
+				compress = isCompressible(fileName, inputStream);
+			}
+			FTPDataTransferConnectionProvider provider = openDataTransferChannel(compress, false);
 			// Send the STOR command.
-			communication.sendFTPCommand("APPE " + fileName);
+			sendFTPCommand("APPE " + fileName);
 			try {
 				Socket dtConnection;
 				try {
@@ -3002,6 +5983,7 @@ public class FTPClient {
 					aborted = false;
 					consumeAborCommandReply = false;
 				}
+				Deflater deflater = null;
 				// Upload the stream.
 				try {
 					// Skips.
@@ -3010,31 +5992,44 @@ public class FTPClient {
 					dataTransferOutputStream = dtConnection.getOutputStream();
 					// MODE Z enabled?
 					if (modezEnabled) {
-						dataTransferOutputStream = new DeflaterOutputStream(dataTransferOutputStream);
+						deflater = FTPCompression.getDeflater(compressionLevel, compressionStrategy);
+						if (pipelinedCompressionEnabled) {
+							dataTransferOutputStream = new FTPPipelinedDeflaterOutputStream(dataTransferOutputStream, deflater, SEND_AND_RECEIVE_BUFFER_SIZE);
+						} else {
+							dataTransferOutputStream = new DeflaterOutputStream(dataTransferOutputStream, deflater, SEND_AND_RECEIVE_BUFFER_SIZE);
+						}
 					}
 					// Listeners.
 					if (listener != null) {
+						if (listener instanceof FTPDataTransferSizeListener) {
+							((FTPDataTransferSizeListener) listener).transferSize(totalSize, 0);
+						}
 						listener.started();
 					}
 					// Let's do it!
-					if (tp == TYPE_TEXTUAL) {
+					if (tp == TYPE_TEXTUAL && !isTextualCopyAllowed()) {
 						Reader reader = new InputStreamReader(inputStream);
 						Writer writer = new OutputStreamWriter(
 								dataTransferOutputStream, pickCharset());
 						char[] buffer = new char[SEND_AND_RECEIVE_BUFFER_SIZE];
 						int l;
 						while ((l = reader.read(buffer)) != -1) {
+							throttle(uploadBandwidthLimiter, l);
 							writer.write(buffer, 0, l);
 							writer.flush();
 							if (listener != null) {
 								listener.transferred(l);
 							}
 						}
-					} else if (tp == TYPE_BINARY) {
+					} else {
 						byte[] buffer = new byte[SEND_AND_RECEIVE_BUFFER_SIZE];
 						int l;
 						while ((l = inputStream.read(buffer)) != -1) {
+							throttle(uploadBandwidthLimiter, l);
 							dataTransferOutputStream.write(buffer, 0, l);
+							if (checksum != null) {
+								checksum.update(buffer, 0, l);
+							}
 							dataTransferOutputStream.flush();
 							if (listener != null) {
 								listener.transferred(l);
@@ -3078,6 +6073,10 @@ public class FTPClient {
 						ongoingDataTransfer = false;
 						aborted = false;
 					}
+					// Gives back the compression resources.
+					if (deflater != null) {
+						FTPCompression.release(deflater);
+					}
 				}
 			} finally {
 				r = communication.readFTPReply();
@@ -3096,6 +6095,18 @@ public class FTPClient {
 					consumeAborCommandReply = false;
 				}
 			}
+			// Verifies the checksum of the appended range.
+			if (checksum != null) {
+				long size;
+				try {
+					size = fileSize(fileName);
+				} catch (FTPException e) {
+					size = -1;
+				}
+				if (size >= checksum.getCount()) {
+					lastTransferReport = verifyTransfer(fileName, checksum, size - checksum.getCount());
+				}
+			}
 			// Notifies the listener.
 			if (listener != null) {
 				listener.completed();
@@ -3233,6 +6244,9 @@ public class FTPClient {
 	 * abortCurrentDataTransfer(). The method will break with a
 	 * FTPAbortedException.
 	 * 
+	 * If a transfer retry policy is set, a broken download is resumed from
+	 * the length reached by the local file.
+	 * 
 	 * @param remoteFileName
 	 *            The name of the file to download.
 	 * @param localFile
@@ -3262,10 +6276,40 @@ public class FTPClient {
 	 *             If operation is aborted by another thread.
 	 * @see FTPClient#abortCurrentDataTransfer(boolean)
 	 */
-	public void download(String remoteFileName, File localFile, long restartAt,
-			FTPDataTransferListener listener) throws IllegalStateException,
-			FileNotFoundException, IOException, FTPIllegalReplyException,
-			FTPException, FTPDataTransferException, FTPAbortedException {
+	public void download(final String remoteFileName, final File localFile,
+			long restartAt, final FTPDataTransferListener listener)
+			throws IllegalStateException, FileNotFoundException, IOException,
+			FTPIllegalReplyException, FTPException, FTPDataTransferException,
+			FTPAbortedException {
+		FTPRetryPolicy policy = transferRetryPolicy;
+		if (policy == null) {
+			downloadFile(remoteFileName, localFile, restartAt, listener);
+			return;
+		}
+		retryTransfer(policy, restartAt, new ResumableTransfer() {
+
+			public void transfer(long restartAt) throws IllegalStateException,
+					IOException, FTPIllegalReplyException, FTPException,
+					FTPDataTransferException, FTPAbortedException {
+				downloadFile(remoteFileName, localFile, restartAt, listener);
+			}
+
+			public long getResumePoint() {
+				// The data already written in the local file.
+				return localFile.length();
+			}
+
+		});
+	}
+
+	/**
+	 * Downloads a remote file in a local file, without retries.
+	 */
+	private void downloadFile(String remoteFileName, File localFile,
+			long restartAt, FTPDataTransferListener listener)
+			throws IllegalStateException, FileNotFoundException, IOException,
+			FTPIllegalReplyException, FTPException, FTPDataTransferException,
+			FTPAbortedException {
 		OutputStream outputStream = null;
 		try {
 			outputStream = new FileOutputStream(localFile, restartAt > 0);
@@ -3322,21 +6366,407 @@ public class FTPClient {
 	 * @throws FTPIllegalReplyException
 	 *             If the server replies in an illegal way.
 	 * @throws FTPException
-	 *             If the operation fails.
-	 * @throws FTPDataTransferException
-	 *             If a I/O occurs in the data transfer connection. If you
-	 *             receive this exception the transfer failed, but the main
-	 *             connection with the remote FTP server is in theory still
-	 *             working.
-	 * @throws FTPAbortedException
-	 *             If operation is aborted by another thread.
-	 * @see FTPClient#abortCurrentDataTransfer(boolean)
-	 */
-	public void download(String fileName, OutputStream outputStream,
-			long restartAt, FTPDataTransferListener listener)
-			throws IllegalStateException, IOException,
+	 *             If the operation fails.
+	 * @throws FTPDataTransferException
+	 *             If a I/O occurs in the data transfer connection. If you
+	 *             receive this exception the transfer failed, but the main
+	 *             connection with the remote FTP server is in theory still
+	 *             working.
+	 * @throws FTPAbortedException
+	 *             If operation is aborted by another thread.
+	 * @see FTPClient#abortCurrentDataTransfer(boolean)
+	 */
+	public void download(String fileName, OutputStream outputStream,
+			long restartAt, FTPDataTransferListener listener)
+			throws IllegalStateException, IOException,
+			FTPIllegalReplyException, FTPException, FTPDataTransferException,
+			FTPAbortedException {
+		// Another channel?
+		Channel channel = acquireChannel();
+		if (channel != null) {
+			try {
+				channel.client.download(fileName, outputStream, restartAt, listener);
+				return;
+			} finally {
+				releaseChannel(channel);
+			}
+		}
+		synchronized (lock) {
+			// Is this client connected?
+			if (!connected) {
+				throw new IllegalStateException("Client not connected");
+			}
+			// Is this client authenticated?
+			if (!authenticated) {
+				throw new IllegalStateException("Client not authenticated");
+			}
+			// Select the type of contents.
+			int tp = type;
+			if (tp == TYPE_AUTO) {
+				tp = detectType(fileName);
+			}
+			if (tp == TYPE_TEXTUAL) {
+				sendFTPCommand("TYPE A");
+			} else if (tp == TYPE_BINARY) {
+				sendFTPCommand("TYPE I");
+			}
+			FTPReply r = communication.readFTPReply();
+			touchAutoNoopTimer();
+			if (!r.isSuccessCode()) {
+				throw new FTPException(r);
+			}
+			// The size of the file, for a listener which wants it, if the
+			// server isn't known to state it when the transfer starts.
+			long size = -1;
+			if (listener instanceof FTPDataTransferSizeListener
+					&& !transferSizeStated) {
+				sendFTPCommand("SIZE " + fileName);
+				r = communication.readFTPReply();
+				touchAutoNoopTimer();
+				String[] messages = r.getMessages();
+				if (r.getCode() == 213 && messages.length == 1) {
+					try {
+						size = Long.parseLong(messages[0].trim());
+					} catch (NumberFormatException e) {
+						;
+					}
+				}
+			}
+			// Prepares the connection for the data transfer.
+			// Should the contents be compressed?
+			boolean compress = !compressionProbeEnabled || FTPCompression.isCompressible(fileName);
+			FTPDataTransferConnectionProvider provider = openDataTransferChannel(compress, true);
+			// Block mode? Is the data connection the kept one?
+			boolean block = modebEnabled;
+			boolean reused = provider instanceof BlockModeConnectionProvider;
+			// REST command (if supported and/or requested).
+			if (restSupported || restartAt > 0) {
+				boolean done = false;
+				try {
+					sendFTPCommand("REST " + restartAt);
+					r = communication.readFTPReply();
+					touchAutoNoopTimer();
+					if (r.getCode() != 350 && ((r.getCode() != 501 && r.getCode() != 502) || restartAt > 0)) {
+						throw new FTPException(r);
+					}
+					done = true;
+				} finally {
+					if (!done) {
+						provider.dispose();
+					}
+				}
+			}
+			// Checksum of the transferred data.
+			FTPChecksum checksum = null;
+			lastTransferReport = null;
+			if (transferChecksum != null && tp == TYPE_BINARY) {
+				checksum = new FTPChecksum(transferChecksum);
+			}
+			// Local abort state.
+			boolean wasAborted = false;
+			// Send the RETR command.
+			sendFTPCommand("RETR " + fileName);
+			// The preliminary reply, which could tell the size of the file.
+			FTPReply preliminary = null;
+			boolean refused = false;
+			// The kept connection is used only if the server agrees.
+			if (reused) {
+				r = communication.readFTPReply();
+				touchAutoNoopTimer();
+				if (r.getCode() != 150 && r.getCode() != 125) {
+					provider.dispose();
+					if (r.getCode() == 425 || r.getCode() == 426) {
+						// Dropped by the server, a new connection is needed.
+						download(fileName, outputStream, restartAt, listener);
+						return;
+					}
+					throw new FTPException(r);
+				}
+				preliminary = r;
+			}
+			try {
+				Socket dtConnection;
+				try {
+					dtConnection = provider.openDataTransferConnection();
+				} finally {
+					provider.dispose();
+				}
+				// Reads the preliminary reply before the data.
+				if (preliminary == null) {
+					r = communication.readFTPReply();
+					touchAutoNoopTimer();
+					preliminary = r;
+					if (r.getCode() != 150 && r.getCode() != 125) {
+						// No data and no result reply will follow.
+						refused = true;
+						try {
+							dtConnection.close();
+						} catch (Throwable t) {
+							;
+						}
+						closeBlockModeConnection();
+						throw new FTPException(r);
+					}
+				}
+				// Change the operation status.
+				synchronized (abortLock) {
+					ongoingDataTransfer = true;
+					aborted = false;
+					consumeAborCommandReply = false;
+				}
+				Inflater inflater = null;
+				FTPBlockInputStream blockStream = null;
+				// Download the stream.
+				try {
+					// Opens the data transfer connection.
+					dataTransferInputStream = dtConnection.getInputStream();
+					// MODE Z enabled?
+					if (modezEnabled) {
+						inflater = FTPCompression.getInflater();
+						dataTransferInputStream = new InflaterInputStream(dataTransferInputStream, inflater, SEND_AND_RECEIVE_BUFFER_SIZE);
+					} else if (block) {
+						blockStream = new FTPBlockInputStream(dataTransferInputStream);
+						dataTransferInputStream = blockStream;
+					}
+					// Listeners.
+					if (listener != null) {
+						if (listener instanceof FTPDataTransferSizeListener) {
+							long stated = getTransferSize(preliminary);
+							if (stated >= 0) {
+								transferSizeStated = true;
+								size = stated;
+							}
+							((FTPDataTransferSizeListener) listener).transferSize(size, restartAt);
+						}
+						listener.started();
+					}
+					// Let's do it!
+					if (tp == TYPE_TEXTUAL && !isTextualCopyAllowed()) {
+						Reader reader = new InputStreamReader(
+								dataTransferInputStream, pickCharset());
+						Writer writer = new OutputStreamWriter(outputStream);
+						char[] buffer = new char[SEND_AND_RECEIVE_BUFFER_SIZE];
+						int l;
+						while ((l = reader.read(buffer, 0, buffer.length)) != -1) {
+							throttle(downloadBandwidthLimiter, l);
+							writer.write(buffer, 0, l);
+							writer.flush();
+							if (listener != null) {
+								listener.transferred(l);
+							}
+						}
+					} else {
+						byte[] buffer = new byte[SEND_AND_RECEIVE_BUFFER_SIZE];
+						int l;
+						while ((l = dataTransferInputStream.read(buffer, 0,
+								buffer.length)) != -1) {
+							throttle(downloadBandwidthLimiter, l);
+							outputStream.write(buffer, 0, l);
+							if (checksum != null) {
+								checksum.update(buffer, 0, l);
+							}
+							if (listener != null) {
+								listener.transferred(l);
+							}
+						}
+					}
+				} catch (IOException e) {
+					synchronized (abortLock) {
+						if (aborted) {
+							if (listener != null) {
+								listener.aborted();
+							}
+							throw new FTPAbortedException();
+						} else {
+							if (listener != null) {
+								listener.failed();
+							}
+							throw new FTPDataTransferException(
+									"I/O error in data transfer", e);
+						}
+					}
+				} finally {
+					// Closing stream and data connection.
+					if (dataTransferInputStream != null) {
+						try {
+							dataTransferInputStream.close();
+						} catch (Throwable t) {
+							;
+						}
+					}
+					if (blockStream != null && blockStream.isEndOfFile()) {
+						// Kept for the next transfer.
+						blockModeConnection = dtConnection;
+					} else {
+						try {
+							dtConnection.close();
+						} catch (Throwable t) {
+							;
+						}
+					}
+					// Set to null the instance-level input stream.
+					dataTransferInputStream = null;
+					// Change the operation status.
+					synchronized (abortLock) {
+						wasAborted = aborted;
+						ongoingDataTransfer = false;
+						aborted = false;
+					}
+					// Gives back the compression resources.
+					if (inflater != null) {
+						FTPCompression.release(inflater);
+					}
+					// Restart marker.
+					if (blockStream != null && blockStream.getRestartMarker() != null) {
+						lastRestartMarker = blockStream.getRestartMarker();
+					}
+				}
+			} finally {
+				if (preliminary == null) {
+					r = communication.readFTPReply();
+					touchAutoNoopTimer();
+					if (r.getCode() != 150 && r.getCode() != 125) {
+						closeBlockModeConnection();
+						throw new FTPException(r);
+					}
+				}
+				if (!refused) {
+					// Consumes the result reply of the transfer.
+					r = communication.readFTPReply();
+					if (r.getCode() != 250) {
+						// The server has closed the data connection.
+						closeBlockModeConnection();
+					}
+					if (!wasAborted && r.getCode() != 226
+							&& (!block || r.getCode() != 250)) {
+						throw new FTPException(r);
+					}
+					// ABOR command response (if needed).
+					if (consumeAborCommandReply) {
+						communication.readFTPReply();
+						consumeAborCommandReply = false;
+					}
+				}
+			}
+			// Verifies the checksum.
+			if (checksum != null) {
+				lastTransferReport = verifyTransfer(fileName, checksum, restartAt);
+			}
+			// Notifies the listener.
+			if (listener != null) {
+				listener.completed();
+			}
+		}
+	}
+
+	/**
+	 * This method opens a read-only, random access view of a remote file. The
+	 * size of the file is asked with SIZE, then every read is served by a RETR
+	 * command starting at the needed offset (REST), which is interrupted as
+	 * soon as the needed range has been received. So reading a few bytes at
+	 * the end of a large file doesn't download the whole file.
+	 * 
+	 * The data is fetched in blocks of 64 KB, and the last 32 blocks read are
+	 * kept in memory. See {@link FTPClient#openFileChannel(String, int, int)}.
+	 * 
+	 * @param fileName
+	 *            The name of the remote file.
+	 * @return The channel, which has to be closed when no longer needed.
+	 * @throws IllegalStateException
+	 *             If the client is not connected or not authenticated.
+	 * @throws IOException
+	 *             If an I/O error occurs.
+	 * @throws FTPIllegalReplyException
+	 *             If the server replies in an illegal way.
+	 * @throws FTPException
+	 *             If the size of the file can't be asked.
+	 * @since 1.8
+	 */
+	public SeekableByteChannel openFileChannel(String fileName)
+			throws IllegalStateException, IOException,
+			FTPIllegalReplyException, FTPException {
+		return openFileChannel(fileName, DEFAULT_FILE_CHANNEL_BLOCK_SIZE,
+				DEFAULT_FILE_CHANNEL_CACHE_SIZE);
+	}
+
+	/**
+	 * This method opens a read-only, random access view of a remote file. The
+	 * size of the file is asked with SIZE, then every read is served by a RETR
+	 * command starting at the needed offset (REST), which is interrupted as
+	 * soon as the needed range has been received.
+	 * 
+	 * The data is fetched in blocks, and the blocks read are kept in a least
+	 * recently used cache. While the file is read sequentially, every RETR
+	 * command fetches more blocks in advance, up to a quarter of the cache.
+	 * 
+	 * The channel uses the connection of the client for every read, so it
+	 * can't be used while the client is busy with another operation, unless
+	 * the multi-channel mode is enabled (see
+	 * {@link FTPClient#setMaxChannels(int)}). The server must support the
+	 * REST command. The failures of the FTP operations are thrown by the
+	 * channel as IOException objects, having the original exception as cause.
+	 * 
+	 * @param fileName
+	 *            The name of the remote file.
+	 * @param blockSize
+	 *            The size of the blocks, in bytes.
+	 * @param cacheSize
+	 *            The number of blocks kept in memory.
+	 * @return The channel, which has to be closed when no longer needed.
+	 * @throws IllegalArgumentException
+	 *             If the block size or the cache size is not positive.
+	 * @throws IllegalStateException
+	 *             If the client is not connected or not authenticated.
+	 * @throws IOException
+	 *             If an I/O error occurs.
+	 * @throws FTPIllegalReplyException
+	 *             If the server replies in an illegal way.
+	 * @throws FTPException
+	 *             If the size of the file can't be asked.
+	 * @since 1.8
+	 */
+	public SeekableByteChannel openFileChannel(String fileName,
+			int blockSize, int cacheSize) throws IllegalArgumentException,
+			IllegalStateException, IOException, FTPIllegalReplyException,
+			FTPException {
+		if (blockSize < 1 || cacheSize < 1) {
+			throw new IllegalArgumentException("Invalid block or cache size");
+		}
+		long size = fileSize(fileName);
+		return new FTPFileChannel(this, fileName, size, blockSize, cacheSize);
+	}
+
+	/**
+	 * Reads a range of a remote file, starting a binary RETR transfer at the
+	 * given offset and interrupting it as soon as the range has been received.
+	 * The interrupted transfer is closed by closing the data connection,
+	 * without ABOR, so the server gives a single reply.
+	 * 
+	 * @param fileName
+	 *            The name of the remote file.
+	 * @param offset
+	 *            The offset of the range.
+	 * @param buffer
+	 *            The destination buffer.
+	 * @param off
+	 *            The position of the range in the buffer.
+	 * @param len
+	 *            The length of the range.
+	 * @return The number of bytes read, less than len only if the file ends.
+	 */
+	int readRange(String fileName, long offset, byte[] buffer, int off,
+			int len) throws IllegalStateException, IOException,
 			FTPIllegalReplyException, FTPException, FTPDataTransferException,
 			FTPAbortedException {
+		// Another channel?
+		Channel channel = acquireChannel();
+		if (channel != null) {
+			try {
+				return channel.client.readRange(fileName, offset, buffer, off, len);
+			} finally {
+				releaseChannel(channel);
+			}
+		}
 		synchronized (lock) {
 			// Is this client connected?
 			if (!connected) {
@@ -3346,44 +6776,37 @@ public class FTPClient {
 			if (!authenticated) {
 				throw new IllegalStateException("Client not authenticated");
 			}
-			// Select the type of contents.
-			int tp = type;
-			if (tp == TYPE_AUTO) {
-				tp = detectType(fileName);
-			}
-			if (tp == TYPE_TEXTUAL) {
-				communication.sendFTPCommand("TYPE A");
-			} else if (tp == TYPE_BINARY) {
-				communication.sendFTPCommand("TYPE I");
-			}
+			// Sends the TYPE I command.
+			sendFTPCommand("TYPE I");
 			FTPReply r = communication.readFTPReply();
 			touchAutoNoopTimer();
 			if (!r.isSuccessCode()) {
 				throw new FTPException(r);
 			}
-			// Prepares the connection for the data transfer.
-			FTPDataTransferConnectionProvider provider = openDataTransferChannel();
-			// REST command (if supported and/or requested).
-			if (restSupported || restartAt > 0) {
-				boolean done = false;
-				try {
-					communication.sendFTPCommand("REST " + restartAt);
-					r = communication.readFTPReply();
-					touchAutoNoopTimer();
-					if (r.getCode() != 350 && ((r.getCode() != 501 && r.getCode() != 502) || restartAt > 0)) {
-						throw new FTPException(r);
-					}
-					done = true;
-				} finally {
-					if (!done) {
-						provider.dispose();
-					}
+			// Stream mode, since the transfer is interrupted.
+			FTPDataTransferConnectionProvider provider = openDataTransferChannel(false, false);
+			// Sends the REST command.
+			boolean done = false;
+			try {
+				sendFTPCommand("REST " + offset);
+				r = communication.readFTPReply();
+				touchAutoNoopTimer();
+				if (r.getCode() != 350) {
+					throw new FTPException(r);
+				}
+				done = true;
+			} finally {
+				if (!done) {
+					provider.dispose();
 				}
 			}
 			// Local abort state.
 			boolean wasAborted = false;
+			// Has the file been received up to its end?
+			boolean complete = false;
+			int count = 0;
 			// Send the RETR command.
-			communication.sendFTPCommand("RETR " + fileName);
+			sendFTPCommand("RETR " + fileName);
 			try {
 				Socket dtConnection;
 				try {
@@ -3397,54 +6820,22 @@ public class FTPClient {
 					aborted = false;
 					consumeAborCommandReply = false;
 				}
-				// Download the stream.
 				try {
-					// Opens the data transfer connection.
 					dataTransferInputStream = dtConnection.getInputStream();
-					// MODE Z enabled?
-					if (modezEnabled) {
-						dataTransferInputStream = new InflaterInputStream(dataTransferInputStream);
-					}
-					// Listeners.
-					if (listener != null) {
-						listener.started();
-					}
-					// Let's do it!
-					if (tp == TYPE_TEXTUAL) {
-						Reader reader = new InputStreamReader(
-								dataTransferInputStream, pickCharset());
-						Writer writer = new OutputStreamWriter(outputStream);
-						char[] buffer = new char[SEND_AND_RECEIVE_BUFFER_SIZE];
-						int l;
-						while ((l = reader.read(buffer, 0, buffer.length)) != -1) {
-							writer.write(buffer, 0, l);
-							writer.flush();
-							if (listener != null) {
-								listener.transferred(l);
-							}
-						}
-					} else if (tp == TYPE_BINARY) {
-						byte[] buffer = new byte[SEND_AND_RECEIVE_BUFFER_SIZE];
-						int l;
-						while ((l = dataTransferInputStream.read(buffer, 0,
-								buffer.length)) != -1) {
-							outputStream.write(buffer, 0, l);
-							if (listener != null) {
-								listener.transferred(l);
-							}
+					while (count < len) {
+						int l = dataTransferInputStream.read(buffer, off + count, len - count);
+						if (l == -1) {
+							complete = true;
+							break;
 						}
+						throttle(downloadBandwidthLimiter, l);
+						count += l;
 					}
 				} catch (IOException e) {
 					synchronized (abortLock) {
 						if (aborted) {
-							if (listener != null) {
-								listener.aborted();
-							}
 							throw new FTPAbortedException();
 						} else {
-							if (listener != null) {
-								listener.failed();
-							}
 							throw new FTPDataTransferException(
 									"I/O error in data transfer", e);
 						}
@@ -3473,25 +6864,489 @@ public class FTPClient {
 					}
 				}
 			} finally {
-				r = communication.readFTPReply();
-				touchAutoNoopTimer();
-				if (r.getCode() != 150 && r.getCode() != 125) {
-					throw new FTPException(r);
+				r = communication.readFTPReply();
+				touchAutoNoopTimer();
+				if (r.getCode() != 150 && r.getCode() != 125) {
+					throw new FTPException(r);
+				}
+				// Consumes the result reply of the transfer.
+				r = communication.readFTPReply();
+				// An interrupted transfer can fail, as expected.
+				if (!wasAborted && complete && r.getCode() != 226) {
+					throw new FTPException(r);
+				}
+				// ABOR command response (if needed).
+				if (consumeAborCommandReply) {
+					communication.readFTPReply();
+					consumeAborCommandReply = false;
+				}
+			}
+			return count;
+		}
+	}
+
+	/**
+	 * This method opens a stream reading a remote file, in binary mode. The
+	 * data is received while the caller reads the stream, on the calling
+	 * thread, with no intermediate buffering: the server is slowed down by the
+	 * flow control of the data connection if the caller reads slowly.
+	 * 
+	 * The stream must be closed when no longer needed: closing it completes
+	 * the transfer, consuming the final reply of the server. A stream closed
+	 * before its end interrupts the transfer. While the stream is open the
+	 * connection of the client is busy, and the client can't be used for
+	 * other operations, besides abortCurrentDataTransfer(): the operations
+	 * sending commands throw an IllegalStateException. In multi-channel
+	 * mode the stream takes a channel, so the operations supporting that mode
+	 * can run on the remaining ones (see {@link FTPClient#setMaxChannels(int)}).
+	 * 
+	 * The failures occurring while the stream is read or closed are thrown as
+	 * IOException objects, having the FTP exception as cause when there's
+	 * one.
+	 * 
+	 * @param fileName
+	 *            The name of the remote file.
+	 * @param offset
+	 *            The position in the file the stream starts from. A value
+	 *            greater than 0 requires the support of the REST command.
+	 * @return The stream.
+	 * @throws IllegalStateException
+	 *             If the client is not connected or not authenticated, or if
+	 *             another stream is using the connection.
+	 * @throws IOException
+	 *             If an I/O error occurs.
+	 * @throws FTPIllegalReplyException
+	 *             If the server replies in an illegal way.
+	 * @throws FTPException
+	 *             If the operation fails.
+	 * @throws FTPDataTransferException
+	 *             If the data transfer connection can't be established.
+	 * @since 1.8
+	 */
+	public InputStream openInputStream(String fileName, long offset)
+			throws IllegalStateException, IOException,
+			FTPIllegalReplyException, FTPException, FTPDataTransferException {
+		// Another channel?
+		Channel channel = acquireChannel();
+		if (channel != null) {
+			boolean done = false;
+			try {
+				RemoteInputStream stream = (RemoteInputStream) channel.client.openInputStream(fileName, offset);
+				stream.owner = this;
+				stream.channel = channel;
+				done = true;
+				return stream;
+			} finally {
+				if (!done) {
+					releaseChannel(channel);
+				}
+			}
+		}
+		synchronized (lock) {
+			// Is this client connected?
+			if (!connected) {
+				throw new IllegalStateException("Client not connected");
+			}
+			// Is this client authenticated?
+			if (!authenticated) {
+				throw new IllegalStateException("Client not authenticated");
+			}
+			// Sends the TYPE I command.
+			sendFTPCommand("TYPE I");
+			FTPReply r = communication.readFTPReply();
+			touchAutoNoopTimer();
+			if (!r.isSuccessCode()) {
+				throw new FTPException(r);
+			}
+			// Should the contents be compressed?
+			boolean compress = !compressionProbeEnabled || FTPCompression.isCompressible(fileName);
+			FTPDataTransferConnectionProvider provider = openDataTransferChannel(compress, false);
+			// REST command (if requested).
+			if (offset > 0) {
+				boolean done = false;
+				try {
+					sendFTPCommand("REST " + offset);
+					r = communication.readFTPReply();
+					touchAutoNoopTimer();
+					if (r.getCode() != 350) {
+						throw new FTPException(r);
+					}
+					done = true;
+				} finally {
+					if (!done) {
+						provider.dispose();
+					}
+				}
+			}
+			// Send the RETR command.
+			sendFTPCommand("RETR " + fileName);
+			Socket dtConnection = openDataStreamConnection(provider);
+			RemoteInputStream stream = new RemoteInputStream();
+			stream.connection = dtConnection;
+			boolean done = false;
+			try {
+				stream.in = dtConnection.getInputStream();
+				// MODE Z enabled?
+				if (modezEnabled) {
+					stream.inflater = FTPCompression.getInflater();
+					stream.in = new InflaterInputStream(stream.in, stream.inflater, SEND_AND_RECEIVE_BUFFER_SIZE);
+				}
+				done = true;
+			} finally {
+				if (!done) {
+					closeDataStream(dtConnection, false);
+				}
+			}
+			dataTransferInputStream = stream.in;
+			return stream;
+		}
+	}
+
+	/**
+	 * This method opens a stream writing a remote file, in binary mode. The
+	 * data is sent while the caller writes the stream, on the calling thread,
+	 * with no intermediate buffering besides the one of the compression, if
+	 * MODE Z is in use: the caller is slowed down by the flow control of the
+	 * data connection if the server reads slowly.
+	 * 
+	 * The stream must be closed when the data is over: closing it completes
+	 * the transfer, consuming the final reply of the server, and throws an
+	 * IOException if the server reports a failure. While the stream is open
+	 * the connection of the client is busy, and the client can't be used for
+	 * other operations, besides abortCurrentDataTransfer(): the operations
+	 * sending commands throw an IllegalStateException. In multi-channel
+	 * mode the stream takes a channel, so the operations supporting that mode
+	 * can run on the remaining ones (see {@link FTPClient#setMaxChannels(int)}).
+	 * 
+	 * The failures occurring while the stream is written or closed are thrown
+	 * as IOException objects, having the FTP exception as cause when there's
+	 * one.
+	 * 
+	 * @param fileName
+	 *            The name of the remote file.
+	 * @param append
+	 *            true to append the data to the file (APPE), false to replace
+	 *            the file (STOR).
+	 * @return The stream.
+	 * @throws IllegalStateException
+	 *             If the client is not connected or not authenticated, or if
+	 *             another stream is using the connection.
+	 * @throws IOException
+	 *             If an I/O error occurs.
+	 * @throws FTPIllegalReplyException
+	 *             If the server replies in an illegal way.
+	 * @throws FTPException
+	 *             If the operation fails.
+	 * @throws FTPDataTransferException
+	 *             If the data transfer connection can't be established.
+	 * @since 1.8
+	 */
+	public OutputStream openOutputStream(String fileName, boolean append)
+			throws IllegalStateException, IOException,
+			FTPIllegalReplyException, FTPException, FTPDataTransferException {
+		// Another channel?
+		Channel channel = acquireChannel();
+		if (channel != null) {
+			boolean done = false;
+			try {
+				RemoteOutputStream stream = (RemoteOutputStream) channel.client.openOutputStream(fileName, append);
+				stream.owner = this;
+				stream.channel = channel;
+				done = true;
+				return stream;
+			} finally {
+				if (!done) {
+					releaseChannel(channel);
+				}
+			}
+		}
+		synchronized (lock) {
+			// Is this client connected?
+			if (!connected) {
+				throw new IllegalStateException("Client not connected");
+			}
+			// Is this client authenticated?
+			if (!authenticated) {
+				throw new IllegalStateException("Client not authenticated");
+			}
+			// Sends the TYPE I command.
+			sendFTPCommand("TYPE I");
+			FTPReply r = communication.readFTPReply();
+			touchAutoNoopTimer();
+			if (!r.isSuccessCode()) {
+				throw new FTPException(r);
+			}
+			// Should the contents be compressed?
+			boolean compress = !compressionProbeEnabled || FTPCompression.isCompressible(fileName);
+			FTPDataTransferConnectionProvider provider = openDataTransferChannel(compress, false);
+			// Send the STOR or APPE command.
+			sendFTPCommand((append ? "APPE " : "STOR ") + fileName);
+			Socket dtConnection = openDataStreamConnection(provider);
+			RemoteOutputStream stream = new RemoteOutputStream();
+			stream.connection = dtConnection;
+			boolean done = false;
+			try {
+				stream.out = dtConnection.getOutputStream();
+				// MODE Z enabled?
+				if (modezEnabled) {
+					stream.deflater = FTPCompression.getDeflater(compressionLevel, compressionStrategy);
+					stream.out = new DeflaterOutputStream(stream.out, stream.deflater, SEND_AND_RECEIVE_BUFFER_SIZE);
+				}
+				done = true;
+			} finally {
+				if (!done) {
+					closeDataStream(dtConnection, false);
+				}
+			}
+			dataTransferOutputStream = stream.out;
+			return stream;
+		}
+	}
+
+	/**
+	 * This method builds a publisher of the contents of a remote file, read in
+	 * binary mode. Every subscription starts its own transfer, as
+	 * {@link FTPClient#openInputStream(String, long)} does, when the first
+	 * item is requested, and delivers the data in java.nio.ByteBuffer chunks.
+	 * The data is read from the data connection only as requested by the
+	 * subscriber, on the thread calling request(), so a slow subscriber slows
+	 * down the server. Cancelling the subscription aborts the transfer.
+	 * 
+	 * Java 8 has no java.util.concurrent.Flow, so the publisher implements the
+	 * equivalent {@link FTPPublisher} interface.
+	 * 
+	 * @param fileName
+	 *            The name of the remote file.
+	 * @param offset
+	 *            The position in the file the transfer starts from. A value
+	 *            greater than 0 requires the support of the REST command.
+	 * @return The publisher.
+	 * @since 1.8
+	 */
+	public FTPPublisher publishDownload(final String fileName, final long offset) {
+		return new FTPPublisher() {
+			public void subscribe(FTPSubscriber subscriber) {
+				new DownloadSubscription(subscriber, fileName, offset).start();
+			}
+		};
+	}
+
+	/**
+	 * This method builds a publisher of the entries of a remote directory.
+	 * Every subscription starts its own MLSD or LIST transfer (as
+	 * {@link FTPClient#list(String, FTPFileFilter)} does, but always through a
+	 * data connection) when the first item is requested, and delivers the
+	 * entries as {@link FTPFile} objects while they are received. The lines
+	 * of the listing are read and parsed a few at a time, only as requested
+	 * by the subscriber, on the thread calling request(). Cancelling the
+	 * subscription aborts the transfer.
+	 * 
+	 * Java 8 has no java.util.concurrent.Flow, so the publisher implements the
+	 * equivalent {@link FTPPublisher} interface.
+	 * 
+	 * @param fileSpec
+	 *            A file filter string, as in
+	 *            {@link FTPClient#list(String, FTPFileFilter)} (could be null).
+	 * @param filter
+	 *            The filter applied to the entries (could be null).
+	 * @return The publisher.
+	 * @since 1.8
+	 */
+	public FTPPublisher publishList(final String fileSpec,
+			final FTPFileFilter filter) {
+		return new FTPPublisher() {
+			public void subscribe(FTPSubscriber subscriber) {
+				new ListSubscription(subscriber, fileSpec, filter).start();
+			}
+		};
+	}
+
+	/**
+	 * Opens a stream reading the response of a MLSD or LIST command.
+	 */
+	private RemoteInputStream openListStream(String fileSpec,
+			FTPFileFilter filter) throws IllegalStateException, IOException,
+			FTPIllegalReplyException, FTPException, FTPDataTransferException {
+		// Another channel?
+		Channel channel = acquireChannel();
+		if (channel != null) {
+			boolean done = false;
+			try {
+				RemoteInputStream stream = channel.client.openListStream(fileSpec, filter);
+				stream.owner = this;
+				stream.channel = channel;
+				done = true;
+				return stream;
+			} finally {
+				if (!done) {
+					releaseChannel(channel);
+				}
+			}
+		}
+		synchronized (lock) {
+			// Is this client connected?
+			if (!connected) {
+				throw new IllegalStateException("Client not connected");
+			}
+			// Is this client authenticated?
+			if (!authenticated) {
+				throw new IllegalStateException("Client not authenticated");
+			}
+			// ASCII, please!
+			sendFTPCommand("TYPE A");
+			FTPReply r = communication.readFTPReply();
+			touchAutoNoopTimer();
+			if (!r.isSuccessCode()) {
+				throw new FTPException(r);
+			}
+			// MLSD or LIST command?
+			boolean mlsdCommand;
+			if (mlsdPolicy == MLSD_IF_SUPPORTED) {
+				mlsdCommand = mlsdSupported;
+			} else if (mlsdPolicy == MLSD_ALWAYS) {
+				mlsdCommand = true;
+			} else {
+				mlsdCommand = false;
+			}
+			// The parsers are sorted before the connection gets busy.
+			if (!mlsdCommand) {
+				sortListParsers();
+			}
+			// Prepares the connection for the data transfer.
+			FTPDataTransferConnectionProvider provider = openDataTransferChannel(true, false);
+			String command = mlsdCommand ? "MLSD" : "LIST";
+			// Lets the server apply the name pattern of the filter.
+			if ((fileSpec == null || fileSpec.length() == 0) && filter != null
+					&& !mlsdCommand) {
+				fileSpec = filter.getServerFileSpec();
+			}
+			// Adds the file/directory selector.
+			if (fileSpec != null && fileSpec.length() > 0) {
+				command += " " + fileSpec;
+			}
+			// Sends the command.
+			sendFTPCommand(command);
+			Socket dtConnection = openDataStreamConnection(provider);
+			RemoteInputStream stream = new RemoteInputStream();
+			stream.connection = dtConnection;
+			stream.mlsd = mlsdCommand;
+			stream.charset = mlsdCommand ? "UTF-8" : pickCharset();
+			boolean done = false;
+			try {
+				stream.in = dtConnection.getInputStream();
+				// MODE Z enabled?
+				if (modezEnabled) {
+					stream.inflater = FTPCompression.getInflater();
+					stream.in = new InflaterInputStream(stream.in, stream.inflater, SEND_AND_RECEIVE_BUFFER_SIZE);
+				}
+				done = true;
+			} finally {
+				if (!done) {
+					closeDataStream(dtConnection, false);
 				}
+			}
+			dataTransferInputStream = stream.in;
+			return stream;
+		}
+	}
+
+	/**
+	 * Opens the data connection of a stream, after the transfer command has
+	 * been sent, and checks the preliminary reply of the server. Then the
+	 * connection is marked as busy.
+	 */
+	private Socket openDataStreamConnection(FTPDataTransferConnectionProvider provider)
+			throws IOException, FTPIllegalReplyException, FTPException,
+			FTPDataTransferException {
+		Socket dtConnection;
+		try {
+			dtConnection = provider.openDataTransferConnection();
+		} catch (FTPDataTransferException e) {
+			// Consumes the replies to the transfer command.
+			FTPReply r = communication.readFTPReply();
+			if (r.getCode() == 150 || r.getCode() == 125) {
+				communication.readFTPReply();
+			}
+			throw e;
+		} finally {
+			provider.dispose();
+		}
+		FTPReply r = communication.readFTPReply();
+		touchAutoNoopTimer();
+		if (r.getCode() != 150 && r.getCode() != 125) {
+			try {
+				dtConnection.close();
+			} catch (Throwable t) {
+				;
+			}
+			throw new FTPException(r);
+		}
+		// Change the operation status.
+		synchronized (abortLock) {
+			ongoingDataTransfer = true;
+			aborted = false;
+			consumeAborCommandReply = false;
+		}
+		dataStreamOpen = true;
+		return dtConnection;
+	}
+
+	/**
+	 * Closes the data connection of a stream and consumes the final reply of
+	 * the transfer.
+	 * 
+	 * @param dtConnection
+	 *            The data connection.
+	 * @param complete
+	 *            true if the transfer has reached its end, so it must have
+	 *            succeeded; false if it has been interrupted.
+	 */
+	private void closeDataStream(Socket dtConnection, boolean complete)
+			throws IOException {
+		synchronized (lock) {
+			try {
+				dtConnection.close();
+			} catch (Throwable t) {
+				;
+			}
+			boolean wasAborted;
+			synchronized (abortLock) {
+				dataTransferInputStream = null;
+				dataTransferOutputStream = null;
+				wasAborted = aborted;
+				ongoingDataTransfer = false;
+				aborted = false;
+			}
+			boolean open = dataStreamOpen;
+			dataStreamOpen = false;
+			// Disconnected meanwhile?
+			if (!open || !connected) {
+				return;
+			}
+			try {
 				// Consumes the result reply of the transfer.
-				r = communication.readFTPReply();
-				if (!wasAborted && r.getCode() != 226) {
-					throw new FTPException(r);
-				}
+				FTPReply r = communication.readFTPReply();
+				touchAutoNoopTimer();
 				// ABOR command response (if needed).
 				if (consumeAborCommandReply) {
 					communication.readFTPReply();
 					consumeAborCommandReply = false;
 				}
-			}
-			// Notifies the listener.
-			if (listener != null) {
-				listener.completed();
+				if (wasAborted) {
+					IOException e = new IOException("Data transfer aborted");
+					e.initCause(new FTPAbortedException());
+					throw e;
+				}
+				// An interrupted transfer can fail, as expected.
+				if (complete && r.getCode() != 226 && r.getCode() != 250) {
+					IOException e = new IOException("Data transfer failed");
+					e.initCause(new FTPException(r));
+					throw e;
+				}
+			} catch (FTPIllegalReplyException e) {
+				IOException aux = new IOException("Illegal reply");
+				aux.initCause(e);
+				throw aux;
 			}
 		}
 	}
@@ -3516,34 +7371,154 @@ public class FTPClient {
 		}
 	}
 
+	/**
+	 * Waits until a limiter (if any) allows the transfer of a chunk.
+	 */
+	private static void throttle(FTPBandwidthLimiter limiter, int bytes)
+			throws IOException {
+		if (limiter != null) {
+			limiter.acquire(bytes);
+		}
+	}
+
+	/**
+	 * Returns the size of the file stated in the reply starting a download, or
+	 * -1 if the server doesn't tell it.
+	 */
+	private static long getTransferSize(FTPReply r) {
+		String[] messages = r.getMessages();
+		for (int i = 0; i < messages.length; i++) {
+			Matcher m = TRANSFER_SIZE_PATTERN.matcher(messages[i]);
+			if (m.find()) {
+				try {
+					return Long.parseLong(m.group(1));
+				} catch (NumberFormatException e) {
+					;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Checks whether the contents of an upload are worth compressing, by the
+	 * name of the file and by the entropy of the first bytes of the stream.
+	 * The stream must support mark() and reset().
+	 */
+	private static boolean isCompressible(String fileName, InputStream inputStream)
+			throws IOException {
+		if (!FTPCompression.isCompressible(fileName)) {
+			return false;
+		}
+		byte[] sample = new byte[SEND_AND_RECEIVE_BUFFER_SIZE];
+		int length = 0;
+		inputStream.mark(sample.length);
+		try {
+			int l;
+			while (length < sample.length
+					&& (l = inputStream.read(sample, length, sample.length - length)) != -1) {
+				length += l;
+			}
+		} finally {
+			inputStream.reset();
+		}
+		return FTPCompression.isCompressible(sample, length);
+	}
+
+	/**
+	 * Checks whether the contents of a textual transfer can be copied byte by
+	 * byte, with no decoding and encoding. It happens when the local charset
+	 * and the one used with the server are the same ASCII compatible charset,
+	 * so the conversion would give back the very same bytes.
+	 */
+	private boolean isTextualCopyAllowed() {
+		Charset local = Charset.defaultCharset();
+		Charset remote;
+		try {
+			remote = Charset.forName(pickCharset());
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+		if (!local.equals(remote)) {
+			return false;
+		}
+		String name = local.name().toUpperCase();
+		return name.equals("US-ASCII") || name.equals("UTF-8")
+				|| name.startsWith("ISO-8859-") || name.startsWith("WINDOWS-125");
+	}
+
 	/**
 	 * This method opens a data transfer channel.
+	 * 
+	 * @param compress
+	 *            false if the contents are not worth compressing, so MODE Z
+	 *            should not be used.
+	 * @param block
+	 *            true if the transfer can use MODE B. If the block mode is in
+	 *            use when the method returns, the provider gives the kept
+	 *            data connection, if any.
 	 */
-	private FTPDataTransferConnectionProvider openDataTransferChannel()
+	private FTPDataTransferConnectionProvider openDataTransferChannel(boolean compress, boolean block)
 			throws IOException, FTPIllegalReplyException, FTPException,
 			FTPDataTransferException {
 		// MODE Z?
-		if (modezSupported && compressionEnabled) {
+		boolean modez = modezSupported && compressionEnabled && compress;
+		if (modez) {
 			if (!modezEnabled) {
 				// Sends the MODE Z command.
-				communication.sendFTPCommand("MODE Z");
+				sendFTPCommand("MODE Z");
 				FTPReply r = communication.readFTPReply();
 				touchAutoNoopTimer();
 				if (r.isSuccessCode()) {
 					modezEnabled = true;
+					modezLevel = Deflater.DEFAULT_COMPRESSION;
+					modebEnabled = false;
+					closeBlockModeConnection();
 				}
 			}
-		} else {
-			if (modezEnabled) {
-				// Sends the MODE S command.
-				communication.sendFTPCommand("MODE S");
-				FTPReply r = communication.readFTPReply();
+			if (modezEnabled && modezLevel != compressionLevel
+					&& compressionLevel != Deflater.DEFAULT_COMPRESSION) {
+				// Suggests the level to the server.
+				sendFTPCommand("OPTS MODE Z LEVEL " + compressionLevel);
+				communication.readFTPReply();
 				touchAutoNoopTimer();
-				if (r.isSuccessCode()) {
-					modezEnabled = false;
-				}
+				// Not sent again, also if not supported.
+				modezLevel = compressionLevel;
+			}
+		}
+		// MODE B?
+		boolean modeb = !(modez && modezEnabled) && block && blockModeEnabled && !modebRefused;
+		if (modeb && !modebEnabled) {
+			// Sends the MODE B command.
+			sendFTPCommand("MODE B");
+			FTPReply r = communication.readFTPReply();
+			touchAutoNoopTimer();
+			if (r.isSuccessCode()) {
+				modebEnabled = true;
+				modezEnabled = false;
+			} else {
+				modebRefused = true;
+				modeb = false;
+			}
+		}
+		// Back to MODE S?
+		if ((modezEnabled && !modez) || (modebEnabled && !modeb)) {
+			// Sends the MODE S command.
+			sendFTPCommand("MODE S");
+			FTPReply r = communication.readFTPReply();
+			touchAutoNoopTimer();
+			if (r.isSuccessCode()) {
+				modezEnabled = false;
+				modebEnabled = false;
+				closeBlockModeConnection();
 			}
 		}
+		// Is there a kept connection?
+		if (modebEnabled && blockModeConnection != null) {
+			FTPDataTransferConnectionProvider provider = new BlockModeConnectionProvider(blockModeConnection);
+			blockModeConnection = null;
+			return provider;
+		}
 		// Active or passive?
 		if (passive) {
 			return openPassiveDataTransferChannel();
@@ -3552,14 +7527,51 @@ public class FTPClient {
 		}
 	}
 
+	/**
+	 * Returns the host a passive mode data connection goes to. Connecting to
+	 * the server directly, it's the address of the communication channel, so
+	 * the data connection reaches the same machine also when the host name
+	 * stands for many of them. Through a proxy, it's the host name.
+	 */
+	private String getDataTransferHost() {
+		if (connector instanceof DirectConnector) {
+			InetAddress address = communication.getRemoteAddress();
+			if (address != null) {
+				return address.getHostAddress();
+			}
+		}
+		return host;
+	}
+
+	/**
+	 * Returns the address the server is expected to connect from, in an
+	 * active mode transfer, or null if it cannot be told for sure.
+	 */
+	private InetAddress getExpectedDataPeer() {
+		// Through a proxy the peer of the control connection is the proxy.
+		if (!(connector instanceof DirectConnector)) {
+			return null;
+		}
+		// A server known by many addresses could connect from any of them.
+		try {
+			if (FTPAddressCache.resolve(host).length > 1) {
+				return null;
+			}
+		} catch (UnknownHostException e) {
+			return null;
+		}
+		return communication.getRemoteAddress();
+	}
+
 	/**
 	 * This method opens a data transfer channel in active mode.
 	 */
 	private FTPDataTransferConnectionProvider openActiveDataTransferChannel()
 			throws IOException, FTPIllegalReplyException, FTPException,
 			FTPDataTransferException {
-		// Create a FTPDataTransferServer object.
-		FTPDataTransferServer server = new FTPDataTransferServer() {
+		// Registers a transfer on the shared acceptor. If the connecting peer
+		// is uncertain, the transfer gets a listening port of its own.
+		FTPDataTransferServer server = new FTPDataTransferServer(getExpectedDataPeer()) {
 			public Socket openDataTransferConnection()
 					throws FTPDataTransferException {
 				Socket socket = super.openDataTransferConnection();
@@ -3582,7 +7594,7 @@ public class FTPClient {
 		int p2 = port & 0xff;
 		int[] addr = pickLocalAddress();
 		// Send the port command.
-		communication.sendFTPCommand("PORT " + addr[0] + "," + addr[1] + "," + addr[2] + "," +
+		sendFTPCommand("PORT " + addr[0] + "," + addr[1] + "," + addr[2] + "," +
 				addr[3] + "," + p1 + "," + p2);
 		FTPReply r = communication.readFTPReply();
 		touchAutoNoopTimer();
@@ -3609,7 +7621,7 @@ public class FTPClient {
 			throws IOException, FTPIllegalReplyException, FTPException,
 			FTPDataTransferException {
 		// Send the PASV command.
-		communication.sendFTPCommand("PASV");
+		sendFTPCommand("PASV");
 		// Read the reply.
 		FTPReply r = communication.readFTPReply();
 		touchAutoNoopTimer();
@@ -3643,16 +7655,18 @@ public class FTPClient {
 		int p2 = Integer.parseInt(st.nextToken());
 		final String pasvHost = b1 + "." + b2 + "." + b3 + "." + b4;
 		final int pasvPort = (p1 << 8) | p2;
+		final String dataHost = getDataTransferHost();
 		FTPDataTransferConnectionProvider provider = new FTPDataTransferConnectionProvider() {
 
 			public Socket openDataTransferConnection() throws FTPDataTransferException {
 				// Establish the connection.
 				Socket dtConnection;
 				try {
-					String selectedHost = connector.getUseSuggestedAddressForDataConnections() ? pasvHost : host;
+					boolean suggested = connector.getUseSuggestedAddressForDataConnections();
+					String selectedHost = suggested ? pasvHost : dataHost;
 					dtConnection = connector.connectForDataTransferChannel(selectedHost, pasvPort);
 					if (dataChannelEncrypted) {
-						dtConnection = ssl(dtConnection, selectedHost, pasvPort);
+						dtConnection = ssl(dtConnection, suggested ? pasvHost : host, pasvPort);
 					}
 				} catch (IOException e) {
 					throw new FTPDataTransferException("Cannot connect to the remote server", e);
@@ -3683,31 +7697,321 @@ public class FTPClient {
 	 *             If the server reply to the ABOR command is illegal. This
 	 *             could happen only if force is false.
 	 */
-	public void abortCurrentDataTransfer(boolean sendAborCommand)
-			throws IOException, FTPIllegalReplyException {
-		synchronized (abortLock) {
-			if (ongoingDataTransfer && !aborted) {
-				if (sendAborCommand) {
-					communication.sendFTPCommand("ABOR");
-					touchAutoNoopTimer();
-					consumeAborCommandReply = true;
-				}
-				if (dataTransferInputStream != null) {
-					try {
-						dataTransferInputStream.close();
-					} catch (Throwable t) {
-						;
-					}
-				}
-				if (dataTransferOutputStream != null) {
-					try {
-						dataTransferOutputStream.close();
-					} catch (Throwable t) {
-						;
-					}
-				}
-				aborted = true;
+	public void abortCurrentDataTransfer(boolean sendAborCommand)
+			throws IOException, FTPIllegalReplyException {
+		abortOwnDataTransfer(sendAborCommand);
+		// Aborts the transfers running on the secondary channels.
+		Object[] busy;
+		synchronized (channelsLock) {
+			busy = busyChannels.toArray();
+		}
+		for (int i = 0; i < busy.length; i++) {
+			FTPClient client = ((Channel) busy[i]).client;
+			if (client != null) {
+				client.abortCurrentDataTransfer(sendAborCommand);
+			}
+		}
+	}
+
+	/**
+	 * Aborts the data transfer running on the connection of the client, if
+	 * any, leaving alone the ones running on the secondary channels.
+	 */
+	private void abortOwnDataTransfer(boolean sendAborCommand)
+			throws IOException, FTPIllegalReplyException {
+		synchronized (abortLock) {
+			if (ongoingDataTransfer && !aborted) {
+				if (sendAborCommand) {
+					communication.sendFTPCommand("ABOR");
+					touchAutoNoopTimer();
+					consumeAborCommandReply = true;
+				}
+				if (dataTransferInputStream != null) {
+					try {
+						dataTransferInputStream.close();
+					} catch (Throwable t) {
+						;
+					}
+				}
+				if (dataTransferOutputStream != null) {
+					try {
+						dataTransferOutputStream.close();
+					} catch (Throwable t) {
+						;
+					}
+				}
+				aborted = true;
+			}
+		}
+	}
+
+	/**
+	 * Sends a command to the server, unless a stream opened with
+	 * openInputStream() or openOutputStream() is using the connection: the
+	 * reply to the command would be mixed up with the ones of the transfer.
+	 * 
+	 * @throws IllegalStateException
+	 *             If a data stream is open.
+	 */
+	private void sendFTPCommand(String command) throws IllegalStateException,
+			IOException {
+		checkDataStream();
+		communication.sendFTPCommand(command);
+	}
+
+	/**
+	 * Sends many commands to the server at once, unless a stream opened with
+	 * openInputStream() or openOutputStream() is using the connection.
+	 * 
+	 * @throws IllegalStateException
+	 *             If a data stream is open.
+	 */
+	private void sendFTPCommands(String[] commands)
+			throws IllegalStateException, IOException {
+		checkDataStream();
+		communication.sendFTPCommands(commands);
+	}
+
+	/**
+	 * Throws an IllegalStateException if a data stream is using the
+	 * connection.
+	 */
+	private void checkDataStream() throws IllegalStateException {
+		if (dataStreamOpen) {
+			throw new IllegalStateException("A data stream is open");
+		}
+	}
+
+	/**
+	 * Closes the data connection kept open between two MODE B transfers, if
+	 * any.
+	 */
+	private void closeBlockModeConnection() {
+		if (blockModeConnection != null) {
+			try {
+				blockModeConnection.close();
+			} catch (Throwable t) {
+				;
+			}
+			blockModeConnection = null;
+		}
+	}
+
+	/**
+	 * Picks the channel running an operation in multi-channel mode. If the
+	 * main channel is free, it is reserved to the calling thread. Otherwise an
+	 * idle secondary channel is taken, or a new one is opened, and aligned to
+	 * the settings and the working directory of the client.
+	 * 
+	 * @return The channel, to be given back with releaseChannel(), or null if
+	 *         the operation has to run on the main channel as usual.
+	 */
+	private Channel acquireChannel() throws IOException,
+			FTPIllegalReplyException, FTPException {
+		// Multi-channel mode? Nested call?
+		if (maxChannels <= 1 || Thread.holdsLock(lock)) {
+			return null;
+		}
+		Thread current = Thread.currentThread();
+		String directory;
+		Channel channel;
+		boolean open;
+		synchronized (channelsLock) {
+			if (mainChannelOwner == current && !dataStreamOpen) {
+				return null;
+			}
+			while (true) {
+				// Is the main channel free?
+				if (mainChannelOwner == null) {
+					mainChannelOwner = current;
+					return mainChannel;
+				}
+				// Secondary channels can't be used without a known directory.
+				directory = workingDirectory;
+				if (directory == null || !connected || !authenticated) {
+					return null;
+				}
+				int size = idleChannels.size();
+				if (size > 0) {
+					channel = (Channel) idleChannels.remove(size - 1);
+					open = false;
+					break;
+				} else if (secondaryChannels < maxChannels - 1) {
+					channel = new Channel(null);
+					secondaryChannels++;
+					open = true;
+					break;
+				}
+				// Waits for the first free channel.
+				try {
+					channelsLock.wait();
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException();
+				}
+			}
+			busyChannels.add(channel);
+		}
+		boolean ready = false;
+		try {
+			// Is an idle channel still alive?
+			if (!open
+					&& System.currentTimeMillis() - channel.lastUsed > CHANNEL_VALIDATION_IDLE_TIME) {
+				try {
+					channel.client.noop();
+				} catch (Exception e) {
+					closeChannel(channel.client);
+					open = true;
+				}
+			}
+			if (open) {
+				// A failed opening closes the connection by itself.
+				channel.client = null;
+				channel.client = openChannel();
+				channel.directory = null;
+			}
+			copySettings(channel.client);
+			if (!directory.equals(channel.directory)) {
+				channel.client.changeDirectory(directory);
+				channel.directory = directory;
+			}
+			ready = true;
+		} finally {
+			if (!ready) {
+				synchronized (channelsLock) {
+					busyChannels.remove(channel);
+					secondaryChannels--;
+					channelsLock.notify();
+				}
+				if (channel.client != null) {
+					closeChannel(channel.client);
+				}
+			}
+		}
+		return channel;
+	}
+
+	/**
+	 * Gives back a channel taken with acquireChannel().
+	 * 
+	 * @param channel
+	 *            The channel.
+	 */
+	private void releaseChannel(Channel channel) {
+		if (channel == mainChannel) {
+			synchronized (channelsLock) {
+				mainChannelOwner = null;
+				channelsLock.notify();
+			}
+			return;
+		}
+		FTPClient client = channel.client;
+		FTPTransferReport report = client.lastTransferReport;
+		if (report != null) {
+			client.lastTransferReport = null;
+			lastTransferReport = report;
+		}
+		boolean alive = client.isConnected() && client.isAuthenticated();
+		synchronized (channelsLock) {
+			busyChannels.remove(channel);
+			channelsLock.notify();
+			if (alive && !channel.discarded) {
+				channel.lastUsed = System.currentTimeMillis();
+				idleChannels.add(channel);
+				return;
+			}
+			secondaryChannels--;
+		}
+		closeChannel(client);
+	}
+
+	/**
+	 * Opens a secondary channel, with the same host, connector, security level
+	 * and credentials of the client.
+	 * 
+	 * @return The connected and authenticated client.
+	 */
+	private FTPClient openChannel() throws IOException,
+			FTPIllegalReplyException, FTPException {
+		FTPClient client = new FTPClient();
+		client.connector = connector;
+		client.sslSocketFactory = sslSocketFactory;
+		client.security = security;
+		client.charset = charset;
+		client.listParsers = new ArrayList(listParsers);
+		client.pipelinedLoginEnabled = pipelinedLoginEnabled;
+		boolean done = false;
+		try {
+			client.connect(host, port);
+			client.login(username, password, account);
+			done = true;
+		} finally {
+			if (!done) {
+				closeChannel(client);
+			}
+		}
+		return client;
+	}
+
+	/**
+	 * Copies the settings of the client to a secondary channel.
+	 * 
+	 * @param client
+	 *            The client of the channel.
+	 */
+	private void copySettings(FTPClient client) {
+		client.type = type;
+		client.passive = passive;
+		client.mlsdPolicy = mlsdPolicy;
+		client.statListPolicy = statListPolicy;
+		client.statListThreshold = statListThreshold;
+		client.pipelineWindow = pipelineWindow;
+		client.batchListThreshold = batchListThreshold;
+		client.parallelListParsingThreshold = parallelListParsingThreshold;
+		client.uploadBandwidthLimiter = uploadBandwidthLimiter;
+		client.downloadBandwidthLimiter = downloadBandwidthLimiter;
+		client.textualExtensionRecognizer = textualExtensionRecognizer;
+		client.compressionEnabled = compressionEnabled;
+		client.compressionLevel = compressionLevel;
+		client.compressionStrategy = compressionStrategy;
+		client.compressionProbeEnabled = compressionProbeEnabled;
+		client.pipelinedCompressionEnabled = pipelinedCompressionEnabled;
+		client.transferChecksum = transferChecksum;
+		client.blockModeEnabled = blockModeEnabled;
+	}
+
+	/**
+	 * Closes the idle secondary channels. The busy ones will be closed when
+	 * given back.
+	 */
+	private void closeChannels() {
+		Object[] idle;
+		synchronized (channelsLock) {
+			idle = idleChannels.toArray();
+			idleChannels.clear();
+			secondaryChannels -= idle.length;
+			channelsLock.notifyAll();
+			for (Iterator i = busyChannels.iterator(); i.hasNext();) {
+				((Channel) i.next()).discarded = true;
+			}
+		}
+		for (int i = 0; i < idle.length; i++) {
+			closeChannel(((Channel) idle[i]).client);
+		}
+	}
+
+	/**
+	 * Closes the connection of a secondary channel, ignoring any error.
+	 * 
+	 * @param client
+	 *            The client of the channel.
+	 */
+	private void closeChannel(FTPClient client) {
+		try {
+			if (client.isConnected()) {
+				client.disconnect(false);
 			}
+		} catch (Throwable t) {
+			;
 		}
 	}
 
@@ -3932,6 +8236,604 @@ public class FTPClient {
 		}
 	}
 
+	/**
+	 * Runs a file transfer, retrying it as stated by a policy.
+	 * 
+	 * @param policy
+	 *            The retry policy.
+	 * @param restartAt
+	 *            The restart point of the first attempt.
+	 * @param transfer
+	 *            The transfer.
+	 */
+	private void retryTransfer(FTPRetryPolicy policy, long restartAt,
+			ResumableTransfer transfer) throws IllegalStateException,
+			IOException, FTPIllegalReplyException, FTPException,
+			FTPDataTransferException, FTPAbortedException {
+		// The session to restore after a reconnection.
+		String host;
+		int port;
+		String username;
+		String password;
+		String account;
+		synchronized (lock) {
+			host = this.host;
+			port = this.port;
+			username = this.username;
+			password = this.password;
+			account = this.account;
+		}
+		// The tracked working directory, if any, or the one asked after the
+		// first failure: transfers which never fail don't pay a PWD.
+		String workingDirectory = this.workingDirectory;
+		Exception failure = null;
+		int failures = 0;
+		long reached = restartAt;
+		boolean resume = false;
+		while (true) {
+			try {
+				if (resume) {
+					restoreSession(host, port, username, password, account,
+							workingDirectory, failure);
+					restartAt = transfer.getResumePoint();
+					// Any progress resets the retry budget.
+					if (restartAt > reached) {
+						reached = restartAt;
+						failures = 0;
+					}
+				}
+				transfer.transfer(restartAt);
+				return;
+			} catch (FTPAbortedException e) {
+				throw e;
+			} catch (FTPException e) {
+				// 4xx replies are transient negative completions.
+				int code = e.getCode();
+				if (code < 400 || code >= 500
+						|| ++failures > policy.getMaxRetries()) {
+					throw e;
+				}
+				failure = e;
+			} catch (FTPDataTransferException e) {
+				if (++failures > policy.getMaxRetries()) {
+					throw e;
+				}
+				failure = e;
+			} catch (FTPIllegalReplyException e) {
+				if (++failures > policy.getMaxRetries()) {
+					throw e;
+				}
+				failure = e;
+			} catch (IOException e) {
+				if (++failures > policy.getMaxRetries()) {
+					throw e;
+				}
+				failure = e;
+			}
+			// The working directory, while the session is still there.
+			if (workingDirectory == null) {
+				try {
+					workingDirectory = currentDirectory();
+				} catch (Throwable t) {
+					;
+				}
+			}
+			// Backoff.
+			try {
+				Thread.sleep(policy.getDelay(failures));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting to retry");
+			}
+			resume = true;
+		}
+	}
+
+	/**
+	 * Checks the control connection, and establishes a new session if it has
+	 * been lost. A lost session whose working directory is unknown can't be
+	 * restored: the transfer would run in another directory.
+	 */
+	private void restoreSession(String host, int port, String username,
+			String password, String account, String workingDirectory,
+			Exception failure) throws IllegalStateException, IOException,
+			FTPIllegalReplyException, FTPException {
+		// Is the control connection still working?
+		try {
+			noop();
+			return;
+		} catch (FTPException e) {
+			// The server is there.
+			return;
+		} catch (IllegalStateException e) {
+			;
+		} catch (IOException e) {
+			;
+		} catch (FTPIllegalReplyException e) {
+			;
+		}
+		// No, it isn't.
+		if (workingDirectory == null) {
+			IOException e = new IOException("Cannot restore the working directory");
+			e.initCause(failure);
+			throw e;
+		}
+		if (isConnected()) {
+			try {
+				disconnect(false);
+			} catch (Throwable t) {
+				;
+			}
+		}
+		connect(host, port);
+		login(username, password, account);
+		changeDirectory(workingDirectory);
+	}
+
+	/**
+	 * A file transfer which can be resumed.
+	 */
+	private interface ResumableTransfer {
+
+		/**
+		 * Runs an attempt of the transfer.
+		 */
+		public void transfer(long restartAt) throws IllegalStateException,
+				IOException, FTPIllegalReplyException, FTPException,
+				FTPDataTransferException, FTPAbortedException;
+
+		/**
+		 * Returns the point reached by the transfer.
+		 */
+		public long getResumePoint() throws IllegalStateException,
+				IOException, FTPIllegalReplyException, FTPException;
+
+	}
+
+	/**
+	 * Gives the data connection kept open after a MODE B transfer.
+	 */
+	private static class BlockModeConnectionProvider implements
+			FTPDataTransferConnectionProvider {
+
+		/**
+		 * The kept connection.
+		 */
+		private Socket connection;
+
+		/**
+		 * Whether the connection has been taken.
+		 */
+		private boolean taken = false;
+
+		public BlockModeConnectionProvider(Socket connection) {
+			this.connection = connection;
+		}
+
+		public Socket openDataTransferConnection() {
+			taken = true;
+			return connection;
+		}
+
+		/**
+		 * Closes the connection, if it has not been taken.
+		 */
+		public void dispose() {
+			if (!taken) {
+				try {
+					connection.close();
+				} catch (Throwable t) {
+					;
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * A control connection, as seen by the multi-channel dispatcher.
+	 */
+	private static class Channel {
+
+		/**
+		 * The client owning the connection.
+		 */
+		private FTPClient client;
+
+		/**
+		 * The working directory of the connection (null if unknown).
+		 */
+		private String directory = null;
+
+		/**
+		 * When the channel has been given back for the last time.
+		 */
+		private long lastUsed = 0;
+
+		/**
+		 * Whether the channel has to be closed when given back.
+		 */
+		private boolean discarded = false;
+
+		public Channel(FTPClient client) {
+			this.client = client;
+		}
+
+	}
+
+	/**
+	 * The stream returned by openInputStream().
+	 */
+	private class RemoteInputStream extends InputStream {
+
+		/**
+		 * The data connection.
+		 */
+		private Socket connection;
+
+		/**
+		 * The stream of the data connection.
+		 */
+		private InputStream in;
+
+		/**
+		 * The Inflater, if MODE Z is in use.
+		 */
+		private Inflater inflater = null;
+
+		/**
+		 * The client which gave the stream a channel, if any.
+		 */
+		private FTPClient owner = null;
+
+		/**
+		 * The channel taken by the stream, if any.
+		 */
+		private Channel channel = null;
+
+		/**
+		 * Whether the stream carries the response of a MLSD command.
+		 */
+		private boolean mlsd = false;
+
+		/**
+		 * The charset of a listing.
+		 */
+		private String charset = null;
+
+		/**
+		 * Whether the end of the data has been reached.
+		 */
+		private boolean eof = false;
+
+		/**
+		 * Whether the stream has been closed.
+		 */
+		private boolean closed = false;
+
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			int l;
+			while ((l = read(b, 0, 1)) == 0)
+				;
+			return l == -1 ? -1 : b[0] & 0xff;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (closed) {
+				throw new IOException("Stream closed");
+			}
+			if (eof) {
+				return -1;
+			}
+			int l = in.read(b, off, len);
+			if (l == -1) {
+				eof = true;
+			} else {
+				throttle(downloadBandwidthLimiter, l);
+			}
+			return l;
+		}
+
+		public int available() throws IOException {
+			if (closed || eof) {
+				return 0;
+			}
+			return in.available();
+		}
+
+		public void close() throws IOException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			try {
+				closeDataStream(connection, eof);
+			} finally {
+				if (inflater != null) {
+					FTPCompression.release(inflater);
+				}
+				if (channel != null) {
+					owner.releaseChannel(channel);
+				}
+			}
+		}
+
+		/**
+		 * Aborts the transfer, without ABOR, closing the data connection. The
+		 * stream still has to be closed.
+		 */
+		private void abort() {
+			try {
+				abortOwnDataTransfer(false);
+			} catch (Throwable t) {
+				;
+			}
+		}
+
+		/**
+		 * Parses some lines of a listing, with the parser of the client which
+		 * owns the connection.
+		 * 
+		 * @param lines
+		 *            The lines.
+		 * @param first
+		 *            true for the first lines of the listing, used to choose
+		 *            the parser.
+		 * @param filter
+		 *            The filter applied to the entries (could be null).
+		 * @return The entries.
+		 */
+		private FTPFile[] parseLines(String[] lines, boolean first,
+				FTPFileFilter filter) throws IOException,
+				FTPIllegalReplyException, FTPListParseException {
+			synchronized (lock) {
+				FTPFile[] ret = null;
+				if (mlsd) {
+					// Forces the MLSDListParser.
+					ret = applyListParser(new MLSDListParser(), lines, filter);
+				} else {
+					if (!first && parser != null) {
+						try {
+							ret = applyListParser(parser, lines, filter);
+						} catch (FTPListParseException e) {
+							ret = null;
+						}
+					}
+					if (ret == null) {
+						ret = parseList(lines, filter);
+					}
+				}
+				if (ret == null) {
+					// None of the parsers can handle the list response.
+					throw new FTPListParseException();
+				}
+				return ret;
+			}
+		}
+
+	}
+
+	/**
+	 * The subscription of a publisher built by publishDownload().
+	 */
+	private class DownloadSubscription extends FTPBlockingSubscription {
+
+		private String fileName;
+
+		private long offset;
+
+		private RemoteInputStream stream = null;
+
+		public DownloadSubscription(FTPSubscriber subscriber,
+				String fileName, long offset) {
+			super(subscriber);
+			this.fileName = fileName;
+			this.offset = offset;
+		}
+
+		protected void open() throws Exception {
+			stream = (RemoteInputStream) openInputStream(fileName, offset);
+		}
+
+		protected Object next() throws Exception {
+			byte[] buffer = new byte[SEND_AND_RECEIVE_BUFFER_SIZE];
+			int l;
+			while ((l = stream.read(buffer, 0, buffer.length)) == 0)
+				;
+			if (l == -1) {
+				return null;
+			}
+			return ByteBuffer.wrap(buffer, 0, l);
+		}
+
+		protected void close() throws Exception {
+			if (stream != null) {
+				stream.close();
+			}
+		}
+
+		protected void abort() {
+			if (stream != null) {
+				stream.abort();
+			}
+		}
+
+	}
+
+	/**
+	 * The subscription of a publisher built by publishList().
+	 */
+	private class ListSubscription extends FTPBlockingSubscription {
+
+		private String fileSpec;
+
+		private FTPFileFilter filter;
+
+		private RemoteInputStream stream = null;
+
+		private NVTASCIIReader reader = null;
+
+		/**
+		 * The entries parsed and not delivered yet.
+		 */
+		private FTPFile[] entries = null;
+
+		private int index = 0;
+
+		private boolean first = true;
+
+		public ListSubscription(FTPSubscriber subscriber, String fileSpec,
+				FTPFileFilter filter) {
+			super(subscriber);
+			this.fileSpec = fileSpec;
+			this.filter = filter;
+		}
+
+		protected void open() throws Exception {
+			stream = openListStream(fileSpec, filter);
+			reader = new NVTASCIIReader(stream, stream.charset);
+		}
+
+		protected Object next() throws Exception {
+			while (entries == null || index == entries.length) {
+				// Reads a few lines, enough to choose the parser.
+				ArrayList lines = new ArrayList();
+				String line;
+				while (lines.size() < LIST_PARSER_SAMPLE_SIZE
+						&& (line = reader.readLine()) != null) {
+					if (line.length() > 0) {
+						lines.add(line);
+					}
+				}
+				int size = lines.size();
+				if (size == 0) {
+					return null;
+				}
+				String[] list = new String[size];
+				for (int i = 0; i < size; i++) {
+					list[i] = (String) lines.get(i);
+				}
+				entries = stream.parseLines(list, first, filter);
+				index = 0;
+				first = false;
+			}
+			return entries[index++];
+		}
+
+		protected void close() throws Exception {
+			if (stream != null) {
+				stream.close();
+			}
+		}
+
+		protected void abort() {
+			if (stream != null) {
+				stream.abort();
+			}
+		}
+
+	}
+
+	/**
+	 * The stream returned by openOutputStream().
+	 */
+	private class RemoteOutputStream extends OutputStream {
+
+		/**
+		 * The data connection.
+		 */
+		private Socket connection;
+
+		/**
+		 * The stream of the data connection.
+		 */
+		private OutputStream out;
+
+		/**
+		 * The Deflater, if MODE Z is in use.
+		 */
+		private Deflater deflater = null;
+
+		/**
+		 * The client which gave the stream a channel, if any.
+		 */
+		private FTPClient owner = null;
+
+		/**
+		 * The channel taken by the stream, if any.
+		 */
+		private Channel channel = null;
+
+		/**
+		 * Whether a write has failed.
+		 */
+		private boolean failed = false;
+
+		/**
+		 * Whether the stream has been closed.
+		 */
+		private boolean closed = false;
+
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (closed) {
+				throw new IOException("Stream closed");
+			}
+			throttle(uploadBandwidthLimiter, len);
+			try {
+				out.write(b, off, len);
+			} catch (IOException e) {
+				failed = true;
+				throw e;
+			}
+		}
+
+		public void flush() throws IOException {
+			if (closed) {
+				throw new IOException("Stream closed");
+			}
+			out.flush();
+		}
+
+		public void close() throws IOException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			IOException failure = null;
+			try {
+				// Completes the data.
+				if (!failed) {
+					try {
+						if (out instanceof DeflaterOutputStream) {
+							((DeflaterOutputStream) out).finish();
+						}
+						out.flush();
+					} catch (IOException e) {
+						failed = true;
+						failure = e;
+					}
+				}
+				closeDataStream(connection, !failed);
+				if (failure != null) {
+					throw failure;
+				}
+			} finally {
+				if (deflater != null) {
+					FTPCompression.release(deflater);
+				}
+				if (channel != null) {
+					owner.releaseChannel(channel);
+				}
+			}
+		}
+
+	}
+
 	/**
 	 * The auto noop timer thread.
 	 */
@@ -3952,6 +8854,11 @@ public class FTPClient {
 							break;
 						}
 					}
+					// Is a data stream using the connection?
+					if (dataStreamOpen) {
+						nextAutoNoopTime = System.currentTimeMillis() + autoNoopTimeout;
+						continue;
+					}
 					// Is it really time to NOOP?
 					if (System.currentTimeMillis() >= nextAutoNoopTime) {
 						// Yes!
@@ -0,0 +1,815 @@
+/*
+ * ftp4j - A pure Java FTP client library
+ * 
+ * Copyright (C) 2008-2010 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version
+ * 2.1, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License 2.1 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License version 2.1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.sauronsoftware.ftp4j;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * A pool of authenticated client sessions. Borrowing a session from the pool
+ * saves the connection, the TLS handshake, the welcome message, the login and
+ * the feature negotiation paid by a new client, as long as an idle session
+ * with the same host, port, username, password and security level is
+ * available. The passwords are not kept: a session remembers a salted digest
+ * of the password used to log in, and it is handed out only to a caller
+ * giving the same password.
+ * 
+ * Sessions idle for more than the validation idle time are checked with a
+ * NOOP before being handed out; sessions idle for more than the maximum idle
+ * time are closed by a background thread. The number of sessions opened to
+ * the same host and port, borrowed or idle, is limited: when the limit is
+ * reached the borrowing thread waits for a session to be returned, or closes
+ * an idle session of another user to make room.
+ * 
+ * When a session is returned, its working directory and its transfer type are
+ * restored to the ones it had after the login. A session left in an unknown
+ * state (in example after an I/O error) should be invalidated instead of
+ * being returned.
+ * 
+ * The clients are built by {@link #createClient()}, which can be overridden
+ * to configure them (connector, SSL socket factory and so on).
+ * 
+ * @author Carlo Pelliccia
+ * @since 1.8
+ */
+public class FTPClientPool {
+
+	/**
+	 * The lock guarding the pool.
+	 */
+	private Object lock = new Object();
+
+	/**
+	 * The random salt of the password digests.
+	 */
+	private byte[] salt = newSalt();
+
+	/**
+	 * The sessions opened to every host, by "host:port".
+	 */
+	private HashMap hosts = new HashMap();
+
+	/**
+	 * The borrowed sessions, by client.
+	 */
+	private HashMap borrowed = new HashMap();
+
+	/**
+	 * The maximum number of sessions opened to the same host.
+	 */
+	private int maxSessionsPerHost = 8;
+
+	/**
+	 * The idle time (ms) after which a session is checked before being
+	 * borrowed.
+	 */
+	private long validationIdleTime = 30000;
+
+	/**
+	 * The idle time (ms) after which a session is closed.
+	 */
+	private long maxIdleTime = 300000;
+
+	/**
+	 * The maximum time (ms) a borrowing thread waits for a free slot.
+	 */
+	private long borrowTimeout = 30000;
+
+	/**
+	 * The thread closing the idle sessions, running while there are idle
+	 * sessions.
+	 */
+	private Thread evictor = null;
+
+	/**
+	 * Whether the pool has been closed.
+	 */
+	private boolean closed = false;
+
+	/**
+	 * Metrics.
+	 */
+	private long createdCount = 0;
+
+	private long reusedCount = 0;
+
+	private long validatedCount = 0;
+
+	private long brokenCount = 0;
+
+	private long evictedCount = 0;
+
+	private long waitCount = 0;
+
+	private long timeoutCount = 0;
+
+	/**
+	 * Sets the maximum number of sessions opened to the same host and port,
+	 * borrowed or idle. The default value is 8.
+	 * 
+	 * @param maxSessionsPerHost
+	 *            The limit.
+	 */
+	public void setMaxSessionsPerHost(int maxSessionsPerHost) {
+		if (maxSessionsPerHost < 1) {
+			throw new IllegalArgumentException("Invalid limit: "
+					+ maxSessionsPerHost);
+		}
+		synchronized (lock) {
+			this.maxSessionsPerHost = maxSessionsPerHost;
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Returns the maximum number of sessions opened to the same host and
+	 * port.
+	 * 
+	 * @return The limit.
+	 */
+	public int getMaxSessionsPerHost() {
+		synchronized (lock) {
+			return maxSessionsPerHost;
+		}
+	}
+
+	/**
+	 * Sets the idle time after which a session is checked with a NOOP before
+	 * being borrowed. Sessions used more recently are handed out without any
+	 * round trip. The default value is 30000.
+	 * 
+	 * @param validationIdleTime
+	 *            The time, in milliseconds.
+	 */
+	public void setValidationIdleTime(long validationIdleTime) {
+		synchronized (lock) {
+			this.validationIdleTime = validationIdleTime;
+		}
+	}
+
+	/**
+	 * Returns the idle time after which a session is checked before being
+	 * borrowed.
+	 * 
+	 * @return The time, in milliseconds.
+	 */
+	public long getValidationIdleTime() {
+		synchronized (lock) {
+			return validationIdleTime;
+		}
+	}
+
+	/**
+	 * Sets the idle time after which a session is closed. The default value
+	 * is 300000.
+	 * 
+	 * @param maxIdleTime
+	 *            The time, in milliseconds.
+	 */
+	public void setMaxIdleTime(long maxIdleTime) {
+		if (maxIdleTime < 1) {
+			throw new IllegalArgumentException("Invalid idle time: "
+					+ maxIdleTime);
+		}
+		synchronized (lock) {
+			this.maxIdleTime = maxIdleTime;
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Returns the idle time after which a session is closed.
+	 * 
+	 * @return The time, in milliseconds.
+	 */
+	public long getMaxIdleTime() {
+		synchronized (lock) {
+			return maxIdleTime;
+		}
+	}
+
+	/**
+	 * Sets the maximum time a thread waits for a session when the limit of
+	 * the host has been reached. The default value is 30000.
+	 * 
+	 * @param borrowTimeout
+	 *            The time, in milliseconds (0 to wait forever).
+	 */
+	public void setBorrowTimeout(long borrowTimeout) {
+		synchronized (lock) {
+			this.borrowTimeout = borrowTimeout;
+		}
+	}
+
+	/**
+	 * Returns the maximum time a thread waits for a session.
+	 * 
+	 * @return The time, in milliseconds (0 means forever).
+	 */
+	public long getBorrowTimeout() {
+		synchronized (lock) {
+			return borrowTimeout;
+		}
+	}
+
+	/**
+	 * Builds a new client. Override this method to configure the clients of
+	 * the pool.
+	 * 
+	 * @return A new client, not connected.
+	 */
+	protected FTPClient createClient() {
+		return new FTPClient();
+	}
+
+	/**
+	 * Borrows a session, connected with the standard port and the FTP
+	 * security level.
+	 * 
+	 * @param host
+	 *            The host.
+	 * @param username
+	 *            The username.
+	 * @param password
+	 *            The password.
+	 * @return An authenticated client, to be given back with
+	 *         {@link #release(FTPClient)} or {@link #invalidate(FTPClient)}.
+	 * @throws IllegalStateException
+	 *             If the pool has been closed.
+	 * @throws IOException
+	 *             If an I/O error occurs, or if no session is available
+	 *             before the borrow timeout.
+	 * @throws FTPIllegalReplyException
+	 *             If the server replies in an illegal way.
+	 * @throws FTPException
+	 *             If the connection or the login is refused.
+	 */
+	public FTPClient borrow(String host, String username, String password)
+			throws IllegalStateException, IOException,
+			FTPIllegalReplyException, FTPException {
+		return borrow(host, 21, username, password, FTPClient.SECURITY_FTP);
+	}
+
+	/**
+	 * Borrows a session.
+	 * 
+	 * @param host
+	 *            The host.
+	 * @param port
+	 *            The port.
+	 * @param username
+	 *            The username.
+	 * @param password
+	 *            The password.
+	 * @param security
+	 *            The security level, one of the FTPClient.SECURITY_*
+	 *            constants. For SECURITY_FTPS, the port is usually 990.
+	 * @return An authenticated client, to be given back with
+	 *         {@link #release(FTPClient)} or {@link #invalidate(FTPClient)}.
+	 * @throws IllegalStateException
+	 *             If the pool has been closed.
+	 * @throws IOException
+	 *             If an I/O error occurs, or if no session is available
+	 *             before the borrow timeout.
+	 * @throws FTPIllegalReplyException
+	 *             If the server replies in an illegal way.
+	 * @throws FTPException
+	 *             If the connection or the login is refused.
+	 */
+	public FTPClient borrow(String host, int port, String username,
+			String password, int security) throws IllegalStateException,
+			IOException, FTPIllegalReplyException, FTPException {
+		String hostKey = host + ":" + port;
+		String key = username + "@" + hostKey + "/" + security;
+		byte[] credentials = digest(password);
+		while (true) {
+			Session session = null;
+			Session victim = null;
+			boolean validate = false;
+			synchronized (lock) {
+				Host h = (Host) hosts.get(hostKey);
+				if (h == null) {
+					h = new Host();
+					hosts.put(hostKey, h);
+				}
+				long deadline = borrowTimeout > 0 ? System.currentTimeMillis()
+						+ borrowTimeout : 0;
+				boolean waited = false;
+				while (true) {
+					if (closed) {
+						throw new IllegalStateException("Pool closed");
+					}
+					// The most recently used idle session of the same user.
+					for (int i = h.idle.size() - 1; i >= 0; i--) {
+						Session aux = (Session) h.idle.get(i);
+						if (aux.key.equals(key)
+								&& MessageDigest.isEqual(aux.credentials, credentials)) {
+							session = aux;
+							h.idle.remove(i);
+							break;
+						}
+					}
+					if (session != null) {
+						validate = System.currentTimeMillis()
+								- session.lastUsed > validationIdleTime;
+						break;
+					}
+					// A new session?
+					if (h.sessions < maxSessionsPerHost) {
+						h.sessions++;
+						break;
+					}
+					// Makes room closing the oldest idle session.
+					if (h.idle.size() > 0) {
+						victim = (Session) h.idle.remove(0);
+						evictedCount++;
+						break;
+					}
+					// Waits.
+					if (!waited) {
+						waited = true;
+						waitCount++;
+					}
+					long delay = 0;
+					if (deadline > 0) {
+						delay = deadline - System.currentTimeMillis();
+						if (delay <= 0) {
+							timeoutCount++;
+							throw new IOException("Timeout waiting for a session to "
+									+ hostKey);
+						}
+					}
+					try {
+						lock.wait(delay);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new IOException("Interrupted while waiting for a session to "
+								+ hostKey);
+					}
+				}
+			}
+			if (victim != null) {
+				close(victim);
+			}
+			if (session != null) {
+				if (validate) {
+					boolean valid;
+					try {
+						session.client.noop();
+						valid = true;
+					} catch (Throwable t) {
+						valid = false;
+					}
+					synchronized (lock) {
+						validatedCount++;
+						if (!valid) {
+							brokenCount++;
+						}
+					}
+					if (!valid) {
+						discard(session);
+						// Another one.
+						continue;
+					}
+				}
+				synchronized (lock) {
+					reusedCount++;
+					borrowed.put(session.client, session);
+				}
+				return session.client;
+			}
+			// Opens a new session (a slot has been taken).
+			session = new Session();
+			session.key = key;
+			session.credentials = credentials;
+			session.hostKey = hostKey;
+			// Whatever the failure, the slot is given back.
+			boolean done = false;
+			try {
+				session.client = createClient();
+				session.client.setSecurity(security);
+				session.client.connect(host, port);
+				session.client.login(username, password);
+				session.home = session.client.currentDirectory();
+				session.type = session.client.getType();
+				done = true;
+			} finally {
+				if (!done) {
+					discard(session);
+				}
+			}
+			synchronized (lock) {
+				createdCount++;
+				borrowed.put(session.client, session);
+			}
+			return session.client;
+		}
+	}
+
+	/**
+	 * Gives back a borrowed session. Its working directory and transfer type
+	 * are restored; if that fails the session is closed.
+	 * 
+	 * @param client
+	 *            The client.
+	 * @throws IllegalArgumentException
+	 *             If the client has not been borrowed from this pool.
+	 */
+	public void release(FTPClient client) throws IllegalArgumentException {
+		Session session;
+		synchronized (lock) {
+			session = (Session) borrowed.remove(client);
+		}
+		if (session == null) {
+			throw new IllegalArgumentException("Client not borrowed from this pool");
+		}
+		// Resets the session.
+		boolean valid = client.isConnected() && client.isAuthenticated();
+		if (valid) {
+			try {
+				client.changeDirectory(session.home);
+				client.setType(session.type);
+			} catch (Throwable t) {
+				valid = false;
+			}
+		}
+		if (!valid) {
+			synchronized (lock) {
+				brokenCount++;
+			}
+			discard(session);
+			return;
+		}
+		synchronized (lock) {
+			if (closed) {
+				session.lastUsed = 0;
+			} else {
+				Host h = (Host) hosts.get(session.hostKey);
+				session.lastUsed = System.currentTimeMillis();
+				h.idle.add(session);
+				lock.notifyAll();
+				startEvictor();
+				return;
+			}
+		}
+		discard(session);
+	}
+
+	/**
+	 * Closes a borrowed session, instead of giving it back. Call this method
+	 * when the state of the session is unknown, in example after an I/O
+	 * error.
+	 * 
+	 * @param client
+	 *            The client.
+	 * @throws IllegalArgumentException
+	 *             If the client has not been borrowed from this pool.
+	 */
+	public void invalidate(FTPClient client) throws IllegalArgumentException {
+		Session session;
+		synchronized (lock) {
+			session = (Session) borrowed.remove(client);
+		}
+		if (session == null) {
+			throw new IllegalArgumentException("Client not borrowed from this pool");
+		}
+		discard(session);
+	}
+
+	/**
+	 * Closes the idle sessions. The borrowed sessions are closed when given
+	 * back. After this call the pool cannot be used anymore.
+	 */
+	public void close() {
+		ArrayList list = new ArrayList();
+		synchronized (lock) {
+			closed = true;
+			for (Iterator i = hosts.values().iterator(); i.hasNext();) {
+				Host h = (Host) i.next();
+				h.sessions -= h.idle.size();
+				list.addAll(h.idle);
+				h.idle.clear();
+			}
+			lock.notifyAll();
+		}
+		for (Iterator i = list.iterator(); i.hasNext();) {
+			close((Session) i.next());
+		}
+	}
+
+	/**
+	 * Returns the number of sessions opened by the pool.
+	 * 
+	 * @return The count.
+	 */
+	public long getCreatedCount() {
+		synchronized (lock) {
+			return createdCount;
+		}
+	}
+
+	/**
+	 * Returns the number of borrows served with an idle session.
+	 * 
+	 * @return The count.
+	 */
+	public long getReusedCount() {
+		synchronized (lock) {
+			return reusedCount;
+		}
+	}
+
+	/**
+	 * Returns the number of idle sessions checked with a NOOP.
+	 * 
+	 * @return The count.
+	 */
+	public long getValidatedCount() {
+		synchronized (lock) {
+			return validatedCount;
+		}
+	}
+
+	/**
+	 * Returns the number of sessions found broken, while validating or
+	 * resetting them.
+	 * 
+	 * @return The count.
+	 */
+	public long getBrokenCount() {
+		synchronized (lock) {
+			return brokenCount;
+		}
+	}
+
+	/**
+	 * Returns the number of idle sessions closed, since idle for too long or
+	 * to make room for another user.
+	 * 
+	 * @return The count.
+	 */
+	public long getEvictedCount() {
+		synchronized (lock) {
+			return evictedCount;
+		}
+	}
+
+	/**
+	 * Returns the number of borrows which waited for the limit of the host.
+	 * 
+	 * @return The count.
+	 */
+	public long getWaitCount() {
+		synchronized (lock) {
+			return waitCount;
+		}
+	}
+
+	/**
+	 * Returns the number of borrows failed for the timeout.
+	 * 
+	 * @return The count.
+	 */
+	public long getTimeoutCount() {
+		synchronized (lock) {
+			return timeoutCount;
+		}
+	}
+
+	/**
+	 * Returns the number of borrowed sessions.
+	 * 
+	 * @return The count.
+	 */
+	public int getActiveCount() {
+		synchronized (lock) {
+			return borrowed.size();
+		}
+	}
+
+	/**
+	 * Returns the number of idle sessions.
+	 * 
+	 * @return The count.
+	 */
+	public int getIdleCount() {
+		synchronized (lock) {
+			int count = 0;
+			for (Iterator i = hosts.values().iterator(); i.hasNext();) {
+				count += ((Host) i.next()).idle.size();
+			}
+			return count;
+		}
+	}
+
+	public String toString() {
+		StringBuffer buffer = new StringBuffer();
+		buffer.append(getClass().getName());
+		synchronized (lock) {
+			buffer.append(" [active=");
+			buffer.append(borrowed.size());
+			buffer.append(", idle=");
+			buffer.append(getIdleCount());
+			buffer.append(", created=");
+			buffer.append(createdCount);
+			buffer.append(", reused=");
+			buffer.append(reusedCount);
+			buffer.append(", validated=");
+			buffer.append(validatedCount);
+			buffer.append(", broken=");
+			buffer.append(brokenCount);
+			buffer.append(", evicted=");
+			buffer.append(evictedCount);
+			buffer.append(", waits=");
+			buffer.append(waitCount);
+			buffer.append(", timeouts=");
+			buffer.append(timeoutCount);
+			buffer.append("]");
+		}
+		return buffer.toString();
+	}
+
+	/**
+	 * Closes a session and frees its slot.
+	 */
+	private void discard(Session session) {
+		synchronized (lock) {
+			Host h = (Host) hosts.get(session.hostKey);
+			h.sessions--;
+			lock.notifyAll();
+		}
+		close(session);
+	}
+
+	/**
+	 * Closes the connection of a session.
+	 */
+	private void close(Session session) {
+		FTPClient client = session.client;
+		if (client != null && client.isConnected()) {
+			try {
+				client.disconnect(client.isAuthenticated());
+			} catch (Throwable t) {
+				client.abruptlyCloseCommunication();
+			}
+		}
+	}
+
+	/**
+	 * Starts the evictor thread, if not running. Call it holding the lock.
+	 */
+	private void startEvictor() {
+		if (evictor == null) {
+			evictor = new Evictor();
+			evictor.setDaemon(true);
+			evictor.start();
+		}
+	}
+
+	/**
+	 * Builds a random salt.
+	 */
+	private static byte[] newSalt() {
+		byte[] salt = new byte[16];
+		new SecureRandom().nextBytes(salt);
+		return salt;
+	}
+
+	/**
+	 * Computes the salted digest of a password.
+	 */
+	private byte[] digest(String password) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			md.update(salt);
+			if (password != null) {
+				md.update(password.getBytes("UTF-8"));
+			}
+			return md.digest();
+		} catch (NoSuchAlgorithmException e) {
+			// Every JVM supports SHA-256.
+			throw new RuntimeException(e);
+		} catch (UnsupportedEncodingException e) {
+			// Every JVM supports UTF-8.
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * A session.
+	 */
+	private static class Session {
+
+		private FTPClient client;
+
+		private String key;
+
+		/**
+		 * The salted digest of the password.
+		 */
+		private byte[] credentials;
+
+		private String hostKey;
+
+		private String home;
+
+		private int type;
+
+		private long lastUsed;
+
+	}
+
+	/**
+	 * The sessions opened to a host.
+	 */
+	private static class Host {
+
+		/**
+		 * The idle sessions, from the least recently used.
+		 */
+		private ArrayList idle = new ArrayList();
+
+		/**
+		 * The sessions opened, borrowed or idle.
+		 */
+		private int sessions = 0;
+
+	}
+
+	/**
+	 * The thread closing the sessions idle for too long. It terminates when
+	 * there are no more idle sessions.
+	 */
+	private class Evictor extends Thread {
+
+		public Evictor() {
+			super("ftp4j-client-pool-evictor");
+		}
+
+		public void run() {
+			while (true) {
+				ArrayList list = new ArrayList();
+				synchronized (lock) {
+					if (closed || getIdleCount() == 0) {
+						evictor = null;
+						return;
+					}
+					long now = System.currentTimeMillis();
+					long next = Long.MAX_VALUE;
+					for (Iterator i = hosts.values().iterator(); i.hasNext();) {
+						Host h = (Host) i.next();
+						for (Iterator j = h.idle.iterator(); j.hasNext();) {
+							Session session = (Session) j.next();
+							long expiry = session.lastUsed + maxIdleTime;
+							if (expiry <= now) {
+								j.remove();
+								h.sessions--;
+								evictedCount++;
+								list.add(session);
+							} else if (expiry < next) {
+								next = expiry;
+							}
+						}
+					}
+					if (list.isEmpty()) {
+						try {
+							lock.wait(next - now);
+						} catch (InterruptedException e) {
+							evictor = null;
+							return;
+						}
+					} else {
+						lock.notifyAll();
+					}
+				}
+				for (Iterator i = list.iterator(); i.hasNext();) {
+					close((Session) i.next());
+				}
+			}
+		}
+
+	}
+
+}
@@ -21,6 +21,7 @@ package it.sauronsoftware.ftp4j;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.InetAddress;
 import java.net.Socket;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -169,6 +170,27 @@ public class FTPCommunicationChannel {
 		}
 	}
 
+	/**
+	 * This method sends many command lines to the server at once, without
+	 * waiting for the replies. The replies have to be read later, one for each
+	 * command and in the same order.
+	 * 
+	 * @param commands
+	 *            The commands to be sent.
+	 * @throws IOException
+	 *             If an I/O error occurs.
+	 * @since 1.8
+	 */
+	public void sendFTPCommands(String[] commands) throws IOException {
+		for (int i = 0; i < commands.length; i++) {
+			writer.writeLine(commands[i], i == commands.length - 1);
+			for (Iterator iter = communicationListeners.iterator(); iter.hasNext();) {
+				FTPCommunicationListener l = (FTPCommunicationListener) iter.next();
+				l.sent(commands[i]);
+			}
+		}
+	}
+
 	/**
 	 * This method reads and parses a FTP reply statement from the server.
 	 * 
@@ -253,6 +275,16 @@ public class FTPCommunicationChannel {
 		writer.changeCharset(charsetName);
 	}
 
+	/**
+	 * Returns the address of the remote end of the channel.
+	 * 
+	 * @return The remote address.
+	 * @since 1.8
+	 */
+	InetAddress getRemoteAddress() {
+		return connection.getInetAddress();
+	}
+
 	/**
 	 * Applies SSL encryption to the communication channel.
 	 * 
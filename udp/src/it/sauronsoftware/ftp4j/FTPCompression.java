@@ -0,0 +1,208 @@
+/*
+ * ftp4j - A pure Java FTP client library
+ * 
+ * Copyright (C) 2008-2010 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version
+ * 2.1, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License 2.1 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License version 2.1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.sauronsoftware.ftp4j;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * MODE Z support routines: a JVM-wide pool of Deflater and Inflater objects,
+ * which are expensive to create and hold native memory, and a probe telling
+ * whether some contents are worth compressing.
+ * 
+ * @author Carlo Pelliccia
+ * @since 1.8
+ */
+class FTPCompression {
+
+	/**
+	 * The maximum number of idle objects kept by each pool.
+	 */
+	private static final int MAX_POOL_SIZE = 16;
+
+	/**
+	 * The minimum size of a sample to be judged by its entropy. Smaller
+	 * samples are always considered compressible.
+	 */
+	private static final int MIN_SAMPLE_SIZE = 512;
+
+	/**
+	 * The entropy (bits per byte) starting from which a sample is considered
+	 * incompressible.
+	 */
+	private static final double MAX_ENTROPY = 7.5;
+
+	/**
+	 * The extensions of the formats which are already compressed.
+	 */
+	private static final String[] COMPRESSED_EXTENSIONS = { "7z", "aac",
+			"apk", "avi", "bz2", "cab", "docx", "ear", "epub", "flac", "gif",
+			"gz", "heic", "jar", "jpeg", "jpg", "lz", "lz4", "lzma", "m4a",
+			"m4v", "mkv", "mov", "mp3", "mp4", "mpeg", "mpg", "odp", "ods",
+			"odt", "ogg", "png", "pptx", "rar", "tbz2", "tgz", "txz", "war",
+			"webm", "webp", "wma", "wmv", "xlsx", "xz", "z", "zip", "zst" };
+
+	/**
+	 * The same extensions, in a set.
+	 */
+	private static final HashSet compressedExtensions = new HashSet();
+
+	static {
+		for (int i = 0; i < COMPRESSED_EXTENSIONS.length; i++) {
+			compressedExtensions.add(COMPRESSED_EXTENSIONS[i]);
+		}
+	}
+
+	/**
+	 * The idle Deflater objects.
+	 */
+	private static final ArrayList deflaters = new ArrayList();
+
+	/**
+	 * The idle Inflater objects.
+	 */
+	private static final ArrayList inflaters = new ArrayList();
+
+	/**
+	 * Takes a Deflater from the pool.
+	 * 
+	 * @param level
+	 *            The compression level, from 0 to 9, or
+	 *            {@link Deflater#DEFAULT_COMPRESSION}.
+	 * @param strategy
+	 *            The compression strategy, one of
+	 *            {@link Deflater#DEFAULT_STRATEGY}, {@link Deflater#FILTERED}
+	 *            and {@link Deflater#HUFFMAN_ONLY}.
+	 * @return The Deflater, to be given back with release(Deflater).
+	 */
+	public static Deflater getDeflater(int level, int strategy) {
+		Deflater deflater = null;
+		synchronized (deflaters) {
+			int size = deflaters.size();
+			if (size > 0) {
+				deflater = (Deflater) deflaters.remove(size - 1);
+			}
+		}
+		if (deflater == null) {
+			deflater = new Deflater(level);
+		} else {
+			deflater.setLevel(level);
+		}
+		deflater.setStrategy(strategy);
+		return deflater;
+	}
+
+	/**
+	 * Gives back a Deflater to the pool.
+	 * 
+	 * @param deflater
+	 *            The Deflater.
+	 */
+	public static void release(Deflater deflater) {
+		deflater.reset();
+		synchronized (deflaters) {
+			if (deflaters.size() < MAX_POOL_SIZE) {
+				deflaters.add(deflater);
+				return;
+			}
+		}
+		deflater.end();
+	}
+
+	/**
+	 * Takes an Inflater from the pool.
+	 * 
+	 * @return The Inflater, to be given back with release(Inflater).
+	 */
+	public static Inflater getInflater() {
+		synchronized (inflaters) {
+			int size = inflaters.size();
+			if (size > 0) {
+				return (Inflater) inflaters.remove(size - 1);
+			}
+		}
+		return new Inflater();
+	}
+
+	/**
+	 * Gives back an Inflater to the pool.
+	 * 
+	 * @param inflater
+	 *            The Inflater.
+	 */
+	public static void release(Inflater inflater) {
+		inflater.reset();
+		synchronized (inflaters) {
+			if (inflaters.size() < MAX_POOL_SIZE) {
+				inflaters.add(inflater);
+				return;
+			}
+		}
+		inflater.end();
+	}
+
+	/**
+	 * Checks whether a file is worth compressing, judging by its extension.
+	 * 
+	 * @param fileName
+	 *            The file name.
+	 * @return false if the extension is the one of a compressed format.
+	 */
+	public static boolean isCompressible(String fileName) {
+		int i = fileName.lastIndexOf('.');
+		if (i < 0 || i == fileName.length() - 1) {
+			return true;
+		}
+		String ext = fileName.substring(i + 1).toLowerCase();
+		return !compressedExtensions.contains(ext);
+	}
+
+	/**
+	 * Checks whether some contents are worth compressing, by computing the
+	 * entropy of their first bytes.
+	 * 
+	 * @param sample
+	 *            The first bytes of the contents.
+	 * @param length
+	 *            The length of the sample.
+	 * @return false if the bytes look random, as they do in compressed or
+	 *         encrypted data.
+	 */
+	public static boolean isCompressible(byte[] sample, int length) {
+		if (length < MIN_SAMPLE_SIZE) {
+			return true;
+		}
+		int[] counts = new int[256];
+		for (int i = 0; i < length; i++) {
+			counts[sample[i] & 0xff]++;
+		}
+		double entropy = 0;
+		for (int i = 0; i < 256; i++) {
+			if (counts[i] > 0) {
+				double p = (double) counts[i] / length;
+				entropy -= p * Math.log(p);
+			}
+		}
+		entropy /= Math.log(2);
+		return entropy < MAX_ENTROPY;
+	}
+
+}
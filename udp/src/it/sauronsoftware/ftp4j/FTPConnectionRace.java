@@ -0,0 +1,326 @@
+/*
+ * ftp4j - A pure Java FTP client library
+ * 
+ * Copyright (C) 2008-2010 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version
+ * 2.1, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License 2.1 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License version 2.1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.sauronsoftware.ftp4j;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A connection attempt to a host with many addresses, in the happy eyeballs
+ * style (RFC 8305). The addresses are tried in the order given by
+ * {@link FTPAddressCache}; if an attempt is not complete after the attempt
+ * delay, the next address is tried in parallel, without giving up the
+ * previous attempts. A failure starts the next attempt immediately. The first
+ * connected socket wins, the other attempts are closed, and the winning
+ * address is remembered as the preferred one for the host.
+ * 
+ * The sockets are built by the {@link #createSocket()} method, so they can be
+ * configured before the connection.
+ * 
+ * @author Carlo Pelliccia
+ * @since 1.8
+ */
+abstract class FTPConnectionRace {
+
+	/**
+	 * The default delay (ms) before the next attempt.
+	 */
+	private static final long DEFAULT_ATTEMPT_DELAY = 250;
+
+	/**
+	 * The threads running the parallel attempts, shared by every race.
+	 */
+	private static final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "ftp4j-connector");
+			thread.setDaemon(true);
+			return thread;
+		}
+
+	});
+
+	/**
+	 * The host name.
+	 */
+	private String host;
+
+	/**
+	 * The port.
+	 */
+	private int port;
+
+	/**
+	 * The connection timeout (ms), 0 for none.
+	 */
+	private int timeout;
+
+	/**
+	 * The deadline of the race (System.currentTimeMillis()), 0 for none.
+	 */
+	private long deadline = 0;
+
+	/**
+	 * The sockets of the pending attempts.
+	 */
+	private ArrayList sockets = new ArrayList();
+
+	/**
+	 * The number of pending attempts.
+	 */
+	private int running = 0;
+
+	/**
+	 * The winning socket.
+	 */
+	private Socket winner = null;
+
+	/**
+	 * The last failure.
+	 */
+	private IOException failure = null;
+
+	/**
+	 * Whether the race has been aborted.
+	 */
+	private boolean aborted = false;
+
+	/**
+	 * Builds the race.
+	 * 
+	 * @param host
+	 *            The host name or address.
+	 * @param port
+	 *            The port.
+	 * @param timeout
+	 *            The connection timeout (ms), 0 for none.
+	 */
+	public FTPConnectionRace(String host, int port, int timeout) {
+		this.host = host;
+		this.port = port;
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Builds an unconnected socket for an attempt.
+	 * 
+	 * @return The socket.
+	 * @throws IOException
+	 *             If the socket cannot be configured.
+	 */
+	protected abstract Socket createSocket() throws IOException;
+
+	/**
+	 * Runs the race.
+	 * 
+	 * @return The connected socket.
+	 * @throws IOException
+	 *             If every attempt fails, if the timeout expires or if the
+	 *             race is aborted.
+	 */
+	public Socket connect() throws IOException {
+		InetAddress[] addresses = FTPAddressCache.resolve(host);
+		if (timeout > 0) {
+			deadline = System.currentTimeMillis() + timeout;
+		}
+		if (addresses.length == 1) {
+			// No race.
+			return connect(addresses[0]);
+		}
+		long attemptDelay = getAttemptDelay();
+		int next = 0;
+		long nextStart = 0;
+		synchronized (this) {
+			try {
+				while (winner == null) {
+					if (aborted) {
+						throw new SocketException("Connection aborted");
+					}
+					long now = System.currentTimeMillis();
+					if (deadline > 0 && now >= deadline) {
+						throw new SocketTimeoutException("connect timed out");
+					}
+					// Starts the next attempt?
+					if (next < addresses.length && (running == 0 || now >= nextStart)) {
+						start(addresses[next++]);
+						nextStart = now + attemptDelay;
+						continue;
+					}
+					// Every attempt failed?
+					if (running == 0) {
+						throw failure;
+					}
+					long delay = deadline > 0 ? deadline - now : 0;
+					if (next < addresses.length) {
+						long aux = nextStart - now;
+						if (delay == 0 || aux < delay) {
+							delay = aux;
+						}
+					}
+					try {
+						wait(delay);
+					} catch (InterruptedException e) {
+						throw new InterruptedIOException("Connection interrupted");
+					}
+				}
+			} catch (IOException e) {
+				abort();
+				throw e;
+			}
+			// The losers are closed.
+			for (Iterator i = sockets.iterator(); i.hasNext();) {
+				close((Socket) i.next());
+			}
+			return winner;
+		}
+	}
+
+	/**
+	 * Aborts the race, closing every pending attempt.
+	 */
+	public void abort() {
+		synchronized (this) {
+			aborted = true;
+			for (Iterator i = sockets.iterator(); i.hasNext();) {
+				close((Socket) i.next());
+			}
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Connects to a single address, in the calling thread.
+	 */
+	private Socket connect(InetAddress address) throws IOException {
+		Socket socket = createSocket();
+		synchronized (this) {
+			if (aborted) {
+				close(socket);
+				throw new SocketException("Connection aborted");
+			}
+			sockets.add(socket);
+		}
+		try {
+			socket.connect(new InetSocketAddress(address, port), timeout);
+		} catch (IOException e) {
+			close(socket);
+			throw e;
+		} finally {
+			synchronized (this) {
+				sockets.remove(socket);
+			}
+		}
+		return socket;
+	}
+
+	/**
+	 * Starts an attempt in another thread. Call it holding the lock.
+	 */
+	private void start(final InetAddress address) {
+		running++;
+		executor.execute(new Runnable() {
+			public void run() {
+				attempt(address);
+			}
+		});
+	}
+
+	/**
+	 * Runs an attempt.
+	 */
+	private void attempt(InetAddress address) {
+		Socket socket = null;
+		try {
+			socket = createSocket();
+			int t = 0;
+			synchronized (this) {
+				if (winner != null || aborted) {
+					close(socket);
+					return;
+				}
+				sockets.add(socket);
+				if (deadline > 0) {
+					t = (int) Math.max(1, deadline - System.currentTimeMillis());
+				}
+			}
+			socket.connect(new InetSocketAddress(address, port), t);
+			synchronized (this) {
+				sockets.remove(socket);
+				if (winner == null && !aborted) {
+					winner = socket;
+					FTPAddressCache.setPreferred(host, address);
+					return;
+				}
+			}
+			// Too late.
+			close(socket);
+		} catch (IOException e) {
+			if (socket != null) {
+				close(socket);
+			}
+			synchronized (this) {
+				sockets.remove(socket);
+				failure = e;
+			}
+			FTPAddressCache.setFailed(host, address);
+		} finally {
+			synchronized (this) {
+				running--;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Closes a socket, quietly.
+	 */
+	private static void close(Socket socket) {
+		try {
+			socket.close();
+		} catch (Throwable t) {
+			;
+		}
+	}
+
+	/**
+	 * Reads the attempt delay from the system property.
+	 */
+	private static long getAttemptDelay() {
+		String prop = System.getProperty(FTPKeys.CONNECTION_ATTEMPT_DELAY);
+		if (prop != null) {
+			try {
+				return Long.parseLong(prop);
+			} catch (NumberFormatException e) {
+				;
+			}
+		}
+		return DEFAULT_ATTEMPT_DELAY;
+	}
+
+}
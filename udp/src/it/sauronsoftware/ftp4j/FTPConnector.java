@@ -19,8 +19,11 @@
 package it.sauronsoftware.ftp4j;
 
 import java.io.IOException;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.UnknownHostException;
+import java.util.HashMap;
 
 /**
  * This abstract class is the base for creating a connector. Connectors are used
@@ -61,11 +64,13 @@ public abstract class FTPConnector {
 	private boolean useSuggestedAddressForDataConnections;
 
 	/**
-	 * The socket of an ongoing connection attempt for a communication channel.
+	 * The ongoing connection attempts for communication channels
+	 * (FTPConnectionRace objects), by the connecting thread. A connector can
+	 * be shared by many clients, as the secondary channels of a client.
 	 * 
-	 * @since 1.7
+	 * @since 1.8
 	 */
-	private Socket connectingCommunicationChannelSocket;
+	private HashMap connectingCommunicationChannels = new HashMap();
 
 	/**
 	 * Builds the connector.
@@ -190,6 +195,10 @@ public abstract class FTPConnector {
 	 * values possibly given by the caller. Moreover the caller can abort
 	 * connection calling {@link FTPClient#abortCurrentConnectionAttempt()}.
 	 * 
+	 * The addresses of the host are cached. If the host has many addresses,
+	 * they are tried in staggered parallel attempts, and the first connected
+	 * one wins.
+	 * 
 	 * @param host
 	 *            The host for the connection.
 	 * @param port
@@ -200,15 +209,25 @@ public abstract class FTPConnector {
 	 * @since 1.7
 	 */
 	protected Socket tcpConnectForCommunicationChannel(String host, int port) throws IOException {
+		FTPConnectionRace race = new FTPConnectionRace(host, port, connectionTimeout * 1000) {
+			protected Socket createSocket() throws IOException {
+				Socket socket = new Socket();
+				socket.setKeepAlive(true);
+				socket.setSoTimeout(readTimeout * 1000);
+				socket.setSoLinger(true, closeTimeout);
+				return socket;
+			}
+		};
+		Thread thread = Thread.currentThread();
+		synchronized (connectingCommunicationChannels) {
+			connectingCommunicationChannels.put(thread, race);
+		}
 		try {
-			connectingCommunicationChannelSocket = new Socket();
-			connectingCommunicationChannelSocket.setKeepAlive(true);
-			connectingCommunicationChannelSocket.setSoTimeout(readTimeout * 1000);
-			connectingCommunicationChannelSocket.setSoLinger(true, closeTimeout);
-			connectingCommunicationChannelSocket.connect(new InetSocketAddress(host, port), connectionTimeout * 1000);
-			return connectingCommunicationChannelSocket;
+			return race.connect();
 		} finally {
-			connectingCommunicationChannelSocket = null;
+			synchronized (connectingCommunicationChannels) {
+				connectingCommunicationChannels.remove(thread);
+			}
 		}
 	}
 
@@ -223,6 +242,11 @@ public abstract class FTPConnector {
 	 * of creating Socket objects, since it is already aware of the timeout
 	 * values possibly given by the caller.
 	 * 
+	 * The addresses of the host are not raced: a data connection has to reach
+	 * the same machine of the communication channel, also when the host name
+	 * stands for a round robin group. So the client passes the address of its
+	 * communication channel, when it connects to the server directly.
+	 * 
 	 * @param host
 	 *            The host for the connection.
 	 * @param port
@@ -233,27 +257,75 @@ public abstract class FTPConnector {
 	 * @since 1.7
 	 */
 	protected Socket tcpConnectForDataTransferChannel(String host, int port) throws IOException {
+		InetAddress address = resolve(host)[0];
 		Socket socket = new Socket();
 		socket.setSoTimeout(readTimeout * 1000);
 		socket.setSoLinger(true, closeTimeout);
 		socket.setReceiveBufferSize(512 * 1024);
 		socket.setSendBufferSize(512 * 1024);
-		socket.connect(new InetSocketAddress(host, port), connectionTimeout * 1000);
+		socket.connect(new InetSocketAddress(address, port), connectionTimeout * 1000);
 		return socket;
 	}
 
 	/**
-	 * Aborts an ongoing connection attempt for a communication channel.
+	 * Resolves a host name, through the cache shared by the connectors. The
+	 * addresses are returned in the order in which they should be tried: the
+	 * one which won the last connection to the host comes first.
+	 * 
+	 * @param host
+	 *            The host name or address.
+	 * @return The addresses of the host.
+	 * @throws UnknownHostException
+	 *             If the host cannot be resolved.
+	 * @since 1.8
+	 */
+	protected InetAddress[] resolve(String host) throws UnknownHostException {
+		return FTPAddressCache.resolve(host);
+	}
+
+	/**
+	 * Aborts the ongoing connection attempts for communication channels made
+	 * through this connector.
 	 * 
 	 * @since 1.7
 	 */
 	public void abortConnectForCommunicationChannel() {
-		if (connectingCommunicationChannelSocket != null) {
-			try {
-				connectingCommunicationChannelSocket.close();
-			} catch (Throwable t) {
-			}
+		Object[] races;
+		synchronized (connectingCommunicationChannels) {
+			races = connectingCommunicationChannels.values().toArray();
 		}
+		for (int i = 0; i < races.length; i++) {
+			((FTPConnectionRace) races[i]).abort();
+		}
+	}
+
+	/**
+	 * Aborts the ongoing connection attempt for a communication channel made
+	 * by the given thread, if any.
+	 * 
+	 * @param thread
+	 *            The connecting thread.
+	 * @since 1.8
+	 */
+	public void abortConnectForCommunicationChannel(Thread thread) {
+		FTPConnectionRace race;
+		synchronized (connectingCommunicationChannels) {
+			race = (FTPConnectionRace) connectingCommunicationChannels.get(thread);
+		}
+		if (race != null) {
+			race.abort();
+		}
+	}
+
+	/**
+	 * Called by the client when a communication channel established by
+	 * {@link FTPConnector#connectForCommunicationChannel(String, int)} has
+	 * been closed. Connectors keeping resources between the connections can
+	 * release them here. The default implementation does nothing.
+	 * 
+	 * @since 1.8
+	 */
+	public void releaseCommunicationChannel() {
 	}
 
 	/**
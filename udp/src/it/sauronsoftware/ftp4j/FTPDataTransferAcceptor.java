@@ -0,0 +1,523 @@
+/*
+ * ftp4j - A pure Java FTP client library
+ * 
+ * Copyright (C) 2008-2010 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version
+ * 2.1, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License 2.1 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License version 2.1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.sauronsoftware.ftp4j;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.StringTokenizer;
+
+/**
+ * A JVM-wide service accepting the incoming data transfer connections of the
+ * active mode transfers. The service owns a set of listening ports, watched by
+ * a single selector thread, and it assigns every incoming connection to a
+ * pending transfer by the address of the connecting peer. A listening port can
+ * serve many transfers at the same time, as long as they expect connections
+ * from different peers. A port is never given back to a peer which has
+ * already connected to it, since a server connecting from a fixed port (20)
+ * would repeat the connection it has just closed, still in TIME_WAIT. A port
+ * which has accepted a connection is closed as soon as it has no pending
+ * transfers, while a port which has accepted none is kept open for a while,
+ * so it can be used by the following transfers.
+ * 
+ * If the {@link FTPKeys#ACTIVE_DT_PORT_RANGE} system property is set, the
+ * ports are taken from a {@link FTPPortAllocator}. With the
+ * {@link FTPKeys#ACTIVE_DT_PREBOUND_LISTENERS} system property a minimum
+ * number of ports can be kept open, so the transfers don't have to wait for a
+ * bind.
+ * 
+ * Incoming connections which cannot be assigned to any pending transfer are
+ * refused. If a port is waiting for a single transfer, the connection is
+ * assigned to it whatever the peer address is, since a multi-homed server
+ * could connect from an address other than the one of the control connection.
+ * A transfer whose peer is uncertain (no address expected, as with a proxy
+ * connector or a host known by many addresses) gets a dedicated port: it
+ * takes a port with no pending transfers, and no other transfer joins it while
+ * it waits.
+ * 
+ * @author Carlo Pelliccia
+ * @since 1.8
+ */
+class FTPDataTransferAcceptor implements Runnable {
+
+	/**
+	 * The time (ms) a listening port with no pending transfers is kept open.
+	 */
+	private static final long LISTENER_IDLE_TIMEOUT = 60000;
+
+	/**
+	 * The maximum time (ms) the selector thread waits before checking the
+	 * idle listening ports.
+	 */
+	private static final long SELECT_TIMEOUT = 5000;
+
+	/**
+	 * The size of the receive buffer of the listening ports, inherited by the
+	 * accepted connections.
+	 */
+	private static final int RECEIVE_BUFFER_SIZE = 512 * 1024;
+
+	/**
+	 * The size of the send buffer of the accepted connections.
+	 */
+	private static final int SEND_BUFFER_SIZE = 512 * 1024;
+
+	/**
+	 * The shared instance.
+	 */
+	private static FTPDataTransferAcceptor instance = null;
+
+	/**
+	 * Returns the shared instance of the service.
+	 * 
+	 * @return The acceptor.
+	 * @throws IOException
+	 *             If the selector cannot be opened.
+	 */
+	public static synchronized FTPDataTransferAcceptor getInstance()
+			throws IOException {
+		if (instance == null) {
+			instance = new FTPDataTransferAcceptor();
+		}
+		return instance;
+	}
+
+	/**
+	 * The selector watching the listening ports.
+	 */
+	private Selector selector;
+
+	/**
+	 * The open listening ports.
+	 */
+	private ArrayList listeners = new ArrayList();
+
+	/**
+	 * The listening ports still to be registered on the selector.
+	 */
+	private ArrayList newListeners = new ArrayList();
+
+	/**
+	 * The selector thread, or null if not running.
+	 */
+	private Thread thread = null;
+
+	/**
+	 * Builds the service.
+	 */
+	private FTPDataTransferAcceptor() throws IOException {
+		selector = Selector.open();
+	}
+
+	/**
+	 * Registers a pending transfer, waiting for a connection from the given
+	 * peer.
+	 * 
+	 * @param server
+	 *            The pending transfer.
+	 * @return The local port the peer has to connect to.
+	 * @throws FTPDataTransferException
+	 *             If no port can be opened.
+	 */
+	public synchronized int register(FTPDataTransferServer server)
+			throws FTPDataTransferException {
+		InetAddress peerAddress = server.getPeerAddress();
+		Listener listener = null;
+		for (Iterator i = listeners.iterator(); i.hasNext();) {
+			Listener aux = (Listener) i.next();
+			if (aux.isAvailable(peerAddress)) {
+				listener = aux;
+				break;
+			}
+		}
+		if (listener == null) {
+			listener = openListener();
+			listeners.add(listener);
+			newListeners.add(listener);
+			// Fills the pool of pre-bound ports.
+			int prebound = getPreboundListeners();
+			while (listeners.size() < prebound) {
+				Listener aux;
+				try {
+					aux = openListener();
+				} catch (FTPDataTransferException e) {
+					break;
+				}
+				listeners.add(aux);
+				newListeners.add(aux);
+			}
+			if (thread == null) {
+				thread = new Thread(this, "ftp4j-data-transfer-acceptor");
+				thread.setDaemon(true);
+				thread.start();
+			} else {
+				selector.wakeup();
+			}
+		}
+		listener.pendings.add(server);
+		return listener.port;
+	}
+
+	/**
+	 * Removes a pending transfer.
+	 * 
+	 * @param server
+	 *            The transfer.
+	 */
+	public synchronized void unregister(FTPDataTransferServer server) {
+		for (Iterator i = listeners.iterator(); i.hasNext();) {
+			Listener listener = (Listener) i.next();
+			if (listener.pendings.remove(server)) {
+				if (listener.pendings.isEmpty()) {
+					listener.idleSince = System.currentTimeMillis();
+				}
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Opens a new listening port, in the range given by the
+	 * {@link FTPKeys#ACTIVE_DT_PORT_RANGE} system property, if any.
+	 */
+	private Listener openListener() throws FTPDataTransferException {
+		int[] range = getPortRange();
+		if (range != null) {
+			int start = range[0];
+			int stop = range[1];
+			FTPPortAllocator allocator = FTPPortAllocator.getInstance(start, stop);
+			int attempts = allocator.getSize();
+			for (int i = 0; i < attempts; i++) {
+				int port = allocator.allocate();
+				if (port == -1) {
+					// Every port is in use.
+					break;
+				}
+				// Tries with the obtained value;
+				try {
+					Listener listener = bindListener(port);
+					listener.allocator = allocator;
+					return listener;
+				} catch (IOException e) {
+					// Port not available, it goes back to the end of the ring.
+					allocator.release(port);
+				}
+			}
+			throw new FTPDataTransferException("Cannot open the ServerSocket. "
+					+ "No available port found in range " + start + "-" + stop);
+		} else {
+			// Don't use a port range.
+			try {
+				return bindListener(0);
+			} catch (IOException e) {
+				throw new FTPDataTransferException(
+						"Cannot open the ServerSocket", e);
+			}
+		}
+	}
+
+	/**
+	 * Binds a listening port.
+	 */
+	private Listener bindListener(int port) throws IOException {
+		ServerSocketChannel channel = ServerSocketChannel.open();
+		try {
+			channel.socket().setReceiveBufferSize(RECEIVE_BUFFER_SIZE);
+			channel.socket().bind(new InetSocketAddress(port));
+			channel.configureBlocking(false);
+		} catch (IOException e) {
+			try {
+				channel.close();
+			} catch (IOException e2) {
+				;
+			}
+			throw e;
+		}
+		Listener listener = new Listener();
+		listener.channel = channel;
+		listener.port = channel.socket().getLocalPort();
+		return listener;
+	}
+
+	/**
+	 * Parses the {@link FTPKeys#ACTIVE_DT_PORT_RANGE} system property.
+	 * 
+	 * @return The start and stop values, or null if no range is given.
+	 */
+	private static int[] getPortRange() {
+		String aux = System.getProperty(FTPKeys.ACTIVE_DT_PORT_RANGE);
+		if (aux == null) {
+			return null;
+		}
+		StringTokenizer st = new StringTokenizer(aux, "-");
+		if (st.countTokens() == 2) {
+			String s1 = st.nextToken();
+			String s2 = st.nextToken();
+			int v1;
+			try {
+				v1 = Integer.parseInt(s1);
+			} catch (NumberFormatException e) {
+				v1 = 0;
+			}
+			int v2;
+			try {
+				v2 = Integer.parseInt(s2);
+			} catch (NumberFormatException e) {
+				v2 = 0;
+			}
+			if (v1 > 0 && v2 > 0 && v2 >= v1) {
+				return new int[] { v1, v2 };
+			}
+		}
+		// warning to the developer
+		System.err.println("WARNING: invalid value \"" + aux + "\" for the "
+				+ FTPKeys.ACTIVE_DT_PORT_RANGE
+				+ " system property. The value should "
+				+ "be in the start-stop form, with "
+				+ "start > 0, stop > 0 and start <= stop.");
+		return null;
+	}
+
+	/**
+	 * Parses the {@link FTPKeys#ACTIVE_DT_PREBOUND_LISTENERS} system property.
+	 * 
+	 * @return The number of listening ports kept open also when idle.
+	 */
+	private static int getPreboundListeners() {
+		String aux = System.getProperty(FTPKeys.ACTIVE_DT_PREBOUND_LISTENERS);
+		if (aux == null) {
+			return 0;
+		}
+		int value;
+		try {
+			value = Integer.parseInt(aux);
+		} catch (NumberFormatException e) {
+			value = -1;
+		}
+		if (value < 0) {
+			// warning to the developer
+			System.err.println("WARNING: invalid value \"" + aux
+					+ "\" for the " + FTPKeys.ACTIVE_DT_PREBOUND_LISTENERS
+					+ " system property. The value should "
+					+ "be an integer greater or equal to 0.");
+			return 0;
+		}
+		return value;
+	}
+
+	public void run() {
+		while (true) {
+			// Registers the new listening ports and closes the idle ones.
+			synchronized (this) {
+				for (Iterator i = newListeners.iterator(); i.hasNext();) {
+					Listener listener = (Listener) i.next();
+					try {
+						listener.channel.register(selector,
+								SelectionKey.OP_ACCEPT, listener);
+					} catch (IOException e) {
+						closeListener(listener);
+					}
+				}
+				newListeners.clear();
+				long now = System.currentTimeMillis();
+				int prebound = getPreboundListeners();
+				for (Iterator i = listeners.iterator(); i.hasNext();) {
+					Listener listener = (Listener) i.next();
+					if (listeners.size() > prebound
+							&& listener.pendings.isEmpty()
+							&& now - listener.idleSince >= LISTENER_IDLE_TIMEOUT) {
+						i.remove();
+						closeListener(listener);
+					}
+				}
+				if (listeners.isEmpty()) {
+					// Releases the cancelled keys and quits.
+					try {
+						selector.selectNow();
+					} catch (IOException e) {
+						;
+					}
+					thread = null;
+					break;
+				}
+			}
+			// Waits for the incoming connections.
+			try {
+				selector.select(SELECT_TIMEOUT);
+			} catch (IOException e) {
+				;
+			}
+			for (Iterator i = selector.selectedKeys().iterator(); i.hasNext();) {
+				SelectionKey key = (SelectionKey) i.next();
+				i.remove();
+				Listener listener = (Listener) key.attachment();
+				SocketChannel channel;
+				try {
+					channel = listener.channel.accept();
+				} catch (IOException e) {
+					continue;
+				}
+				if (channel != null) {
+					dispatch(listener, channel.socket());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Assigns an incoming connection to the pending transfer expecting it.
+	 */
+	private void dispatch(Listener listener, Socket socket) {
+		FTPDataTransferServer server = null;
+		synchronized (this) {
+			InetAddress peerAddress = socket.getInetAddress();
+			for (Iterator i = listener.pendings.iterator(); i.hasNext();) {
+				FTPDataTransferServer aux = (FTPDataTransferServer) i.next();
+				if (peerAddress.equals(aux.getPeerAddress())) {
+					server = aux;
+					break;
+				}
+			}
+			if (server == null && listener.pendings.size() == 1) {
+				server = (FTPDataTransferServer) listener.pendings.get(0);
+			}
+			if (server != null) {
+				listener.pendings.remove(server);
+				listener.served.add(peerAddress);
+				if (server.getPeerAddress() != null) {
+					listener.served.add(server.getPeerAddress());
+				}
+				if (listener.pendings.isEmpty()) {
+					// Used: the next transfers get a fresh port.
+					listeners.remove(listener);
+					closeListener(listener);
+				}
+			}
+		}
+		boolean delivered = false;
+		if (server != null) {
+			try {
+				socket.setSendBufferSize(SEND_BUFFER_SIZE);
+			} catch (IOException e) {
+				;
+			}
+			delivered = server.deliver(socket);
+		}
+		if (!delivered) {
+			// Nobody is waiting for this connection.
+			try {
+				socket.close();
+			} catch (IOException e) {
+				;
+			}
+		}
+	}
+
+	/**
+	 * Closes a listening port.
+	 */
+	private void closeListener(Listener listener) {
+		SelectionKey key = listener.channel.keyFor(selector);
+		if (key != null) {
+			key.cancel();
+		}
+		try {
+			listener.channel.close();
+		} catch (IOException e) {
+			;
+		}
+		if (listener.allocator != null) {
+			listener.allocator.release(listener.port);
+		}
+	}
+
+	/**
+	 * A listening port.
+	 */
+	private static class Listener {
+
+		/**
+		 * The listening channel.
+		 */
+		private ServerSocketChannel channel;
+
+		/**
+		 * The local port.
+		 */
+		private int port;
+
+		/**
+		 * The allocator the port has been taken from, or null if the port has
+		 * been chosen by the system.
+		 */
+		private FTPPortAllocator allocator = null;
+
+		/**
+		 * The pending transfers waiting for a connection on this port.
+		 */
+		private ArrayList pendings = new ArrayList();
+
+		/**
+		 * The addresses of the peers which have connected to this port.
+		 */
+		private ArrayList served = new ArrayList();
+
+		/**
+		 * The time the last pending transfer has been removed.
+		 */
+		private long idleSince = System.currentTimeMillis();
+
+		/**
+		 * Checks whether a transfer expecting the given peer can wait on this
+		 * port: the peer must not be already expected, nor have connected to
+		 * the port before. An uncertain peer (null) takes only a port with no
+		 * pending transfers which has never been used, and a port waiting for
+		 * an uncertain peer is taken by no other transfer.
+		 */
+		private boolean isAvailable(InetAddress peerAddress) {
+			if (peerAddress == null) {
+				return pendings.isEmpty() && served.isEmpty();
+			}
+			if (served.contains(peerAddress)) {
+				return false;
+			}
+			for (Iterator i = pendings.iterator(); i.hasNext();) {
+				FTPDataTransferServer aux = (FTPDataTransferServer) i.next();
+				InetAddress aux2 = aux.getPeerAddress();
+				// A dedicated port.
+				if (aux2 == null) {
+					return false;
+				}
+				if (aux2.equals(peerAddress)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+	}
+
+}
@@ -19,137 +19,70 @@
 package it.sauronsoftware.ftp4j;
 
 import java.io.IOException;
-import java.net.InetSocketAddress;
-import java.net.ServerSocket;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
 import java.net.Socket;
-import java.util.ArrayList;
-import java.util.StringTokenizer;
+import java.net.SocketTimeoutException;
 
 /**
- * This class implements a local server to make data transfer with the remote
- * FTP server.
+ * This class represents an active mode data transfer waiting for the incoming
+ * connection of the remote FTP server. The connection is accepted by the
+ * shared {@link FTPDataTransferAcceptor}, so no thread and no server socket are
+ * dedicated to the single transfer.
  * 
  * @author Carlo Pelliccia
  */
-class FTPDataTransferServer implements FTPDataTransferConnectionProvider,
-		Runnable {
+class FTPDataTransferServer implements FTPDataTransferConnectionProvider {
 
 	/**
-	 * The ServerSocket object waiting for the incoming connection.
+	 * The acceptor service.
 	 */
-	private ServerSocket serverSocket = null;
+	private FTPDataTransferAcceptor acceptor;
 
 	/**
-	 * The socket to be established with the remote host.
+	 * The address of the expected peer (could be null).
 	 */
-	private Socket socket;
+	private InetAddress peerAddress;
 
 	/**
-	 * The exception thrown during the wait for a connection (if any!).
+	 * The local port the remote host has to connect to.
 	 */
-	private IOException exception;
+	private int port;
 
 	/**
-	 * The thread executing the listening for incoming connection routine.
+	 * The time limit for the incoming connection, or 0 if there's no limit.
 	 */
-	private Thread thread;
+	private long deadline;
 
 	/**
-	 * Build the object.
-	 * 
-	 * @throws FTPDataTransferException
-	 *             If a I/O error occurs.
+	 * The socket established with the remote host.
 	 */
-	public FTPDataTransferServer() throws FTPDataTransferException {
-		boolean useRange = false;
-		String aux = System.getProperty(FTPKeys.ACTIVE_DT_PORT_RANGE);
-		int start = 0;
-		int stop = 0;
-		if (aux != null) {
-			boolean valid = false;
-			StringTokenizer st = new StringTokenizer(aux, "-");
-			if (st.countTokens() == 2) {
-				String s1 = st.nextToken();
-				String s2 = st.nextToken();
-				int v1;
-				try {
-					v1 = Integer.parseInt(s1);
-				} catch (NumberFormatException e) {
-					v1 = 0;
-				}
-				int v2;
-				try {
-					v2 = Integer.parseInt(s2);
-				} catch (NumberFormatException e) {
-					v2 = 0;
-				}
-				if (v1 > 0 && v2 > 0 && v2 >= v1) {
-					start = v1;
-					stop = v2;
-					valid = true;
-					useRange = true;
-				}
-			}
-			if (!valid) {
-				// warning to the developer
-				System.err.println("WARNING: invalid value \"" + aux
-						+ "\" for the " + FTPKeys.ACTIVE_DT_PORT_RANGE
-						+ " system property. The value should "
-						+ "be in the start-stop form, with "
-						+ "start > 0, stop > 0 and start <= stop.");
-			}
-		}
-		if (useRange) {
-			ArrayList availables = new ArrayList();
-			for (int i = start; i <= stop; i++) {
-				availables.add(new Integer(i));
-			}
-			int size;
-			boolean done = false;
-			while (!done && (size = availables.size()) > 0) {
-				int rand = (int) Math.floor(Math.random() * size);
-				int port = ((Integer) availables.remove(rand)).intValue();
-				// Tries with the obtained value;
-				try {
-					serverSocket = new ServerSocket();
-					serverSocket.setReceiveBufferSize(512 * 1024);
-					serverSocket.bind(new InetSocketAddress(port));
-					done = true;
-				} catch (IOException e) {
-					// Port not available.
-				}
-			}
-			if (!done) {
-				throw new FTPDataTransferException(
-						"Cannot open the ServerSocket. "
-								+ "No available port found in range " + aux);
-			}
-		} else {
-			// Don't use a port range.
-			try {
-				serverSocket = new ServerSocket();
-				serverSocket.setReceiveBufferSize(512 * 1024);
-				serverSocket.bind(new InetSocketAddress(0));
-			} catch (IOException e) {
-				throw new FTPDataTransferException(
-						"Cannot open the ServerSocket", e);
-			}
-		}
-		// Starts the server thread.
-		thread = new Thread(this);
-		thread.start();
-	}
+	private Socket socket = null;
 
 	/**
-	 * Returns the local port the server socket is bounded.
-	 * 
-	 * @return The local port.
+	 * Whether the socket has been returned by openDataTransferConnection().
 	 */
-	public int getPort() {
-		return serverSocket.getLocalPort();
-	}
+	private boolean taken = false;
 
-	public void run() {
+	/**
+	 * Whether the transfer has been disposed.
+	 */
+	private boolean disposed = false;
+
+	/**
+	 * Build the object.
+	 * 
+	 * @param peerAddress
+	 *            The address of the remote host expected to connect. If null,
+	 *            the connection is accepted from any host, and the transfer
+	 *            doesn't share its listening port with any other.
+	 * @throws FTPDataTransferException
+	 *             If a I/O error occurs.
+	 * @since 1.8
+	 */
+	public FTPDataTransferServer(InetAddress peerAddress)
+			throws FTPDataTransferException {
+		this.peerAddress = peerAddress;
 		int timeout = 30000;
 		String aux = System.getProperty(FTPKeys.ACTIVE_DT_ACCEPT_TIMEOUT);
 		if (aux != null) {
@@ -172,54 +105,110 @@ class FTPDataTransferServer implements FTPDataTransferConnectionProvider,
 						+ "be an integer greater or equal to 0.");
 			}
 		}
+		deadline = timeout > 0 ? System.currentTimeMillis() + timeout : 0;
 		try {
-			// Set the socket timeout.
-			serverSocket.setSoTimeout(timeout);
-			// Wait for the incoming connection.
-			socket = serverSocket.accept();
-			socket.setSendBufferSize(512 * 1024);
+			acceptor = FTPDataTransferAcceptor.getInstance();
 		} catch (IOException e) {
-			exception = e;
-		} finally {
-			// Close the server socket.
-			try {
-				serverSocket.close();
-			} catch (IOException e) {
-				;
-			}
+			throw new FTPDataTransferException("Cannot open the ServerSocket",
+					e);
+		}
+		port = acceptor.register(this);
+	}
+
+	/**
+	 * Returns the local port the server socket is bounded.
+	 * 
+	 * @return The local port.
+	 */
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * Returns the address of the remote host expected to connect.
+	 * 
+	 * @return The address, or null if any host is accepted.
+	 * @since 1.8
+	 */
+	InetAddress getPeerAddress() {
+		return peerAddress;
+	}
+
+	/**
+	 * Called by the acceptor when the incoming connection has been
+	 * established.
+	 * 
+	 * @param socket
+	 *            The connection.
+	 * @return false if the transfer doesn't need the connection anymore.
+	 */
+	synchronized boolean deliver(Socket socket) {
+		if (disposed || this.socket != null) {
+			return false;
 		}
+		this.socket = socket;
+		notifyAll();
+		return true;
 	}
 
 	/**
 	 * Disposes the server and interrupts every operating stream.
 	 */
 	public void dispose() {
-		// Close the server socket (if open).
-		if (serverSocket != null) {
-			try {
-				serverSocket.close();
-			} catch (IOException e) {
-				;
+		acceptor.unregister(this);
+		synchronized (this) {
+			disposed = true;
+			// Close the connection if it has not been taken.
+			if (socket != null && !taken) {
+				try {
+					socket.close();
+				} catch (IOException e) {
+					;
+				}
 			}
+			notifyAll();
 		}
 	}
 
 	public Socket openDataTransferConnection() throws FTPDataTransferException {
-		if (socket == null && exception == null) {
-			try {
-				thread.join();
-			} catch (Exception e) {
-				;
+		boolean wasDisposed;
+		boolean interrupted = false;
+		synchronized (this) {
+			while (socket == null && !disposed) {
+				long delay = 0;
+				if (deadline > 0) {
+					delay = deadline - System.currentTimeMillis();
+					if (delay <= 0) {
+						break;
+					}
+				}
+				try {
+					wait(delay);
+				} catch (InterruptedException e) {
+					interrupted = true;
+					break;
+				}
 			}
+			if (socket != null && !taken) {
+				taken = true;
+				return socket;
+			}
+			wasDisposed = disposed;
 		}
-		if (exception != null) {
-			throw new FTPDataTransferException(
-					"Cannot receive the incoming connection", exception);
-		}
-		if (socket == null) {
+		acceptor.unregister(this);
+		if (wasDisposed) {
 			throw new FTPDataTransferException("No socket available");
 		}
-		return socket;
+		if (interrupted) {
+			// Restores the interrupt status for the caller.
+			Thread.currentThread().interrupt();
+			throw new FTPDataTransferException(
+					"Interrupted while waiting for the incoming connection",
+					new InterruptedIOException());
+		}
+		throw new FTPDataTransferException(
+				"Cannot receive the incoming connection",
+				new SocketTimeoutException("Accept timed out"));
 	}
 
 }
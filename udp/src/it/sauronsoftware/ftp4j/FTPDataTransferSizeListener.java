@@ -0,0 +1,45 @@
+/*
+ * ftp4j - A pure Java FTP client library
+ * 
+ * Copyright (C) 2008-2010 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version
+ * 2.1, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License 2.1 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License version 2.1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.sauronsoftware.ftp4j;
+
+/**
+ * A data transfer listener which also wants to know the size of the
+ * transferred file. Before calling {@link #started()}, the client tells it the
+ * size, when known, and the offset the transfer starts from. The size of an
+ * uploaded local file is its length, while the size of a download is taken
+ * from the reply the server gives when the transfer starts, or asked with the
+ * SIZE command if the server isn't known to state it there.
+ * 
+ * @author Carlo Pelliccia
+ * @since 1.8
+ */
+public interface FTPDataTransferSizeListener extends FTPDataTransferListener {
+
+	/**
+	 * Called before {@link #started()} with the size of the transferred file.
+	 * 
+	 * @param size
+	 *            The size of the file, or -1 if unknown.
+	 * @param offset
+	 *            The restart offset of the transfer, the number of bytes
+	 *            which are not transferred again.
+	 */
+	public void transferSize(long size, long offset);
+
+}
@@ -0,0 +1,257 @@
+/*
+ * ftp4j - A pure Java FTP client library
+ * 
+ * Copyright (C) 2008-2010 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version
+ * 2.1, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License 2.1 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License version 2.1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.sauronsoftware.ftp4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A read-only, random access view of a remote file, built by
+ * {@link FTPClient#openFileChannel(String, int, int)}.
+ * 
+ * The file is read in blocks. A missing block is fetched with a RETR command
+ * starting at its offset, interrupted as soon as the block has been received,
+ * and kept in a least recently used cache. While the file is read
+ * sequentially, the number of blocks fetched by every RETR command doubles,
+ * up to a quarter of the cache, so a sequential read costs few round trips.
+ * 
+ * @author Carlo Pelliccia
+ * @since 1.8
+ */
+class FTPFileChannel implements SeekableByteChannel {
+
+	/**
+	 * The client.
+	 */
+	private FTPClient client;
+
+	/**
+	 * The name of the remote file.
+	 */
+	private String fileName;
+
+	/**
+	 * The size of the file, as given by the server.
+	 */
+	private long size;
+
+	/**
+	 * The size of the blocks.
+	 */
+	private int blockSize;
+
+	/**
+	 * The maximum number of blocks fetched in advance.
+	 */
+	private int maxReadAhead;
+
+	/**
+	 * The cached blocks, by index, the least recently used first.
+	 */
+	private LinkedHashMap cache;
+
+	/**
+	 * The current position.
+	 */
+	private long position = 0;
+
+	/**
+	 * The index of the last block read.
+	 */
+	private long lastBlock = -2;
+
+	/**
+	 * The number of blocks the next fetch reads, if the access is sequential.
+	 */
+	private int readAhead = 1;
+
+	/**
+	 * Whether the channel is open.
+	 */
+	private boolean open = true;
+
+	/**
+	 * Builds the channel.
+	 * 
+	 * @param client
+	 *            The client.
+	 * @param fileName
+	 *            The name of the remote file.
+	 * @param size
+	 *            The size of the file.
+	 * @param blockSize
+	 *            The size of the blocks.
+	 * @param cacheSize
+	 *            The number of blocks kept in memory.
+	 */
+	public FTPFileChannel(FTPClient client, String fileName, long size,
+			int blockSize, final int cacheSize) {
+		this.client = client;
+		this.fileName = fileName;
+		this.size = size;
+		this.blockSize = blockSize;
+		this.maxReadAhead = Math.max(1, Math.min(cacheSize / 4, Integer.MAX_VALUE / blockSize));
+		this.cache = new LinkedHashMap(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry eldest) {
+				return size() > cacheSize;
+			}
+
+		};
+	}
+
+	public synchronized int read(ByteBuffer dst) throws IOException {
+		ensureOpen();
+		int count = 0;
+		while (dst.hasRemaining() && position < size) {
+			long index = position / blockSize;
+			byte[] block = (byte[]) cache.get(new Long(index));
+			if (block == null) {
+				// Sequential access?
+				if (index == lastBlock + 1) {
+					readAhead = Math.min(readAhead * 2, maxReadAhead);
+				} else {
+					readAhead = 1;
+				}
+				// The blocks needed to fill the buffer are fetched anyway.
+				long needed = (position % blockSize + dst.remaining() + blockSize - 1) / blockSize;
+				fetch(index, (int) Math.max(readAhead, Math.min(needed, maxReadAhead)));
+				block = (byte[]) cache.get(new Long(index));
+			}
+			lastBlock = index;
+			int start = (int) (position - index * blockSize);
+			int l = Math.min(dst.remaining(), block.length - start);
+			if (l <= 0) {
+				// The file is shorter than expected.
+				break;
+			}
+			dst.put(block, start, l);
+			position += l;
+			count += l;
+		}
+		if (count == 0 && dst.hasRemaining()) {
+			return -1;
+		}
+		return count;
+	}
+
+	/**
+	 * Fetches a run of blocks with a single RETR command, stopping at the
+	 * first block already cached or at the end of the file.
+	 */
+	private void fetch(long index, int count) throws IOException {
+		long blocks = (size + blockSize - 1) / blockSize;
+		int n = 1;
+		while (n < count && index + n < blocks
+				&& !cache.containsKey(new Long(index + n))) {
+			n++;
+		}
+		long offset = index * blockSize;
+		int len = (int) Math.min(size - offset, (long) n * blockSize);
+		byte[] data = new byte[len];
+		int l;
+		try {
+			l = client.readRange(fileName, offset, data, 0, len);
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			IOException aux = new IOException("Cannot read " + fileName);
+			aux.initCause(e);
+			throw aux;
+		}
+		// Splits the data in blocks.
+		for (int i = 0; i < n; i++) {
+			int start = i * blockSize;
+			int length = Math.max(0, Math.min(blockSize, l - start));
+			if (length == 0 && i > 0) {
+				break;
+			}
+			byte[] block = new byte[length];
+			System.arraycopy(data, start, block, 0, length);
+			cache.put(new Long(index + i), block);
+		}
+	}
+
+	public int write(ByteBuffer src) throws IOException {
+		throw new NonWritableChannelException();
+	}
+
+	public synchronized long position() throws IOException {
+		ensureOpen();
+		return position;
+	}
+
+	public synchronized SeekableByteChannel position(long newPosition)
+			throws IOException {
+		ensureOpen();
+		if (newPosition < 0) {
+			throw new IllegalArgumentException("Negative position");
+		}
+		position = newPosition;
+		return this;
+	}
+
+	public synchronized long size() throws IOException {
+		ensureOpen();
+		return size;
+	}
+
+	public SeekableByteChannel truncate(long size) throws IOException {
+		throw new NonWritableChannelException();
+	}
+
+	public synchronized boolean isOpen() {
+		return open;
+	}
+
+	public synchronized void close() throws IOException {
+		open = false;
+		cache.clear();
+	}
+
+	/**
+	 * Throws a ClosedChannelException if the channel has been closed.
+	 */
+	private void ensureOpen() throws ClosedChannelException {
+		if (!open) {
+			throw new ClosedChannelException();
+		}
+	}
+
+	public String toString() {
+		StringBuffer buffer = new StringBuffer();
+		buffer.append(getClass().getName());
+		buffer.append(" [fileName=");
+		buffer.append(fileName);
+		buffer.append(", size=");
+		buffer.append(size);
+		buffer.append(", position=");
+		buffer.append(position);
+		buffer.append("]");
+		return buffer.toString();
+	}
+
+}
@@ -0,0 +1,401 @@
+/*
+ * ftp4j - A pure Java FTP client library
+ * 
+ * Copyright (C) 2008-2010 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version
+ * 2.1, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License 2.1 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License version 2.1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.sauronsoftware.ftp4j;
+
+import java.util.Date;
+
+/**
+ * A filter selecting the entries of a directory listing by name, type, size
+ * and last modification date. Every criterion is optional: a filter with no
+ * criteria accepts every entry.
+ * 
+ * Filters are supplied to {@link FTPClient#list(String, FTPFileFilter)}. The
+ * built-in list parsers apply the filter while parsing, so rejected lines
+ * never become {@link FTPFile} objects, and the more expensive checks (e.g.
+ * the modification date) are performed only on the lines passing the cheaper
+ * ones. Moreover, if enabled with {@link #setServerSideEnabled(boolean)}, the
+ * name pattern is sent to the server as the argument of the LIST command, so
+ * the server itself can skip the unwanted entries.
+ * 
+ * In example, to list the text files changed in the last hour:
+ * 
+ * <pre>
+ * FTPFileFilter filter = new FTPFileFilter();
+ * filter.setNamePattern(&quot;*.txt&quot;);
+ * filter.setType(FTPFile.TYPE_FILE);
+ * filter.setModifiedDateRange(new Date(System.currentTimeMillis() - 3600000), null);
+ * FTPFile[] list = client.list(filter);
+ * </pre>
+ * 
+ * @author Carlo Pelliccia
+ * @since 1.8
+ */
+public class FTPFileFilter {
+
+	/**
+	 * The value for the type criterion accepting any type.
+	 */
+	public static final int ANY_TYPE = -1;
+
+	/**
+	 * The glob pattern for the name, or null.
+	 */
+	private String namePattern = null;
+
+	/**
+	 * Whether the name pattern is case sensitive.
+	 */
+	private boolean caseSensitive = true;
+
+	/**
+	 * Whether the name pattern can be sent to the server.
+	 */
+	private boolean serverSideEnabled = false;
+
+	/**
+	 * The accepted type, or ANY_TYPE.
+	 */
+	private int type = ANY_TYPE;
+
+	/**
+	 * The minimum size (inclusive), or -1.
+	 */
+	private long minSize = -1;
+
+	/**
+	 * The maximum size (inclusive), or -1.
+	 */
+	private long maxSize = -1;
+
+	/**
+	 * The lower bound for the modification date (inclusive), in millis, or
+	 * Long.MIN_VALUE.
+	 */
+	private long modifiedAfter = Long.MIN_VALUE;
+
+	/**
+	 * The upper bound for the modification date (exclusive), in millis, or
+	 * Long.MAX_VALUE.
+	 */
+	private long modifiedBefore = Long.MAX_VALUE;
+
+	/**
+	 * Sets a glob pattern for the names of the accepted entries. The
+	 * <em>*</em> wildcard matches any sequence of characters, while the
+	 * <em>?</em> wildcard matches a single character.
+	 * 
+	 * @param namePattern
+	 *            The pattern, or null to accept any name.
+	 */
+	public void setNamePattern(String namePattern) {
+		this.namePattern = namePattern;
+	}
+
+	/**
+	 * Returns the glob pattern for the names of the accepted entries.
+	 * 
+	 * @return The pattern, or null if any name is accepted.
+	 */
+	public String getNamePattern() {
+		return namePattern;
+	}
+
+	/**
+	 * Sets whether the name pattern is case sensitive. Default value is
+	 * <em>true</em>. Case insensitive patterns are never sent to the server.
+	 * 
+	 * @param caseSensitive
+	 *            true for a case sensitive pattern.
+	 */
+	public void setCaseSensitive(boolean caseSensitive) {
+		this.caseSensitive = caseSensitive;
+	}
+
+	/**
+	 * Checks whether the name pattern is case sensitive.
+	 * 
+	 * @return true if the name pattern is case sensitive.
+	 */
+	public boolean isCaseSensitive() {
+		return caseSensitive;
+	}
+
+	/**
+	 * Enables or disables the use of the name pattern as the argument of the
+	 * LIST command. Default value is <em>false</em>. Enable it only if the
+	 * server handles wildcards in the LIST argument as expected: many servers
+	 * list the contents of the matching directories too, or don't accept
+	 * wildcards at all.
+	 * 
+	 * The pattern is never sent to the server when the MLSD command is used,
+	 * since MLSD accepts only a directory as its argument.
+	 * 
+	 * @param serverSideEnabled
+	 *            true to let the server apply the pattern.
+	 */
+	public void setServerSideEnabled(boolean serverSideEnabled) {
+		this.serverSideEnabled = serverSideEnabled;
+	}
+
+	/**
+	 * Checks whether the name pattern can be used as the argument of the LIST
+	 * command.
+	 * 
+	 * @return true if the server is allowed to apply the pattern.
+	 */
+	public boolean isServerSideEnabled() {
+		return serverSideEnabled;
+	}
+
+	/**
+	 * Sets the type of the accepted entries.
+	 * 
+	 * @param type
+	 *            One of {@link FTPFile#TYPE_FILE},
+	 *            {@link FTPFile#TYPE_DIRECTORY} and {@link FTPFile#TYPE_LINK},
+	 *            or {@link FTPFileFilter#ANY_TYPE}.
+	 */
+	public void setType(int type) {
+		this.type = type;
+	}
+
+	/**
+	 * Returns the type of the accepted entries.
+	 * 
+	 * @return The type, or {@link FTPFileFilter#ANY_TYPE}.
+	 */
+	public int getType() {
+		return type;
+	}
+
+	/**
+	 * Sets the size range of the accepted entries.
+	 * 
+	 * @param minSize
+	 *            The minimum size in bytes (inclusive), or -1 for no lower
+	 *            bound.
+	 * @param maxSize
+	 *            The maximum size in bytes (inclusive), or -1 for no upper
+	 *            bound.
+	 */
+	public void setSizeRange(long minSize, long maxSize) {
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Sets the last modification date range of the accepted entries. Entries
+	 * whose modification date is unknown are rejected if any bound is given.
+	 * 
+	 * @param after
+	 *            The lower bound (inclusive), or null for no lower bound.
+	 * @param before
+	 *            The upper bound (exclusive), or null for no upper bound.
+	 */
+	public void setModifiedDateRange(Date after, Date before) {
+		this.modifiedAfter = after != null ? after.getTime() : Long.MIN_VALUE;
+		this.modifiedBefore = before != null ? before.getTime() : Long.MAX_VALUE;
+	}
+
+	/**
+	 * Checks whether the filter has a criterion on the modification date.
+	 * 
+	 * @return true if the modification date has to be checked.
+	 */
+	public boolean hasModifiedDateCriterion() {
+		return modifiedAfter != Long.MIN_VALUE || modifiedBefore != Long.MAX_VALUE;
+	}
+
+	/**
+	 * Checks the name of an entry.
+	 * 
+	 * @param name
+	 *            The name.
+	 * @return true if the name is accepted.
+	 */
+	public boolean acceptName(String name) {
+		if (namePattern == null) {
+			return true;
+		}
+		return matches(namePattern, name, caseSensitive);
+	}
+
+	/**
+	 * Checks the type of an entry.
+	 * 
+	 * @param type
+	 *            The type.
+	 * @return true if the type is accepted.
+	 */
+	public boolean acceptType(int type) {
+		return this.type == ANY_TYPE || this.type == type;
+	}
+
+	/**
+	 * Checks the size of an entry.
+	 * 
+	 * @param size
+	 *            The size in bytes.
+	 * @return true if the size is accepted.
+	 */
+	public boolean acceptSize(long size) {
+		if (minSize >= 0 && size < minSize) {
+			return false;
+		}
+		if (maxSize >= 0 && size > maxSize) {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Checks the last modification date of an entry, given in milliseconds.
+	 * 
+	 * @param time
+	 *            The modification date in milliseconds.
+	 * @return true if the date is accepted.
+	 */
+	public boolean acceptModifiedTime(long time) {
+		return time >= modifiedAfter && time < modifiedBefore;
+	}
+
+	/**
+	 * Checks the last modification date of an entry.
+	 * 
+	 * @param date
+	 *            The modification date (could be null).
+	 * @return true if the date is accepted.
+	 */
+	public boolean acceptModifiedDate(Date date) {
+		if (date == null) {
+			return !hasModifiedDateCriterion();
+		}
+		return acceptModifiedTime(date.getTime());
+	}
+
+	/**
+	 * Checks an already parsed entry against every criterion.
+	 * 
+	 * @param file
+	 *            The entry.
+	 * @return true if the entry is accepted.
+	 */
+	public boolean accept(FTPFile file) {
+		return acceptType(file.getType()) && acceptSize(file.getSize())
+				&& acceptName(file.getName())
+				&& acceptModifiedDate(file.getModifiedDate());
+	}
+
+	/**
+	 * Returns the argument for the LIST command which lets the server apply
+	 * the name pattern, if the pattern allows it.
+	 * 
+	 * @return The LIST argument, or null if the pattern cannot be applied by
+	 *         the server.
+	 */
+	String getServerFileSpec() {
+		if (!serverSideEnabled || !caseSensitive || namePattern == null
+				|| namePattern.length() == 0) {
+			return null;
+		}
+		for (int i = 0; i < namePattern.length(); i++) {
+			char c = namePattern.charAt(i);
+			if (c == '/' || c == '\\' || c == '[' || c == ']' || c == '{'
+					|| c == '}' || c == '-' && i == 0
+					|| Character.isWhitespace(c)) {
+				return null;
+			}
+		}
+		return namePattern;
+	}
+
+	/**
+	 * Matches a name against a glob pattern, without allocating objects.
+	 */
+	private static boolean matches(String pattern, String name,
+			boolean caseSensitive) {
+		int p = 0;
+		int n = 0;
+		int pLength = pattern.length();
+		int nLength = name.length();
+		int starP = -1;
+		int starN = 0;
+		while (n < nLength) {
+			if (p < pLength) {
+				char pc = pattern.charAt(p);
+				if (pc == '*') {
+					starP = p++;
+					starN = n;
+					continue;
+				}
+				if (pc == '?' || sameChar(pc, name.charAt(n), caseSensitive)) {
+					p++;
+					n++;
+					continue;
+				}
+			}
+			if (starP != -1) {
+				p = starP + 1;
+				n = ++starN;
+				continue;
+			}
+			return false;
+		}
+		while (p < pLength && pattern.charAt(p) == '*') {
+			p++;
+		}
+		return p == pLength;
+	}
+
+	/**
+	 * Compares two chars.
+	 */
+	private static boolean sameChar(char c1, char c2, boolean caseSensitive) {
+		if (c1 == c2) {
+			return true;
+		}
+		if (caseSensitive) {
+			return false;
+		}
+		return Character.toLowerCase(c1) == Character.toLowerCase(c2)
+				|| Character.toUpperCase(c1) == Character.toUpperCase(c2);
+	}
+
+	public String toString() {
+		StringBuffer buffer = new StringBuffer();
+		buffer.append(getClass().getName());
+		buffer.append(" [namePattern=");
+		buffer.append(namePattern);
+		buffer.append(", caseSensitive=");
+		buffer.append(caseSensitive);
+		buffer.append(", type=");
+		buffer.append(type);
+		buffer.append(", minSize=");
+		buffer.append(minSize);
+		buffer.append(", maxSize=");
+		buffer.append(maxSize);
+		buffer.append(", modifiedAfter=");
+		buffer.append(modifiedAfter == Long.MIN_VALUE ? null : new Date(modifiedAfter));
+		buffer.append(", modifiedBefore=");
+		buffer.append(modifiedBefore == Long.MAX_VALUE ? null : new Date(modifiedBefore));
+		buffer.append("]");
+		return buffer.toString();
+	}
+
+}
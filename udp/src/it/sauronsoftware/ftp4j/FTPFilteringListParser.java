@@ -0,0 +1,55 @@
+/*
+ * ftp4j - A pure Java FTP client library
+ * 
+ * Copyright (C) 2008-2010 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version
+ * 2.1, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License 2.1 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License version 2.1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.sauronsoftware.ftp4j;
+
+/**
+ * Implement this interface, instead of the plain {@link FTPListParser}, to
+ * build a LIST parser able to apply a {@link FTPFileFilter} while parsing. The
+ * parser should check the cheaper criteria first, and it should not build
+ * {@link FTPFile} objects for the rejected lines.
+ * 
+ * When a filtered listing is requested through a parser implementing only
+ * {@link FTPListParser}, the client applies the filter to the parsed entries.
+ * 
+ * @author Carlo Pelliccia
+ * @since 1.8
+ * @see FTPClient#list(String, FTPFileFilter)
+ */
+public interface FTPFilteringListParser extends FTPListParser {
+
+	/**
+	 * Parses a LIST command response and builds an array of FTPFile objects,
+	 * one for each entry accepted by the filter.
+	 * 
+	 * Lines which cannot be parsed must cause a FTPListParseException also if
+	 * they would be rejected by the filter, at least as long as the check is
+	 * not more expensive than the filtering itself.
+	 * 
+	 * @param lines
+	 *            The response to parse, splitted by line.
+	 * @param filter
+	 *            The filter. If null every entry is accepted.
+	 * @return An array of FTPFile objects representing the accepted entries.
+	 * @throws FTPListParseException
+	 *             If this parser cannot parse the given response.
+	 */
+	public FTPFile[] parse(String[] lines, FTPFileFilter filter)
+			throws FTPListParseException;
+
+}
@@ -0,0 +1,101 @@
+/*
+ * ftp4j - A pure Java FTP client library
+ * 
+ * Copyright (C) 2008-2010 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version
+ * 2.1, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License 2.1 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License version 2.1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.sauronsoftware.ftp4j;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The per-host table of the process-wide caches. Host names are matched
+ * ignoring the case, and when the table is full the least recently used
+ * entry is forgotten. The table is not thread-safe: the caches synchronize on
+ * it.
+ * 
+ * @author Carlo Pelliccia
+ * @since 1.8
+ */
+class FTPHostMap {
+
+	/**
+	 * The maximum number of entries.
+	 */
+	private static final int MAX_ENTRIES = 1024;
+
+	/**
+	 * The entries, in access order.
+	 */
+	private LinkedHashMap entries = new LinkedHashMap(16, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		protected boolean removeEldestEntry(Map.Entry eldest) {
+			return size() > MAX_ENTRIES;
+		}
+
+	};
+
+	/**
+	 * Builds the key for a host and a port. A negative port stands for the
+	 * host alone.
+	 */
+	private static String key(String host, int port) {
+		String aux = host.toLowerCase();
+		return port >= 0 ? aux + ":" + port : aux;
+	}
+
+	/**
+	 * Returns the value for a host and a port.
+	 * 
+	 * @param host
+	 *            The host.
+	 * @param port
+	 *            The port, or -1 for the host alone.
+	 * @return The value, or null if there isn't one.
+	 */
+	public Object get(String host, int port) {
+		return entries.get(key(host, port));
+	}
+
+	/**
+	 * Sets the value for a host and a port.
+	 * 
+	 * @param host
+	 *            The host.
+	 * @param port
+	 *            The port, or -1 for the host alone.
+	 * @param value
+	 *            The value.
+	 */
+	public void put(String host, int port, Object value) {
+		entries.put(key(host, port), value);
+	}
+
+	/**
+	 * Removes the value for a host and a port.
+	 * 
+	 * @param host
+	 *            The host.
+	 * @param port
+	 *            The port, or -1 for the host alone.
+	 */
+	public void remove(String host, int port) {
+		entries.remove(key(host, port));
+	}
+
+}
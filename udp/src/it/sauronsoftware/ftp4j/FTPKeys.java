@@ -47,6 +47,15 @@ interface FTPKeys {
 	 */
 	public String ACTIVE_DT_ACCEPT_TIMEOUT = "ftp4j.activeDataTransfer.acceptTimeout";
 
+	/**
+	 * The key used to retrieve the system property with the number of local
+	 * ports kept listening for active data transfers also when no transfer is
+	 * pending. Default value is 0: idle ports are closed after a minute.
+	 * 
+	 * @since 1.8
+	 */
+	public String ACTIVE_DT_PREBOUND_LISTENERS = "ftp4j.activeDataTransfer.preboundListeners";
+
 	/**
 	 * The key used to retrieve the system property that can force the client to
 	 * exchange data by connecting to the IP address suggested by the server
@@ -63,4 +72,32 @@ interface FTPKeys {
 	 */
 	public String PASSIVE_DT_USE_SUGGESTED_ADDRESS = "ftp4j.passiveDataTransfer.useSuggestedAddress";
 
+	/**
+	 * The key used to retrieve the system property with the time (ms) the
+	 * features declared by a server are remembered, so a new session with the
+	 * same server can skip the FEAT command. Default value is 600000. A 0
+	 * value disables the cache.
+	 * 
+	 * @since 1.8
+	 */
+	public String CAPABILITY_CACHE_TTL = "ftp4j.capabilityCache.ttl";
+
+	/**
+	 * The key used to retrieve the system property with the time (ms) the
+	 * addresses of a host name are remembered by the connectors. Default value
+	 * is 60000. A 0 value disables the cache.
+	 * 
+	 * @since 1.8
+	 */
+	public String DNS_CACHE_TTL = "ftp4j.dnsCache.ttl";
+
+	/**
+	 * The key used to retrieve the system property with the delay (ms) after
+	 * which a connector tries the next address of a host, while the previous
+	 * attempts are still pending. Default value is 250.
+	 * 
+	 * @since 1.8
+	 */
+	public String CONNECTION_ATTEMPT_DELAY = "ftp4j.connector.attemptDelay";
+
 }
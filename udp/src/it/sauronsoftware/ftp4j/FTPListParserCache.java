@@ -0,0 +1,206 @@
+/*
+ * ftp4j - A pure Java FTP client library
+ * 
+ * Copyright (C) 2008-2010 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version
+ * 2.1, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License 2.1 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License version 2.1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.sauronsoftware.ftp4j;
+
+import it.sauronsoftware.ftp4j.listparsers.DOSListParser;
+import it.sauronsoftware.ftp4j.listparsers.NetWareListParser;
+import it.sauronsoftware.ftp4j.listparsers.UnixListParser;
+
+/**
+ * A JVM-wide cache remembering, for every remote host, the list parser which
+ * successfully handled its LIST responses and the reply given by the host to
+ * the SYST command. Since the cache is shared by every client, the parser
+ * detection routine is not repeated after a reconnection.
+ * 
+ * Parsers are remembered by class name, so the cached choice can be applied
+ * to the parser instances registered on any client.
+ * 
+ * @author Carlo Pelliccia
+ * @since 1.8
+ */
+class FTPListParserCache {
+
+	/**
+	 * The cache entries, by host and port.
+	 */
+	private static final FTPHostMap entries = new FTPHostMap();
+
+	/**
+	 * Returns the entry for a host, optionally creating it.
+	 */
+	private static Entry getEntry(String host, int port, boolean create) {
+		Entry entry = (Entry) entries.get(host, port);
+		if (entry == null && create) {
+			entry = new Entry();
+			entries.put(host, port, entry);
+		}
+		return entry;
+	}
+
+	/**
+	 * Returns the class name of the parser which successfully handled the LIST
+	 * responses of the given host.
+	 * 
+	 * @param host
+	 *            The remote host.
+	 * @param port
+	 *            The remote port.
+	 * @return The parser class name, or null if unknown.
+	 */
+	public static String getParserClassName(String host, int port) {
+		synchronized (entries) {
+			Entry entry = getEntry(host, port, false);
+			return entry != null ? entry.parserClassName : null;
+		}
+	}
+
+	/**
+	 * Remembers the parser which successfully handled the LIST responses of
+	 * the given host.
+	 * 
+	 * @param host
+	 *            The remote host.
+	 * @param port
+	 *            The remote port.
+	 * @param parser
+	 *            The parser.
+	 */
+	public static void setParser(String host, int port, FTPListParser parser) {
+		synchronized (entries) {
+			getEntry(host, port, true).parserClassName = parser.getClass().getName();
+		}
+	}
+
+	/**
+	 * Forgets the parser remembered for the given host.
+	 * 
+	 * @param host
+	 *            The remote host.
+	 * @param port
+	 *            The remote port.
+	 */
+	public static void removeParser(String host, int port) {
+		synchronized (entries) {
+			Entry entry = getEntry(host, port, false);
+			if (entry != null) {
+				entry.parserClassName = null;
+			}
+		}
+	}
+
+	/**
+	 * Checks whether the reply to the SYST command is known for the given
+	 * host.
+	 * 
+	 * @param host
+	 *            The remote host.
+	 * @param port
+	 *            The remote port.
+	 * @return true if the system type has already been asked to the host.
+	 */
+	public static boolean isSystemTypeKnown(String host, int port) {
+		synchronized (entries) {
+			Entry entry = getEntry(host, port, false);
+			return entry != null && entry.systemTypeKnown;
+		}
+	}
+
+	/**
+	 * Returns the reply given by the host to the SYST command.
+	 * 
+	 * @param host
+	 *            The remote host.
+	 * @param port
+	 *            The remote port.
+	 * @return The system type, or null if unknown or unsupported.
+	 */
+	public static String getSystemType(String host, int port) {
+		synchronized (entries) {
+			Entry entry = getEntry(host, port, false);
+			return entry != null ? entry.systemType : null;
+		}
+	}
+
+	/**
+	 * Remembers the reply given by the host to the SYST command.
+	 * 
+	 * @param host
+	 *            The remote host.
+	 * @param port
+	 *            The remote port.
+	 * @param systemType
+	 *            The system type, or null if the host does not support the
+	 *            SYST command.
+	 */
+	public static void setSystemType(String host, int port, String systemType) {
+		synchronized (entries) {
+			Entry entry = getEntry(host, port, true);
+			entry.systemType = systemType;
+			entry.systemTypeKnown = true;
+		}
+	}
+
+	/**
+	 * Suggests the class name of the built-in parser which most likely handles
+	 * the LIST responses of a system, given its reply to the SYST command.
+	 * 
+	 * @param systemType
+	 *            The system type (could be null).
+	 * @return The class name of the suggested parser, or null if no suggestion
+	 *         can be made.
+	 */
+	public static String suggestParserClassName(String systemType) {
+		if (systemType == null) {
+			return null;
+		}
+		String aux = systemType.toUpperCase();
+		if (aux.indexOf("UNIX") != -1) {
+			return UnixListParser.class.getName();
+		} else if (aux.indexOf("NETWARE") != -1) {
+			return NetWareListParser.class.getName();
+		} else if (aux.indexOf("WINDOWS") != -1 || aux.indexOf("MSDOS") != -1) {
+			return DOSListParser.class.getName();
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * A cache entry.
+	 */
+	private static class Entry {
+
+		/**
+		 * The class name of the parser which handled the host responses.
+		 */
+		private String parserClassName;
+
+		/**
+		 * The reply to the SYST command.
+		 */
+		private String systemType;
+
+		/**
+		 * Whether the SYST command has already been sent to the host.
+		 */
+		private boolean systemTypeKnown;
+
+	}
+
+}
@@ -0,0 +1,193 @@
+/*
+ * ftp4j - A pure Java FTP client library
+ * 
+ * Copyright (C) 2008-2010 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version
+ * 2.1, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License 2.1 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License version 2.1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.sauronsoftware.ftp4j;
+
+import it.sauronsoftware.ftp4j.listparsers.DOSListParser;
+import it.sauronsoftware.ftp4j.listparsers.EPLFListParser;
+import it.sauronsoftware.ftp4j.listparsers.MLSDListParser;
+import it.sauronsoftware.ftp4j.listparsers.NetWareListParser;
+import it.sauronsoftware.ftp4j.listparsers.UnixListParser;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class applies a {@link FTPListParser} to a large LIST response by
+ * splitting the lines in chunks, which are parsed in parallel on a
+ * {@link ForkJoinPool}. The order of the entries is preserved.
+ * 
+ * Only parsers handling every line independently from the others can be
+ * applied this way: the built-in ones do. Since the built-in parsers also
+ * implement {@link FTPFilteringListParser}, a filter can be applied to the
+ * chunks.
+ * 
+ * @author Carlo Pelliccia
+ * @since 1.8
+ */
+class FTPParallelListParser {
+
+	/**
+	 * The minimum number of lines handled by a single parsing task.
+	 */
+	private static final int MIN_CHUNK_SIZE = 1024;
+
+	/**
+	 * The number of chunks assigned, on average, to every worker thread of the
+	 * pool. More chunks than threads help balancing the load.
+	 */
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	/**
+	 * Checks whether a parser can be applied in parallel to the chunks of a
+	 * response.
+	 * 
+	 * @param parser
+	 *            The parser.
+	 * @return true if the parser handles every line independently from the
+	 *         others.
+	 */
+	public static boolean isParallelizable(FTPListParser parser) {
+		return parser instanceof UnixListParser
+				|| parser instanceof DOSListParser
+				|| parser instanceof EPLFListParser
+				|| parser instanceof NetWareListParser
+				|| parser instanceof MLSDListParser;
+	}
+
+	/**
+	 * Parses a LIST response in parallel.
+	 * 
+	 * @param parser
+	 *            The parser, which must be parallelizable.
+	 * @param lines
+	 *            The response to parse, splitted by line.
+	 * @param filter
+	 *            The filter applied to the entries (could be null).
+	 * @param pool
+	 *            The pool executing the parsing tasks.
+	 * @return The parsed entries, in the same order of the lines, or null if
+	 *         the parser returned null for any chunk.
+	 * @throws FTPListParseException
+	 *             If the parser cannot handle any of the lines.
+	 * @see FTPParallelListParser#isParallelizable(FTPListParser)
+	 */
+	public static FTPFile[] parse(FTPListParser parser, String[] lines,
+			FTPFileFilter filter, ForkJoinPool pool)
+			throws FTPListParseException {
+		int size = lines.length;
+		int chunkSize = size / (pool.getParallelism() * CHUNKS_PER_THREAD);
+		if (chunkSize < MIN_CHUNK_SIZE) {
+			chunkSize = MIN_CHUNK_SIZE;
+		}
+		int count = (size + chunkSize - 1) / chunkSize;
+		ChunkTask[] tasks = new ChunkTask[count];
+		for (int i = 0; i < count; i++) {
+			int from = i * chunkSize;
+			int to = Math.min(from + chunkSize, size);
+			tasks[i] = new ChunkTask(parser, lines, from, to, filter);
+		}
+		pool.invoke(new RootTask(tasks));
+		// Checks the results and sums the sizes.
+		int total = 0;
+		for (int i = 0; i < count; i++) {
+			if (tasks[i].exception != null) {
+				throw tasks[i].exception;
+			}
+			if (tasks[i].result == null) {
+				return null;
+			}
+			total += tasks[i].result.length;
+		}
+		// Joins the results.
+		FTPFile[] ret = new FTPFile[total];
+		int index = 0;
+		for (int i = 0; i < count; i++) {
+			FTPFile[] aux = tasks[i].result;
+			System.arraycopy(aux, 0, ret, index, aux.length);
+			index += aux.length;
+		}
+		return ret;
+	}
+
+	/**
+	 * The task forking every chunk task and waiting for them.
+	 */
+	private static class RootTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private ChunkTask[] tasks;
+
+		public RootTask(ChunkTask[] tasks) {
+			this.tasks = tasks;
+		}
+
+		protected void compute() {
+			invokeAll(tasks);
+		}
+
+	}
+
+	/**
+	 * The task parsing a chunk of lines.
+	 */
+	private static class ChunkTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private FTPListParser parser;
+
+		private String[] lines;
+
+		private int from;
+
+		private int to;
+
+		private FTPFileFilter filter;
+
+		private FTPFile[] result;
+
+		private FTPListParseException exception;
+
+		public ChunkTask(FTPListParser parser, String[] lines, int from,
+				int to, FTPFileFilter filter) {
+			this.parser = parser;
+			this.lines = lines;
+			this.from = from;
+			this.to = to;
+			this.filter = filter;
+		}
+
+		protected void compute() {
+			String[] chunk = new String[to - from];
+			System.arraycopy(lines, from, chunk, 0, chunk.length);
+			try {
+				if (filter != null) {
+					result = ((FTPFilteringListParser) parser).parse(chunk, filter);
+				} else {
+					result = parser.parse(chunk);
+				}
+			} catch (FTPListParseException e) {
+				exception = e;
+			}
+		}
+
+	}
+
+}
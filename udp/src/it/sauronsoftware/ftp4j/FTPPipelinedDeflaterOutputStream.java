@@ -0,0 +1,423 @@
+/*
+ * ftp4j - A pure Java FTP client library
+ * 
+ * Copyright (C) 2008-2010 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version
+ * 2.1, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License 2.1 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License version 2.1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.sauronsoftware.ftp4j;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * A deflating output stream working as a pipeline. The thread writing in the
+ * stream (usually the one reading the source of an upload) only fills
+ * buffers; a compressor thread deflates them and a writer thread sends the
+ * compressed data to the underlying stream. Bounded queues between the stages
+ * slow down the faster stages to the pace of the slowest one. In this way the
+ * time spent compressing overlaps the time spent reading the source and
+ * waiting for the network.
+ * 
+ * The output is a single zlib stream, as the one produced by a
+ * DeflaterOutputStream, so the Deflater is used by one thread at a time.
+ * 
+ * Closing the stream from the writing thread completes the pipeline. Closing
+ * it from another thread aborts the transfer: the underlying stream is closed
+ * immediately and any following write fails. The writing thread should close
+ * the stream anyway, to wait for the pipeline threads to release the
+ * Deflater.
+ * 
+ * @author Carlo Pelliccia
+ * @since 1.8
+ */
+class FTPPipelinedDeflaterOutputStream extends OutputStream {
+
+	/**
+	 * The number of buffers each queue can hold.
+	 */
+	private static final int QUEUE_CAPACITY = 4;
+
+	/**
+	 * How often (ms) a stage blocked on a full queue checks whether the
+	 * pipeline has failed.
+	 */
+	private static final long POLL_INTERVAL = 100;
+
+	/**
+	 * The marker closing the queues.
+	 */
+	private static final Chunk END = new Chunk(0);
+
+	/**
+	 * The threads running the pipeline stages, shared by every stream.
+	 */
+	private static final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "ftp4j-compression-pipeline");
+			thread.setDaemon(true);
+			return thread;
+		}
+
+	});
+
+	/**
+	 * The underlying stream.
+	 */
+	private OutputStream out;
+
+	/**
+	 * The Deflater.
+	 */
+	private Deflater deflater;
+
+	/**
+	 * The size of the buffers.
+	 */
+	private int bufferSize;
+
+	/**
+	 * The buffers waiting for the compressor.
+	 */
+	private BlockingQueue compressQueue = new ArrayBlockingQueue(QUEUE_CAPACITY);
+
+	/**
+	 * The compressed buffers waiting for the writer.
+	 */
+	private BlockingQueue writeQueue = new ArrayBlockingQueue(QUEUE_CAPACITY);
+
+	/**
+	 * The buffers ready to be filled by the writing thread.
+	 */
+	private BlockingQueue freeInputs = new ArrayBlockingQueue(QUEUE_CAPACITY + 2);
+
+	/**
+	 * The buffers ready to be filled by the compressor.
+	 */
+	private BlockingQueue freeOutputs = new ArrayBlockingQueue(QUEUE_CAPACITY + 2);
+
+	/**
+	 * The buffer currently filled by the writing thread.
+	 */
+	private Chunk current = null;
+
+	/**
+	 * The thread building the stream, which is the one expected to write.
+	 */
+	private Thread owner;
+
+	/**
+	 * The first error occurred in the pipeline, if any.
+	 */
+	private volatile IOException exception = null;
+
+	/**
+	 * Counts the running pipeline threads.
+	 */
+	private CountDownLatch done = new CountDownLatch(2);
+
+	/**
+	 * Whether the compressor stage is running.
+	 */
+	private volatile boolean compressing = true;
+
+	/**
+	 * Whether the stream has been closed by the writing thread.
+	 */
+	private boolean closed = false;
+
+	/**
+	 * Builds the stream and starts the pipeline threads.
+	 * 
+	 * @param out
+	 *            The underlying stream.
+	 * @param deflater
+	 *            The Deflater.
+	 * @param bufferSize
+	 *            The size of the buffers.
+	 */
+	public FTPPipelinedDeflaterOutputStream(OutputStream out,
+			Deflater deflater, int bufferSize) {
+		this.out = out;
+		this.deflater = deflater;
+		this.bufferSize = bufferSize;
+		this.owner = Thread.currentThread();
+		executor.execute(new Runnable() {
+			public void run() {
+				try {
+					compress();
+				} finally {
+					done.countDown();
+				}
+			}
+		});
+		executor.execute(new Runnable() {
+			public void run() {
+				try {
+					drain();
+				} finally {
+					done.countDown();
+				}
+			}
+		});
+	}
+
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	public void write(byte[] b, int off, int len) throws IOException {
+		checkFailure();
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+		while (len > 0) {
+			if (current == null) {
+				current = takeFree(freeInputs);
+			}
+			int l = Math.min(len, current.data.length - current.length);
+			System.arraycopy(b, off, current.data, current.length, l);
+			current.length += l;
+			off += l;
+			len -= l;
+			if (current.length == current.data.length) {
+				put(compressQueue, current);
+				current = null;
+			}
+		}
+	}
+
+	/**
+	 * Hands the buffered data to the compressor, without waiting for it to be
+	 * sent.
+	 */
+	public void flush() throws IOException {
+		checkFailure();
+		if (current != null && current.length > 0) {
+			put(compressQueue, current);
+			current = null;
+		}
+	}
+
+	public void close() throws IOException {
+		if (Thread.currentThread() != owner) {
+			// Abort.
+			fail(new IOException("Stream closed"));
+			try {
+				out.close();
+			} catch (IOException e) {
+				;
+			}
+			return;
+		}
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			if (exception == null) {
+				flush();
+			}
+		} finally {
+			// Stops the pipeline, also after a failure.
+			while (compressing) {
+				try {
+					if (compressQueue.offer(END, POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+						break;
+					}
+				} catch (InterruptedException e) {
+					fail(new InterruptedIOException());
+				}
+			}
+			boolean interrupted = false;
+			while (true) {
+				try {
+					done.await();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		try {
+			checkFailure();
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * The compressor stage.
+	 */
+	private void compress() {
+		try {
+			while (true) {
+				Chunk chunk = (Chunk) compressQueue.take();
+				if (chunk == END) {
+					if (exception == null) {
+						deflater.finish();
+						while (!deflater.finished()) {
+							emit();
+						}
+					}
+					break;
+				}
+				if (exception == null) {
+					deflater.setInput(chunk.data, 0, chunk.length);
+					while (!deflater.needsInput()) {
+						emit();
+					}
+				}
+				chunk.length = 0;
+				freeInputs.offer(chunk);
+			}
+		} catch (InterruptedException e) {
+			fail(new InterruptedIOException());
+		} catch (IOException e) {
+			fail(e);
+		} finally {
+			compressing = false;
+			// Stops the writer.
+			while (true) {
+				try {
+					writeQueue.put(END);
+					break;
+				} catch (InterruptedException e) {
+					fail(new InterruptedIOException());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Deflates the available input in a buffer and queues it for the writer.
+	 */
+	private void emit() throws IOException, InterruptedException {
+		Chunk chunk = (Chunk) freeOutputs.poll();
+		if (chunk == null) {
+			chunk = new Chunk(bufferSize);
+		}
+		chunk.length = deflater.deflate(chunk.data);
+		if (chunk.length > 0) {
+			put(writeQueue, chunk);
+		} else {
+			freeOutputs.offer(chunk);
+		}
+	}
+
+	/**
+	 * The writer stage. After a failure, the queue is drained anyway, so the
+	 * compressor is never blocked.
+	 */
+	private void drain() {
+		try {
+			while (true) {
+				Chunk chunk = (Chunk) writeQueue.take();
+				if (chunk == END) {
+					break;
+				}
+				if (exception == null) {
+					try {
+						out.write(chunk.data, 0, chunk.length);
+					} catch (IOException e) {
+						fail(e);
+					}
+				}
+				chunk.length = 0;
+				freeOutputs.offer(chunk);
+			}
+			if (exception == null) {
+				out.flush();
+			}
+		} catch (InterruptedException e) {
+			fail(new InterruptedIOException());
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	/**
+	 * Takes a free buffer, or builds a new one.
+	 */
+	private Chunk takeFree(BlockingQueue queue) {
+		Chunk chunk = (Chunk) queue.poll();
+		if (chunk == null) {
+			chunk = new Chunk(bufferSize);
+		}
+		return chunk;
+	}
+
+	/**
+	 * Puts a buffer in a queue, giving up if the pipeline fails.
+	 */
+	private void put(BlockingQueue queue, Chunk chunk) throws IOException {
+		try {
+			while (!queue.offer(chunk, POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+				checkFailure();
+			}
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		}
+	}
+
+	/**
+	 * Records the first failure of the pipeline.
+	 */
+	private synchronized void fail(IOException e) {
+		if (exception == null) {
+			exception = e;
+		}
+	}
+
+	/**
+	 * Throws the failure of the pipeline, if any.
+	 */
+	private void checkFailure() throws IOException {
+		IOException e = exception;
+		if (e != null) {
+			IOException aux = new IOException("Compression pipeline failed");
+			aux.initCause(e);
+			throw aux;
+		}
+	}
+
+	/**
+	 * A buffer moving through the pipeline.
+	 */
+	private static class Chunk {
+
+		private byte[] data;
+
+		private int length = 0;
+
+		public Chunk(int size) {
+			data = new byte[size];
+		}
+
+	}
+
+}
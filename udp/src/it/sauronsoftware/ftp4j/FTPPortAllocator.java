@@ -0,0 +1,160 @@
+/*
+ * ftp4j - A pure Java FTP client library
+ * 
+ * Copyright (C) 2008-2010 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version
+ * 2.1, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License 2.1 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License version 2.1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.sauronsoftware.ftp4j;
+
+import java.util.BitSet;
+
+/**
+ * A process-wide allocator for the local ports of a range, used to open the
+ * listening ports of the active mode transfers when the
+ * {@link FTPKeys#ACTIVE_DT_PORT_RANGE} system property is set.
+ * 
+ * The free ports are kept in a ring, in the order they have been released, so
+ * a port is handed out again only after every other free port, giving the
+ * connections previously established on it the time to leave the TIME_WAIT
+ * state. A bitmap tracks the ports in use. Both allocation and release are
+ * O(1), and no object is created per allocation.
+ * 
+ * @author Carlo Pelliccia
+ * @since 1.8
+ */
+class FTPPortAllocator {
+
+	/**
+	 * The allocator for the last requested range.
+	 */
+	private static FTPPortAllocator instance = null;
+
+	/**
+	 * Returns the allocator for a port range. The same allocator is returned
+	 * as long as the range doesn't change.
+	 * 
+	 * @param start
+	 *            The first port of the range.
+	 * @param stop
+	 *            The last port of the range (inclusive).
+	 * @return The allocator.
+	 */
+	public static synchronized FTPPortAllocator getInstance(int start,
+			int stop) {
+		if (instance == null || instance.start != start
+				|| instance.stop != stop) {
+			instance = new FTPPortAllocator(start, stop);
+		}
+		return instance;
+	}
+
+	/**
+	 * The first port of the range.
+	 */
+	private int start;
+
+	/**
+	 * The last port of the range (inclusive).
+	 */
+	private int stop;
+
+	/**
+	 * The ring of the free ports, as offsets from start.
+	 */
+	private int[] ring;
+
+	/**
+	 * The index of the first free port in the ring.
+	 */
+	private int head = 0;
+
+	/**
+	 * The number of free ports in the ring.
+	 */
+	private int count;
+
+	/**
+	 * The ports in use, by offset.
+	 */
+	private BitSet inUse;
+
+	/**
+	 * Builds the allocator. The ports are initially queued in random order,
+	 * so different processes sharing the range don't compete for the same
+	 * ports.
+	 */
+	private FTPPortAllocator(int start, int stop) {
+		this.start = start;
+		this.stop = stop;
+		int size = stop - start + 1;
+		ring = new int[size];
+		for (int i = 0; i < size; i++) {
+			ring[i] = i;
+		}
+		for (int i = size - 1; i > 0; i--) {
+			int j = (int) Math.floor(Math.random() * (i + 1));
+			int aux = ring[i];
+			ring[i] = ring[j];
+			ring[j] = aux;
+		}
+		count = size;
+		inUse = new BitSet(size);
+	}
+
+	/**
+	 * Returns the number of ports in the range.
+	 * 
+	 * @return The size of the range.
+	 */
+	public int getSize() {
+		return ring.length;
+	}
+
+	/**
+	 * Takes the free port which has been resting for the longest time. The
+	 * port has to be given back with {@link FTPPortAllocator#release(int)},
+	 * also if it cannot be bound.
+	 * 
+	 * @return The port, or -1 if every port of the range is in use.
+	 */
+	public synchronized int allocate() {
+		if (count == 0) {
+			return -1;
+		}
+		int offset = ring[head];
+		head = (head + 1) % ring.length;
+		count--;
+		inUse.set(offset);
+		return start + offset;
+	}
+
+	/**
+	 * Gives back a port taken with allocate(). The port is queued after every
+	 * other free port.
+	 * 
+	 * @param port
+	 *            The port.
+	 */
+	public synchronized void release(int port) {
+		int offset = port - start;
+		if (offset < 0 || offset >= ring.length || !inUse.get(offset)) {
+			return;
+		}
+		inUse.clear(offset);
+		ring[(head + count) % ring.length] = offset;
+		count++;
+	}
+
+}
@@ -0,0 +1,42 @@
+/*
+ * ftp4j - A pure Java FTP client library
+ * 
+ * Copyright (C) 2008-2010 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version
+ * 2.1, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License 2.1 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License version 2.1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.sauronsoftware.ftp4j;
+
+/**
+ * This interface describes the methods requested by an object that can
+ * receive the sampled progress of data transfers, through a
+ * {@link FTPSampledTransferListener}.
+ * 
+ * @author Carlo Pelliccia
+ * @since 1.8
+ */
+public interface FTPProgressListener {
+
+	/**
+	 * Called to deliver a snapshot of a transfer. Snapshots of the same
+	 * transfer are delivered one at a time and in order, but intermediate
+	 * snapshots are skipped if they are produced faster than they are
+	 * consumed. The snapshot of the final state is always delivered.
+	 * 
+	 * @param progress
+	 *            The snapshot.
+	 */
+	public void progress(FTPTransferProgress progress);
+
+}
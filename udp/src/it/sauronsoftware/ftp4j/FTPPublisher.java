@@ -0,0 +1,49 @@
+/*
+ * ftp4j - A pure Java FTP client library
+ * 
+ * Copyright (C) 2008-2010 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version
+ * 2.1, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License 2.1 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License version 2.1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.sauronsoftware.ftp4j;
+
+/**
+ * A source of items (file contents, directory entries) delivered as they are
+ * read from a data transfer, at the pace asked by the consumer.
+ * 
+ * The contract is the one of the Reactive Streams specification, and of the
+ * java.util.concurrent.Flow.Publisher interface available since Java 9: every
+ * method of the three interfaces here has its counterpart there, so a
+ * publisher can be bridged to those APIs with a thin wrapper.
+ * 
+ * @author Carlo Pelliccia
+ * @since 1.8
+ * @see FTPClient#publishDownload(String, long)
+ * @see FTPClient#publishList(String, FTPFileFilter)
+ */
+public interface FTPPublisher {
+
+	/**
+	 * Adds a subscriber. The subscriber receives a new subscription through
+	 * its onSubscribe() method, and every subscription starts its own data
+	 * transfer, when the first items are requested.
+	 * 
+	 * @param subscriber
+	 *            The subscriber.
+	 * @throws NullPointerException
+	 *             If the subscriber is null.
+	 */
+	public void subscribe(FTPSubscriber subscriber);
+
+}
@@ -0,0 +1,166 @@
+/*
+ * ftp4j - A pure Java FTP client library
+ * 
+ * Copyright (C) 2008-2010 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version
+ * 2.1, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License 2.1 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License version 2.1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.sauronsoftware.ftp4j;
+
+/**
+ * The rules followed by a client retrying a broken file transfer. See
+ * {@link FTPClient#setTransferRetryPolicy(FTPRetryPolicy)}.
+ * 
+ * The delay before a retry grows exponentially, starting from the initial
+ * delay and multiplied by the given factor at every failure, up to the
+ * maximum delay. The retry budget counts the consecutive failures: an attempt
+ * moving the transfer forward resets the count, so a long transfer on a flaky
+ * network is carried on as long as it makes progress, while a transfer failing
+ * again and again at the same point is given up.
+ * 
+ * @author Carlo Pelliccia
+ * @since 1.8
+ */
+public class FTPRetryPolicy {
+
+	/**
+	 * The maximum number of consecutive failed retries.
+	 */
+	private int maxRetries;
+
+	/**
+	 * The delay (ms) before the first retry.
+	 */
+	private long initialDelay;
+
+	/**
+	 * The maximum delay (ms) between two retries.
+	 */
+	private long maxDelay;
+
+	/**
+	 * The factor applied to the delay at every failure.
+	 */
+	private double multiplier;
+
+	/**
+	 * Builds a policy allowing 5 consecutive failed retries, waiting 1 second
+	 * before the first one and doubling the delay up to 1 minute.
+	 */
+	public FTPRetryPolicy() {
+		this(5, 1000, 60000, 2);
+	}
+
+	/**
+	 * Builds a policy.
+	 * 
+	 * @param maxRetries
+	 *            The maximum number of consecutive failed retries.
+	 * @param initialDelay
+	 *            The delay (ms) before the first retry.
+	 * @param maxDelay
+	 *            The maximum delay (ms) between two retries.
+	 * @param multiplier
+	 *            The factor applied to the delay at every failure (1 for a
+	 *            constant delay).
+	 * @throws IllegalArgumentException
+	 *             If a value is out of range.
+	 */
+	public FTPRetryPolicy(int maxRetries, long initialDelay, long maxDelay,
+			double multiplier) throws IllegalArgumentException {
+		if (maxRetries < 0) {
+			throw new IllegalArgumentException("Invalid max retries: "
+					+ maxRetries);
+		}
+		if (initialDelay < 0 || maxDelay < initialDelay) {
+			throw new IllegalArgumentException("Invalid delays: "
+					+ initialDelay + ", " + maxDelay);
+		}
+		if (multiplier < 1) {
+			throw new IllegalArgumentException("Invalid multiplier: "
+					+ multiplier);
+		}
+		this.maxRetries = maxRetries;
+		this.initialDelay = initialDelay;
+		this.maxDelay = maxDelay;
+		this.multiplier = multiplier;
+	}
+
+	/**
+	 * Returns the maximum number of consecutive failed retries.
+	 * 
+	 * @return The retry budget.
+	 */
+	public int getMaxRetries() {
+		return maxRetries;
+	}
+
+	/**
+	 * Returns the delay before the first retry.
+	 * 
+	 * @return The delay, in milliseconds.
+	 */
+	public long getInitialDelay() {
+		return initialDelay;
+	}
+
+	/**
+	 * Returns the maximum delay between two retries.
+	 * 
+	 * @return The delay, in milliseconds.
+	 */
+	public long getMaxDelay() {
+		return maxDelay;
+	}
+
+	/**
+	 * Returns the factor applied to the delay at every failure.
+	 * 
+	 * @return The multiplier.
+	 */
+	public double getMultiplier() {
+		return multiplier;
+	}
+
+	/**
+	 * Returns the delay before a retry.
+	 * 
+	 * @param failures
+	 *            The number of consecutive failures, starting from 1.
+	 * @return The delay, in milliseconds.
+	 */
+	public long getDelay(int failures) {
+		double delay = initialDelay;
+		for (int i = 1; i < failures && delay < maxDelay; i++) {
+			delay *= multiplier;
+		}
+		return Math.min((long) delay, maxDelay);
+	}
+
+	public String toString() {
+		StringBuffer buffer = new StringBuffer();
+		buffer.append(getClass().getName());
+		buffer.append(" [maxRetries=");
+		buffer.append(maxRetries);
+		buffer.append(", initialDelay=");
+		buffer.append(initialDelay);
+		buffer.append(", maxDelay=");
+		buffer.append(maxDelay);
+		buffer.append(", multiplier=");
+		buffer.append(multiplier);
+		buffer.append("]");
+		return buffer.toString();
+	}
+
+}
@@ -0,0 +1,340 @@
+/*
+ * ftp4j - A pure Java FTP client library
+ * 
+ * Copyright (C) 2008-2010 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version
+ * 2.1, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License 2.1 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License version 2.1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.sauronsoftware.ftp4j;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A data transfer listener which samples the progress of a transfer, instead
+ * of reporting every chunk. The bytes notified by the client are summed, and a
+ * {@link FTPTransferProgress} snapshot is taken only when the given time
+ * interval or byte interval has passed since the previous one, so the cost
+ * paid by the transfer loop for each chunk is an addition and a clock read.
+ * Snapshots report the moving average of the rate, the rate since the
+ * previous sample and the estimated time left.
+ * 
+ * Snapshots are delivered to a {@link FTPProgressListener} on a
+ * caller-chosen executor, so a slow consumer never blocks the transfer. At
+ * most one delivery per listener is queued in the executor: if the consumer
+ * lags behind, the snapshots taken in the meantime are coalesced and only the
+ * latest one is delivered.
+ * 
+ * The size of the file is needed to estimate the time left. The client tells
+ * it, together with the restart offset, when it's known: see
+ * {@link FTPDataTransferSizeListener}. Otherwise the size can be given calling
+ * {@link #setSize(long)} before the transfer. A listener tracks a single
+ * transfer at a time.
+ * 
+ * @author Carlo Pelliccia
+ * @since 1.8
+ */
+public class FTPSampledTransferListener implements
+		FTPDataTransferSizeListener {
+
+	/**
+	 * The default time interval between two samples (ms).
+	 */
+	public static final long DEFAULT_INTERVAL = 1000;
+
+	/**
+	 * The default time window of the moving average of the rate (ms).
+	 */
+	public static final long DEFAULT_AVERAGING_WINDOW = 5000;
+
+	/**
+	 * The consumer of the snapshots.
+	 */
+	private FTPProgressListener listener;
+
+	/**
+	 * The executor delivering the snapshots (could be null).
+	 */
+	private Executor executor;
+
+	/**
+	 * The time interval between two samples (ns).
+	 */
+	private long interval;
+
+	/**
+	 * The byte interval between two samples (0 for none).
+	 */
+	private long byteInterval;
+
+	/**
+	 * The time window of the moving average of the rate (ns).
+	 */
+	private volatile long averagingWindow = DEFAULT_AVERAGING_WINDOW * 1000000L;
+
+	/**
+	 * The size of the file, or -1 if unknown.
+	 */
+	private volatile long size = -1;
+
+	/**
+	 * The restart offset of the next transfer.
+	 */
+	private volatile long offset = 0;
+
+	/**
+	 * The time (System.nanoTime()) when the transfer has been started.
+	 */
+	private long startTime;
+
+	/**
+	 * The bytes transferred, including the restart offset.
+	 */
+	private long transferred;
+
+	/**
+	 * The time of the previous sample.
+	 */
+	private long lastSampleTime;
+
+	/**
+	 * The bytes transferred at the previous sample.
+	 */
+	private long lastSampleBytes;
+
+	/**
+	 * The moving average of the rate, or -1 before the first sample.
+	 */
+	private double rate;
+
+	/**
+	 * The rate since the previous sample.
+	 */
+	private double instantRate;
+
+	/**
+	 * The latest snapshot not delivered yet.
+	 */
+	private AtomicReference pending = new AtomicReference();
+
+	/**
+	 * Whether a delivery is queued or running.
+	 */
+	private AtomicBoolean scheduled = new AtomicBoolean(false);
+
+	/**
+	 * The delivery task.
+	 */
+	private Runnable delivery = new Runnable() {
+		public void run() {
+			do {
+				FTPTransferProgress progress;
+				while ((progress = (FTPTransferProgress) pending.getAndSet(null)) != null) {
+					try {
+						listener.progress(progress);
+					} catch (Throwable t) {
+						;
+					}
+				}
+				scheduled.set(false);
+			} while (pending.get() != null && scheduled.compareAndSet(false, true));
+		}
+	};
+
+	/**
+	 * Builds a listener taking a sample every second.
+	 * 
+	 * @param listener
+	 *            The consumer of the snapshots.
+	 * @param executor
+	 *            The executor delivering the snapshots. If null, the
+	 *            snapshots are delivered by the transfer thread.
+	 */
+	public FTPSampledTransferListener(FTPProgressListener listener,
+			Executor executor) {
+		this(listener, executor, DEFAULT_INTERVAL, 0);
+	}
+
+	/**
+	 * Builds a listener.
+	 * 
+	 * @param listener
+	 *            The consumer of the snapshots.
+	 * @param executor
+	 *            The executor delivering the snapshots. If null, the
+	 *            snapshots are delivered by the transfer thread.
+	 * @param interval
+	 *            The time interval between two samples (ms).
+	 * @param byteInterval
+	 *            The byte interval between two samples. A sample is taken
+	 *            when either the time interval or the byte interval has
+	 *            passed. 0 to sample on the time interval only.
+	 */
+	public FTPSampledTransferListener(FTPProgressListener listener,
+			Executor executor, long interval, long byteInterval) {
+		if (listener == null) {
+			throw new NullPointerException("listener");
+		}
+		this.listener = listener;
+		this.executor = executor;
+		this.interval = interval * 1000000L;
+		this.byteInterval = byteInterval;
+	}
+
+	/**
+	 * Sets the time window of the moving average of the rate. A short window
+	 * follows the changes of the throughput quickly, a long one gives a
+	 * steadier estimate of the time left.
+	 * 
+	 * @param averagingWindow
+	 *            The window (ms). The default value is 5000.
+	 */
+	public void setAveragingWindow(long averagingWindow) {
+		this.averagingWindow = averagingWindow * 1000000L;
+	}
+
+	/**
+	 * Returns the time window of the moving average of the rate.
+	 * 
+	 * @return The window (ms).
+	 */
+	public long getAveragingWindow() {
+		return averagingWindow / 1000000L;
+	}
+
+	/**
+	 * Sets the size of the transferred file.
+	 * 
+	 * @param size
+	 *            The size, or -1 if unknown.
+	 */
+	public void setSize(long size) {
+		this.size = size;
+	}
+
+	/**
+	 * Returns the size of the transferred file.
+	 * 
+	 * @return The size, or -1 if unknown.
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Sets the restart offset of the next transfer, which is counted as
+	 * already transferred.
+	 * 
+	 * @param offset
+	 *            The offset.
+	 */
+	public void setOffset(long offset) {
+		this.offset = offset;
+	}
+
+	/**
+	 * Returns the restart offset of the transfer.
+	 * 
+	 * @return The offset.
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	public void transferSize(long size, long offset) {
+		// An unknown size leaves the one given with setSize().
+		if (size >= 0) {
+			this.size = size;
+		}
+		this.offset = offset;
+	}
+
+	public void started() {
+		startTime = System.nanoTime();
+		lastSampleTime = startTime;
+		transferred = offset;
+		lastSampleBytes = transferred;
+		rate = -1;
+		instantRate = 0;
+		publish(FTPTransferProgress.STATE_STARTED);
+	}
+
+	public void transferred(int length) {
+		transferred += length;
+		if (byteInterval > 0 && transferred - lastSampleBytes >= byteInterval) {
+			sample(FTPTransferProgress.STATE_RUNNING, System.nanoTime());
+		} else {
+			long now = System.nanoTime();
+			if (now - lastSampleTime >= interval) {
+				sample(FTPTransferProgress.STATE_RUNNING, now);
+			}
+		}
+	}
+
+	public void completed() {
+		sample(FTPTransferProgress.STATE_COMPLETED, System.nanoTime());
+	}
+
+	public void aborted() {
+		sample(FTPTransferProgress.STATE_ABORTED, System.nanoTime());
+	}
+
+	public void failed() {
+		sample(FTPTransferProgress.STATE_FAILED, System.nanoTime());
+	}
+
+	/**
+	 * Updates the rates and publishes a snapshot.
+	 */
+	private void sample(int state, long now) {
+		long elapsed = now - lastSampleTime;
+		if (elapsed > 0) {
+			instantRate = (transferred - lastSampleBytes) * 1000000000d / elapsed;
+			if (rate < 0) {
+				rate = instantRate;
+			} else {
+				// Exponential moving average, weighted by the elapsed time.
+				double alpha = 1 - Math.exp(-(double) elapsed / averagingWindow);
+				rate += alpha * (instantRate - rate);
+			}
+			lastSampleTime = now;
+			lastSampleBytes = transferred;
+		}
+		publish(state);
+	}
+
+	/**
+	 * Publishes a snapshot, scheduling its delivery if none is queued.
+	 */
+	private void publish(int state) {
+		FTPTransferProgress progress = new FTPTransferProgress(this, state,
+				transferred, size, (lastSampleTime - startTime) / 1000000L,
+				rate < 0 ? 0 : rate, instantRate);
+		pending.set(progress);
+		if (scheduled.compareAndSet(false, true)) {
+			if (executor != null) {
+				try {
+					executor.execute(delivery);
+				} catch (RuntimeException e) {
+					// Rejected: the snapshot is dropped.
+					scheduled.set(false);
+				}
+			} else {
+				delivery.run();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,66 @@
+/*
+ * ftp4j - A pure Java FTP client library
+ * 
+ * Copyright (C) 2008-2010 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version
+ * 2.1, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License 2.1 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License version 2.1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.sauronsoftware.ftp4j;
+
+/**
+ * The consumer of the items of a {@link FTPPublisher}, as the
+ * java.util.concurrent.Flow.Subscriber interface available since Java 9.
+ * 
+ * The methods are called in sequence, never concurrently. After onError() or
+ * onComplete() no other method is called.
+ * 
+ * @author Carlo Pelliccia
+ * @since 1.8
+ */
+public interface FTPSubscriber {
+
+	/**
+	 * Called once, before any other method. No item is delivered until the
+	 * subscriber asks for it through the subscription.
+	 * 
+	 * @param subscription
+	 *            The subscription.
+	 */
+	public void onSubscribe(FTPSubscription subscription);
+
+	/**
+	 * Called for every item, never more times than the items requested.
+	 * 
+	 * @param item
+	 *            The item: a java.nio.ByteBuffer for a download, a
+	 *            {@link FTPFile} for a listing.
+	 */
+	public void onNext(Object item);
+
+	/**
+	 * Called if the transfer fails.
+	 * 
+	 * @param throwable
+	 *            The failure: an IOException, a {@link FTPException} or
+	 *            another exception thrown by the client.
+	 */
+	public void onError(Throwable throwable);
+
+	/**
+	 * Called when every item has been delivered and the transfer has been
+	 * successfully completed.
+	 */
+	public void onComplete();
+
+}
@@ -0,0 +1,49 @@
+/*
+ * ftp4j - A pure Java FTP client library
+ * 
+ * Copyright (C) 2008-2010 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version
+ * 2.1, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License 2.1 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License version 2.1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.sauronsoftware.ftp4j;
+
+/**
+ * The link between a {@link FTPPublisher} and a {@link FTPSubscriber}, as the
+ * java.util.concurrent.Flow.Subscription interface available since Java 9.
+ * 
+ * @author Carlo Pelliccia
+ * @since 1.8
+ */
+public interface FTPSubscription {
+
+	/**
+	 * Asks for more items. The items are read from the data transfer and
+	 * delivered on the calling thread, before the method returns, so the
+	 * transfer never runs ahead of the demand. A call made while items are
+	 * being delivered (in example, from onNext()) only adds to the demand.
+	 * 
+	 * @param n
+	 *            The number of further items. A value less or equal to 0
+	 *            makes the subscription fail with an IllegalArgumentException.
+	 */
+	public void request(long n);
+
+	/**
+	 * Stops the delivery of the items. If the data transfer is running, it is
+	 * aborted, as {@link FTPClient#abortCurrentDataTransfer(boolean)} does.
+	 * The call can be made by any thread.
+	 */
+	public void cancel();
+
+}
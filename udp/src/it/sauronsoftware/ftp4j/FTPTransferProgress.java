@@ -0,0 +1,207 @@
+/*
+ * ftp4j - A pure Java FTP client library
+ * 
+ * Copyright (C) 2008-2010 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version
+ * 2.1, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License 2.1 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License version 2.1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.sauronsoftware.ftp4j;
+
+/**
+ * A snapshot of the progress of a data transfer, as sampled by a
+ * {@link FTPSampledTransferListener}.
+ * 
+ * @author Carlo Pelliccia
+ * @since 1.8
+ */
+public class FTPTransferProgress {
+
+	/**
+	 * The state of a transfer which has just been initialized.
+	 */
+	public static final int STATE_STARTED = 0;
+
+	/**
+	 * The state of a running transfer.
+	 */
+	public static final int STATE_RUNNING = 1;
+
+	/**
+	 * The state of a successfully completed transfer.
+	 */
+	public static final int STATE_COMPLETED = 2;
+
+	/**
+	 * The state of an aborted transfer.
+	 */
+	public static final int STATE_ABORTED = 3;
+
+	/**
+	 * The state of a failed transfer.
+	 */
+	public static final int STATE_FAILED = 4;
+
+	/**
+	 * The listener which sampled the transfer.
+	 */
+	private FTPSampledTransferListener source;
+
+	/**
+	 * The state of the transfer.
+	 */
+	private int state;
+
+	/**
+	 * The bytes transferred, including the restart offset.
+	 */
+	private long transferred;
+
+	/**
+	 * The size of the file, or -1 if unknown.
+	 */
+	private long size;
+
+	/**
+	 * The time (ms) elapsed since the transfer has been started.
+	 */
+	private long elapsedTime;
+
+	/**
+	 * The moving average of the rate (bytes per second).
+	 */
+	private double rate;
+
+	/**
+	 * The rate (bytes per second) since the previous sample.
+	 */
+	private double instantRate;
+
+	FTPTransferProgress(FTPSampledTransferListener source, int state,
+			long transferred, long size, long elapsedTime, double rate,
+			double instantRate) {
+		this.source = source;
+		this.state = state;
+		this.transferred = transferred;
+		this.size = size;
+		this.elapsedTime = elapsedTime;
+		this.rate = rate;
+		this.instantRate = instantRate;
+	}
+
+	/**
+	 * Returns the listener which sampled the transfer. It can be used to tell
+	 * apart the transfers reported to the same {@link FTPProgressListener}.
+	 * 
+	 * @return The listener.
+	 */
+	public FTPSampledTransferListener getSource() {
+		return source;
+	}
+
+	/**
+	 * Returns the state of the transfer.
+	 * 
+	 * @return One of the STATE_* constants.
+	 */
+	public int getState() {
+		return state;
+	}
+
+	/**
+	 * Returns the amount of data transferred, including the restart offset of
+	 * a resumed transfer.
+	 * 
+	 * @return The number of bytes.
+	 */
+	public long getTransferred() {
+		return transferred;
+	}
+
+	/**
+	 * Returns the size of the transferred file.
+	 * 
+	 * @return The size, or -1 if unknown.
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the time elapsed since the transfer has been started.
+	 * 
+	 * @return The time, in milliseconds.
+	 */
+	public long getElapsedTime() {
+		return elapsedTime;
+	}
+
+	/**
+	 * Returns the throughput of the transfer, as a moving average.
+	 * 
+	 * @return The rate, in bytes per second.
+	 */
+	public double getRate() {
+		return rate;
+	}
+
+	/**
+	 * Returns the throughput of the transfer since the previous sample.
+	 * 
+	 * @return The rate, in bytes per second.
+	 */
+	public double getInstantRate() {
+		return instantRate;
+	}
+
+	/**
+	 * Returns the estimated time left to complete the transfer, based on the
+	 * moving average of the rate.
+	 * 
+	 * @return The time, in milliseconds, or -1 if it cannot be estimated
+	 *         since the size or the rate is unknown.
+	 */
+	public long getEstimatedTimeLeft() {
+		if (state == STATE_COMPLETED) {
+			return 0;
+		}
+		if (size < 0 || rate <= 0) {
+			return -1;
+		}
+		long left = size - transferred;
+		if (left <= 0) {
+			return 0;
+		}
+		return (long) (left * 1000 / rate);
+	}
+
+	public String toString() {
+		StringBuffer buffer = new StringBuffer();
+		buffer.append(getClass().getName());
+		buffer.append(" [state=");
+		buffer.append(state);
+		buffer.append(", transferred=");
+		buffer.append(transferred);
+		buffer.append(", size=");
+		buffer.append(size);
+		buffer.append(", elapsedTime=");
+		buffer.append(elapsedTime);
+		buffer.append(", rate=");
+		buffer.append((long) rate);
+		buffer.append(", instantRate=");
+		buffer.append((long) instantRate);
+		buffer.append("]");
+		return buffer.toString();
+	}
+
+}
@@ -0,0 +1,189 @@
+/*
+ * ftp4j - A pure Java FTP client library
+ * 
+ * Copyright (C) 2008-2010 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version
+ * 2.1, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License 2.1 for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License version 2.1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.sauronsoftware.ftp4j;
+
+/**
+ * A report about the integrity of a completed transfer. The checksum of the
+ * transferred data is computed while the data streams through the client, and
+ * it is compared with the one computed by the server on the same range of the
+ * remote file.
+ * 
+ * @author Carlo Pelliccia
+ * @since 1.8
+ * @see FTPClient#setTransferChecksum(String)
+ * @see FTPClient#getLastTransferReport()
+ */
+public class FTPTransferReport {
+
+	/**
+	 * The status of a transfer which has not been verified, since the server
+	 * cannot compute the checksum or the transfer was not in binary mode.
+	 */
+	public static final int STATUS_UNVERIFIED = 0;
+
+	/**
+	 * The status of a transfer whose checksum matches the one computed by the
+	 * server.
+	 */
+	public static final int STATUS_VERIFIED = 1;
+
+	/**
+	 * The status of a transfer whose checksum doesn't match the one computed
+	 * by the server.
+	 */
+	public static final int STATUS_MISMATCH = 2;
+
+	/**
+	 * The remote file path.
+	 */
+	private String path;
+
+	/**
+	 * The algorithm.
+	 */
+	private String algorithm;
+
+	/**
+	 * The offset of the transferred range in the remote file.
+	 */
+	private long offset;
+
+	/**
+	 * The number of transferred bytes.
+	 */
+	private long length;
+
+	/**
+	 * The checksum computed by the client.
+	 */
+	private String localChecksum;
+
+	/**
+	 * The checksum computed by the server, or null.
+	 */
+	private String remoteChecksum;
+
+	/**
+	 * Builds the report.
+	 */
+	FTPTransferReport(String path, String algorithm, long offset, long length,
+			String localChecksum, String remoteChecksum) {
+		this.path = path;
+		this.algorithm = algorithm;
+		this.offset = offset;
+		this.length = length;
+		this.localChecksum = localChecksum;
+		this.remoteChecksum = remoteChecksum;
+	}
+
+	/**
+	 * Returns the path of the remote file.
+	 * 
+	 * @return The path.
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * Returns the checksum algorithm.
+	 * 
+	 * @return One of the FTPClient.HASH_* constants.
+	 */
+	public String getAlgorithm() {
+		return algorithm;
+	}
+
+	/**
+	 * Returns the offset of the transferred range in the remote file.
+	 * 
+	 * @return The offset, in bytes.
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Returns the number of transferred bytes.
+	 * 
+	 * @return The length of the transferred range.
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * Returns the checksum computed by the client on the transferred data.
+	 * 
+	 * @return The checksum, as a lowercase hex string.
+	 */
+	public String getLocalChecksum() {
+		return localChecksum;
+	}
+
+	/**
+	 * Returns the checksum computed by the server on the same range of the
+	 * remote file.
+	 * 
+	 * @return The checksum, as a lowercase hex string, or null if the server
+	 *         didn't supply it.
+	 */
+	public String getRemoteChecksum() {
+		return remoteChecksum;
+	}
+
+	/**
+	 * Returns the status of the verification.
+	 * 
+	 * @return One of {@link FTPTransferReport#STATUS_UNVERIFIED},
+	 *         {@link FTPTransferReport#STATUS_VERIFIED} and
+	 *         {@link FTPTransferReport#STATUS_MISMATCH}.
+	 */
+	public int getStatus() {
+		if (remoteChecksum == null) {
+			return STATUS_UNVERIFIED;
+		} else if (remoteChecksum.equals(localChecksum)) {
+			return STATUS_VERIFIED;
+		} else {
+			return STATUS_MISMATCH;
+		}
+	}
+
+	public String toString() {
+		StringBuffer buffer = new StringBuffer();
+		buffer.append(getClass().getName());
+		buffer.append(" [path=");
+		buffer.append(path);
+		buffer.append(", algorithm=");
+		buffer.append(algorithm);
+		buffer.append(", offset=");
+		buffer.append(offset);
+		buffer.append(", length=");
+		buffer.append(length);
+		buffer.append(", localChecksum=");
+		buffer.append(localChecksum);
+		buffer.append(", remoteChecksum=");
+		buffer.append(remoteChecksum);
+		buffer.append(", status=");
+		buffer.append(getStatus());
+		buffer.append("]");
+		return buffer.toString();
+	}
+
+}
@@ -110,6 +110,22 @@ class NVTASCIIWriter extends Writer {
 	 *             If an I/O error occurs.
 	 */
 	public void writeLine(String str) throws IOException {
+		writeLine(str, true);
+	}
+
+	/**
+	 * Writes a line in the stream, optionally without flushing it. Lines
+	 * written without flushing are sent together with the next flushed one.
+	 * 
+	 * @param str
+	 *            The line.
+	 * @param flush
+	 *            Whether the stream has to be flushed.
+	 * @throws IOException
+	 *             If an I/O error occurs.
+	 * @since 1.8
+	 */
+	public void writeLine(String str, boolean flush) throws IOException {
 		StringBuffer buffer = new StringBuffer();
 		boolean atLeastOne = false;
 		StringTokenizer st = new StringTokenizer(str, LINE_SEPARATOR);
@@ -130,7 +146,9 @@ class NVTASCIIWriter extends Writer {
 			// Sends the statement to the server.
 			writer.write(statement);
 			writer.write(LINE_SEPARATOR);
-			writer.flush();
+			if (flush) {
+				writer.flush();
+			}
 		}
 	}
 
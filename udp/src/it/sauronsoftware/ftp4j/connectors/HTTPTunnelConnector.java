@@ -20,10 +20,8 @@ package it.sauronsoftware.ftp4j.connectors;
 
 import it.sauronsoftware.ftp4j.FTPConnector;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.Socket;
 import java.util.ArrayList;
@@ -35,10 +33,29 @@ import java.util.ArrayList;
  * The connector's default value for the
  * <em>useSuggestedAddressForDataConnections</em> flag is <em>false</em>.
  * 
+ * The CONNECT request is sent with a single write, and the response of the
+ * proxy is read byte by byte up to the end of its header, so no byte of the
+ * tunneled stream is consumed. Since the target of a passive data transfer is
+ * known only when the transfer starts, the connector can keep some
+ * connections with the proxy open in advance (see
+ * {@link #setPreconnectedDataConnections(int)}): a data transfer channel then
+ * costs only the CONNECT round trip.
+ * 
  * @author Carlo Pelliccia
  */
 public class HTTPTunnelConnector extends FTPConnector {
 
+	/**
+	 * The maximum size of the header of a proxy response.
+	 */
+	private static final int MAX_RESPONSE_SIZE = 16384;
+
+	/**
+	 * The time (ms) after which an idle connection with the proxy is
+	 * considered stale, since the proxy could have closed it.
+	 */
+	private static final long MAX_IDLE_TIME = 30000;
+
 	/**
 	 * The proxy host name.
 	 */
@@ -59,6 +76,46 @@ public class HTTPTunnelConnector extends FTPConnector {
 	 */
 	private String proxyPass;
 
+	/**
+	 * The authentication header, with its CRLF, or an empty string if no
+	 * authentication is required.
+	 */
+	private String authHeader;
+
+	/**
+	 * The number of idle connections with the proxy kept for the data
+	 * transfers.
+	 */
+	private int preconnectedDataConnections = 0;
+
+	/**
+	 * The idle connections with the proxy (IdleConnection objects), from the
+	 * oldest.
+	 */
+	private ArrayList idleConnections = new ArrayList();
+
+	/**
+	 * The number of connections with the proxy being opened in advance.
+	 */
+	private int opening = 0;
+
+	/**
+	 * The number of open communication channels through this connector. The
+	 * idle connections are kept only while it's greater than 0, or until the
+	 * first communication channel is opened.
+	 */
+	private int sessions = 0;
+
+	/**
+	 * Whether the last communication channel has been closed.
+	 */
+	private boolean released = false;
+
+	/**
+	 * The thread closing the expired idle connections, if running.
+	 */
+	private Thread reaper = null;
+
 	/**
 	 * Builds the connector.
 	 * 
@@ -77,6 +134,12 @@ public class HTTPTunnelConnector extends FTPConnector {
 		this.proxyPort = proxyPort;
 		this.proxyUser = proxyUser;
 		this.proxyPass = proxyPass;
+		if (proxyUser != null && proxyPass != null) {
+			authHeader = "Proxy-Authorization: Basic "
+					+ Base64.encode(proxyUser + ":" + proxyPass) + "\r\n";
+		} else {
+			authHeader = "";
+		}
 	}
 
 	/**
@@ -91,49 +154,88 @@ public class HTTPTunnelConnector extends FTPConnector {
 		this(proxyHost, proxyPort, null, null);
 	}
 
+	/**
+	 * Sets the number of connections with the proxy opened in advance for the
+	 * data transfers. Every time a data transfer channel takes one of them,
+	 * another one is opened in background. Idle connections older than 30
+	 * seconds are closed, since the proxy could have closed them, and they are
+	 * not replaced until a data transfer channel is opened.
+	 * The idle connections are closed when the last communication channel
+	 * through the connector is closed.
+	 * 
+	 * The default value is 0.
+	 * 
+	 * @param preconnectedDataConnections
+	 *            The number of connections.
+	 * @since 1.8
+	 */
+	public void setPreconnectedDataConnections(int preconnectedDataConnections) {
+		ArrayList list = new ArrayList();
+		synchronized (idleConnections) {
+			this.preconnectedDataConnections = preconnectedDataConnections;
+			while (idleConnections.size() > Math.max(0, preconnectedDataConnections)) {
+				list.add(((IdleConnection) idleConnections.remove(0)).socket);
+			}
+		}
+		for (int i = 0; i < list.size(); i++) {
+			close((Socket) list.get(i));
+		}
+		refill();
+	}
+
+	/**
+	 * Returns the number of connections with the proxy opened in advance for
+	 * the data transfers.
+	 * 
+	 * @return The number of connections.
+	 * @since 1.8
+	 */
+	public int getPreconnectedDataConnections() {
+		synchronized (idleConnections) {
+			return preconnectedDataConnections;
+		}
+	}
+
 	private Socket httpConnect(String host, int port, boolean forDataTransfer) throws IOException {
-		// The CRLF sequence.
-		byte[] CRLF = "\r\n".getBytes("UTF-8");
-		// The connect command line.
-		String connect = "CONNECT " + host + ":" + port + " HTTP/1.1";
-		String hostHeader = "Host: " + host + ":" + port;
+		// The CONNECT request.
+		StringBuffer buffer = new StringBuffer();
+		buffer.append("CONNECT ").append(host).append(':').append(port);
+		buffer.append(" HTTP/1.1\r\n");
+		buffer.append("Host: ").append(host).append(':').append(port);
+		buffer.append("\r\n");
+		buffer.append(authHeader);
+		buffer.append("\r\n");
+		byte[] request = buffer.toString().getBytes("UTF-8");
+		if (forDataTransfer) {
+			Socket socket = takeIdleConnection();
+			refill();
+			if (socket != null) {
+				try {
+					return handshake(socket, request);
+				} catch (IOException e) {
+					// Maybe stale: again, with a new connection.
+				}
+			}
+			return handshake(tcpConnectForDataTransferChannel(proxyHost, proxyPort), request);
+		} else {
+			return handshake(tcpConnectForCommunicationChannel(proxyHost, proxyPort), request);
+		}
+	}
+
+	private Socket handshake(Socket socket, byte[] request) throws IOException {
 		// A connection status flag.
 		boolean connected = false;
-		// The socket for the connection with the proxy.
-		Socket socket = null;
 		InputStream in = null;
 		OutputStream out = null;
 		// FTPConnection routine.
 		try {
-			if (forDataTransfer) {
-				socket = tcpConnectForDataTransferChannel(proxyHost, proxyPort);
-			} else {
-				socket = tcpConnectForCommunicationChannel(proxyHost, proxyPort);
-			}
 			in = socket.getInputStream();
 			out = socket.getOutputStream();
 			// Send the CONNECT request.
-			out.write(connect.getBytes("UTF-8"));
-			out.write(CRLF);
-			out.write(hostHeader.getBytes("UTF-8"));
-			out.write(CRLF);
-			// Auth headers
-			if (proxyUser != null && proxyPass != null) {
-				String header = "Proxy-Authorization: Basic "
-						+ Base64.encode(proxyUser + ":" + proxyPass);
-				out.write(header.getBytes("UTF-8"));
-				out.write(CRLF);
-			}
-			out.write(CRLF);
+			out.write(request);
 			out.flush();
 			// Get the proxy response.
-			ArrayList responseLines = new ArrayList();
-			BufferedReader reader = new BufferedReader(
-					new InputStreamReader(in));
-			for (String line = reader.readLine(); line != null
-					&& line.length() > 0; line = reader.readLine()) {
-				responseLines.add(line);
-			}
+			ArrayList responseLines = readResponse(in);
 			// Parse the response.
 			int size = responseLines.size();
 			if (size < 1) {
@@ -178,21 +280,170 @@ public class HTTPTunnelConnector extends FTPConnector {
 						;
 					}
 				}
-				if (socket != null) {
+				close(socket);
+			}
+		}
+		return socket;
+	}
+
+	/**
+	 * Reads the lines of the response header, stopping at the empty line
+	 * which ends it, without reading any further byte.
+	 */
+	private ArrayList readResponse(InputStream in) throws IOException {
+		ArrayList lines = new ArrayList();
+		StringBuffer line = new StringBuffer();
+		int count = 0;
+		while (true) {
+			int b = in.read();
+			if (b < 0) {
+				throw new IOException(
+						"HTTPTunnelConnector: connection closed by the proxy");
+			}
+			if (++count > MAX_RESPONSE_SIZE) {
+				throw new IOException(
+						"HTTPTunnelConnector: invalid proxy response");
+			}
+			if (b == '\n') {
+				int l = line.length();
+				if (l > 0 && line.charAt(l - 1) == '\r') {
+					line.setLength(l - 1);
+				}
+				if (line.length() == 0) {
+					break;
+				}
+				lines.add(line.toString());
+				line.setLength(0);
+			} else {
+				line.append((char) b);
+			}
+		}
+		return lines;
+	}
+
+	/**
+	 * Takes the most recent idle connection with the proxy, if it's not too
+	 * old.
+	 */
+	private Socket takeIdleConnection() {
+		ArrayList stale = new ArrayList();
+		Socket socket = null;
+		synchronized (idleConnections) {
+			long now = System.currentTimeMillis();
+			while (idleConnections.size() > 0) {
+				IdleConnection aux = (IdleConnection) idleConnections.remove(idleConnections.size() - 1);
+				if (now - aux.since < MAX_IDLE_TIME && !aux.socket.isClosed()) {
+					socket = aux.socket;
+					break;
+				}
+				stale.add(aux.socket);
+			}
+			// The older ones are stale too.
+			while (idleConnections.size() > 0
+					&& now - ((IdleConnection) idleConnections.get(0)).since >= MAX_IDLE_TIME) {
+				stale.add(((IdleConnection) idleConnections.remove(0)).socket);
+			}
+		}
+		for (int i = 0; i < stale.size(); i++) {
+			close((Socket) stale.get(i));
+		}
+		return socket;
+	}
+
+	/**
+	 * Opens in background the missing idle connections with the proxy.
+	 */
+	private void refill() {
+		int missing;
+		synchronized (idleConnections) {
+			if (released) {
+				return;
+			}
+			missing = preconnectedDataConnections - idleConnections.size() - opening;
+			if (missing <= 0) {
+				return;
+			}
+			opening += missing;
+		}
+		for (int i = 0; i < missing; i++) {
+			Thread thread = new Thread(new Runnable() {
+				public void run() {
+					Socket socket = null;
 					try {
-						socket.close();
-					} catch (Throwable t) {
+						socket = tcpConnectForDataTransferChannel(proxyHost, proxyPort);
+					} catch (IOException e) {
 						;
 					}
+					boolean kept = false;
+					synchronized (idleConnections) {
+						opening--;
+						if (socket != null && !released
+								&& idleConnections.size() < preconnectedDataConnections) {
+							idleConnections.add(new IdleConnection(socket));
+							kept = true;
+							startReaper();
+						}
+					}
+					if (socket != null && !kept) {
+						close(socket);
+					}
 				}
-			}
+			}, "ftp4j-http-tunnel-preconnector");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Starts the thread closing the expired idle connections, if it's not
+	 * running. To be called while holding the idleConnections lock.
+	 */
+	private void startReaper() {
+		if (reaper == null) {
+			reaper = new Thread(new Reaper(), "ftp4j-http-tunnel-reaper");
+			reaper.setDaemon(true);
+			reaper.start();
+		}
+	}
+
+	private static void close(Socket socket) {
+		try {
+			socket.close();
+		} catch (Throwable t) {
+			;
 		}
-		return socket;
 	}
 
 	public Socket connectForCommunicationChannel(String host, int port)
 			throws IOException {
-		return httpConnect(host, port, false);
+		Socket socket = httpConnect(host, port, false);
+		synchronized (idleConnections) {
+			sessions++;
+			released = false;
+		}
+		refill();
+		return socket;
+	}
+
+	public void releaseCommunicationChannel() {
+		ArrayList list = new ArrayList();
+		synchronized (idleConnections) {
+			if (sessions > 0) {
+				sessions--;
+			}
+			if (sessions > 0) {
+				return;
+			}
+			released = true;
+			while (idleConnections.size() > 0) {
+				list.add(((IdleConnection) idleConnections.remove(0)).socket);
+			}
+			// Wakes up the reaper, so it can exit.
+			idleConnections.notifyAll();
+		}
+		for (int i = 0; i < list.size(); i++) {
+			close((Socket) list.get(i));
+		}
 	}
 
 	public Socket connectForDataTransferChannel(String host, int port)
@@ -200,4 +451,60 @@ public class HTTPTunnelConnector extends FTPConnector {
 		return httpConnect(host, port, true);
 	}
 
+	/**
+	 * Closes the idle connections with the proxy as soon as they expire. They
+	 * are not replaced: new ones are opened only when a data transfer channel
+	 * takes one. It exits when no idle connection is left.
+	 */
+	private class Reaper implements Runnable {
+
+		public void run() {
+			while (true) {
+				ArrayList stale = new ArrayList();
+				synchronized (idleConnections) {
+					if (idleConnections.isEmpty()) {
+						reaper = null;
+						return;
+					}
+					long now = System.currentTimeMillis();
+					IdleConnection oldest = (IdleConnection) idleConnections.get(0);
+					long delay = oldest.since + MAX_IDLE_TIME - now;
+					if (delay > 0) {
+						try {
+							idleConnections.wait(delay);
+						} catch (InterruptedException e) {
+							reaper = null;
+							return;
+						}
+						continue;
+					}
+					while (idleConnections.size() > 0
+							&& now - ((IdleConnection) idleConnections.get(0)).since >= MAX_IDLE_TIME) {
+						stale.add(((IdleConnection) idleConnections.remove(0)).socket);
+					}
+				}
+				for (int i = 0; i < stale.size(); i++) {
+					close((Socket) stale.get(i));
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * An idle connection with the proxy.
+	 */
+	private static class IdleConnection {
+
+		private Socket socket;
+
+		private long since;
+
+		private IdleConnection(Socket socket) {
+			this.socket = socket;
+			this.since = System.currentTimeMillis();
+		}
+
+	}
+
 }
@@ -20,9 +20,11 @@ package it.sauronsoftware.ftp4j.connectors;
 
 import it.sauronsoftware.ftp4j.FTPConnector;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.net.Socket;
 
@@ -83,9 +85,20 @@ public class SOCKS4Connector extends FTPConnector {
 		// Socks 4 or 4a?
 		boolean socks4a = false;
 		byte[] address;
+		address = null;
 		try {
-			address = InetAddress.getByName(host).getAddress();
+			// Socks 4 carries IPv4 addresses only.
+			InetAddress[] addresses = resolve(host);
+			for (int i = 0; i < addresses.length; i++) {
+				if (addresses[i] instanceof Inet4Address) {
+					address = addresses[i].getAddress();
+					break;
+				}
+			}
 		} catch (Exception e) {
+			;
+		}
+		if (address == null) {
 			// Cannot resolve host, switch to version 4a.
 			socks4a = true;
 			address = new byte[] { 0x00, 0x00, 0x00, 0x01 };
@@ -105,36 +118,36 @@ public class SOCKS4Connector extends FTPConnector {
 			}
 			in = socket.getInputStream();
 			out = socket.getOutputStream();
-			// Send the request.
+			// Send the request, with a single write.
+			ByteArrayOutputStream request = new ByteArrayOutputStream();
 			// Version 4.
-			out.write(0x04);
+			request.write(0x04);
 			// CONNECT method.
-			out.write(0x01);
+			request.write(0x01);
 			// Remote port number.
-			out.write(port >> 8);
-			out.write(port);
+			request.write(port >> 8);
+			request.write(port);
 			// Remote host address.
-			out.write(address);
+			request.write(address);
 			// The user.
 			if (socks4user != null) {
-				out.write(socks4user.getBytes("UTF-8"));
+				request.write(socks4user.getBytes("UTF-8"));
 			}
 			// End of user.
-			out.write(0x00);
+			request.write(0x00);
 			// Version 4a?
 			if (socks4a) {
-				out.write(host.getBytes("UTF-8"));
-				out.write(0x00);
+				request.write(host.getBytes("UTF-8"));
+				request.write(0x00);
 			}
-			// Get and parse the response.
-			int aux = read(in);
-			if (aux != 0x00) {
+			out.write(request.toByteArray());
+			// Get and parse the response: version, status, port, address.
+			byte[] reply = read(in, 8);
+			if (reply[0] != 0x00) {
 				throw new IOException("SOCKS4Connector: invalid proxy response");
 			}
-			aux = read(in);
-			switch (aux) {
+			switch (reply[1]) {
 			case 0x5a:
-				in.skip(6);
 				connected = true;
 				break;
 			case 0x5b:
@@ -178,13 +191,18 @@ public class SOCKS4Connector extends FTPConnector {
 		return socket;
 	}
 
-	private int read(InputStream in) throws IOException {
-		int aux = in.read();
-		if (aux < 0) {
-			throw new IOException(
-					"SOCKS4Connector: connection closed by the proxy");
+	private byte[] read(InputStream in, int length) throws IOException {
+		byte[] buffer = new byte[length];
+		int off = 0;
+		while (off < length) {
+			int l = in.read(buffer, off, length - off);
+			if (l < 0) {
+				throw new IOException(
+						"SOCKS4Connector: connection closed by the proxy");
+			}
+			off += l;
 		}
-		return aux;
+		return buffer;
 	}
 
 	public Socket connectForCommunicationChannel(String host, int port)
@@ -20,6 +20,7 @@ package it.sauronsoftware.ftp4j.connectors;
 
 import it.sauronsoftware.ftp4j.FTPConnector;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -31,6 +32,12 @@ import java.net.Socket;
  * The connector's default value for the
  * <em>useSuggestedAddressForDataConnections</em> flag is <em>false</em>.
  * 
+ * Every step of the handshake (method selection, username/password
+ * authentication and connection request) is sent with a single write. In the
+ * optimistic mode, enabled with {@link #setOptimistic(boolean)}, the three
+ * steps are sent all together, and the replies are read afterwards: the
+ * handshake costs a single round trip instead of three.
+ * 
  * @author Carlo Pelliccia
  */
 public class SOCKS5Connector extends FTPConnector {
@@ -55,6 +62,22 @@ public class SOCKS5Connector extends FTPConnector {
 	 */
 	private String socks5pass;
 
+	/**
+	 * The encoded method selection message.
+	 */
+	private byte[] greeting;
+
+	/**
+	 * The encoded username/password authentication request, or null if no
+	 * authentication is required.
+	 */
+	private byte[] authRequest = null;
+
+	/**
+	 * Whether the handshake steps are sent without waiting for the replies.
+	 */
+	private boolean optimistic = false;
+
 	/**
 	 * It builds the connector.
 	 * 
@@ -74,6 +97,27 @@ public class SOCKS5Connector extends FTPConnector {
 		this.socks5port = socks5port;
 		this.socks5user = socks5user;
 		this.socks5pass = socks5pass;
+		boolean authentication = socks5user != null && socks5pass != null;
+		// Version 5, one method: username/password or no authentication.
+		greeting = new byte[] { 0x05, 0x01, (byte) (authentication ? 0x02 : 0x00) };
+		if (authentication) {
+			try {
+				byte[] user = socks5user.getBytes("UTF-8");
+				byte[] pass = socks5pass.getBytes("UTF-8");
+				if (user.length <= 0xff && pass.length <= 0xff) {
+					// Version 1, username, password.
+					ByteArrayOutputStream buffer = new ByteArrayOutputStream(3 + user.length + pass.length);
+					buffer.write(0x01);
+					buffer.write(user.length);
+					buffer.write(user);
+					buffer.write(pass.length);
+					buffer.write(pass);
+					authRequest = buffer.toByteArray();
+				}
+			} catch (IOException e) {
+				;
+			}
+		}
 	}
 
 	/**
@@ -88,9 +132,55 @@ public class SOCKS5Connector extends FTPConnector {
 		this(socks5host, socks5port, null, null);
 	}
 
+	/**
+	 * Enables or disables the optimistic mode. In the optimistic mode the
+	 * method selection, the authentication request and the connection request
+	 * are sent in a single write, before any reply is received. It saves two
+	 * round trips per connection, for both the communication and the data
+	 * transfer channels, but it requires a proxy which doesn't discard the
+	 * data received ahead of time, as RFC 1928 proxies are expected to do.
+	 * 
+	 * The default value is <em>false</em>.
+	 * 
+	 * @param optimistic
+	 *            <em>true</em> to enable the optimistic mode.
+	 * @since 1.8
+	 */
+	public void setOptimistic(boolean optimistic) {
+		this.optimistic = optimistic;
+	}
+
+	/**
+	 * Checks whether the optimistic mode is enabled.
+	 * 
+	 * @return <em>true</em> if the optimistic mode is enabled.
+	 * @since 1.8
+	 */
+	public boolean isOptimistic() {
+		return optimistic;
+	}
+
 	private Socket socksConnect(String host, int port, boolean forDataTransfer) throws IOException {
 		// Authentication flag
 		boolean authentication = socks5user != null && socks5pass != null;
+		if (authentication && authRequest == null) {
+			throw new IOException("SOCKS5Connector: username or password too long");
+		}
+		// FTPConnection request: version 5, CONNECT method, reserved, address
+		// type -> domain, domain, port number.
+		byte[] domain = host.getBytes("UTF-8");
+		if (domain.length > 0xff) {
+			throw new IOException("SOCKS5Connector: domain name too long");
+		}
+		byte[] connectRequest = new byte[7 + domain.length];
+		connectRequest[0] = 0x05;
+		connectRequest[1] = 0x01;
+		connectRequest[2] = 0x00;
+		connectRequest[3] = 0x03;
+		connectRequest[4] = (byte) domain.length;
+		System.arraycopy(domain, 0, connectRequest, 5, domain.length);
+		connectRequest[5 + domain.length] = (byte) (port >> 8);
+		connectRequest[6 + domain.length] = (byte) port;
 		// A connection status flag.
 		boolean connected = false;
 		// The socket for the connection with the proxy.
@@ -106,142 +196,30 @@ public class SOCKS5Connector extends FTPConnector {
 			}
 			in = socket.getInputStream();
 			out = socket.getOutputStream();
-			int aux;
-			// Version 5.
-			out.write(0x05);
-			// Authentication?
-			if (authentication) {
-				// Authentication with username/password.
-				out.write(0x01);
-				out.write(0x02);
-			} else {
-				// No authentication.
-				out.write(0x01);
-				out.write(0x00);
-			}
-			// Get the response.
-			aux = read(in);
-			if (aux != 0x05) {
-				throw new IOException("SOCKS5Connector: invalid proxy response");
-			}
-			aux = read(in);
-			if (authentication) {
-				if (aux != 0x02) {
-					throw new IOException(
-							"SOCKS5Connector: proxy doesn't support "
-									+ "username/password authentication method");
-				}
-				// Authentication with username/password.
-				byte[] user = socks5user.getBytes("UTF-8");
-				byte[] pass = socks5pass.getBytes("UTF-8");
-				int userLength = user.length;
-				int passLength = pass.length;
-				// Check sizes.
-				if (userLength > 0xff) {
-					throw new IOException("SOCKS5Connector: username too long");
+			if (optimistic) {
+				// Everything in a single write.
+				ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+				buffer.write(greeting);
+				if (authentication) {
+					buffer.write(authRequest);
 				}
-				if (passLength > 0xff) {
-					throw new IOException("SOCKS5Connector: password too long");
-				}
-				// Version 1.
-				out.write(0x01);
-				// Username.
-				out.write(userLength);
-				out.write(user);
-				// Password.
-				out.write(passLength);
-				out.write(pass);
-				// Check the response.
-				aux = read(in);
-				if (aux != 0x01) {
-					throw new IOException(
-							"SOCKS5Connector: invalid proxy response");
-				}
-				aux = read(in);
-				if (aux != 0x00) {
-					throw new IOException(
-							"SOCKS5Connector: authentication failed");
+				buffer.write(connectRequest);
+				out.write(buffer.toByteArray());
+				readMethodSelection(in, authentication);
+				if (authentication) {
+					readAuthReply(in);
 				}
+				readConnectReply(in);
 			} else {
-				if (aux != 0x00) {
-					throw new IOException(
-							"SOCKS5Connector: proxy requires authentication");
+				out.write(greeting);
+				readMethodSelection(in, authentication);
+				if (authentication) {
+					out.write(authRequest);
+					readAuthReply(in);
 				}
+				out.write(connectRequest);
+				readConnectReply(in);
 			}
-			// FTPConnection request.
-			// Version 5.
-			out.write(0x05);
-			// CONNECT method
-			out.write(0x01);
-			// Reserved.
-			out.write(0x00);
-			// Address type -> domain.
-			out.write(0x03);
-			// Domain.
-			byte[] domain = host.getBytes("UTF-8");
-			if (domain.length > 0xff) {
-				throw new IOException("SOCKS5Connector: domain name too long");
-			}
-			out.write(domain.length);
-			out.write(domain);
-			// Port number.
-			out.write(port >> 8);
-			out.write(port);
-
-			// FTPConnection response
-			// Version?
-			aux = read(in);
-			if (aux != 0x05) {
-				throw new IOException("SOCKS5Connector: invalid proxy response");
-			}
-			// Status?
-			aux = read(in);
-			switch (aux) {
-			case 0x00:
-				// Connected!
-				break;
-			case 0x01:
-				throw new IOException("SOCKS5Connector: general failure");
-			case 0x02:
-				throw new IOException(
-						"SOCKS5Connector: connection not allowed by ruleset");
-			case 0x03:
-				throw new IOException("SOCKS5Connector: network unreachable");
-			case 0x04:
-				throw new IOException("SOCKS5Connector: host unreachable");
-			case 0x05:
-				throw new IOException(
-						"SOCKS5Connector: connection refused by destination host");
-			case 0x06:
-				throw new IOException("SOCKS5Connector: TTL expired");
-			case 0x07:
-				throw new IOException(
-						"SOCKS5Connector: command not supported / protocol error");
-			case 0x08:
-				throw new IOException(
-						"SOCKS5Connector: address type not supported");
-			default:
-				throw new IOException("SOCKS5Connector: invalid proxy response");
-			}
-			// Reserved.
-			in.skip(1);
-			// Address type.
-			aux = read(in);
-			if (aux == 0x01) {
-				// IPv4.
-				in.skip(4);
-			} else if (aux == 0x03) {
-				// Domain name.
-				aux = read(in);
-				in.skip(aux);
-			} else if (aux == 0x04) {
-				// IPv6.
-				in.skip(16);
-			} else {
-				throw new IOException("SOCKS5Connector: invalid proxy response");
-			}
-			// Port number.
-			in.skip(2);
 			// Well done!
 			connected = true;
 		} catch (IOException e) {
@@ -274,13 +252,97 @@ public class SOCKS5Connector extends FTPConnector {
 		return socket;
 	}
 
-	private int read(InputStream in) throws IOException {
-		int aux = in.read();
-		if (aux < 0) {
+	private void readMethodSelection(InputStream in, boolean authentication)
+			throws IOException {
+		byte[] reply = read(in, 2);
+		if (reply[0] != 0x05) {
+			throw new IOException("SOCKS5Connector: invalid proxy response");
+		}
+		if (authentication) {
+			if (reply[1] != 0x02) {
+				throw new IOException(
+						"SOCKS5Connector: proxy doesn't support "
+								+ "username/password authentication method");
+			}
+		} else {
+			if (reply[1] != 0x00) {
+				throw new IOException(
+						"SOCKS5Connector: proxy requires authentication");
+			}
+		}
+	}
+
+	private void readAuthReply(InputStream in) throws IOException {
+		byte[] reply = read(in, 2);
+		if (reply[0] != 0x01) {
+			throw new IOException("SOCKS5Connector: invalid proxy response");
+		}
+		if (reply[1] != 0x00) {
+			throw new IOException("SOCKS5Connector: authentication failed");
+		}
+	}
+
+	private void readConnectReply(InputStream in) throws IOException {
+		// Version, status, reserved, address type.
+		byte[] reply = read(in, 4);
+		if (reply[0] != 0x05) {
+			throw new IOException("SOCKS5Connector: invalid proxy response");
+		}
+		switch (reply[1]) {
+		case 0x00:
+			// Connected!
+			break;
+		case 0x01:
+			throw new IOException("SOCKS5Connector: general failure");
+		case 0x02:
+			throw new IOException(
+					"SOCKS5Connector: connection not allowed by ruleset");
+		case 0x03:
+			throw new IOException("SOCKS5Connector: network unreachable");
+		case 0x04:
+			throw new IOException("SOCKS5Connector: host unreachable");
+		case 0x05:
 			throw new IOException(
-					"SOCKS5Connector: connection closed by the proxy");
+					"SOCKS5Connector: connection refused by destination host");
+		case 0x06:
+			throw new IOException("SOCKS5Connector: TTL expired");
+		case 0x07:
+			throw new IOException(
+					"SOCKS5Connector: command not supported / protocol error");
+		case 0x08:
+			throw new IOException(
+					"SOCKS5Connector: address type not supported");
+		default:
+			throw new IOException("SOCKS5Connector: invalid proxy response");
+		}
+		// The bound address and port number, skipped.
+		if (reply[3] == 0x01) {
+			// IPv4.
+			read(in, 4 + 2);
+		} else if (reply[3] == 0x03) {
+			// Domain name.
+			int length = read(in, 1)[0] & 0xff;
+			read(in, length + 2);
+		} else if (reply[3] == 0x04) {
+			// IPv6.
+			read(in, 16 + 2);
+		} else {
+			throw new IOException("SOCKS5Connector: invalid proxy response");
+		}
+	}
+
+	private byte[] read(InputStream in, int length) throws IOException {
+		byte[] buffer = new byte[length];
+		int off = 0;
+		while (off < length) {
+			int l = in.read(buffer, off, length - off);
+			if (l < 0) {
+				throw new IOException(
+						"SOCKS5Connector: connection closed by the proxy");
+			}
+			off += l;
 		}
-		return aux;
+		return buffer;
 	}
 
 	public Socket connectForCommunicationChannel(String host, int port)
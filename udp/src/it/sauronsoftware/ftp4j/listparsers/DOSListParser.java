@@ -26,26 +26,36 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import it.sauronsoftware.ftp4j.FTPFile;
+import it.sauronsoftware.ftp4j.FTPFileFilter;
+import it.sauronsoftware.ftp4j.FTPFilteringListParser;
 import it.sauronsoftware.ftp4j.FTPListParseException;
-import it.sauronsoftware.ftp4j.FTPListParser;
 
 /**
  * This parser can handle the MSDOS-style LIST responses.
  * 
  * @author Carlo Pelliccia
  */
-public class DOSListParser implements FTPListParser {
+public class DOSListParser implements FTPFilteringListParser {
 
 	private static final Pattern PATTERN = Pattern
 			.compile("^(\\d{2})-(\\d{2})-(\\d{2})\\s+(\\d{2}):(\\d{2})(AM|PM)\\s+"
 					+ "(<DIR>|\\d+)\\s+([^\\\\/*?\"<>|]+)$");
 
-	private static final DateFormat DATE_FORMAT = new SimpleDateFormat(
-			"MM/dd/yy hh:mm a");
+	private static final ThreadLocal DATE_FORMAT = new ThreadLocal() {
+		protected Object initialValue() {
+			return new SimpleDateFormat("MM/dd/yy hh:mm a");
+		}
+	};
 
 	public FTPFile[] parse(String[] lines) throws FTPListParseException {
+		return parse(lines, null);
+	}
+
+	public FTPFile[] parse(String[] lines, FTPFileFilter filter)
+			throws FTPListParseException {
 		int size = lines.length;
 		FTPFile[] ret = new FTPFile[size];
+		int count = 0;
 		for (int i = 0; i < size; i++) {
 			Matcher m = PATTERN.matcher(lines[i]);
 			if (m.matches()) {
@@ -57,36 +67,53 @@ public class DOSListParser implements FTPListParser {
 				String ampm = m.group(6);
 				String dirOrSize = m.group(7);
 				String name = m.group(8);
-				ret[i] = new FTPFile();
-				ret[i].setName(name);
+				int type;
+				long fileSize;
 				if (dirOrSize.equalsIgnoreCase("<DIR>")) {
-					ret[i].setType(FTPFile.TYPE_DIRECTORY);
-					ret[i].setSize(0);
+					type = FTPFile.TYPE_DIRECTORY;
+					fileSize = 0;
 				} else {
-					long fileSize;
 					try {
 						fileSize = Long.parseLong(dirOrSize);
 					} catch (Throwable t) {
 						throw new FTPListParseException();
 					}
-					ret[i].setType(FTPFile.TYPE_FILE);
-					ret[i].setSize(fileSize);
+					type = FTPFile.TYPE_FILE;
+				}
+				// Cheap filtering criteria.
+				if (filter != null) {
+					if (!filter.acceptType(type) || !filter.acceptSize(fileSize)
+							|| !filter.acceptName(name)) {
+						continue;
+					}
 				}
 				String mdString = month + "/" + day + "/" + year + " " + hour
 						+ ":" + minute + " " + ampm;
 				Date md;
 				try {
-					synchronized (DATE_FORMAT) {
-						md = DATE_FORMAT.parse(mdString);
-					}
+					md = ((DateFormat) DATE_FORMAT.get()).parse(mdString);
 				} catch (ParseException e) {
 					throw new FTPListParseException();
 				}
-				ret[i].setModifiedDate(md);
+				// Date filtering criterion.
+				if (filter != null && !filter.acceptModifiedDate(md)) {
+					continue;
+				}
+				FTPFile file = new FTPFile();
+				file.setName(name);
+				file.setType(type);
+				file.setSize(fileSize);
+				file.setModifiedDate(md);
+				ret[count++] = file;
 			} else {
 				throw new FTPListParseException();
 			}
 		}
+		if (count < ret.length) {
+			FTPFile[] aux = new FTPFile[count];
+			System.arraycopy(ret, 0, aux, 0, count);
+			ret = aux;
+		}
 		return ret;
 	}
 
@@ -22,19 +22,26 @@ import java.util.Date;
 import java.util.StringTokenizer;
 
 import it.sauronsoftware.ftp4j.FTPFile;
+import it.sauronsoftware.ftp4j.FTPFileFilter;
+import it.sauronsoftware.ftp4j.FTPFilteringListParser;
 import it.sauronsoftware.ftp4j.FTPListParseException;
-import it.sauronsoftware.ftp4j.FTPListParser;
 
 /**
  * This parser can handle the EPLF format.
  * 
  * @author Carlo Pelliccia
  */
-public class EPLFListParser implements FTPListParser {
+public class EPLFListParser implements FTPFilteringListParser {
 
 	public FTPFile[] parse(String[] lines) throws FTPListParseException {
+		return parse(lines, null);
+	}
+
+	public FTPFile[] parse(String[] lines, FTPFileFilter filter)
+			throws FTPListParseException {
 		int size = lines.length;
 		FTPFile[] ret = null;
+		int count = 0;
 		for (int i = 0; i < size; i++) {
 			String l = lines[i];
 			// Validate the plus sign.
@@ -49,7 +56,7 @@ public class EPLFListParser implements FTPListParser {
 			String facts = l.substring(1, a);
 			String name = l.substring(a + 1, l.length());
 			// Parse the facts.
-			Date md = null;
+			long mdTime = -1;
 			boolean dir = false;
 			long fileSize = 0;
 			StringTokenizer st = new StringTokenizer(facts, ",");
@@ -76,7 +83,7 @@ public class EPLFListParser implements FTPListParser {
 							// Modified date.
 							try {
 								long m = Long.parseLong(value);
-								md = new Date(m * 1000);
+								mdTime = m * 1000;
 							} catch (Throwable t) {
 								;
 							}
@@ -88,11 +95,29 @@ public class EPLFListParser implements FTPListParser {
 			if (ret == null) {
 				ret = new FTPFile[size];
 			}
-			ret[i] = new FTPFile();
-			ret[i].setName(name);
-			ret[i].setModifiedDate(md);
-			ret[i].setSize(fileSize);
-			ret[i].setType(dir ? FTPFile.TYPE_DIRECTORY : FTPFile.TYPE_FILE);
+			int type = dir ? FTPFile.TYPE_DIRECTORY : FTPFile.TYPE_FILE;
+			// Apply the filter (no Date object is needed for the check).
+			if (filter != null) {
+				if (!filter.acceptType(type) || !filter.acceptSize(fileSize)
+						|| !filter.acceptName(name)) {
+					continue;
+				}
+				if (mdTime == -1 ? filter.hasModifiedDateCriterion()
+						: !filter.acceptModifiedTime(mdTime)) {
+					continue;
+				}
+			}
+			FTPFile file = new FTPFile();
+			file.setName(name);
+			file.setModifiedDate(mdTime != -1 ? new Date(mdTime) : null);
+			file.setSize(fileSize);
+			file.setType(type);
+			ret[count++] = file;
+		}
+		if (ret != null && count < ret.length) {
+			FTPFile[] aux = new FTPFile[count];
+			System.arraycopy(ret, 0, aux, 0, count);
+			ret = aux;
 		}
 		return ret;
 	}
@@ -19,8 +19,9 @@
 package it.sauronsoftware.ftp4j.listparsers;
 
 import it.sauronsoftware.ftp4j.FTPFile;
+import it.sauronsoftware.ftp4j.FTPFileFilter;
+import it.sauronsoftware.ftp4j.FTPFilteringListParser;
 import it.sauronsoftware.ftp4j.FTPListParseException;
-import it.sauronsoftware.ftp4j.FTPListParser;
 
 import java.text.DateFormat;
 import java.text.ParseException;
@@ -37,22 +38,37 @@ import java.util.StringTokenizer;
  * @author Carlo Pelliccia
  * @since 1.5
  */
-public class MLSDListParser implements FTPListParser {
+public class MLSDListParser implements FTPFilteringListParser {
 
 	/**
-	 * Date format 1 for MLSD date facts (supports millis).
+	 * Date format 1 for MLSD date facts (supports millis). Instances are kept
+	 * per thread, since DateFormat objects are not thread-safe.
 	 */
-	private static final DateFormat MLSD_DATE_FORMAT_1 = new SimpleDateFormat("yyyyMMddhhmmss.SSS Z");
+	private static final ThreadLocal MLSD_DATE_FORMAT_1 = new ThreadLocal() {
+		protected Object initialValue() {
+			return new SimpleDateFormat("yyyyMMddhhmmss.SSS Z");
+		}
+	};
 
 	/**
-	 * Date format 2 for MLSD date facts (doesn't support millis).
+	 * Date format 2 for MLSD date facts (doesn't support millis). Instances are
+	 * kept per thread, since DateFormat objects are not thread-safe.
 	 */
-	private static final DateFormat MLSD_DATE_FORMAT_2 = new SimpleDateFormat("yyyyMMddhhmmss Z");
+	private static final ThreadLocal MLSD_DATE_FORMAT_2 = new ThreadLocal() {
+		protected Object initialValue() {
+			return new SimpleDateFormat("yyyyMMddhhmmss Z");
+		}
+	};
 
 	public FTPFile[] parse(String[] lines) throws FTPListParseException {
+		return parse(lines, null);
+	}
+
+	public FTPFile[] parse(String[] lines, FTPFileFilter filter)
+			throws FTPListParseException {
 		ArrayList list = new ArrayList();
 		for (int i = 0; i < lines.length; i++) {
-			FTPFile file = parseLine(lines[i]);
+			FTPFile file = parseLine(lines[i], filter);
 			if (file != null) {
 				list.add(file);
 			}
@@ -70,11 +86,15 @@ public class MLSDListParser implements FTPListParser {
 	 * 
 	 * @param line
 	 *            The line.
-	 * @return The file, or null if the line has to be ignored.
+	 * @param filter
+	 *            The filter (could be null).
+	 * @return The file, or null if the line has to be ignored or it is
+	 *         rejected by the filter.
 	 * @throws FTPListParseException
 	 *             If the line is not a valid MLSD entry.
 	 */
-	private FTPFile parseLine(String line) throws FTPListParseException {
+	private FTPFile parseLine(String line, FTPFileFilter filter)
+			throws FTPListParseException {
 		// Divides facts and name.
 		ArrayList list = new ArrayList();
 		StringTokenizer st = new StringTokenizer(line, ";");
@@ -123,37 +143,44 @@ public class MLSDListParser implements FTPListParser {
 			// Unknown... (link?)... Skips...
 			return null;
 		}
+		// Size.
+		long size = 0;
+		String sizeString = facts.getProperty("size");
+		if (sizeString != null) {
+			try {
+				size = Long.parseLong(sizeString);
+			} catch (NumberFormatException e) {
+				;
+			}
+			if (size < 0) {
+				size = 0;
+			}
+		}
+		// Cheap filtering criteria.
+		if (filter != null) {
+			if (!filter.acceptType(type) || !filter.acceptSize(size)
+					|| !filter.acceptName(name)) {
+				return null;
+			}
+		}
 		// Last modification date.
 		Date modifiedDate = null;
 		String modifyString = facts.getProperty("modify");
 		if (modifyString != null) {
 			modifyString += " +0000";
 			try {
-				synchronized (MLSD_DATE_FORMAT_1) {
-					modifiedDate = MLSD_DATE_FORMAT_1.parse(modifyString);
-				}
+				modifiedDate = ((DateFormat) MLSD_DATE_FORMAT_1.get()).parse(modifyString);
 			} catch (ParseException e1) {
 				try {
-					synchronized (MLSD_DATE_FORMAT_2) {
-						modifiedDate = MLSD_DATE_FORMAT_2.parse(modifyString);
-					}
+					modifiedDate = ((DateFormat) MLSD_DATE_FORMAT_2.get()).parse(modifyString);
 				} catch (ParseException e2) {
 					;
 				}
 			}
 		}
-		// Size.
-		long size = 0;
-		String sizeString = facts.getProperty("size");
-		if (sizeString != null) {
-			try {
-				size = Long.parseLong(sizeString);
-			} catch (NumberFormatException e) {
-				;
-			}
-			if (size < 0) {
-				size = 0;
-			}
+		// Date filtering criterion.
+		if (filter != null && !filter.acceptModifiedDate(modifiedDate)) {
+			return null;
 		}
 		// Done!
 		FTPFile ret = new FTPFile();
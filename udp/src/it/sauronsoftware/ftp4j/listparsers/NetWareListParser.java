@@ -19,8 +19,9 @@
 package it.sauronsoftware.ftp4j.listparsers;
 
 import it.sauronsoftware.ftp4j.FTPFile;
+import it.sauronsoftware.ftp4j.FTPFileFilter;
+import it.sauronsoftware.ftp4j.FTPFilteringListParser;
 import it.sauronsoftware.ftp4j.FTPListParseException;
-import it.sauronsoftware.ftp4j.FTPListParser;
 
 import java.text.DateFormat;
 import java.text.ParseException;
@@ -36,23 +37,32 @@ import java.util.regex.Pattern;
  * 
  * @author Carlo Pelliccia
  */
-public class NetWareListParser implements FTPListParser {
+public class NetWareListParser implements FTPFilteringListParser {
 
 	private static final Pattern PATTERN = Pattern
 			.compile("^(d|-)\\s+\\[.{8}\\]\\s+\\S+\\s+(\\d+)\\s+"
 					+ "(?:(\\w{3})\\s+(\\d{1,2}))\\s+(?:(\\d{4})|(?:(\\d{1,2}):(\\d{1,2})))\\s+"
 					+ "([^\\\\/*?\"<>|]+)$");
 
-	private static final DateFormat DATE_FORMAT = new SimpleDateFormat(
-			"MMM dd yyyy HH:mm", Locale.US);
+	private static final ThreadLocal DATE_FORMAT = new ThreadLocal() {
+		protected Object initialValue() {
+			return new SimpleDateFormat("MMM dd yyyy HH:mm", Locale.US);
+		}
+	};
 
 	public FTPFile[] parse(String[] lines) throws FTPListParseException {
+		return parse(lines, null);
+	}
+
+	public FTPFile[] parse(String[] lines, FTPFileFilter filter)
+			throws FTPListParseException {
 		int size = lines.length;
 		// What's the date today?
 		Calendar now = Calendar.getInstance();
 		// Ok, starts parsing.
 		int currentYear = now.get(Calendar.YEAR);
 		FTPFile[] ret = new FTPFile[size];
+		int count = 0;
 		for (int i = 0; i < size; i++) {
 			Matcher m = PATTERN.matcher(lines[i]);
 			if (m.matches()) {
@@ -65,11 +75,11 @@ public class NetWareListParser implements FTPListParser {
 				String minuteString = m.group(7);
 				String nameString = m.group(8);
 				// Parse the data.
-				ret[i] = new FTPFile();
+				int type;
 				if (typeString.equals("-")) {
-					ret[i].setType(FTPFile.TYPE_FILE);
+					type = FTPFile.TYPE_FILE;
 				} else if (typeString.equals("d")) {
-					ret[i].setType(FTPFile.TYPE_DIRECTORY);
+					type = FTPFile.TYPE_DIRECTORY;
 				} else {
 					throw new FTPListParseException();
 				}
@@ -79,7 +89,13 @@ public class NetWareListParser implements FTPListParser {
 				} catch (Throwable t) {
 					throw new FTPListParseException();
 				}
-				ret[i].setSize(fileSize);
+				// Cheap filtering criteria.
+				if (filter != null) {
+					if (!filter.acceptType(type) || !filter.acceptSize(fileSize)
+							|| !filter.acceptName(nameString)) {
+						continue;
+					}
+				}
 				if (dayString.length() == 1) {
 					dayString = "0" + dayString;
 				}
@@ -112,9 +128,7 @@ public class NetWareListParser implements FTPListParser {
 				}
 				Date md;
 				try {
-					synchronized (DATE_FORMAT) {
-						md = DATE_FORMAT.parse(mdString.toString());
-					}
+					md = ((DateFormat) DATE_FORMAT.get()).parse(mdString.toString());
 				} catch (ParseException e) {
 					throw new FTPListParseException();
 				}
@@ -126,12 +140,25 @@ public class NetWareListParser implements FTPListParser {
 						md = mc.getTime();
 					}
 				}
-				ret[i].setModifiedDate(md);
-				ret[i].setName(nameString);
+				// Date filtering criterion.
+				if (filter != null && !filter.acceptModifiedDate(md)) {
+					continue;
+				}
+				FTPFile file = new FTPFile();
+				file.setType(type);
+				file.setSize(fileSize);
+				file.setModifiedDate(md);
+				file.setName(nameString);
+				ret[count++] = file;
 			} else {
 				throw new FTPListParseException();
 			}
 		}
+		if (count < ret.length) {
+			FTPFile[] aux = new FTPFile[count];
+			System.arraycopy(ret, 0, aux, 0, count);
+			ret = aux;
+		}
 		return ret;
 	}
 
@@ -19,8 +19,9 @@
 package it.sauronsoftware.ftp4j.listparsers;
 
 import it.sauronsoftware.ftp4j.FTPFile;
+import it.sauronsoftware.ftp4j.FTPFileFilter;
+import it.sauronsoftware.ftp4j.FTPFilteringListParser;
 import it.sauronsoftware.ftp4j.FTPListParseException;
-import it.sauronsoftware.ftp4j.FTPListParser;
 
 import java.text.DateFormat;
 import java.text.ParseException;
@@ -37,7 +38,7 @@ import java.util.regex.Pattern;
  * 
  * @author Carlo Pelliccia
  */
-public class UnixListParser implements FTPListParser {
+public class UnixListParser implements FTPFilteringListParser {
 
 	private static final Pattern PATTERN = Pattern
 			.compile("^([dl\\-])[r\\-][w\\-][xSs\\-][r\\-][w\\-][xSs\\-][r\\-][w\\-][xTt\\-]\\s+"
@@ -45,32 +46,36 @@ public class UnixListParser implements FTPListParser {
 					+ "(?:(\\d{4})|(?:(\\d{1,2}):(\\d{1,2})))\\s+"
 					+ "([^\\\\*?\"<>|]+)(?: -> ([^\\\\*?\"<>|]+))?$");
 
-	private static final DateFormat DATE_FORMAT = new SimpleDateFormat(
-			"MMM dd yyyy HH:mm", Locale.US);
+	private static final ThreadLocal DATE_FORMAT = new ThreadLocal() {
+		protected Object initialValue() {
+			return new SimpleDateFormat("MMM dd yyyy HH:mm", Locale.US);
+		}
+	};
 
 	public FTPFile[] parse(String[] lines) throws FTPListParseException {
+		return parse(lines, null);
+	}
+
+	public FTPFile[] parse(String[] lines, FTPFileFilter filter)
+			throws FTPListParseException {
 		int size = lines.length;
 		if (size == 0) {
 			return new FTPFile[0];
 		}
 		// Removes the "total" line used in MAC style.
+		int first = 0;
 		if (lines[0].startsWith("total")) {
-			size--;
-			String[] lines2 = new String[size];
-			for (int i = 0; i < size; i++) {
-				lines2[i] = lines[i + 1];
-			}
-			lines = lines2;
+			first = 1;
 		}
 		// What's the date today?
 		Calendar now = Calendar.getInstance();
 		// Ok, starts parsing.
 		int currentYear = now.get(Calendar.YEAR);
-		FTPFile[] ret = new FTPFile[size];
-		for (int i = 0; i < size; i++) {
+		FTPFile[] ret = new FTPFile[size - first];
+		int count = 0;
+		for (int i = first; i < size; i++) {
 			Matcher m = PATTERN.matcher(lines[i]);
 			if (m.matches()) {
-				ret[i] = new FTPFile();
 				// Retrieve the data.
 				String typeString = m.group(1);
 				String sizeString = m.group(2);
@@ -82,13 +87,13 @@ public class UnixListParser implements FTPListParser {
 				String nameString = m.group(8);
 				String linkedString = m.group(9);
 				// Parse the data.
+				int type;
 				if (typeString.equals("-")) {
-					ret[i].setType(FTPFile.TYPE_FILE);
+					type = FTPFile.TYPE_FILE;
 				} else if (typeString.equals("d")) {
-					ret[i].setType(FTPFile.TYPE_DIRECTORY);
+					type = FTPFile.TYPE_DIRECTORY;
 				} else if (typeString.equals("l")) {
-					ret[i].setType(FTPFile.TYPE_LINK);
-					ret[i].setLink(linkedString);
+					type = FTPFile.TYPE_LINK;
 				} else {
 					throw new FTPListParseException();
 				}
@@ -98,7 +103,13 @@ public class UnixListParser implements FTPListParser {
 				} catch (Throwable t) {
 					throw new FTPListParseException();
 				}
-				ret[i].setSize(fileSize);
+				// Cheap filtering criteria.
+				if (filter != null) {
+					if (!filter.acceptType(type) || !filter.acceptSize(fileSize)
+							|| !filter.acceptName(nameString)) {
+						continue;
+					}
+				}
 				if (dayString.length() == 1) {
 					dayString = "0" + dayString;
 				}
@@ -131,9 +142,7 @@ public class UnixListParser implements FTPListParser {
 				}
 				Date md;
 				try {
-					synchronized (DATE_FORMAT) {
-						md = DATE_FORMAT.parse(mdString.toString());
-					}
+					md = ((DateFormat) DATE_FORMAT.get()).parse(mdString.toString());
 				} catch (ParseException e) {
 					throw new FTPListParseException();
 				}
@@ -145,12 +154,28 @@ public class UnixListParser implements FTPListParser {
 						md = mc.getTime();
 					}
 				}
-				ret[i].setModifiedDate(md);
-				ret[i].setName(nameString);
+				// Date filtering criterion.
+				if (filter != null && !filter.acceptModifiedDate(md)) {
+					continue;
+				}
+				FTPFile file = new FTPFile();
+				file.setType(type);
+				if (type == FTPFile.TYPE_LINK) {
+					file.setLink(linkedString);
+				}
+				file.setSize(fileSize);
+				file.setModifiedDate(md);
+				file.setName(nameString);
+				ret[count++] = file;
 			} else {
 				throw new FTPListParseException();
 			}
 		}
+		if (count < ret.length) {
+			FTPFile[] aux = new FTPFile[count];
+			System.arraycopy(ret, 0, aux, 0, count);
+			ret = aux;
+		}
 		return ret;
 	}
 